@@ -0,0 +1,160 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.config.RateLimiterProperties;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.filter.RateLimiterFilter;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.infrastructure.RateLimitConfigRepository;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketSnapshots;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketStore;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.HotKeyTracker;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.LocalBucketBackend;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.composite.CompositeLimiter;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.config.entity.RateLimitConfig;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.decision.DecisionLog;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.metrics.RateLimiterMetrics;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.quota.QuotaStore;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.rule.DefaultPolicy;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.service.RateLimiterService;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.service.RuleSnapshotService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Wires the rate limiter without a Spring context, the way the application context would.
+ * <p>
+ * Rules are served by an in-memory stub of {@link RateLimitConfigRepository}, buckets are local
+ * and metrics go to a {@link SimpleMeterRegistry}. Logging is limited to errors so console
+ * output does not distort the results.
+ * </p>
+ */
+final class BenchmarkFixture implements AutoCloseable {
+
+    /**
+     * Route used by all benchmarks, as configured for the pigeon service.
+     */
+    static final String ROUTE = "/pigeon/graphql";
+
+    final RateLimiterProperties properties = new RateLimiterProperties();
+
+    final RuleSnapshotService ruleSnapshotService = new RuleSnapshotService();
+
+    final BucketStore bucketStore = new BucketStore(properties);
+
+    final RateLimiterMetrics metrics = new RateLimiterMetrics(new SimpleMeterRegistry(), properties, bucketStore);
+
+    final RateLimiterService rateLimiterService = new RateLimiterService();
+
+    final LocalBucketBackend bucketBackend = new LocalBucketBackend();
+
+    final HotKeyTracker hotKeyTracker;
+
+    final DecisionLog decisionLog = new DecisionLog(properties, new SimpleMeterRegistry());
+
+    BenchmarkFixture(Collection<RateLimitConfig> rules) {
+        this(rules, false);
+    }
+
+    /**
+     * @param rules   the rules served by the repository stub
+     * @param hotKeys whether heavy-hitter buckets are detected and striped
+     */
+    BenchmarkFixture(Collection<RateLimitConfig> rules, boolean hotKeys) {
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.ERROR);
+        properties.getHotKeys().setEnabled(hotKeys);
+        hotKeyTracker = new HotKeyTracker(properties, bucketStore, bucketBackend);
+
+        ReflectionTestUtils.setField(ruleSnapshotService, "configRepository", repository(rules));
+        ReflectionTestUtils.setField(ruleSnapshotService, "eventPublisher", (ApplicationEventPublisher) event -> {
+        });
+        ruleSnapshotService.reload().block();
+
+        metrics.init();
+        hotKeyTracker.init();
+        decisionLog.init();
+
+        ReflectionTestUtils.setField(rateLimiterService, "ruleSnapshotService", ruleSnapshotService);
+        ReflectionTestUtils.setField(rateLimiterService, "properties", properties);
+        ReflectionTestUtils.setField(rateLimiterService, "bucketBackend", bucketBackend);
+        ReflectionTestUtils.setField(rateLimiterService, "metrics", metrics);
+        ReflectionTestUtils.setField(rateLimiterService, "bucketStore", bucketStore);
+        ReflectionTestUtils.setField(rateLimiterService, "hotKeyTracker", hotKeyTracker);
+        ReflectionTestUtils.setField(rateLimiterService, "bucketSnapshots",
+                new BucketSnapshots(properties, bucketStore, bucketBackend));
+        ReflectionTestUtils.setField(rateLimiterService, "defaultPolicy", new DefaultPolicy(properties));
+        ReflectionTestUtils.setField(rateLimiterService, "quotaStore",
+                new QuotaStore(properties, null, new SimpleMeterRegistry()));
+    }
+
+    /**
+     * @return the gateway filter factory backed by this fixture's service
+     */
+    RateLimiterFilter filter() {
+        return new RateLimiterFilter(rateLimiterService, metrics,
+                new CompositeLimiter(properties, bucketBackend, new ObjectMapper(), new SimpleMeterRegistry()),
+                decisionLog);
+    }
+
+    @Override
+    public void close() {
+        decisionLog.stop();
+        hotKeyTracker.stop();
+        metrics.stop();
+    }
+
+    /**
+     * Creates an ACTIVE rule for the given client on {@link #ROUTE}.
+     *
+     * @param clientId          the client identifier
+     * @param requestsPerWindow the number of requests allowed per window
+     * @param timeUnit          the window, one {@link java.time.temporal.ChronoUnit} long
+     * @return the rule
+     */
+    static RateLimitConfig rule(String clientId, long requestsPerWindow, String timeUnit) {
+        return RateLimitConfig.builder()
+                .id(clientId)
+                .clientId(clientId)
+                .route(ROUTE)
+                .requestsPerMinute(requestsPerWindow)
+                .timeWindow(1)
+                .timeUnit(timeUnit)
+                .status("ACTIVE")
+                .build();
+    }
+
+    /**
+     * Creates rules for {@code count} clients named {@code prefix0 .. prefix(count-1)}
+     * whose limit is never reached during a benchmark.
+     */
+    static List<RateLimitConfig> unlimitedRules(String prefix, int count) {
+        List<RateLimitConfig> rules = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rules.add(rule(prefix + i, 1_000_000_000L, "SECONDS"));
+        }
+        return rules;
+    }
+
+    /**
+     * @return a repository stub answering {@code findAllByStatus} from the given rules
+     */
+    private static RateLimitConfigRepository repository(Collection<RateLimitConfig> rules) {
+        return (RateLimitConfigRepository) Proxy.newProxyInstance(
+                RateLimitConfigRepository.class.getClassLoader(),
+                new Class<?>[]{RateLimitConfigRepository.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("findAllByStatus")) {
+                        return Flux.fromStream(rules.stream().filter(rule -> args[0].equals(rule.getStatus())));
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
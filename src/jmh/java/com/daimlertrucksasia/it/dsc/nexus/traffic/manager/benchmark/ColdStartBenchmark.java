@@ -0,0 +1,63 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.benchmark;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketEntry;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of creating a bucket on first sight of a client: rule lookup in the snapshot loaded
+ * from the in-memory repository stub, bucket construction and insertion into the store.
+ * Each operation removes the bucket again so the next one is also a miss; the removal is
+ * included in the measured time.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ColdStartBenchmark {
+
+    private static final int CLIENTS = 1 << 12;
+
+    private BenchmarkFixture fixture;
+
+    private BucketKey[] keys;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = new BenchmarkFixture(BenchmarkFixture.unlimitedRules("cold-", CLIENTS));
+        keys = new BucketKey[CLIENTS];
+        for (int i = 0; i < CLIENTS; i++) {
+            keys[i] = new BucketKey("cold-" + i, BenchmarkFixture.ROUTE);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public BucketEntry createBucket() {
+        BucketKey key = keys[next++ & (CLIENTS - 1)];
+        BucketEntry entry = fixture.rateLimiterService.resolveEntry(key.getClientId(), key.getRoute());
+        fixture.bucketStore.invalidate(key);
+        return entry;
+    }
+}
@@ -0,0 +1,54 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolve and consume from one hot client's bucket on many threads at once, which is where
+ * the bucket's synchronization and the store lookup contend. With {@code hotKeys} the bucket is
+ * detected as a heavy hitter and split into stripes. Override the thread count with {@code -t}.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class ContendedClientBenchmark {
+
+    @Param({"false", "true"})
+    private boolean hotKeys;
+
+    private BenchmarkFixture fixture;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = new BenchmarkFixture(List.of(BenchmarkFixture.rule("hot", 1_000_000_000L, "SECONDS")), hotKeys);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public boolean hotClient() {
+        return fixture.rateLimiterService.resolveBucket("hot", BenchmarkFixture.ROUTE).tryConsume(1);
+    }
+}
@@ -0,0 +1,100 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.benchmark;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.filter.RateLimiterFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.adapter.DefaultServerWebExchange;
+import org.springframework.web.server.i18n.AcceptHeaderLocaleContextResolver;
+import org.springframework.web.server.session.DefaultWebSessionManager;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The full {@link RateLimiterFilter} run through a {@code ServerWebExchange} over a mock request
+ * and response, for an admitted request, a throttled request and a request without
+ * {@code X-Client-Id}. The downstream chain completes immediately.
+ * <p>
+ * Exchanges are built per operation, as the server does per request, but share their codecs and
+ * session manager: {@code MockServerWebExchange} creates codecs for every exchange, which would
+ * dominate the measurement.
+ * </p>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FilterChainBenchmark {
+
+    private static final GatewayFilterChain CHAIN = exchange -> Mono.empty();
+
+    private static final ServerCodecConfigurer CODECS = ServerCodecConfigurer.create();
+
+    private static final DefaultWebSessionManager SESSIONS = new DefaultWebSessionManager();
+
+    private static final AcceptHeaderLocaleContextResolver LOCALES = new AcceptHeaderLocaleContextResolver();
+
+    private BenchmarkFixture fixture;
+
+    private GatewayFilter filter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = new BenchmarkFixture(List.of(
+                BenchmarkFixture.rule("allowed", 1_000_000_000L, "SECONDS"),
+                BenchmarkFixture.rule("throttled", 1, "HOURS")));
+        filter = fixture.filter().apply(new RateLimiterFilter.Config());
+        fixture.rateLimiterService.resolveBucket("throttled", BenchmarkFixture.ROUTE).tryConsume(1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public HttpStatusCode allowed() {
+        return run("allowed");
+    }
+
+    @Benchmark
+    public HttpStatusCode throttled() {
+        return run("throttled");
+    }
+
+    @Benchmark
+    public HttpStatusCode missingClient() {
+        return run(null);
+    }
+
+    private HttpStatusCode run(String clientId) {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get(BenchmarkFixture.ROUTE);
+        if (clientId != null) {
+            request.header("X-Client-Id", clientId);
+        }
+        ServerWebExchange exchange = new DefaultServerWebExchange(
+                request.build(), new MockServerHttpResponse(), SESSIONS, CODECS, LOCALES);
+        filter.filter(exchange, CHAIN).block();
+        return exchange.getResponse().getStatusCode();
+    }
+}
@@ -0,0 +1,107 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.benchmark;
+
+import io.github.bucket4j.Bucket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@code RateLimiterService.resolveBucket} for an existing bucket: rule matching plus
+ * bucket store lookup.
+ * <ul>
+ *     <li><b>singleKey</b> – one client, always the same bucket</li>
+ *     <li><b>zipfKeys</b> – {@code clients} clients drawn from a Zipf distribution, as produced
+ *     by a few heavy clients and a long tail</li>
+ * </ul>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResolveBucketBenchmark {
+
+    private static final int SAMPLES = 1 << 16;
+
+    /**
+     * Number of distinct clients in the Zipf distribution.
+     */
+    @Param({"10000"})
+    public int clients;
+
+    /**
+     * Zipf exponent; higher values concentrate traffic on fewer clients.
+     */
+    @Param({"1.1"})
+    public double skew;
+
+    private BenchmarkFixture fixture;
+
+    private String[] zipfClients;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = new BenchmarkFixture(BenchmarkFixture.unlimitedRules("client-", clients));
+
+        String[] ids = new String[clients];
+        double[] cdf = new double[clients];
+        double sum = 0;
+        for (int i = 0; i < clients; i++) {
+            ids[i] = "client-" + i;
+            sum += 1 / Math.pow(i + 1, skew);
+            cdf[i] = sum;
+        }
+
+        Random random = new Random(42);
+        zipfClients = new String[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            int rank = Arrays.binarySearch(cdf, random.nextDouble() * sum);
+            zipfClients[i] = ids[rank >= 0 ? rank : Math.min(-rank - 1, clients - 1)];
+            fixture.rateLimiterService.resolveBucket(zipfClients[i], BenchmarkFixture.ROUTE);
+        }
+        fixture.rateLimiterService.resolveBucket("client-0", BenchmarkFixture.ROUTE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    /**
+     * Per-thread position in the Zipf sample sequence.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int next;
+
+        int next() {
+            return next++ & (SAMPLES - 1);
+        }
+    }
+
+    @Benchmark
+    public Bucket singleKey() {
+        return fixture.rateLimiterService.resolveBucket("client-0", BenchmarkFixture.ROUTE);
+    }
+
+    @Benchmark
+    public Bucket zipfKeys(Cursor cursor) {
+        return fixture.rateLimiterService.resolveBucket(zipfClients[cursor.next()], BenchmarkFixture.ROUTE);
+    }
+}
@@ -0,0 +1,63 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.benchmark;
+
+import io.github.bucket4j.Bucket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link Bucket#tryConsume} on a resolved bucket, on the path that admits the request
+ * and on the path that throttles it. Each thread uses buckets of its own.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TryConsumeBenchmark {
+
+    private BenchmarkFixture fixture;
+
+    private Bucket allowed;
+
+    private Bucket throttled;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = new BenchmarkFixture(List.of(
+                BenchmarkFixture.rule("allowed", 1_000_000_000L, "SECONDS"),
+                BenchmarkFixture.rule("throttled", 1, "HOURS")));
+
+        allowed = fixture.rateLimiterService.resolveBucket("allowed", BenchmarkFixture.ROUTE);
+        throttled = fixture.rateLimiterService.resolveBucket("throttled", BenchmarkFixture.ROUTE);
+        throttled.tryConsume(1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public boolean allowed() {
+        return allowed.tryConsume(1);
+    }
+
+    @Benchmark
+    public boolean throttled() {
+        return throttled.tryConsume(1);
+    }
+}
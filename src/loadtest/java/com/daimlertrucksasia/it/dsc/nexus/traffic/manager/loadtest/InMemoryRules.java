@@ -0,0 +1,79 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.loadtest;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.infrastructure.RateLimitConfigRepository;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.config.entity.RateLimitConfig;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory stand-in for the MongoDB rule collection, seeded with one rule per client.
+ * <p>
+ * It implements the repository methods the gateway calls while serving traffic and on the
+ * admin endpoints; everything else throws {@link UnsupportedOperationException}.
+ * </p>
+ */
+final class InMemoryRules {
+
+    private final Map<String, RateLimitConfig> documents = new ConcurrentHashMap<>();
+
+    /**
+     * Seeds the rules {@code client-0} to {@code client-<rules - 1>}.
+     *
+     * @param settings the load test settings
+     */
+    InMemoryRules(LoadTestSettings settings) {
+        for (int i = 0; i < settings.rules; i++) {
+            String clientId = LoadTest.clientId(i);
+            documents.put(clientId, RateLimitConfig.builder()
+                    .id(clientId)
+                    .clientId(clientId)
+                    .route(settings.ruleRoute)
+                    .requestsPerMinute(settings.ruleRequestsPerMinute)
+                    .timeWindow(1)
+                    .timeUnit("MINUTES")
+                    .status("ACTIVE")
+                    .build());
+        }
+    }
+
+    /**
+     * @return the number of rules stored
+     */
+    int size() {
+        return documents.size();
+    }
+
+    /**
+     * @return a repository backed by this store
+     */
+    RateLimitConfigRepository repository() {
+        return (RateLimitConfigRepository) Proxy.newProxyInstance(
+                RateLimitConfigRepository.class.getClassLoader(),
+                new Class<?>[]{RateLimitConfigRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "findAllByStatus" -> Flux.fromIterable(documents.values())
+                            .filter(rule -> args[0].equals(rule.getStatus()));
+                    case "findById" -> Mono.justOrEmpty(documents.get((String) args[0]));
+                    case "findFirstByClientIdAndRouteAndStatus" -> Flux.fromIterable(documents.values())
+                            .filter(rule -> args[0].equals(rule.getClientId()) && args[1].equals(rule.getRoute())
+                                    && args[2].equals(rule.getStatus()))
+                            .next();
+                    case "save" -> Mono.fromSupplier(() -> {
+                        RateLimitConfig rule = (RateLimitConfig) args[0];
+                        if (rule.getId() == null) {
+                            rule.setId(rule.getClientId());
+                        }
+                        documents.put(rule.getId(), rule);
+                        return rule;
+                    });
+                    case "toString" -> "InMemoryRules[" + documents.size() + " rules]";
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
@@ -0,0 +1,181 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms and throughput of the measured part of a load test, per result.
+ * <p>
+ * The report is written as {@code report.json}, holding the settings and a summary per result,
+ * and one HdrHistogram percentile distribution ({@code <result>.hgrm}, in milliseconds) per
+ * result that was seen, which can be plotted to compare builds.
+ * </p>
+ */
+final class LoadReport {
+
+    /**
+     * Highest latency that can be recorded, in microseconds.
+     */
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+    private final LoadTestSettings settings;
+
+    private final Map<Result, Histogram> histograms = new EnumMap<>(Result.class);
+
+    private final LongAdder sent = new LongAdder();
+
+    private volatile int unfinished;
+
+    /**
+     * @param settings the settings of the run
+     */
+    LoadReport(LoadTestSettings settings) {
+        this.settings = settings;
+        for (Result result : Result.values()) {
+            histograms.put(result, new ConcurrentHistogram(MAX_LATENCY_MICROS, 3));
+        }
+    }
+
+    /**
+     * How the gateway answered a request.
+     */
+    enum Result {
+
+        /**
+         * Forwarded to the backend.
+         */
+        ALLOWED,
+
+        /**
+         * Rejected with 429 by a rate limit.
+         */
+        THROTTLED,
+
+        /**
+         * Rejected with 503 by admission or the concurrency limit.
+         */
+        SHED,
+
+        /**
+         * Any other status, or no response at all.
+         */
+        ERROR;
+
+        static Result of(int status) {
+            if (status >= 200 && status < 300) {
+                return ALLOWED;
+            }
+            return switch (status) {
+                case 429 -> THROTTLED;
+                case 503 -> SHED;
+                default -> ERROR;
+            };
+        }
+    }
+
+    void sent() {
+        sent.increment();
+    }
+
+    void record(Result result, long latencyNanos) {
+        histograms.get(result).recordValue(Math.min(MAX_LATENCY_MICROS, TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+    }
+
+    void setUnfinished(int unfinished) {
+        this.unfinished = unfinished;
+    }
+
+    /**
+     * Prints a summary table.
+     *
+     * @param out the stream to print to
+     */
+    void print(PrintStream out) {
+        double seconds = settings.duration.toNanos() / 1e9;
+        out.printf(Locale.ROOT, "%nSent %d requests in %.0fs (%.0f/s), %d unfinished%n",
+                sent.sum(), seconds, sent.sum() / seconds, unfinished);
+        out.printf(Locale.ROOT, "%-10s %10s %10s %10s %10s %10s %10s %10s%n",
+                "result", "count", "per sec", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        histograms.forEach((result, histogram) -> {
+            if (histogram.getTotalCount() == 0) {
+                return;
+            }
+            out.printf(Locale.ROOT, "%-10s %10d %10.0f %10.2f %10.2f %10.2f %10.2f %10.2f%n",
+                    result, histogram.getTotalCount(), histogram.getTotalCount() / seconds,
+                    millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+                    millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+                    millis(histogram.getMaxValue()));
+        });
+    }
+
+    /**
+     * Writes the report and the histograms to a directory, replacing earlier ones.
+     *
+     * @param directory the output directory
+     * @throws IOException if a file cannot be written
+     */
+    void write(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        double seconds = settings.duration.toNanos() / 1e9;
+
+        Map<String, Object> results = new LinkedHashMap<>();
+        for (Map.Entry<Result, Histogram> entry : histograms.entrySet()) {
+            Histogram histogram = entry.getValue();
+            if (histogram.getTotalCount() == 0) {
+                continue;
+            }
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("count", histogram.getTotalCount());
+            summary.put("throughput", histogram.getTotalCount() / seconds);
+            summary.put("meanMillis", histogram.getMean() / 1000);
+            for (double percentile : PERCENTILES) {
+                summary.put("p" + format(percentile) + "Millis", millis(histogram.getValueAtPercentile(percentile)));
+            }
+            summary.put("maxMillis", millis(histogram.getMaxValue()));
+            results.put(entry.getKey().name().toLowerCase(Locale.ROOT), summary);
+
+            Path distribution = directory.resolve(entry.getKey().name().toLowerCase(Locale.ROOT) + ".hgrm");
+            try (PrintStream out = new PrintStream(Files.newOutputStream(distribution))) {
+                histogram.outputPercentileDistribution(out, 1000.0);
+            }
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("timestamp", Instant.now().toString());
+        report.put("javaVersion", System.getProperty("java.version"));
+        report.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        report.put("settings", settings.asMap());
+        report.put("sent", sent.sum());
+        report.put("sentPerSecond", sent.sum() / seconds);
+        report.put("unfinished", unfinished);
+        report.put("results", results);
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT)
+                .writeValue(directory.resolve("report.json").toFile(), report);
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    private static String format(double percentile) {
+        return percentile == Math.rint(percentile)
+                ? Integer.toString((int) percentile)
+                : Double.toString(percentile).replace('.', '_');
+    }
+}
@@ -0,0 +1,84 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.loadtest;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.NexusTrafficManagerApplication;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.service.RuleSnapshotService;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.reactive.context.ReactiveWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures the whole gateway under load, offline on a single machine.
+ * <p>
+ * The application is started with the {@code loadtest} profile, which routes the pigeon
+ * paths to an embedded {@link StubBackend} instead of {@code lb://pigeon} and turns off Eureka.
+ * Rules come from {@link InMemoryRules} instead of MongoDB. Once the rules are loaded, the
+ * {@link TrafficGenerator} sends open-loop traffic and the {@link LoadReport} is printed and
+ * written to the output directory.
+ * </p>
+ * <p>
+ * Arguments are {@code key=value} pairs, see {@link LoadTestSettings}, e.g.
+ * {@code rate=5000 duration=60s clientDistribution=uniform}.
+ * </p>
+ */
+public final class LoadTest {
+
+    private static final Duration STARTUP_TIMEOUT = Duration.ofSeconds(60);
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestSettings settings = LoadTestSettings.parse(args);
+        InMemoryRules rules = new InMemoryRules(settings);
+
+        LoadReport report;
+        try (StubBackend backend = new StubBackend(settings.backendDelay);
+             ConfigurableApplicationContext gateway = startGateway(rules, backend.port())) {
+            awaitRules(gateway, rules.size());
+            int port = ((ReactiveWebServerApplicationContext) gateway).getWebServer().getPort();
+            report = new TrafficGenerator(settings, port).run();
+        }
+
+        report.print(System.out);
+        Path output = Path.of(settings.output);
+        report.write(output);
+        System.out.println("Report written to " + output.toAbsolutePath());
+        System.exit(0);
+    }
+
+    /**
+     * @param index the client's index
+     * @return the ID of the client, as used in the seeded rules and the requests
+     */
+    static String clientId(int index) {
+        return "client-" + index;
+    }
+
+    private static ConfigurableApplicationContext startGateway(InMemoryRules rules, int backendPort) {
+        return new SpringApplicationBuilder(NexusTrafficManagerApplication.class)
+                .profiles("loadtest")
+                .initializers(context -> context.getBeanFactory()
+                        .registerSingleton("rateLimitConfigRepository", rules.repository()))
+                .run("--loadtest.backend-port=" + backendPort);
+    }
+
+    /**
+     * Waits until the gateway has loaded every seeded rule.
+     */
+    private static void awaitRules(ConfigurableApplicationContext gateway, int expected) {
+        RuleSnapshotService snapshots = gateway.getBean(RuleSnapshotService.class);
+        long deadline = System.nanoTime() + STARTUP_TIMEOUT.toNanos();
+        while (snapshots.current().size() < expected) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Gateway loaded " + snapshots.current().size()
+                        + " of " + expected + " rules");
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Settings of a load test run, given as {@code key=value} arguments.
+ * <p>
+ * Every setting has a default, so two builds run with the same arguments see the same seeded
+ * traffic and their reports can be compared directly.
+ * </p>
+ */
+final class LoadTestSettings {
+
+    /**
+     * Rules seeded into the rule repository, for clients {@code client-0} upwards.
+     */
+    int rules = 1000;
+
+    /**
+     * Distinct clients sending requests. Clients beyond {@link #rules} have no rule and get
+     * the default limits.
+     */
+    int clients = 1000;
+
+    /**
+     * Route pattern of the seeded rules.
+     */
+    String ruleRoute = "/pigeon/**";
+
+    /**
+     * Requests per minute allowed by each seeded rule.
+     */
+    long ruleRequestsPerMinute = 600;
+
+    /**
+     * How requests are spread over the clients: {@code uniform} or {@code zipf}.
+     */
+    String clientDistribution = "zipf";
+
+    /**
+     * Exponent of the Zipf distribution; the higher, the more traffic the first clients send.
+     */
+    double zipfExponent = 1.0;
+
+    /**
+     * Request paths with their relative weights, as {@code path:weight,path:weight}.
+     */
+    String routes = "/pigeon/graphql:1";
+
+    /**
+     * Requests sent per second, independently of how fast the gateway answers.
+     */
+    int rate = 1000;
+
+    /**
+     * Time during which requests are sent but not recorded.
+     */
+    Duration warmup = Duration.ofSeconds(5);
+
+    /**
+     * Time during which requests are recorded.
+     */
+    Duration duration = Duration.ofSeconds(30);
+
+    /**
+     * Time the stub backend takes to answer.
+     */
+    Duration backendDelay = Duration.ofMillis(5);
+
+    /**
+     * Connections the traffic generator may open to the gateway.
+     */
+    int connections = 512;
+
+    /**
+     * Seed of the client and route choices.
+     */
+    long seed = 42;
+
+    /**
+     * Directory the report is written to.
+     */
+    String output = "target/loadtest";
+
+    /**
+     * Parses the arguments, rejecting unknown keys.
+     *
+     * @param args the {@code key=value} arguments
+     * @return the settings
+     */
+    static LoadTestSettings parse(String[] args) {
+        LoadTestSettings settings = new LoadTestSettings();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected key=value but got: " + arg);
+            }
+            String value = arg.substring(separator + 1);
+            switch (arg.substring(0, separator)) {
+                case "rules" -> settings.rules = Integer.parseInt(value);
+                case "clients" -> settings.clients = Integer.parseInt(value);
+                case "ruleRoute" -> settings.ruleRoute = value;
+                case "ruleRequestsPerMinute" -> settings.ruleRequestsPerMinute = Long.parseLong(value);
+                case "clientDistribution" -> settings.clientDistribution = value;
+                case "zipfExponent" -> settings.zipfExponent = Double.parseDouble(value);
+                case "routes" -> settings.routes = value;
+                case "rate" -> settings.rate = Integer.parseInt(value);
+                case "warmup" -> settings.warmup = DurationStyle.detectAndParse(value);
+                case "duration" -> settings.duration = DurationStyle.detectAndParse(value);
+                case "backendDelay" -> settings.backendDelay = DurationStyle.detectAndParse(value);
+                case "connections" -> settings.connections = Integer.parseInt(value);
+                case "seed" -> settings.seed = Long.parseLong(value);
+                case "output" -> settings.output = value;
+                default -> throw new IllegalArgumentException("Unknown setting: " + arg);
+            }
+        }
+        return settings;
+    }
+
+    /**
+     * @return the settings in the order they are documented, for the report
+     */
+    Map<String, Object> asMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("rules", rules);
+        map.put("clients", clients);
+        map.put("ruleRoute", ruleRoute);
+        map.put("ruleRequestsPerMinute", ruleRequestsPerMinute);
+        map.put("clientDistribution", clientDistribution);
+        map.put("zipfExponent", zipfExponent);
+        map.put("routes", routes);
+        map.put("rate", rate);
+        map.put("warmup", warmup.toString());
+        map.put("duration", duration.toString());
+        map.put("backendDelay", backendDelay.toString());
+        map.put("connections", connections);
+        map.put("seed", seed);
+        return map;
+    }
+}
@@ -0,0 +1,53 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.loadtest;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+
+/**
+ * Netty server standing in for the pigeon service behind the gateway.
+ * <p>
+ * It answers every request with the same small GraphQL response after a fixed delay, so the
+ * measured latency is the gateway's own plus a known constant.
+ * </p>
+ */
+final class StubBackend implements AutoCloseable {
+
+    private static final String RESPONSE = "{\"data\":{\"ping\":\"pong\"}}";
+
+    private final DisposableServer server;
+
+    /**
+     * Starts the server on a free local port.
+     *
+     * @param delay time to wait before answering
+     */
+    StubBackend(Duration delay) {
+        Mono<Void> wait = delay.isZero() ? Mono.empty() : Mono.delay(delay).then();
+        this.server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .handle((request, response) -> request.receive().then()
+                        .then(wait)
+                        .then(response.header(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON)
+                                .sendString(Mono.just(RESPONSE))
+                                .then()))
+                .bindNow();
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    int port() {
+        return server.port();
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+}
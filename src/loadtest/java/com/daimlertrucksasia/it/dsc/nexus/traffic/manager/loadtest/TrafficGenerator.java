@@ -0,0 +1,178 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.loadtest;
+
+import reactor.core.publisher.Mono;
+import reactor.netty.ByteBufFlux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop traffic generator sending GraphQL requests to the gateway at a fixed rate.
+ * <p>
+ * Requests are scheduled at fixed intervals and sent whether or not earlier ones have been
+ * answered, the way independent clients would. Latency is measured from the time a request
+ * was scheduled, not from when it was actually sent, so a stalled gateway shows up in the
+ * percentiles instead of slowing the generator down.
+ * </p>
+ * <p>
+ * Clients and paths are drawn from seeded distributions, so runs with the same settings send
+ * the same sequence of requests.
+ * </p>
+ */
+final class TrafficGenerator {
+
+    private static final String QUERY = "{\"query\":\"{ ping }\"}";
+
+    /**
+     * Time allowed for the requests still in flight to complete once sending stopped.
+     */
+    private static final Duration DRAIN_TIMEOUT = Duration.ofSeconds(30);
+
+    private final LoadTestSettings settings;
+
+    private final ConnectionProvider connections;
+
+    private final HttpClient client;
+
+    private final SplittableRandom random;
+
+    /**
+     * Cumulative probability of each client, or {@code null} for a uniform distribution.
+     */
+    private final double[] clientCdf;
+
+    private final String[] paths;
+
+    private final double[] pathCdf;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * @param settings    the load test settings
+     * @param gatewayPort the port the gateway listens on
+     */
+    TrafficGenerator(LoadTestSettings settings, int gatewayPort) {
+        this.settings = settings;
+        this.connections = ConnectionProvider.builder("loadtest")
+                .maxConnections(settings.connections)
+                .pendingAcquireMaxCount(-1)
+                .pendingAcquireTimeout(DRAIN_TIMEOUT)
+                .build();
+        this.client = HttpClient.create(connections)
+                .baseUrl("http://127.0.0.1:" + gatewayPort)
+                .headers(headers -> headers.set("Content-Type", "application/json"));
+        this.random = new SplittableRandom(settings.seed);
+        this.clientCdf = switch (settings.clientDistribution) {
+            case "uniform" -> null;
+            case "zipf" -> zipf(settings.clients, settings.zipfExponent);
+            default -> throw new IllegalArgumentException("Unknown client distribution: " + settings.clientDistribution);
+        };
+
+        String[] routes = settings.routes.split(",");
+        this.paths = new String[routes.length];
+        double[] weights = new double[routes.length];
+        for (int i = 0; i < routes.length; i++) {
+            int separator = routes[i].lastIndexOf(':');
+            paths[i] = separator < 0 ? routes[i] : routes[i].substring(0, separator);
+            weights[i] = separator < 0 ? 1 : Double.parseDouble(routes[i].substring(separator + 1));
+        }
+        this.pathCdf = cumulative(weights);
+    }
+
+    /**
+     * Sends the warm-up and the measured traffic and waits for the last responses.
+     *
+     * @return the recorded results
+     */
+    LoadReport run() {
+        LoadReport report = new LoadReport(settings);
+        long period = TimeUnit.SECONDS.toNanos(1);
+        long start = System.nanoTime();
+        long measureFrom = start + settings.warmup.toNanos();
+        long end = measureFrom + settings.duration.toNanos();
+
+        for (long i = 0; ; i++) {
+            long scheduled = start + i * period / settings.rate;
+            if (scheduled >= end) {
+                break;
+            }
+            long delay = scheduled - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            send(LoadTest.clientId(nextClient()), paths[pick(pathCdf)], scheduled,
+                    scheduled >= measureFrom ? report : null);
+        }
+
+        long deadline = System.nanoTime() + DRAIN_TIMEOUT.toNanos();
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        report.setUnfinished(inFlight.get());
+        connections.disposeLater().block(Duration.ofSeconds(10));
+        return report;
+    }
+
+    /**
+     * Sends one request, recording its result in the report unless it is part of the warm-up.
+     */
+    private void send(String clientId, String path, long scheduled, LoadReport report) {
+        inFlight.incrementAndGet();
+        if (report != null) {
+            report.sent();
+        }
+        client.headers(headers -> headers.set("X-Client-Id", clientId))
+                .post()
+                .uri(path)
+                .send(ByteBufFlux.fromString(Mono.just(QUERY)))
+                .response((response, body) -> body.then(Mono.just(response.status().code())))
+                .single()
+                .doFinally(signal -> inFlight.decrementAndGet())
+                .subscribe(status -> {
+                    if (report != null) {
+                        report.record(LoadReport.Result.of(status), System.nanoTime() - scheduled);
+                    }
+                }, error -> {
+                    if (report != null) {
+                        report.record(LoadReport.Result.ERROR, System.nanoTime() - scheduled);
+                    }
+                });
+    }
+
+    private int nextClient() {
+        return clientCdf == null ? random.nextInt(settings.clients) : pick(clientCdf);
+    }
+
+    private int pick(double[] cdf) {
+        int index = Arrays.binarySearch(cdf, random.nextDouble());
+        return Math.min(index < 0 ? -index - 1 : index, cdf.length - 1);
+    }
+
+    /**
+     * Cumulative Zipf probabilities: client {@code k} is drawn with a weight of {@code 1 / (k + 1)^s}.
+     */
+    private static double[] zipf(int clients, double exponent) {
+        double[] weights = new double[clients];
+        for (int k = 0; k < clients; k++) {
+            weights[k] = 1 / Math.pow(k + 1, exponent);
+        }
+        return cumulative(weights);
+    }
+
+    private static double[] cumulative(double[] weights) {
+        double total = Arrays.stream(weights).sum();
+        double[] cdf = new double[weights.length];
+        double sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i];
+            cdf[i] = sum / total;
+        }
+        return cdf;
+    }
+}
@@ -2,9 +2,18 @@ package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.application.controlle
 
 import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.infrastructure.RateLimitConfigRepository;
 import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.config.entity.RateLimitConfig;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.rule.RuleImportResult;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.rule.RuleValidity;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.service.RuleBulkService;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.service.RuleSnapshotService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.time.LocalDateTime;
 
@@ -12,6 +21,12 @@ import java.time.LocalDateTime;
  * REST controller for managing rate limit configurations.
  * This controller provides endpoints to register and fetch rate limiting rules
  * per client and route.
+ * <p>
+ * All MongoDB access goes through the reactive repository, so admin requests never hold an
+ * event-loop thread while waiting for the database. Saved rules are applied to the rule
+ * snapshot on the bounded elastic scheduler, because rebuilding the snapshot and reconfiguring
+ * live buckets is too much work for an event-loop thread.
+ * </p>
  */
 @RestController
 @RequestMapping("/rate/limit")
@@ -20,6 +35,12 @@ public class RateLimiterConfigController {
     @Autowired
     private RateLimitConfigRepository configRepository;
 
+    @Autowired
+    private RuleSnapshotService ruleSnapshotService;
+
+    @Autowired
+    private RuleBulkService ruleBulkService;
+
     /**
      * Registers a new rate limit configuration.
      *
@@ -27,9 +48,9 @@ public class RateLimiterConfigController {
      * @return The saved {@link RateLimitConfig} with a 200 OK response.
      */
     @PostMapping("/register")
-    public ResponseEntity<RateLimitConfig> registerRateLimit(@RequestBody RateLimitConfig config) {
+    public Mono<ResponseEntity<RateLimitConfig>> registerRateLimit(@RequestBody RateLimitConfig config) {
 
-        RateLimitConfig savedConfig = configRepository.save(
+        return configRepository.save(
                 RateLimitConfig.builder()
                         .clientId(config.getClientId())
                         .route(config.getRoute())
@@ -37,15 +58,21 @@ public class RateLimiterConfigController {
                         .timeWindow(config.getTimeWindow())
                         .timeUnit(config.getTimeUnit())
                         .burstCapacity(config.getBurstCapacity())
+                        .dailyQuota(config.getDailyQuota())
+                        .monthlyQuota(config.getMonthlyQuota())
                         .priority(config.getPriority())
+                        .activationDate(config.getActivationDate())
                         .expirationDate(config.getExpirationDate())
                         .createdAt(LocalDateTime.now())
                         .status(config.getStatus())
                         .customAttributes(config.getCustomAttributes())
                         .build()
-        );
-
-        return ResponseEntity.ok(savedConfig);
+                )
+                .publishOn(Schedulers.boundedElastic())
+                .map(savedConfig -> {
+                    ruleSnapshotService.apply(savedConfig);
+                    return ResponseEntity.ok(savedConfig);
+                });
     }
 
     /**
@@ -56,25 +83,32 @@ public class RateLimiterConfigController {
      * @return The updated {@link RateLimitConfig} if the ID exists, otherwise 404 Not Found.
      */
     @PutMapping("/update/{id}")
-    public ResponseEntity<RateLimitConfig> updateRateLimit(@PathVariable String id, @RequestBody RateLimitConfig config) {
+    public Mono<ResponseEntity<RateLimitConfig>> updateRateLimit(@PathVariable String id, @RequestBody RateLimitConfig config) {
         return configRepository.findById(id)
-                .map(existing -> {
+                .flatMap(existing -> {
                     existing.setClientId(config.getClientId());
                     existing.setRoute(config.getRoute());
                     existing.setRequestsPerMinute(config.getRequestsPerMinute());
                     existing.setTimeWindow(config.getTimeWindow());
                     existing.setTimeUnit(config.getTimeUnit());
                     existing.setBurstCapacity(config.getBurstCapacity());
+                    existing.setDailyQuota(config.getDailyQuota());
+                    existing.setMonthlyQuota(config.getMonthlyQuota());
                     existing.setPriority(config.getPriority());
+                    existing.setActivationDate(config.getActivationDate());
                     existing.setExpirationDate(config.getExpirationDate());
                     existing.setStatus(config.getStatus());
                     existing.setCustomAttributes(config.getCustomAttributes());
                     existing.setUpdatedAt(LocalDateTime.now());
 
-                    RateLimitConfig updated = configRepository.save(existing);
+                    return configRepository.save(existing);
+                })
+                .publishOn(Schedulers.boundedElastic())
+                .map(updated -> {
+                    ruleSnapshotService.apply(updated);
                     return ResponseEntity.ok(updated);
                 })
-                .orElse(ResponseEntity.notFound().build());
+                .defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
 
@@ -87,14 +121,41 @@ public class RateLimiterConfigController {
      * @return The matched {@link RateLimitConfig} if found, or 404 Not Found.
      */
     @GetMapping("/{clientId}/{route}")
-    public ResponseEntity<RateLimitConfig> getRateLimit(@PathVariable String clientId, @PathVariable String route) {
+    public Mono<ResponseEntity<RateLimitConfig>> getRateLimit(@PathVariable String clientId, @PathVariable String route) {
         return configRepository
                 .findFirstByClientIdAndRouteAndStatus(
                         clientId,
                         route,
-                        "ACTIVE"
+                        RuleValidity.ACTIVE
                 )
+                .filter(config -> RuleValidity.isInForce(config, LocalDateTime.now()))
                 .map(ResponseEntity::ok)
-                .orElse(ResponseEntity.notFound().build());
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Imports rate limit configurations from an NDJSON body, one configuration per line.
+     * The body is processed as it arrives and written in batches; all written rules take effect
+     * together once the import completes.
+     *
+     * @param body The NDJSON request body.
+     * @return One {@link RuleImportResult} per non-blank line, streamed as NDJSON.
+     */
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_NDJSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<RuleImportResult> importRateLimits(@RequestBody Flux<DataBuffer> body) {
+        return ruleBulkService.importRules(body);
+    }
+
+    /**
+     * Exports rate limit configurations as NDJSON, sorted by client and route.
+     * The output can be imported again through {@code /bulk}.
+     *
+     * @param status Optional status filter, e.g. "ACTIVE".
+     * @return The matching configurations, streamed as NDJSON.
+     */
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<RateLimitConfig> exportRateLimits(@RequestParam(required = false) String status) {
+        return ruleBulkService.exportRules(status);
     }
 }
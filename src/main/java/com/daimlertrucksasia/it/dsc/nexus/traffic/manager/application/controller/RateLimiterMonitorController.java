@@ -1,31 +1,83 @@
 package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.application.controller;
 
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.config.RateLimiterProperties;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketEntry;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketKey;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketRanking;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketStatus;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketStore;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.HotKeyStatus;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.HotKeyTracker;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.config.entity.RateLimitConfig;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.quota.QuotaStatus;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.quota.QuotaStore;
 import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.service.RateLimiterService;
-import io.github.bucket4j.Bucket;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
 
 /**
  * Controller for monitoring the current state of all in-memory rate limiter buckets.
  * <p>
  * Exposes endpoints to inspect available tokens and configuration capacity
  * for each client-route pair currently tracked by the rate limiter.
+ * <p>
+ * {@code /monitor/buckets} and {@code /monitor/top} stream {@link BucketStatus} values as NDJSON
+ * (or a JSON array) and touch only the buckets they return, so dashboards can poll them
+ * frequently whatever the size of the store. {@code /monitor/hot} lists the heavy-hitter buckets
+ * currently split into stripes by the {@link HotKeyTracker}. {@code /monitor/quota} reports the
+ * requests a client has left in the daily and monthly quotas of a rule, from the {@link QuotaStore}.
+ * </p>
  */
 @RestController
 @RequestMapping("/monitor")
 @RequiredArgsConstructor
 public class RateLimiterMonitorController {
 
+    /**
+     * Response header carrying the cursor to resume a {@code /monitor/buckets} scan from.
+     */
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     /**
      * Service responsible for handling rate limiting logic and bucket/cache access.
      */
     private final RateLimiterService rateLimiterService;
 
+    /**
+     * Rankings of the most throttled buckets and the buckets with the fewest tokens.
+     */
+    private final BucketRanking bucketRanking;
+
+    /**
+     * Detector of the hot buckets that are currently striped.
+     */
+    private final HotKeyTracker hotKeyTracker;
+
+    /**
+     * Rate limiter settings, including the page sizes of the monitor.
+     */
+    private final RateLimiterProperties properties;
+
+    /**
+     * Request counters of the rules with daily or monthly quotas.
+     */
+    private final QuotaStore quotaStore;
+
     /**
      * Returns the current available tokens and capacity for all cached rate limiter buckets.
      *
@@ -34,25 +86,206 @@ public class RateLimiterMonitorController {
      *     <li><b>availableTokens</b> – current available tokens in the bucket</li>
      *     <li><b>capacity</b> – configured request capacity for that bucket</li>
      * </ul>
+     * The tokens of buckets kept in a shared store are read asynchronously.
+     * @deprecated copies every bucket into one response; page with {@link #getBuckets} instead
      */
+    @Deprecated
     @GetMapping
-    public Map<String, Object> getAllLimits() {
-        Map<String, Bucket> buckets = rateLimiterService.getBucketCache();
-        Map<String, Long> configs = rateLimiterService.getConfigCache();
+    public Mono<Map<String, Object>> getAllLimits() {
+        return Flux.defer(() -> Flux.fromIterable(rateLimiterService.getBucketStore().asMap().entrySet()))
+                .flatMap(this::limitsOf)
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    /**
+     * @return the available tokens and capacity of a cached bucket, keyed by clientId:route
+     */
+    private Mono<Map.Entry<String, Object>> limitsOf(Map.Entry<BucketKey, BucketEntry> entry) {
+        BucketEntry bucketEntry = entry.getValue();
+        return Mono.fromFuture(bucketEntry::availableTokens)
+                .map(tokens -> Map.entry(entry.getKey().toString(), Map.of(
+                        "availableTokens", tokens,
+                        "capacity", bucketEntry.getCapacity()
+                )));
+    }
+
+    /**
+     * Streams one page of buckets in client, then route, order.
+     * <p>
+     * The page is read from the store's sorted key index, starting after {@code cursor}.
+     * A client prefix seeks straight to the first matching client; a route prefix is applied
+     * while scanning. At most {@code maxScannedKeys} keys are scanned per page, so a page may
+     * hold fewer buckets than asked for, or none. Unless the end of the index was reached, the
+     * {@value #NEXT_CURSOR_HEADER} header holds the cursor to request the next page with.
+     * Buckets are read one at a time, asynchronously for a shared store; buckets evicted
+     * meanwhile are skipped.
+     * </p>
+     *
+     * @param cursor       the {@value #NEXT_CURSOR_HEADER} of the previous page, or the
+     *                     {@code cursor} of a bucket to continue after, if any
+     * @param clientPrefix only return buckets of clients starting with this prefix
+     * @param routePrefix  only return buckets whose route starts with this prefix
+     * @param limit        the page size, capped at the configured maximum
+     * @return the buckets of the page; a missing {@value #NEXT_CURSOR_HEADER} means the end was reached
+     */
+    @GetMapping(value = "/buckets", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public Mono<ResponseEntity<Flux<BucketStatus>>> getBuckets(@RequestParam(required = false) String cursor,
+                                         @RequestParam(required = false) String clientPrefix,
+                                         @RequestParam(required = false) String routePrefix,
+                                         @RequestParam(required = false) Integer limit) {
+        int pageSize = pageSize(limit);
+        BucketKey after = parseCursor(cursor);
+        BucketStore store = rateLimiterService.getBucketStore();
+
+        NavigableSet<BucketKey> keys = store.keys();
+        BucketKey first = clientPrefix != null ? new BucketKey(clientPrefix, "") : null;
+        if (first != null && (after == null || BucketStore.KEY_ORDER.compare(after, first) < 0)) {
+            keys = keys.tailSet(first, true);
+        } else if (after != null) {
+            keys = keys.tailSet(after, false);
+        }
+
+        NavigableSet<BucketKey> scanned = keys;
+        return Mono.fromSupplier(() -> {
+            List<BucketKey> page = new ArrayList<>();
+            int budget = Math.max(1, properties.getMonitor().getMaxScannedKeys());
+            BucketKey last = null;
+            boolean more = false;
+
+            Iterator<BucketKey> iterator = scanned.iterator();
+            while (iterator.hasNext()) {
+                if (page.size() == pageSize || budget-- <= 0) {
+                    more = true;
+                    break;
+                }
+                BucketKey key = iterator.next();
+                if (clientPrefix != null && !key.getClientId().startsWith(clientPrefix)) {
+                    break;
+                }
+                last = key;
+                if (routePrefix == null || key.getRoute().startsWith(routePrefix)) {
+                    page.add(key);
+                }
+            }
+
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (more && last != null) {
+                response.header(NEXT_CURSOR_HEADER, BucketStatus.cursorOf(last));
+            }
+            return response.body(Flux.fromIterable(page).concatMap(key -> status(store, key)));
+        });
+    }
+
+    /**
+     * Streams the highest ranked buckets, read fresh but ordered by the last complete ranking pass.
+     *
+     * @param order what to rank by: {@code THROTTLED} or {@code LOWEST_TOKENS}
+     * @param limit the number of buckets, capped at the configured ranking size
+     * @return the ranked buckets that are still held, highest ranked first
+     */
+    @GetMapping(value = "/top", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public Flux<BucketStatus> getTopBuckets(@RequestParam(defaultValue = "THROTTLED") BucketRanking.Order order,
+                                            @RequestParam(required = false) Integer limit) {
+        int size = pageSize(limit);
+        BucketStore store = rateLimiterService.getBucketStore();
 
-        Map<String, Object> result = new HashMap<>();
+        return Flux.fromIterable(bucketRanking.top(order))
+                .concatMap(key -> status(store, key))
+                .take(size);
+    }
 
-        for (Map.Entry<String, Bucket> entry : buckets.entrySet()) {
-            String key = entry.getKey();
-            Bucket bucket = entry.getValue();
-            long capacity = configs.getOrDefault(key, -1L);
+    /**
+     * Streams the hot buckets that are currently split into stripes. Striped buckets are always
+     * local, so reading them does not block.
+     *
+     * @return the hot buckets with their estimated request rate
+     */
+    @GetMapping(value = "/hot", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public Flux<HotKeyStatus> getHotKeys() {
+        return Flux.defer(() -> Flux.fromIterable(hotKeyTracker.hotKeys()));
+    }
 
-            result.put(key, Map.of(
-                    "availableTokens", bucket.getAvailableTokens(),
-                    "capacity", capacity
-            ));
+    /**
+     * Returns the daily and monthly quota usage of a client on a path.
+     * <p>
+     * The path is resolved to the client's rule like a request. Counts are those of this replica,
+     * merged with the other replicas' at every flush; before the first flush after a restart, the
+     * stored counts are read from MongoDB.
+     * </p>
+     *
+     * @param clientId the client identifier
+     * @param path     a request path of the client
+     * @return the quota usage, or 404 Not Found if no rule with a quota matches
+     */
+    @GetMapping("/quota")
+    public Mono<ResponseEntity<QuotaStatus>> getQuota(@RequestParam String clientId, @RequestParam String path) {
+        RateLimitConfig rule = rateLimiterService.getConfig(clientId, path);
+        if (rule == null) {
+            return Mono.just(ResponseEntity.notFound().build());
         }
+        return quotaStore.status(rule)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * @return the status of the bucket, or empty if it has been evicted
+     */
+    private static Mono<BucketStatus> status(BucketStore store, BucketKey key) {
+        return Mono.defer(() -> {
+            BucketEntry entry = store.peek(key);
+            return entry != null ? BucketStatus.read(key, entry) : Mono.empty();
+        });
+    }
+
+    /**
+     * @return the requested page size, or the default, capped at the configured maximum
+     */
+    private int pageSize(Integer limit) {
+        RateLimiterProperties.Monitor settings = properties.getMonitor();
+        if (limit == null) {
+            return settings.getDefaultPageSize();
+        }
+        if (limit <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be positive");
+        }
+        return Math.min(limit, settings.getMaxPageSize());
+    }
+
+    /**
+     * @return the key the cursor points at, or {@code null} if there is none
+     */
+    private static BucketKey parseCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            return BucketStatus.parseCursor(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+    }
+
+    /**
+     * Returns the counters of the bounded bucket store.
+     *
+     * @return A map containing:
+     * <ul>
+     *     <li><b>size</b> – approximate number of buckets held</li>
+     *     <li><b>hits</b> – lookups that found an existing bucket</li>
+     *     <li><b>misses</b> – lookups that created a new bucket</li>
+     *     <li><b>evictions</b> – buckets evicted for size or idleness</li>
+     * </ul>
+     */
+    @GetMapping("/store")
+    public Map<String, Object> getStoreStats() {
+        BucketStore store = rateLimiterService.getBucketStore();
 
-        return result;
+        return Map.of(
+                "size", store.size(),
+                "hits", store.hitCount(),
+                "misses", store.missCount(),
+                "evictions", store.evictionCount()
+        );
     }
 }
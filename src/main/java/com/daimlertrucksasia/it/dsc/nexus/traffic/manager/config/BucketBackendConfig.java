@@ -0,0 +1,61 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.config;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketBackend;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.CompactBucket;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.InMemoryBucketProxyManager;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.LocalBucketBackend;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.MongoBucketProxyManager;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.ProxyBucketBackend;
+import io.github.bucket4j.distributed.proxy.AsyncProxyManager;
+import io.github.bucket4j.distributed.proxy.optimization.DelayParameters;
+import io.github.bucket4j.distributed.proxy.optimization.Optimization;
+import io.github.bucket4j.distributed.proxy.optimization.Optimizations;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+
+/**
+ * Selects the {@link BucketBackend} from {@code nexus.rate-limiter.distributed}.
+ */
+@Slf4j
+@Configuration
+public class BucketBackendConfig {
+
+    @Bean
+    public BucketBackend bucketBackend(RateLimiterProperties properties,
+                                       ObjectProvider<ReactiveMongoTemplate> reactiveMongoTemplate) {
+        RateLimiterProperties.Distributed distributed = properties.getDistributed();
+        if (distributed.getMode() == RateLimiterProperties.Distributed.Mode.LOCAL) {
+            RateLimiterProperties.BucketStore bucketStore = properties.getBucketStore();
+            boolean compact = bucketStore.getEngine() == RateLimiterProperties.BucketStore.Engine.COMPACT;
+            if (compact && bucketStore.getIdleExpiry().compareTo(CompactBucket.MAX_IDLE) > 0) {
+                throw new IllegalArgumentException("nexus.rate-limiter.bucket-store.idle-expiry must not exceed "
+                        + CompactBucket.MAX_IDLE + " with the COMPACT engine: " + bucketStore.getIdleExpiry());
+            }
+            return new LocalBucketBackend(compact);
+        }
+
+        AsyncProxyManager<String> proxyManager;
+        if (distributed.getStore() == RateLimiterProperties.Distributed.Store.IN_MEMORY) {
+            proxyManager = new InMemoryBucketProxyManager().asAsync();
+        } else {
+            MongoBucketProxyManager mongoProxyManager = new MongoBucketProxyManager(
+                    reactiveMongoTemplate.getObject(), distributed.getCollection(), distributed.getRetention());
+            mongoProxyManager.createIndexes().subscribe(
+                    index -> log.info("TTL index {} ready on {}", index, distributed.getCollection()),
+                    e -> log.warn("Could not create TTL index on {}: {}", distributed.getCollection(), e.getMessage()));
+            proxyManager = mongoProxyManager.asAsync();
+        }
+
+        Optimization optimization = null;
+        if (distributed.getMode() == RateLimiterProperties.Distributed.Mode.HYBRID) {
+            optimization = Optimizations.delaying(new DelayParameters(
+                    distributed.getMaxUnsynchronizedTokens(), distributed.getMaxUnsynchronizedTimeout()));
+        }
+
+        log.info("Rate limiter buckets are shared through {} in {} mode", distributed.getStore(), distributed.getMode());
+        return new ProxyBucketBackend(proxyManager, optimization);
+    }
+}
@@ -0,0 +1,807 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.config;
+
+import io.github.bucket4j.TokensInheritanceStrategy;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Externalised settings for the rate limiter, bound from the {@code nexus.rate-limiter} prefix.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "nexus.rate-limiter")
+public class RateLimiterProperties {
+
+    /**
+     * Settings for propagating rule changes from MongoDB to running gateways.
+     */
+    private RuleSync ruleSync = new RuleSync();
+
+    /**
+     * Settings for the in-memory bucket store.
+     */
+    private BucketStore bucketStore = new BucketStore();
+
+    /**
+     * Settings for throttled requests that wait for a token.
+     */
+    private Waiting waiting = new Waiting();
+
+    /**
+     * Settings for sharing bucket state between gateway replicas.
+     */
+    private Distributed distributed = new Distributed();
+
+    /**
+     * Settings for the rate limiter metrics.
+     */
+    private Metrics metrics = new Metrics();
+
+    /**
+     * Settings for bulk rule imports.
+     */
+    private BulkImport bulkImport = new BulkImport();
+
+    /**
+     * Settings for the bucket monitor endpoints.
+     */
+    private Monitor monitor = new Monitor();
+
+    /**
+     * Settings for detecting and striping heavily used buckets.
+     */
+    private HotKeys hotKeys = new HotKeys();
+
+    /**
+     * Settings for the latency-based concurrency limit of each route.
+     */
+    private AdaptiveConcurrency adaptiveConcurrency = new AdaptiveConcurrency();
+
+    /**
+     * Settings for admitting requests by client priority under pressure.
+     */
+    private Admission admission = new Admission();
+
+    /**
+     * Limits applied on top of the client's rule, each to the bucket of one request attribute
+     * such as the client IP or the tenant. Empty by default.
+     */
+    private List<Dimension> dimensions = new ArrayList<>();
+
+    /**
+     * Addresses or CIDR ranges of the load balancers and reverse proxies in front of the gateway.
+     * Only requests from these peers are keyed by the client address in their {@code Forwarded}
+     * or {@code X-Forwarded-For} header; the headers of any other peer are ignored.
+     */
+    private List<String> trustedProxies = new ArrayList<>();
+
+    /**
+     * Settings for persisting bucket state across restarts.
+     */
+    private Snapshot snapshot = new Snapshot();
+
+    /**
+     * Limits of requests that match no rule of their client.
+     */
+    private Defaults defaults = new Defaults();
+
+    /**
+     * Settings for the asynchronous log of rate limiting decisions.
+     */
+    private DecisionLog decisionLog = new DecisionLog();
+
+    /**
+     * Settings for the gateway-side cache of GraphQL query responses.
+     */
+    private ResponseCache responseCache = new ResponseCache();
+
+    /**
+     * Settings for sharing one upstream call between identical in-flight GraphQL queries.
+     */
+    private Coalescing coalescing = new Coalescing();
+
+    /**
+     * Settings for the daily and monthly request quotas.
+     */
+    private Quota quota = new Quota();
+
+    /**
+     * Settings for propagating rule changes from MongoDB to running gateways.
+     */
+    @Data
+    public static class RuleSync {
+
+        /**
+         * Whether to watch the rule collection with MongoDB change streams.
+         * Requires a replica set; when disabled or unavailable, polling is used instead.
+         */
+        private boolean changeStreamEnabled = true;
+
+        /**
+         * Number of reconnect attempts before falling back from change streams to polling.
+         */
+        private int changeStreamRetries = 3;
+
+        /**
+         * Interval between full reconciliations when polling is active.
+         */
+        private Duration pollInterval = Duration.ofSeconds(30);
+
+        /**
+         * How live buckets carry their tokens over when their rule changes.
+         * {@code ADDITIVE} keeps the consumed tokens so a config push does not refill buckets.
+         */
+        private TokensInheritanceStrategy tokensInheritance = TokensInheritanceStrategy.ADDITIVE;
+    }
+
+    /**
+     * Settings for the in-memory bucket store.
+     */
+    @Data
+    public static class BucketStore {
+
+        /**
+         * Maximum number of client/route buckets kept in memory.
+         */
+        private long maxEntries = 100_000;
+
+        /**
+         * Time after the last access before an idle bucket is evicted. A bucket is never evicted
+         * before it has had time to refill completely, so eviction cannot hand out free tokens.
+         */
+        private Duration idleExpiry = Duration.ofMinutes(10);
+
+        /**
+         * Implementation of local buckets. {@code COMPACT} packs each bucket's state into one
+         * {@code long}; rules it cannot represent still get a Bucket4j bucket. It requires an
+         * {@link #idleExpiry} of at most a day, after which the packed clock may wrap.
+         */
+        private Engine engine = Engine.BUCKET4J;
+
+        /**
+         * Implementation of local buckets.
+         */
+        public enum Engine {
+
+            /**
+             * Bucket4j buckets with synchronized state.
+             */
+            BUCKET4J,
+
+            /**
+             * Lock-free single-{@code long} buckets.
+             */
+            COMPACT
+        }
+    }
+
+    /**
+     * Settings for throttled requests that wait for a token.
+     * Waiting is enabled per rule through the {@code maxWaitMillis} custom attribute
+     * (or the legacy {@code maxRetries} and {@code retryDelay} attributes).
+     */
+    @Data
+    public static class Waiting {
+
+        /**
+         * Maximum number of requests queued on one bucket, unless the rule sets {@code maxQueueDepth}.
+         */
+        private int maxQueueDepth = 50;
+    }
+
+    /**
+     * Settings for the rate limiter metrics.
+     */
+    @Data
+    public static class Metrics {
+
+        /**
+         * Number of busiest clients tagged individually; all others are tagged {@code other}.
+         */
+        private int topClients = 20;
+
+        /**
+         * Interval at which the busiest clients are re-selected.
+         */
+        private Duration clientRefreshInterval = Duration.ofSeconds(15);
+
+        /**
+         * Most clients tagged individually at once; further top clients are tagged {@code other}
+         * until an idle client is retired.
+         */
+        private int maxClients = 100;
+
+        /**
+         * How long a client tagged individually may go without requests before its meters are
+         * removed and its counts added to {@code other}.
+         */
+        private Duration clientIdleExpiry = Duration.ofHours(1);
+    }
+
+    /**
+     * Settings for the bucket monitor endpoints.
+     */
+    @Data
+    public static class Monitor {
+
+        /**
+         * Buckets returned per page when the request does not set a limit.
+         */
+        private int defaultPageSize = 100;
+
+        /**
+         * Largest page a request may ask for.
+         */
+        private int maxPageSize = 1000;
+
+        /**
+         * Keys a page of {@code /monitor/buckets} may scan before it is returned with a cursor,
+         * so a selective route prefix cannot walk the whole store in one request.
+         */
+        private int maxScannedKeys = 10_000;
+
+        /**
+         * Number of buckets kept in each top-N ranking.
+         */
+        private int topSize = 100;
+
+        /**
+         * Interval between two slices of the ranking scan.
+         */
+        private Duration rankingInterval = Duration.ofSeconds(1);
+
+        /**
+         * Buckets ranked per slice. A full pass takes {@code size / rankingBatchSize} intervals.
+         */
+        private int rankingBatchSize = 10_000;
+    }
+
+    /**
+     * Settings for detecting heavily used buckets and splitting them into stripes.
+     * Only local buckets are striped; buckets shared between replicas are left as they are.
+     */
+    @Data
+    public static class HotKeys {
+
+        /**
+         * Whether to detect hot buckets and stripe them.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Requests per second above which a bucket is hot. It is unstriped again once it
+         * falls below half of this rate.
+         */
+        private long threshold = 2000;
+
+        /**
+         * One in this many requests is counted by the detector.
+         */
+        private int sampleRate = 16;
+
+        /**
+         * Counters per row of the detector's count-min sketch.
+         */
+        private int sketchWidth = 4096;
+
+        /**
+         * Maximum number of buckets striped at the same time.
+         */
+        private int maxHotKeys = 64;
+
+        /**
+         * Maximum number of stripes per bucket. A bucket never gets more stripes than its
+         * capacity or its refill tokens.
+         */
+        private int maxStripes = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * Interval at which counts decay, stripes are rebalanced and cooled buckets are unstriped.
+         */
+        private Duration interval = Duration.ofSeconds(1);
+    }
+
+    /**
+     * Settings for the latency-based concurrency limit applied by the {@code AdaptiveConcurrencyFilter}.
+     */
+    @Data
+    public static class AdaptiveConcurrency {
+
+        /**
+         * Limit of a route before its first response has been measured.
+         */
+        private int initialLimit = 20;
+
+        /**
+         * The limit never drops below this value.
+         */
+        private int minLimit = 4;
+
+        /**
+         * The limit never grows above this value.
+         */
+        private int maxLimit = 1000;
+
+        /**
+         * Minimum duration of a measurement window; the limit changes at most once per window.
+         */
+        private Duration window = Duration.ofSeconds(1);
+
+        /**
+         * Minimum number of responses before a window is closed.
+         */
+        private int minWindowSamples = 10;
+
+        /**
+         * Number of windows after which the no-load response time is measured afresh.
+         */
+        private int baselineWindows = 600;
+
+        /**
+         * Share of the distance to the uncongested concurrency the limit drops by per congested window.
+         */
+        private double smoothing = 0.5;
+
+        /**
+         * Factor applied to the limit after a window with failed or 5xx responses.
+         */
+        private double backoffRatio = 0.9;
+
+        /**
+         * Value of the {@code Retry-After} header sent with a 503.
+         */
+        private Duration retryAfter = Duration.ofSeconds(1);
+    }
+
+    /**
+     * Settings for the gateway-wide priority admission applied by the {@code PriorityAdmissionFilter}.
+     * A client's priority is the {@code priority} of its rule, {@code 1} being the highest.
+     */
+    @Data
+    public static class Admission {
+
+        /**
+         * Requests the gateway keeps in flight at most. Only the highest priority may use all of them.
+         */
+        private int maxInFlight = 500;
+
+        /**
+         * Number of priorities. Clients without a rule, or with a priority outside
+         * {@code 1..priorityLevels}, get the lowest.
+         */
+        private int priorityLevels = 5;
+
+        /**
+         * Share of {@code maxInFlight} up to which the lowest priority is admitted. Priorities in
+         * between get proportionally more.
+         */
+        private double lowestPriorityShare = 0.7;
+
+        /**
+         * Maximum number of requests waiting per priority.
+         */
+        private int maxQueueDepth = 100;
+
+        /**
+         * Maximum time a request waits for admission before it is rejected.
+         */
+        private Duration maxWait = Duration.ofMillis(500);
+
+        /**
+         * Value of the {@code Retry-After} header sent with a 503.
+         */
+        private Duration retryAfter = Duration.ofSeconds(1);
+    }
+
+    /**
+     * A limit keyed on one attribute of the request, checked together with the client's rule.
+     * Every distinct value of the attribute gets its own bucket.
+     */
+    @Data
+    public static class Dimension {
+
+        /**
+         * Name of the dimension, used in logs and metrics.
+         */
+        private String name;
+
+        /**
+         * Where the key of the dimension is taken from.
+         */
+        private Source source = Source.HEADER;
+
+        /**
+         * Header name for {@code HEADER}, claim name for {@code CLAIM}; unused otherwise.
+         */
+        private String parameter;
+
+        /**
+         * Bucket capacity per key.
+         */
+        private long capacity = 100;
+
+        /**
+         * Tokens refilled per {@code refillPeriod}; defaults to the capacity.
+         */
+        private long refillTokens;
+
+        /**
+         * Period over which {@code refillTokens} are refilled.
+         */
+        private Duration refillPeriod = Duration.ofMinutes(1);
+
+        /**
+         * Where the key of a dimension is taken from. A request without the attribute is not
+         * limited by the dimension.
+         */
+        public enum Source {
+
+            /**
+             * The client address: the remote address of the connection, or the forwarded
+             * address if the connection comes from one of the trusted proxies.
+             */
+            IP,
+
+            /**
+             * A request header.
+             */
+            HEADER,
+
+            /**
+             * A claim of the bearer JWT in the {@code Authorization} header. The token is only
+             * decoded, not verified.
+             */
+            CLAIM,
+
+            /**
+             * The ID of the gateway route, giving one global bucket per route.
+             */
+            ROUTE
+        }
+    }
+
+    /**
+     * Settings for the bucket state snapshots that let a restarted gateway keep throttling clients
+     * that had used up their tokens. Only applies to local buckets.
+     */
+    @Data
+    public static class Snapshot {
+
+        /**
+         * Whether snapshots are written and restored.
+         */
+        private boolean enabled = false;
+
+        /**
+         * The snapshot file. It must survive restarts, e.g. on a persistent volume.
+         */
+        private String path = "data/bucket-snapshot.bin";
+
+        /**
+         * Interval between two snapshots. A final one is written on shutdown.
+         */
+        private Duration interval = Duration.ofSeconds(10);
+    }
+
+    /**
+     * Limits of requests that match no rule of their client: the default limit below, or the
+     * most specific of the {@code tiers} matching the path.
+     */
+    @Data
+    public static class Defaults {
+
+        /**
+         * Requests allowed per {@code timeWindow}.
+         */
+        private long requestsPerMinute = 100;
+
+        /**
+         * Length of the window, in {@code timeUnit}s.
+         */
+        private long timeWindow = 1;
+
+        /**
+         * Unit of the window, a {@link java.time.temporal.ChronoUnit} name.
+         */
+        private String timeUnit = "MINUTES";
+
+        /**
+         * Extra tokens on top of {@code requestsPerMinute}.
+         */
+        private long burstCapacity;
+
+        /**
+         * Priority for the {@code PriorityAdmissionFilter}; {@code 0} is the lowest.
+         */
+        private int priority;
+
+        /**
+         * Whether clients without any rule share one bucket per tier instead of getting their own.
+         * Shared buckets keep made-up client IDs from filling the bucket store.
+         */
+        private boolean sharedUnknownClients = false;
+
+        /**
+         * Default limits of route patterns, in the syntax of rule routes.
+         */
+        private List<Tier> tiers = new ArrayList<>();
+
+        /**
+         * A route pattern with its default limit.
+         */
+        @Data
+        public static class Tier {
+
+            /**
+             * Route pattern, e.g. {@code /pigeon/**}.
+             */
+            private String route;
+
+            /**
+             * Requests allowed per {@code timeWindow}.
+             */
+            private long requestsPerMinute = 100;
+
+            /**
+             * Length of the window, in {@code timeUnit}s.
+             */
+            private long timeWindow = 1;
+
+            /**
+             * Unit of the window, a {@link java.time.temporal.ChronoUnit} name.
+             */
+            private String timeUnit = "MINUTES";
+
+            /**
+             * Extra tokens on top of {@code requestsPerMinute}.
+             */
+            private long burstCapacity;
+
+            /**
+             * Priority for the {@code PriorityAdmissionFilter}; {@code 0} is the lowest.
+             */
+            private int priority;
+        }
+    }
+
+    /**
+     * Settings for the decision log, written by a background thread to the {@code nexus.decisions} logger.
+     */
+    @Data
+    public static class DecisionLog {
+
+        /**
+         * Whether decisions are logged.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Records buffered between two flushes, rounded up to a power of two. Records that do
+         * not fit are dropped.
+         */
+        private int bufferSize = 8192;
+
+        /**
+         * One in this many admitted requests is logged; {@code 1} logs all, {@code 0} none.
+         */
+        private int sampleRate = 100;
+
+        /**
+         * Minimum interval between two logged rejections of the same client and route.
+         */
+        private Duration throttleLogInterval = Duration.ofSeconds(1);
+
+        /**
+         * Size of the table tracking the last logged rejection, rounded up to a power of two.
+         * Clients and routes sharing a slot share the interval.
+         */
+        private int throttleKeySlots = 4096;
+
+        /**
+         * Interval between two flushes of the buffer.
+         */
+        private Duration flushInterval = Duration.ofMillis(200);
+    }
+
+    /**
+     * Settings for the {@code ResponseCacheFilter}, which serves repeated GraphQL queries from memory.
+     */
+    @Data
+    public static class ResponseCache {
+
+        /**
+         * Whether responses are cached on the routes that have the filter.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Maximum bytes of responses held; least valuable entries are evicted first.
+         */
+        private DataSize maxSize = DataSize.ofMegabytes(64);
+
+        /**
+         * Time a response is served from the cache after it was stored.
+         */
+        private Duration ttl = Duration.ofSeconds(30);
+
+        /**
+         * Whether response bodies are kept in direct memory instead of on the heap.
+         * Direct memory is limited by {@code -XX:MaxDirectMemorySize}.
+         */
+        private boolean offHeap = false;
+
+        /**
+         * Largest request body read to compute the key; larger requests and requests without a
+         * {@code Content-Length} bypass the cache.
+         */
+        private DataSize maxRequestSize = DataSize.ofKilobytes(64);
+
+        /**
+         * Largest response stored.
+         */
+        private DataSize maxResponseSize = DataSize.ofMegabytes(1);
+
+        /**
+         * Header identifying the tenant, part of the key together with {@code X-Client-Id};
+         * blank if requests carry no tenant.
+         */
+        private String tenantHeader = "X-Tenant-Id";
+
+        /**
+         * Further request headers whose values are part of the key, so responses are not shared
+         * between callers that may see different data.
+         */
+        private List<String> varyHeaders = new ArrayList<>(List.of("Authorization"));
+    }
+
+    /**
+     * Settings for the {@code CoalescingFilter}. Requests are matched by the response cache key,
+     * which the {@code ResponseCacheFilter} computes whenever coalescing is enabled, so the vary
+     * headers of the response cache also apply here.
+     */
+    @Data
+    public static class Coalescing {
+
+        /**
+         * Whether identical in-flight requests share one upstream call.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Longest a request waits for the shared response before it is forwarded on its own.
+         */
+        private Duration maxWait = Duration.ofSeconds(5);
+
+        /**
+         * Most requests waiting on one upstream call; further ones are forwarded on their own.
+         */
+        private int maxWaiters = 1000;
+    }
+
+    /**
+     * Settings for the daily and monthly request quotas of the rules.
+     */
+    @Data
+    public static class Quota {
+
+        /**
+         * Whether the {@code dailyQuota} and {@code monthlyQuota} of the rules are enforced.
+         */
+        private boolean enabled = true;
+
+        /**
+         * MongoDB collection holding the request counts.
+         */
+        private String collection = "rate_limit_quota";
+
+        /**
+         * How often the counts are written to MongoDB. Replicas enforce the quotas on counts up
+         * to this old.
+         */
+        private Duration flushInterval = Duration.ofSeconds(10);
+
+        /**
+         * Number of counters written to MongoDB in one unordered bulk operation.
+         */
+        private int batchSize = 500;
+    }
+
+    /**
+     * Settings for streaming NDJSON rule imports.
+     */
+    @Data
+    public static class BulkImport {
+
+        /**
+         * Number of rules written to MongoDB in one unordered bulk operation.
+         */
+        private int batchSize = 500;
+
+        /**
+         * Longest accepted NDJSON line. Only one line and one batch are held in memory at a time.
+         */
+        private DataSize maxLineLength = DataSize.ofKilobytes(64);
+    }
+
+    /**
+     * Settings for sharing bucket state between gateway replicas.
+     */
+    @Data
+    public static class Distributed {
+
+        /**
+         * Where bucket state lives. {@code LOCAL} limits each replica on its own, so N replicas
+         * admit up to N times the configured limit.
+         */
+        private Mode mode = Mode.LOCAL;
+
+        /**
+         * Shared store used by the {@code DISTRIBUTED} and {@code HYBRID} modes.
+         */
+        private Store store = Store.MONGODB;
+
+        /**
+         * MongoDB collection holding shared bucket state.
+         */
+        private String collection = "rate_limit_bucket_state";
+
+        /**
+         * How long a full, idle bucket is kept in the shared store.
+         */
+        private Duration retention = Duration.ofMinutes(10);
+
+        /**
+         * In {@code HYBRID} mode, the number of tokens a replica may consume before synchronising.
+         * The cluster-wide limit is exceeded by at most this value per replica.
+         */
+        private long maxUnsynchronizedTokens = 20;
+
+        /**
+         * In {@code HYBRID} mode, the longest a replica may go without synchronising.
+         */
+        private Duration maxUnsynchronizedTimeout = Duration.ofMillis(500);
+
+        /**
+         * Where bucket state lives.
+         */
+        public enum Mode {
+
+            /**
+             * Buckets live in this JVM only.
+             */
+            LOCAL,
+
+            /**
+             * Every consumption is synchronised with the shared store.
+             */
+            DISTRIBUTED,
+
+            /**
+             * Replicas consume locally and synchronise with the shared store in batches.
+             */
+            HYBRID
+        }
+
+        /**
+         * Shared store implementation.
+         */
+        public enum Store {
+
+            /**
+             * Compare-and-swap over a MongoDB collection.
+             */
+            MONGODB,
+
+            /**
+             * Map in this JVM, for tests and local runs.
+             */
+            IN_MEMORY
+        }
+    }
+}
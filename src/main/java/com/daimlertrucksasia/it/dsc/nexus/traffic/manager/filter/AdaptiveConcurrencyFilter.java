@@ -0,0 +1,112 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.filter;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.config.RateLimiterProperties;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.concurrency.AdaptiveConcurrencyLimit;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.concurrency.AdaptiveConcurrencyLimits;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.SignalType;
+
+/**
+ * Gateway filter protecting a downstream service with a concurrency limit that adapts to its latency.
+ * <p>
+ * Each route gets an {@link AdaptiveConcurrencyLimit}. A request is forwarded only while fewer
+ * requests than the limit are in flight on its route; otherwise it is rejected at once with
+ * 503 and a {@code Retry-After} header, instead of queueing in front of a backend that is
+ * already slow. The time until the downstream response completes is fed back into the limit,
+ * so it shrinks when the backend slows down and recovers when it speeds up again.
+ * </p>
+ * <p>
+ * Placed after the {@link RateLimiterFilter}, static per-client quotas are enforced first and
+ * only admitted requests count against the route's limit.
+ * </p>
+ */
+@Slf4j
+@Component("AdaptiveConcurrencyFilter")
+public class AdaptiveConcurrencyFilter extends AbstractGatewayFilterFactory<AdaptiveConcurrencyFilter.Config> {
+
+    /**
+     * Limit used for requests that carry no route, which does not happen for routed requests.
+     */
+    private static final String UNKNOWN_ROUTE = "unknown";
+
+    /**
+     * The concurrency limit of each route.
+     */
+    private final AdaptiveConcurrencyLimits limits;
+
+    /**
+     * Settings of the limit, including the {@code Retry-After} value.
+     */
+    private final RateLimiterProperties properties;
+
+    /**
+     * Constructor initializing the filter with the per-route limits.
+     *
+     * @param limits     the concurrency limit of each route
+     * @param properties the rate limiter settings
+     */
+    public AdaptiveConcurrencyFilter(AdaptiveConcurrencyLimits limits, RateLimiterProperties properties) {
+        super(Config.class);
+        this.limits = limits;
+        this.properties = properties;
+    }
+
+    /**
+     * Logs that the filter has been loaded after bean construction.
+     */
+    @PostConstruct
+    public void init() {
+        log.info("✅ {} loaded", this.getClass().getSimpleName());
+    }
+
+    /**
+     * Configuration class for this filter. The limits are configured globally under
+     * {@code nexus.rate-limiter.adaptive-concurrency}.
+     */
+    public static class Config {
+        // No specific fields for now, can be extended later
+    }
+
+    /**
+     * Returns the gateway filter that applies the concurrency limit of the request's route.
+     *
+     * @param config the filter configuration (currently unused)
+     * @return the gateway filter to be applied
+     */
+    @Override
+    public GatewayFilter apply(Config config) {
+        String retryAfter = Long.toString(Math.max(1, properties.getAdaptiveConcurrency().getRetryAfter().toSeconds()));
+
+        return (exchange, chain) -> {
+            Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+            AdaptiveConcurrencyLimit limit = limits.forRoute(route != null ? route.getId() : UNKNOWN_ROUTE);
+
+            if (!limit.tryAcquire()) {
+                log.debug("❌ Concurrency limit {} reached - path: {}", limit.getLimit(), exchange.getRequest().getPath());
+                exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+                exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER, retryAfter);
+                return exchange.getResponse().setComplete();
+            }
+
+            long start = System.nanoTime();
+            return chain.filter(exchange).doFinally(signal -> {
+                if (signal == SignalType.CANCEL) {
+                    limit.cancel();
+                    return;
+                }
+                HttpStatusCode status = exchange.getResponse().getStatusCode();
+                boolean dropped = signal == SignalType.ON_ERROR || (status != null && status.is5xxServerError());
+                limit.release(System.nanoTime() - start, dropped);
+            });
+        };
+    }
+}
@@ -0,0 +1,106 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.filter;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.cache.CachedResponse;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.cache.InFlightRequests;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Gateway filter letting identical in-flight GraphQL queries share one upstream call.
+ * <p>
+ * Requests are matched by the key the {@link ResponseCacheFilter} computed on a cache miss:
+ * route, path, client, tenant, normalized query or persisted query hash, sorted variables and
+ * the configured vary headers. That filter computes the key even with the response cache
+ * disabled, but it must precede this one on the route; on a route without it every request is
+ * forwarded on its own. The first request with a key is forwarded; identical requests arriving while
+ * it is in flight wait in {@link InFlightRequests} and are answered with a copy of its
+ * response, which the {@link ResponseCaptureFilter} captures; that filter also ends the call
+ * if the leader fails. Requests without a key are forwarded as usual, as are waiters the
+ * leader's response cannot be shared with.
+ * </p>
+ * <p>
+ * Placed after the {@link ResponseCacheFilter} and before the {@link PriorityAdmissionFilter}
+ * and the {@link AdaptiveConcurrencyFilter}, a burst of identical queries reaches the backend
+ * as a single request and only takes one admission slot. Replayed responses carry
+ * {@code X-Cache: COALESCED}.
+ * </p>
+ */
+@Slf4j
+@Component("CoalescingFilter")
+public class CoalescingFilter extends AbstractGatewayFilterFactory<CoalescingFilter.Config> {
+
+    /**
+     * Exchange attribute holding the {@link InFlightRequests.Flight} the request leads.
+     */
+    public static final String FLIGHT_ATTR = CoalescingFilter.class.getName() + ".flight";
+
+    /**
+     * The upstream calls in progress.
+     */
+    private final InFlightRequests inFlightRequests;
+
+    /**
+     * Constructor initializing the filter with the registry of calls in progress.
+     *
+     * @param inFlightRequests the upstream calls in progress
+     */
+    public CoalescingFilter(InFlightRequests inFlightRequests) {
+        super(Config.class);
+        this.inFlightRequests = inFlightRequests;
+    }
+
+    /**
+     * Logs that the filter has been loaded after bean construction.
+     */
+    @PostConstruct
+    public void init() {
+        log.info("✅ {} loaded", this.getClass().getSimpleName());
+    }
+
+    /**
+     * Configuration class for this filter. Coalescing is configured globally under
+     * {@code nexus.rate-limiter.coalescing}.
+     */
+    public static class Config {
+        // No specific fields for now, can be extended later
+    }
+
+    /**
+     * Returns the gateway filter that coalesces identical requests.
+     *
+     * @param config the filter configuration (currently unused)
+     * @return the gateway filter to be applied
+     */
+    @Override
+    public GatewayFilter apply(Config config) {
+        return (exchange, chain) -> {
+            String key = exchange.getAttribute(ResponseCaptureFilter.CACHE_KEY_ATTR);
+            if (key == null || !inFlightRequests.getSettings().isEnabled()) {
+                return chain.filter(exchange);
+            }
+
+            InFlightRequests.Flight flight = inFlightRequests.join(key);
+            if (flight != null) {
+                exchange.getAttributes().put(FLIGHT_ATTR, flight);
+                return chain.filter(exchange);
+            }
+
+            return inFlightRequests.await(key).flatMap(shared -> {
+                if (shared.isEmpty()) {
+                    return chain.filter(exchange);
+                }
+                CachedResponse response = shared.get();
+                ServerHttpResponse out = exchange.getResponse();
+                out.setStatusCode(response.getStatus());
+                out.getHeaders().putAll(response.getHeaders());
+                out.getHeaders().set(ResponseCacheFilter.CACHE_HEADER, "COALESCED");
+                return out.writeWith(Mono.just(response.body(out.bufferFactory())));
+            });
+        };
+    }
+}
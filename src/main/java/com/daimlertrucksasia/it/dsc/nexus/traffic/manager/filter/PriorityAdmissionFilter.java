@@ -0,0 +1,121 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.filter;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.config.RateLimiterProperties;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.admission.PriorityAdmission;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.config.entity.RateLimitConfig;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.service.RateLimiterService;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Gateway filter admitting requests by the priority of the client's rule when the gateway is
+ * under pressure.
+ * <p>
+ * The priority comes from {@link RateLimitConfig#getPriority()} of the rule matching the
+ * client and path. {@link PriorityAdmission} sheds low priorities first once the gateway's
+ * requests in flight pass their share, and queues them with weighted fair queuing across
+ * priorities. Rejected requests get 503 with a {@code Retry-After} header.
+ * </p>
+ * <p>
+ * Placed after the {@link RateLimiterFilter}, only requests within their client's quota take
+ * a slot.
+ * </p>
+ */
+@Slf4j
+@Component("PriorityAdmissionFilter")
+public class PriorityAdmissionFilter extends AbstractGatewayFilterFactory<PriorityAdmissionFilter.Config> {
+
+    /**
+     * Service resolving the rule, and so the priority, of a client and path.
+     */
+    private final RateLimiterService rateLimiterService;
+
+    /**
+     * The gateway-wide admission stage.
+     */
+    private final PriorityAdmission admission;
+
+    /**
+     * Settings of the admission, including the {@code Retry-After} value.
+     */
+    private final RateLimiterProperties properties;
+
+    /**
+     * Constructor initializing the filter.
+     *
+     * @param rateLimiterService the rate limiter service resolving rules
+     * @param admission          the gateway-wide admission stage
+     * @param properties         the rate limiter settings
+     */
+    public PriorityAdmissionFilter(RateLimiterService rateLimiterService, PriorityAdmission admission,
+                                   RateLimiterProperties properties) {
+        super(Config.class);
+        this.rateLimiterService = rateLimiterService;
+        this.admission = admission;
+        this.properties = properties;
+    }
+
+    /**
+     * Logs that the filter has been loaded after bean construction.
+     */
+    @PostConstruct
+    public void init() {
+        log.info("✅ {} loaded", this.getClass().getSimpleName());
+    }
+
+    /**
+     * Configuration class for this filter. The admission is configured globally under
+     * {@code nexus.rate-limiter.admission}.
+     */
+    public static class Config {
+        // No specific fields for now, can be extended later
+    }
+
+    /**
+     * Returns the gateway filter that admits requests by priority.
+     *
+     * @param config the filter configuration (currently unused)
+     * @return the gateway filter to be applied
+     */
+    @Override
+    public GatewayFilter apply(Config config) {
+        String retryAfter = Long.toString(Math.max(1, properties.getAdmission().getRetryAfter().toSeconds()));
+
+        return (exchange, chain) -> {
+            String clientId = exchange.getRequest().getHeaders().getFirst("X-Client-Id");
+            RateLimitConfig rule = clientId != null
+                    ? rateLimiterService.getConfig(clientId, exchange.getRequest().getPath().value())
+                    : null;
+            int priorityClass = admission.classOf(rule != null ? rule.getPriority() : 0);
+
+            if (admission.tryAdmit(priorityClass)) {
+                return chain.filter(exchange).doFinally(signal -> admission.release());
+            }
+            return admission.admit(priorityClass).flatMap(admitted -> admitted
+                    ? chain.filter(exchange).doFinally(signal -> admission.release())
+                    : reject(exchange, clientId, retryAfter));
+        };
+    }
+
+    /**
+     * Rejects the request with 503 Service Unavailable.
+     *
+     * @param exchange   the current server exchange
+     * @param clientId   the client identifier
+     * @param retryAfter the {@code Retry-After} value in seconds
+     * @return a {@link Mono<Void>} completing the response
+     */
+    private Mono<Void> reject(ServerWebExchange exchange, String clientId, String retryAfter) {
+        log.debug("❌ Shed by priority admission - clientId: {}, path: {}", clientId, exchange.getRequest().getPath());
+        exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER, retryAfter);
+        return exchange.getResponse().setComplete();
+    }
+}
@@ -1,8 +1,12 @@
 package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.filter;
 
-import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.config.entity.RateLimitConfig;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketEntry;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.WaitPolicy;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.composite.CompositeLimiter;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.decision.DecisionLog;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.decision.Outcome;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.metrics.RateLimiterMetrics;
 import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.service.RateLimiterService;
-import io.github.bucket4j.Bucket;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
@@ -13,11 +17,30 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
-import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Custom rate limiter filter for Spring Cloud Gateway using Bucket4j.
  * This filter enforces request rate limits per client and route.
+ * <p>
+ * Throttled requests are rejected with 429 unless the rule allows waiting, in which case they
+ * join the bucket's FIFO wait queue and are woken up exactly when a token refills.
+ * Every decision is counted in the bucket's {@link RateLimiterMetrics} counters and handed to the
+ * {@link DecisionLog}, which samples and writes it off the request path.
+ * </p>
+ * <p>
+ * The configured limit dimensions, such as per-IP or per-tenant limits, are checked by the
+ * {@link CompositeLimiter} in the same pass as the client's bucket. A request denied by a
+ * dimension is rejected with 429 without waiting, and every token it took is returned.
+ * The daily and monthly quotas of the client's rule are checked in the same pass; a request over
+ * quota is rejected with 429 without waiting as well.
+ * </p>
+ * <p>
+ * Buckets kept in a shared store are consumed asynchronously and the request resumes when the
+ * store answers, so no thread waits on a store round trip; local buckets are consumed directly
+ * on the event loop.
+ * </p>
  */
 @Slf4j
 @Component("RateLimiterFilter")
@@ -28,14 +51,36 @@ public class RateLimiterFilter extends AbstractGatewayFilterFactory<RateLimiterF
      */
     private final RateLimiterService rateLimiterService;
 
+    /**
+     * Metrics recording requests rejected before a bucket is resolved.
+     */
+    private final RateLimiterMetrics metrics;
+
+    /**
+     * Limiter checking the configured limit dimensions together with the client's bucket.
+     */
+    private final CompositeLimiter compositeLimiter;
+
+    /**
+     * Log of the decisions taken.
+     */
+    private final DecisionLog decisionLog;
+
     /**
      * Constructor initializing the filter with a given {@link RateLimiterService}.
      *
      * @param rateLimiterService the rate limiter service to be used
+     * @param metrics            the rate limiter metrics
+     * @param compositeLimiter   the limiter of the configured limit dimensions
+     * @param decisionLog        the log of the decisions taken
      */
-    public RateLimiterFilter(RateLimiterService rateLimiterService) {
+    public RateLimiterFilter(RateLimiterService rateLimiterService, RateLimiterMetrics metrics,
+                             CompositeLimiter compositeLimiter, DecisionLog decisionLog) {
         super(Config.class);
         this.rateLimiterService = rateLimiterService;
+        this.metrics = metrics;
+        this.compositeLimiter = compositeLimiter;
+        this.decisionLog = decisionLog;
     }
 
     /**
@@ -63,69 +108,178 @@ public class RateLimiterFilter extends AbstractGatewayFilterFactory<RateLimiterF
     @Override
     public GatewayFilter apply(Config config) {
         return (exchange, chain) -> {
+            long start = System.nanoTime();
             String clientId = exchange.getRequest().getHeaders().getFirst("X-Client-Id");
-            String path = exchange.getRequest().getPath().toString();
-
-            log.info("Applying RateLimiter filter for clientId: {}, path: {}", clientId, path);
+            String path = exchange.getRequest().getPath().value();
 
             if (clientId == null || clientId.isBlank()) {
-                log.warn("Missing X-Client-Id header for request to {}", path);
+                decisionLog.record(Outcome.MISSING_CLIENT, null, path, null, null, start);
+                metrics.recordMissingClient();
                 exchange.getResponse().setStatusCode(HttpStatus.BAD_REQUEST);
                 return exchange.getResponse().setComplete();
             }
 
-            RateLimitConfig configObj = rateLimiterService.getConfig(clientId, path);
+            BucketEntry entry = rateLimiterService.resolveEntry(clientId, path);
 
-            int maxRetries = 0;
-            long retryDelay = 1000; // Default: 1 second
+            if (entry.isAsync()) {
+                return Mono.fromFuture(() -> tryConsumeAsync(exchange, entry))
+                        .map(Optional::of)
+                        .defaultIfEmpty(Optional.empty())
+                        .flatMap(denied -> decide(exchange, chain, entry, denied.orElse(null), clientId, path, start));
+            }
+            return decide(exchange, chain, entry, tryConsume(exchange, entry), clientId, path, start);
+        };
+    }
 
-            if (configObj != null && configObj.getCustomAttributes() != null) {
-                try {
-                    String maxRetriesStr = configObj.getCustomAttributes().get("maxRetries");
-                    String retryDelayStr = configObj.getCustomAttributes().get("retryDelay");
+    /**
+     * Counts the request against the client's quotas and takes a token from the client's bucket
+     * and from the bucket of every limit dimension, unless requests are already waiting on the
+     * client's bucket.
+     * Requests may only bypass the wait queue while it is empty, to keep admission FIFO.
+     *
+     * @param exchange the current server exchange
+     * @param entry    the bucket entry of the request
+     * @return {@code null} if all tokens were consumed, otherwise the dimension that denied
+     */
+    private String tryConsume(ServerWebExchange exchange, BucketEntry entry) {
+        return entry.hasWaiters()
+                ? CompositeLimiter.CLIENT_DIMENSION
+                : compositeLimiter.tryConsume(exchange, entry.getBucket(), entry.getQuota());
+    }
 
-                    if (maxRetriesStr != null) maxRetries = Integer.parseInt(maxRetriesStr);
-                    if (retryDelayStr != null) retryDelay = Long.parseLong(retryDelayStr);
-                } catch (NumberFormatException e) {
-                    log.error("Error parsing customAttributes for clientId {}: {}", clientId, e.getMessage());
-                }
-            }
+    /**
+     * Asynchronous variant of {@link #tryConsume} for buckets in a shared store.
+     *
+     * @param exchange the current server exchange
+     * @param entry    the bucket entry of the request
+     * @return completes with {@code null} if all tokens were consumed, otherwise with the dimension
+     * that denied
+     */
+    private CompletableFuture<String> tryConsumeAsync(ServerWebExchange exchange, BucketEntry entry) {
+        return entry.hasWaiters()
+                ? CompletableFuture.completedFuture(CompositeLimiter.CLIENT_DIMENSION)
+                : compositeLimiter.tryConsumeAsync(exchange, entry.getAsyncBucket(), entry.getQuota());
+    }
 
-            return applyRateLimitWithRetry(exchange, chain, clientId, path, maxRetries, retryDelay, 0);
-        };
+    /**
+     * Counts the request against the client's quotas and takes a token from the bucket of every
+     * limit dimension for a request that already got its client's token by waiting. If a quota or
+     * a dimension denies, the client's token is returned as well.
+     *
+     * @param exchange the current server exchange
+     * @param entry    the bucket entry of the request
+     * @return {@code null} if all tokens were consumed, otherwise the dimension that denied
+     */
+    private String tryConsumeDimensions(ServerWebExchange exchange, BucketEntry entry) {
+        String denied = compositeLimiter.tryConsume(exchange, null, entry.getQuota());
+        if (denied != null) {
+            entry.getBucket().addTokens(1);
+        }
+        return denied;
     }
 
     /**
-     * Attempts to apply rate limiting with retries based on configuration.
+     * Asynchronous variant of {@link #tryConsumeDimensions} for buckets in a shared store.
      *
-     * @param exchange   the current server exchange
-     * @param chain      the current gateway filter chain
-     * @param clientId   the client identifier
-     * @param path       the request path
-     * @param maxRetries the maximum number of retry attempts
-     * @param retryDelay the delay between retries (in milliseconds)
-     * @param attempt    the current retry attempt count
-     * @return a {@link Mono<Void>} indicating the result of the request handling
+     * @param exchange the current server exchange
+     * @param entry    the bucket entry of the request
+     * @return completes with {@code null} if all tokens were consumed, otherwise with the dimension
+     * that denied
      */
-    private Mono<Void> applyRateLimitWithRetry(ServerWebExchange exchange, GatewayFilterChain chain,
-                                               String clientId, String path, int maxRetries, long retryDelay, int attempt) {
-
-        Bucket bucket = rateLimiterService.resolveBucket(clientId, path);
-
-        return Mono.defer(() -> {
-            if (bucket.tryConsume(1)) {
-                log.debug("✅ Request allowed - clientId: {}, path: {}, attempt: {}", clientId, path, attempt);
-                return chain.filter(exchange);
-            } else {
-                log.warn("❌ Rate limit exceeded - clientId: {}, path: {}, attempt: {}", clientId, path, attempt);
-                if (attempt < maxRetries) {
-                    return Mono.delay(Duration.ofMillis(retryDelay))
-                            .then(applyRateLimitWithRetry(exchange, chain, clientId, path, maxRetries, retryDelay, attempt + 1));
-                } else {
-                    exchange.getResponse().setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
-                    return exchange.getResponse().setComplete();
-                }
-            }
-        });
+    private CompletableFuture<String> tryConsumeDimensionsAsync(ServerWebExchange exchange, BucketEntry entry) {
+        return compositeLimiter.tryConsumeAsync(exchange, null, entry.getQuota())
+                .whenComplete((denied, error) -> {
+                    if (denied != null || error != null) {
+                        entry.getAsyncBucket().addTokens(1);
+                    }
+                });
+    }
+
+    /**
+     * Forwards the request if it got its tokens, otherwise queues or rejects it.
+     * Only requests denied by the client's own bucket may wait.
+     *
+     * @param exchange the current server exchange
+     * @param chain    the gateway filter chain
+     * @param entry    the bucket entry of the request
+     * @param denied   the dimension that denied the request, or {@code null} if it got its tokens
+     * @param clientId the client identifier
+     * @param path     the request path
+     * @param start    {@link System#nanoTime()} when the filter started handling the request
+     * @return a {@link Mono<Void>} completing the request
+     */
+    private Mono<Void> decide(ServerWebExchange exchange, GatewayFilterChain chain, BucketEntry entry,
+                              String denied, String clientId, String path, long start) {
+        if (denied == null) {
+            entry.getCounters().recordAllowed();
+            decisionLog.record(Outcome.ALLOWED, clientId, path, null, entry, start);
+            return chain.filter(exchange);
+        }
+
+        WaitPolicy waitPolicy = entry.getWaitPolicy();
+        if (!CompositeLimiter.CLIENT_DIMENSION.equals(denied) || !waitPolicy.isWaitingEnabled()) {
+            return reject(exchange, entry, denied, clientId, path, start);
+        }
+
+        return entry.waitQueue().acquire(waitPolicy)
+                .flatMap(admitted -> {
+                    if (!admitted) {
+                        return reject(exchange, entry, denied, clientId, path, start);
+                    }
+                    if (compositeLimiter.getDimensions().isEmpty() && entry.getQuota() == null) {
+                        return forwardAfterWait(exchange, chain, entry, null, clientId, path, start);
+                    }
+                    if (entry.isAsync()) {
+                        return Mono.fromFuture(() -> tryConsumeDimensionsAsync(exchange, entry))
+                                .map(Optional::of)
+                                .defaultIfEmpty(Optional.empty())
+                                .flatMap(dimension -> forwardAfterWait(exchange, chain, entry,
+                                        dimension.orElse(null), clientId, path, start));
+                    }
+                    return forwardAfterWait(exchange, chain, entry, tryConsumeDimensions(exchange, entry),
+                            clientId, path, start);
+                });
+    }
+
+    /**
+     * Forwards a request that got its client's token by waiting, unless a quota or a dimension
+     * denied it.
+     *
+     * @param exchange the current server exchange
+     * @param chain    the gateway filter chain
+     * @param entry    the bucket entry of the request
+     * @param denied   the dimension that denied the request, or {@code null} if it got its tokens
+     * @param clientId the client identifier
+     * @param path     the request path
+     * @param start    {@link System#nanoTime()} when the filter started handling the request
+     * @return a {@link Mono<Void>} completing the request
+     */
+    private Mono<Void> forwardAfterWait(ServerWebExchange exchange, GatewayFilterChain chain, BucketEntry entry,
+                                        String denied, String clientId, String path, long start) {
+        if (denied != null) {
+            return reject(exchange, entry, denied, clientId, path, start);
+        }
+        entry.getCounters().recordWaited();
+        decisionLog.record(Outcome.WAITED, clientId, path, null, entry, start);
+        return chain.filter(exchange);
+    }
+
+    /**
+     * Rejects the request with 429 Too Many Requests.
+     *
+     * @param exchange the current server exchange
+     * @param entry    the bucket entry of the request
+     * @param denied   the dimension that throttled the request
+     * @param clientId the client identifier
+     * @param path     the request path
+     * @param start    {@link System#nanoTime()} when the filter started handling the request
+     * @return a {@link Mono<Void>} completing the response
+     */
+    private Mono<Void> reject(ServerWebExchange exchange, BucketEntry entry, String denied,
+                              String clientId, String path, long start) {
+        entry.getCounters().recordThrottled();
+        decisionLog.record(Outcome.THROTTLED, clientId, path, denied, entry, start);
+        exchange.getResponse().setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        return exchange.getResponse().setComplete();
     }
 }
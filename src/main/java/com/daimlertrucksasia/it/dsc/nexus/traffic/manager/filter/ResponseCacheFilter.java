@@ -0,0 +1,186 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.filter;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.cache.CachedResponse;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.cache.InFlightRequests;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.cache.ResponseCache;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Gateway filter serving repeated GraphQL queries from the {@link ResponseCache}.
+ * <p>
+ * The key of a GraphQL GET or JSON POST request is computed from its normalized query or
+ * persisted query hash and its variables. On a hit the cached response is written at once
+ * and the rest of the chain, including the backend call, is skipped; on a miss the key is
+ * left on the exchange for the {@link ResponseCaptureFilter}, which copies the backend's
+ * response into the cache as it streams by, and for the {@link CoalescingFilter}. The key is
+ * computed whenever caching or coalescing is enabled, so coalescing also works with the cache
+ * disabled; the filter then only computes the key. Mutations, subscriptions, request bodies over
+ * {@code maxRequestSize} or without a {@code Content-Length}, and requests with
+ * {@code Cache-Control: no-cache} are forwarded without a lookup, so a request body is never
+ * buffered beyond {@code maxRequestSize}.
+ * </p>
+ * <p>
+ * Placed after the {@link RateLimiterFilter}, cache hits still count against the client's
+ * quotas; placed before the {@link PriorityAdmissionFilter} and the
+ * {@link AdaptiveConcurrencyFilter}, they do not take a slot meant for backend calls.
+ * Responses carry an {@code X-Cache} header with {@code HIT} or {@code MISS}, and hits an
+ * {@code Age} header.
+ * </p>
+ */
+@Slf4j
+@Component("ResponseCacheFilter")
+public class ResponseCacheFilter extends AbstractGatewayFilterFactory<ResponseCacheFilter.Config> {
+
+    /**
+     * Header telling whether the response came from the cache.
+     */
+    public static final String CACHE_HEADER = "X-Cache";
+
+    /**
+     * Key used for requests that carry no route, which does not happen for routed requests.
+     */
+    private static final String UNKNOWN_ROUTE = "unknown";
+
+    /**
+     * The cache of GraphQL responses.
+     */
+    private final ResponseCache cache;
+
+    /**
+     * The upstream calls shared by identical requests, which are matched by the cache key.
+     */
+    private final InFlightRequests inFlightRequests;
+
+    /**
+     * Constructor initializing the filter with the response cache and the shared upstream calls.
+     *
+     * @param cache            the cache of GraphQL responses
+     * @param inFlightRequests the upstream calls shared by identical requests
+     */
+    public ResponseCacheFilter(ResponseCache cache, InFlightRequests inFlightRequests) {
+        super(Config.class);
+        this.cache = cache;
+        this.inFlightRequests = inFlightRequests;
+    }
+
+    /**
+     * Logs that the filter has been loaded after bean construction.
+     */
+    @PostConstruct
+    public void init() {
+        log.info("✅ {} loaded", this.getClass().getSimpleName());
+    }
+
+    /**
+     * Configuration class for this filter. The cache is configured globally under
+     * {@code nexus.rate-limiter.response-cache}.
+     */
+    public static class Config {
+        // No specific fields for now, can be extended later
+    }
+
+    /**
+     * Returns the gateway filter that serves and stores GraphQL responses.
+     *
+     * @param config the filter configuration (currently unused)
+     * @return the gateway filter to be applied
+     */
+    @Override
+    public GatewayFilter apply(Config config) {
+        long maxRequestSize = cache.getSettings().getMaxRequestSize().toBytes();
+
+        return (exchange, chain) -> {
+            boolean caching = cache.getSettings().isEnabled();
+            if (!caching && !inFlightRequests.getSettings().isEnabled()) {
+                return chain.filter(exchange);
+            }
+            ServerHttpRequest request = exchange.getRequest();
+            HttpHeaders headers = request.getHeaders();
+            String cacheControl = headers.getCacheControl();
+            if (cacheControl != null && (cacheControl.contains("no-cache") || cacheControl.contains("no-store"))) {
+                return bypass(exchange, chain, caching);
+            }
+
+            if (HttpMethod.GET.equals(request.getMethod())) {
+                String key = cache.keys().ofQueryParams(routeId(exchange), request.getPath().value(), headers,
+                        request.getQueryParams());
+                return serve(exchange, chain, key, caching);
+            }
+
+            long contentLength = headers.getContentLength();
+            if (!HttpMethod.POST.equals(request.getMethod()) || contentLength < 0 || contentLength > maxRequestSize
+                    || !MediaType.APPLICATION_JSON.isCompatibleWith(headers.getContentType())) {
+                return bypass(exchange, chain, caching);
+            }
+
+            return ServerWebExchangeUtils.cacheRequestBody(exchange, cached -> {
+                ServerWebExchange withBody = exchange.mutate().request(cached).build();
+                DataBuffer body = exchange.getAttribute(ServerWebExchangeUtils.CACHED_REQUEST_BODY_ATTR);
+                String key = body == null || body.readableByteCount() > maxRequestSize ? null
+                        : cache.keys().ofBody(routeId(exchange), request.getPath().value(), headers,
+                        body.toString(StandardCharsets.UTF_8));
+                return serve(withBody, chain, key, caching);
+            });
+        };
+    }
+
+    /**
+     * Writes the cached response for the key, or forwards the request with the key left for
+     * capturing and coalescing its response.
+     */
+    private Mono<Void> serve(ServerWebExchange exchange, GatewayFilterChain chain, String key, boolean caching) {
+        if (key == null) {
+            return bypass(exchange, chain, caching);
+        }
+        if (!caching) {
+            exchange.getAttributes().put(ResponseCaptureFilter.CACHE_KEY_ATTR, key);
+            return chain.filter(exchange);
+        }
+
+        CachedResponse cached = cache.get(key);
+        ServerHttpResponse response = exchange.getResponse();
+        if (cached != null) {
+            response.setStatusCode(cached.getStatus());
+            response.getHeaders().putAll(cached.getHeaders());
+            response.getHeaders().set(CACHE_HEADER, "HIT");
+            response.getHeaders().set(HttpHeaders.AGE, Long.toString(cached.ageSeconds()));
+            return response.writeWith(Mono.just(cached.body(response.bufferFactory())));
+        }
+
+        response.getHeaders().set(CACHE_HEADER, "MISS");
+        exchange.getAttributes().put(ResponseCaptureFilter.CACHE_KEY_ATTR, key);
+        return chain.filter(exchange);
+    }
+
+    /**
+     * Forwards a request that gets no key, counting it only while the cache is enabled.
+     */
+    private Mono<Void> bypass(ServerWebExchange exchange, GatewayFilterChain chain, boolean caching) {
+        if (caching) {
+            cache.bypass();
+        }
+        return chain.filter(exchange);
+    }
+
+    private static String routeId(ServerWebExchange exchange) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        return route != null ? route.getId() : UNKNOWN_ROUTE;
+    }
+}
@@ -0,0 +1,150 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.filter;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.cache.InFlightRequests;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.cache.ResponseCache;
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Copies backend responses into the {@link ResponseCache} for requests the
+ * {@link ResponseCacheFilter} missed, and hands them to the requests waiting on a call led
+ * by the {@link CoalescingFilter}.
+ * <p>
+ * The backend response is written by the {@link NettyWriteResponseFilter} to the response of the
+ * exchange it was given, before any route filter ran, so a route filter cannot wrap it. This
+ * global filter therefore wraps the response just ahead of it; the wrapper only copies the
+ * body when a route filter left a key in {@link #CACHE_KEY_ATTR} or a call in
+ * {@link CoalescingFilter#FLIGHT_ATTR}, and the response is passed through unchanged either way.
+ * </p>
+ */
+@Component
+public class ResponseCaptureFilter implements GlobalFilter, Ordered {
+
+    /**
+     * Exchange attribute holding the cache key of a request whose response should be stored.
+     */
+    public static final String CACHE_KEY_ATTR = ResponseCaptureFilter.class.getName() + ".cacheKey";
+
+    /**
+     * The cache of GraphQL responses.
+     */
+    private final ResponseCache cache;
+
+    /**
+     * The upstream calls shared by identical requests.
+     */
+    private final InFlightRequests inFlightRequests;
+
+    /**
+     * @param cache            the cache of GraphQL responses
+     * @param inFlightRequests the upstream calls shared by identical requests
+     */
+    public ResponseCaptureFilter(ResponseCache cache, InFlightRequests inFlightRequests) {
+        this.cache = cache;
+        this.inFlightRequests = inFlightRequests;
+    }
+
+    @Override
+    public int getOrder() {
+        return NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        if (!cache.getSettings().isEnabled() && !inFlightRequests.getSettings().isEnabled()) {
+            return chain.filter(exchange);
+        }
+        return chain.filter(exchange.mutate().response(new CapturingResponse(exchange)).build())
+                .doFinally(signal -> {
+                    // The response is written once the route filters completed, so a call led by
+                    // this request can only be ended here if it failed or was not shared
+                    InFlightRequests.Flight flight = exchange.getAttribute(CoalescingFilter.FLIGHT_ATTR);
+                    if (flight != null) {
+                        flight.abandon();
+                    }
+                });
+    }
+
+    /**
+     * Response passing the body through while copying it, and storing or sharing the copy once
+     * the body is complete. Copying stops as soon as the body exceeds {@code maxResponseSize};
+     * a call whose response is not shared is abandoned, so its waiters forward on their own.
+     */
+    private final class CapturingResponse extends ServerHttpResponseDecorator {
+
+        private final ServerWebExchange exchange;
+
+        private byte[] captured;
+
+        private int size;
+
+        private int maxSize;
+
+        private CapturingResponse(ServerWebExchange exchange) {
+            super(exchange.getResponse());
+            this.exchange = exchange;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            String key = exchange.getAttribute(CACHE_KEY_ATTR);
+            InFlightRequests.Flight flight = exchange.getAttribute(CoalescingFilter.FLIGHT_ATTR);
+            ServerHttpResponse response = getDelegate();
+            boolean store = key != null && cache.getSettings().isEnabled()
+                    && cache.isStorable(response.getStatusCode(), response.getHeaders());
+            boolean share = flight != null && inFlightRequests.isShareable(response.getHeaders());
+            if (!store && !share) {
+                if (flight != null) {
+                    flight.abandon();
+                }
+                return super.writeWith(body);
+            }
+
+            maxSize = (int) Math.min(Integer.MAX_VALUE - 8, cache.getSettings().getMaxResponseSize().toBytes());
+            captured = new byte[(int) Math.min(maxSize, Math.max(0, response.getHeaders().getContentLength()))];
+            return super.writeWith(Flux.from(body)
+                    .doOnNext(this::capture)
+                    .doOnComplete(() -> {
+                        if (captured == null) {
+                            return;
+                        }
+                        byte[] complete = size == captured.length ? captured : Arrays.copyOf(captured, size);
+                        if (store) {
+                            cache.put(key, response.getStatusCode(), response.getHeaders(), complete);
+                        }
+                        if (share) {
+                            flight.complete(response.getStatusCode(), response.getHeaders(), complete);
+                        }
+                    }));
+        }
+
+        private void capture(DataBuffer buffer) {
+            if (captured == null) {
+                return;
+            }
+            int length = buffer.readableByteCount();
+            if (size + length > maxSize) {
+                captured = null;
+                return;
+            }
+            if (size + length > captured.length) {
+                captured = Arrays.copyOf(captured, Math.min(maxSize, Math.max(size + length, captured.length * 2)));
+            }
+            buffer.toByteBuffer(buffer.readPosition(), ByteBuffer.wrap(captured), size, length);
+            size += length;
+        }
+    }
+}
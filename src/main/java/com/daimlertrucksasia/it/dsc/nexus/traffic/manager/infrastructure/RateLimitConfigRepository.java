@@ -1,19 +1,21 @@
 package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.infrastructure;
 
 import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.config.entity.RateLimitConfig;
-import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import org.springframework.stereotype.Repository;
-
-import java.util.Optional;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 /**
  * Repository interface for managing {@link RateLimitConfig} entities in MongoDB.
  * <p>
- * This interface extends {@link MongoRepository} to provide basic CRUD operations and
+ * This interface extends {@link ReactiveMongoRepository} to provide non-blocking CRUD operations and
  * defines a custom method for retrieving active rate limit configurations by client and route.
+ * Every method returns a {@link Mono} or {@link Flux}, so the repository can be used from
+ * event-loop threads.
  */
 @Repository
-public interface RateLimitConfigRepository extends MongoRepository<RateLimitConfig, String> {
+public interface RateLimitConfigRepository extends ReactiveMongoRepository<RateLimitConfig, String> {
 
     /**
      * Finds the first {@link RateLimitConfig} entry by client ID, route, and status.
@@ -21,8 +23,16 @@ public interface RateLimitConfigRepository extends MongoRepository<RateLimitConf
      * @param clientId the unique identifier of the client
      * @param route    the specific route for which the rate limit applies
      * @param status   the status of the rate limit config (e.g., "ACTIVE", "INACTIVE")
-     * @return an {@link Optional} containing the matching {@link RateLimitConfig}, if found
+     * @return a {@link Mono} emitting the matching {@link RateLimitConfig}, or empty if none is found
      */
-    Optional<RateLimitConfig> findFirstByClientIdAndRouteAndStatus(
+    Mono<RateLimitConfig> findFirstByClientIdAndRouteAndStatus(
             String clientId, String route, String status);
+
+    /**
+     * Finds all {@link RateLimitConfig} entries with the given status.
+     *
+     * @param status the status of the rate limit configs (e.g., "ACTIVE")
+     * @return a {@link Flux} of the matching {@link RateLimitConfig} entries
+     */
+    Flux<RateLimitConfig> findAllByStatus(String status);
 }
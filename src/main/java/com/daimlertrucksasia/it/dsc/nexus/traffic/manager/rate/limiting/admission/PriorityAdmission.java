@@ -0,0 +1,302 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.admission;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.config.RateLimiterProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Gateway-wide admission by client priority, based on the number of requests in flight.
+ * <p>
+ * {@link com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.config.entity.RateLimitConfig#getPriority()
+ * Priorities} run from 1 (highest) to {@code priorityLevels} (lowest). Each priority may fill the
+ * gateway up to its own share of {@code maxInFlight}: the highest all of it, the lowest
+ * {@code lowestPriorityShare} of it, and the priorities in between proportionally. Under pressure,
+ * low priorities therefore stop being admitted first while premium clients still get through.
+ * </p>
+ * <p>
+ * A request over its share waits in its priority's queue. Queues are served with self-clocked
+ * weighted fair queuing: each waiter gets a virtual finish time advancing by the inverse of its
+ * priority's weight, the weight doubling with every level of priority, and a freed slot
+ * goes to the waiter with the earliest finish time among the priorities still under their share.
+ * A request is rejected when its queue is full or its maximum wait elapses.
+ * </p>
+ * <p>
+ * While nobody waits, admission is a single CAS and allocates nothing.
+ * </p>
+ * <ul>
+ *     <li><b>nexus.admission.inflight</b> – requests admitted and not yet completed</li>
+ *     <li><b>nexus.admission.queued</b> – waiting requests per priority</li>
+ *     <li><b>nexus.admission.shed</b> – requests rejected with 503 per priority</li>
+ * </ul>
+ */
+@Component
+public class PriorityAdmission {
+
+    private final RateLimiterProperties.Admission settings;
+
+    /**
+     * Requests admitted and not yet completed.
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * In-flight limit per priority class; class {@code 0} is priority 1.
+     */
+    private final int[] limits;
+
+    /**
+     * Virtual time a request of each class advances its class by, inversely proportional to
+     * the class weight: it doubles with every level of lower priority.
+     */
+    private final double[] costs;
+
+    /**
+     * Waiters per class in arrival order. Guarded by {@code this}.
+     */
+    private final ArrayDeque<Waiter>[] queues;
+
+    /**
+     * Finish time of the last waiter queued per class. Guarded by {@code this}.
+     */
+    private final double[] lastFinish;
+
+    /**
+     * Number of waiters per class, for the metrics.
+     */
+    private final AtomicIntegerArray queuedPerClass;
+
+    /**
+     * Requests rejected per class.
+     */
+    private final LongAdder[] shed;
+
+    /**
+     * Finish time of the last admitted waiter. Guarded by {@code this}.
+     */
+    private double virtualTime;
+
+    /**
+     * Number of waiters across all classes, published for lock-free reads from the request path.
+     */
+    private volatile int queued;
+
+    /**
+     * Creates the admission stage and registers its meters.
+     *
+     * @param properties rate limiter settings
+     * @param registry   the meter registry
+     */
+    @SuppressWarnings("unchecked")
+    public PriorityAdmission(RateLimiterProperties properties, MeterRegistry registry) {
+        this.settings = properties.getAdmission();
+        int levels = Math.max(1, settings.getPriorityLevels());
+
+        this.limits = new int[levels];
+        this.costs = new double[levels];
+        this.queues = new ArrayDeque[levels];
+        this.lastFinish = new double[levels];
+        this.queuedPerClass = new AtomicIntegerArray(levels);
+        this.shed = new LongAdder[levels];
+        for (int c = 0; c < levels; c++) {
+            double share = levels == 1 ? 1 : 1 - (1 - settings.getLowestPriorityShare()) * c / (levels - 1);
+            limits[c] = (int) Math.max(1, Math.round(settings.getMaxInFlight() * share));
+            costs[c] = Math.scalb(1.0, c);
+            queues[c] = new ArrayDeque<>();
+            shed[c] = new LongAdder();
+        }
+
+        Gauge.builder("nexus.admission.inflight", inFlight, AtomicInteger::get)
+                .description("Requests admitted by priority admission and not yet completed")
+                .register(registry);
+        for (int c = 0; c < levels; c++) {
+            String priority = Integer.toString(c + 1);
+            int index = c;
+            Gauge.builder("nexus.admission.queued", queuedPerClass, q -> q.get(index))
+                    .description("Requests waiting for admission")
+                    .tag("priority", priority)
+                    .register(registry);
+            FunctionCounter.builder("nexus.admission.shed", shed[c], LongAdder::sum)
+                    .description("Requests rejected with 503 by priority admission")
+                    .tag("priority", priority)
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Maps a rule priority to its class. Missing or out-of-range priorities get the lowest one.
+     *
+     * @param priority the priority of the client's rule, {@code 1} being the highest, or {@code 0} if none
+     * @return the priority class, {@code 0} being the highest
+     */
+    public int classOf(int priority) {
+        return priority >= 1 && priority <= limits.length ? priority - 1 : limits.length - 1;
+    }
+
+    /**
+     * Admits a request at once if nobody is waiting and its class is under its share.
+     *
+     * @param priorityClass the request's priority class
+     * @return whether the request was admitted; if so, {@link #release()} must be called when it completes
+     */
+    public boolean tryAdmit(int priorityClass) {
+        return queued == 0 && tryAcquire(limits[priorityClass]);
+    }
+
+    /**
+     * Queues a request that could not be admitted at once.
+     *
+     * @param priorityClass the request's priority class
+     * @return a {@link Mono} emitting {@code true} once the request is admitted, or {@code false}
+     * if it was rejected; when admitted, {@link #release()} must be called when it completes
+     */
+    public Mono<Boolean> admit(int priorityClass) {
+        return Mono.<Boolean>create(sink -> enqueue(new Waiter(priorityClass, sink)))
+                .timeout(settings.getMaxWait(), Mono.fromSupplier(() -> {
+                    shed[priorityClass].increment();
+                    return false;
+                }));
+    }
+
+    /**
+     * Completes an admitted request and hands its slot to the next waiter.
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+        if (queued > 0) {
+            drain();
+        }
+    }
+
+    private boolean tryAcquire(int limit) {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    private void enqueue(Waiter waiter) {
+        int c = waiter.priorityClass;
+        synchronized (this) {
+            if (queues[c].size() >= settings.getMaxQueueDepth()) {
+                shed[c].increment();
+                waiter.sink.success(false);
+                return;
+            }
+            waiter.finish = Math.max(virtualTime, lastFinish[c]) + costs[c];
+            lastFinish[c] = waiter.finish;
+            queues[c].addLast(waiter);
+            queuedPerClass.incrementAndGet(c);
+            queued++;
+            waiter.sink.onCancel(() -> cancel(waiter));
+        }
+        drain();
+    }
+
+    private void cancel(Waiter waiter) {
+        if (waiter.state.compareAndSet(Waiter.WAITING, Waiter.CANCELLED)) {
+            synchronized (this) {
+                if (queues[waiter.priorityClass].remove(waiter)) {
+                    queuedPerClass.decrementAndGet(waiter.priorityClass);
+                    queued--;
+                }
+            }
+        } else {
+            // Admitted, but the request went away before it could use its slot
+            release();
+        }
+    }
+
+    /**
+     * Admits waiters in order of their finish time while their class is under its share.
+     * Sinks are completed outside the lock.
+     */
+    private void drain() {
+        List<Waiter> admitted = null;
+
+        synchronized (this) {
+            while (queued > 0) {
+                int best = -1;
+                int current = inFlight.get();
+                for (int c = 0; c < queues.length; c++) {
+                    Waiter head = queues[c].peekFirst();
+                    if (head != null && current < limits[c]
+                            && (best < 0 || head.finish < queues[best].peekFirst().finish)) {
+                        best = c;
+                    }
+                }
+                if (best < 0) {
+                    break;
+                }
+                if (!tryAcquire(limits[best])) {
+                    // Requests were admitted concurrently; look again
+                    continue;
+                }
+
+                Waiter waiter = queues[best].pollFirst();
+                queuedPerClass.decrementAndGet(best);
+                queued--;
+                if (!waiter.state.compareAndSet(Waiter.WAITING, Waiter.ADMITTED)) {
+                    inFlight.decrementAndGet();
+                    continue;
+                }
+                virtualTime = waiter.finish;
+                if (admitted == null) {
+                    admitted = new ArrayList<>();
+                }
+                admitted.add(waiter);
+            }
+        }
+
+        if (admitted != null) {
+            for (Waiter waiter : admitted) {
+                waiter.sink.success(true);
+            }
+        }
+    }
+
+    /**
+     * A request waiting for admission.
+     */
+    private static final class Waiter {
+
+        private static final int WAITING = 0;
+
+        private static final int ADMITTED = 1;
+
+        private static final int CANCELLED = 2;
+
+        private final int priorityClass;
+
+        private final MonoSink<Boolean> sink;
+
+        /**
+         * Whether the waiter was admitted or cancelled first.
+         */
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+
+        /**
+         * Virtual finish time. Guarded by the admission's lock.
+         */
+        private double finish;
+
+        private Waiter(int priorityClass, MonoSink<Boolean> sink) {
+            this.priorityClass = priorityClass;
+            this.sink = sink;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket;
+
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.distributed.AsyncBucketProxy;
+import io.github.bucket4j.distributed.AsyncBucketProxyAdapter;
+
+/**
+ * Builds the {@link Bucket} behind a client/route key.
+ * <p>
+ * The backend decides where bucket state lives: in this JVM, or in a store shared by all gateway
+ * replicas so that a client gets its configured limit once per cluster rather than once per node.
+ * Local buckets are used synchronously; buckets in a shared store are only used through their
+ * {@link AsyncBucketProxy}, so a store round trip never holds a thread.
+ * </p>
+ */
+public interface BucketBackend {
+
+    /**
+     * Builds the local bucket for the given key.
+     *
+     * @param key           the client/route key
+     * @param configuration the limits the bucket enforces
+     * @return the bucket
+     * @throws IllegalStateException if the backend is {@linkplain #isDistributed() distributed}
+     */
+    Bucket create(BucketKey key, BucketConfiguration configuration);
+
+    /**
+     * Builds the asynchronous bucket for the given key. Local backends adapt {@link #create}.
+     * <p>
+     * For shared backends the configuration only applies when no state exists yet for the key;
+     * an existing remote bucket keeps its stored configuration until it is replaced explicitly.
+     * </p>
+     *
+     * @param key           the client/route key
+     * @param configuration the limits the bucket enforces
+     * @return the bucket
+     */
+    default AsyncBucketProxy createAsync(BucketKey key, BucketConfiguration configuration) {
+        return AsyncBucketProxyAdapter.fromSync(create(key, configuration));
+    }
+
+    /**
+     * @return whether bucket state is shared with other gateway replicas, in which case buckets
+     * must be built with {@link #createAsync}
+     */
+    boolean isDistributed();
+}
@@ -0,0 +1,201 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.metrics.DecisionCounters;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.quota.Quota;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.distributed.AsyncBucketProxy;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A live bucket together with the limits it was built from.
+ * <p>
+ * The limits are kept next to the bucket so the store can size its idle expiry and the
+ * monitor can report capacity without a second lookup. A bucket in this JVM is a {@link Bucket};
+ * a bucket in a shared store is an {@link AsyncBucketProxy}, whose calls complete when the
+ * store answers, and {@link #getBucket()} is then {@code null}.
+ * </p>
+ */
+@Getter
+public class BucketEntry {
+
+    /**
+     * The local token bucket enforcing the limit, or {@code null} for a bucket in a shared store.
+     * Replaced when a hot bucket is striped or unstriped.
+     */
+    private volatile Bucket bucket;
+
+    /**
+     * The bucket in a shared store enforcing the limit, or {@code null} for a local bucket.
+     */
+    private final AsyncBucketProxy asyncBucket;
+
+    /**
+     * Decision counters of this bucket, linked to the counters of its route.
+     */
+    private final DecisionCounters counters;
+
+    /**
+     * Configured capacity of the bucket, or {@code -1} if the default limit applies.
+     */
+    private volatile long capacity;
+
+    /**
+     * The bandwidth the bucket currently enforces.
+     */
+    private volatile Bandwidth bandwidth;
+
+    /**
+     * Time an empty bucket needs to refill completely, in nanoseconds.
+     */
+    private volatile long fullRefillNanos;
+
+    /**
+     * Average time between two refilled tokens, in nanoseconds.
+     */
+    private volatile double nanosPerToken;
+
+    /**
+     * Wait limits for throttled requests, parsed once from the rule.
+     */
+    private volatile WaitPolicy waitPolicy;
+
+    /**
+     * Daily and monthly quotas of the rule, or {@code null} if it has none.
+     */
+    private volatile Quota quota;
+
+    /**
+     * Queue of throttled requests waiting for a token, created on first use.
+     */
+    @Getter(AccessLevel.NONE)
+    private volatile BucketWaitQueue waitQueue;
+
+    /**
+     * Creates an entry for a newly built local bucket.
+     *
+     * @param bucket     the token bucket
+     * @param capacity   the configured capacity, or {@code -1} for the default limit
+     * @param bandwidth  the bandwidth the bucket was built with
+     * @param waitPolicy the wait limits for throttled requests
+     * @param counters   the decision counters of the bucket
+     */
+    public BucketEntry(Bucket bucket, long capacity, Bandwidth bandwidth, WaitPolicy waitPolicy,
+                       DecisionCounters counters) {
+        this(bucket, null, capacity, bandwidth, waitPolicy, counters);
+    }
+
+    /**
+     * Creates an entry for a newly built bucket in a shared store.
+     *
+     * @param asyncBucket the token bucket
+     * @param capacity    the configured capacity, or {@code -1} for the default limit
+     * @param bandwidth   the bandwidth the bucket was built with
+     * @param waitPolicy  the wait limits for throttled requests
+     * @param counters    the decision counters of the bucket
+     */
+    public BucketEntry(AsyncBucketProxy asyncBucket, long capacity, Bandwidth bandwidth, WaitPolicy waitPolicy,
+                       DecisionCounters counters) {
+        this(null, asyncBucket, capacity, bandwidth, waitPolicy, counters);
+    }
+
+    private BucketEntry(Bucket bucket, AsyncBucketProxy asyncBucket, long capacity, Bandwidth bandwidth,
+                        WaitPolicy waitPolicy, DecisionCounters counters) {
+        this.bucket = bucket;
+        this.asyncBucket = asyncBucket;
+        this.counters = counters;
+        update(capacity, bandwidth, waitPolicy);
+    }
+
+    /**
+     * @return whether the bucket lives in a shared store and is only used through
+     * {@link #getAsyncBucket()}
+     */
+    public boolean isAsync() {
+        return asyncBucket != null;
+    }
+
+    /**
+     * Reads the tokens left, without blocking for buckets in a shared store.
+     *
+     * @return the available tokens
+     */
+    public CompletableFuture<Long> availableTokens() {
+        return asyncBucket != null
+                ? asyncBucket.getAvailableTokens()
+                : CompletableFuture.completedFuture(bucket.getAvailableTokens());
+    }
+
+    /**
+     * Records the limits after the bucket has been reconfigured in place.
+     *
+     * @param capacity   the configured capacity, or {@code -1} for the default limit
+     * @param bandwidth  the bandwidth now applied to the bucket
+     * @param waitPolicy the wait limits for throttled requests
+     */
+    public void update(long capacity, Bandwidth bandwidth, WaitPolicy waitPolicy) {
+        this.capacity = capacity;
+        this.bandwidth = bandwidth;
+        this.fullRefillNanos = fullRefillNanos(bandwidth);
+        this.nanosPerToken = (double) bandwidth.getRefillPeriodNanos() / bandwidth.getRefillTokens();
+        this.waitPolicy = waitPolicy;
+    }
+
+    /**
+     * Records the quotas of the rule, after the entry was created or the rule changed.
+     *
+     * @param quota the quotas, or {@code null} if the rule has none
+     */
+    public void setQuota(Quota quota) {
+        this.quota = quota;
+    }
+
+    /**
+     * Swaps the bucket for one enforcing the same limits, e.g. a {@link StripedBucket}.
+     * Must be called inside an atomic {@link BucketStore} operation on this entry.
+     *
+     * @param bucket the new bucket
+     */
+    public void replaceBucket(Bucket bucket) {
+        this.bucket = bucket;
+    }
+
+    /**
+     * @return whether requests are currently queued on this bucket
+     */
+    public boolean hasWaiters() {
+        BucketWaitQueue queue = waitQueue;
+        return queue != null && queue.hasWaiters();
+    }
+
+    /**
+     * Returns the wait queue of this bucket, creating it on first use.
+     *
+     * @return the wait queue
+     */
+    public BucketWaitQueue waitQueue() {
+        BucketWaitQueue queue = waitQueue;
+        if (queue == null) {
+            synchronized (this) {
+                queue = waitQueue;
+                if (queue == null) {
+                    queue = new BucketWaitQueue(this);
+                    waitQueue = queue;
+                }
+            }
+        }
+        return queue;
+    }
+
+    /**
+     * @return the time an empty bucket with the given bandwidth needs to refill completely
+     */
+    private static long fullRefillNanos(Bandwidth bandwidth) {
+        double periods = Math.ceil((double) bandwidth.getCapacity() / bandwidth.getRefillTokens());
+        double nanos = periods * bandwidth.getRefillPeriodNanos();
+        return nanos >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) nanos;
+    }
+}
@@ -0,0 +1,112 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket;
+
+/**
+ * Composite client/route key of a bucket in the {@link BucketStore}.
+ * <p>
+ * The hash is derived from the cached {@link String#hashCode()} of both parts, so building
+ * or comparing keys never concatenates strings. For lookups on the request path use
+ * {@link #lookup(String, String)}, which reuses one mutable key per thread and therefore
+ * allocates nothing; keys stored in the map must always be immutable ones created with
+ * {@link #BucketKey(String, String)}.
+ * </p>
+ */
+public class BucketKey {
+
+    /**
+     * Reusable lookup key for the current thread.
+     */
+    private static final ThreadLocal<BucketKey> LOOKUP = ThreadLocal.withInitial(BucketKey::new);
+
+    /**
+     * The client identifier.
+     */
+    private String clientId;
+
+    /**
+     * The route/path.
+     */
+    private String route;
+
+    /**
+     * Precomputed hash of both parts.
+     */
+    private int hash;
+
+    private BucketKey() {
+    }
+
+    /**
+     * Creates an immutable key that may be stored.
+     *
+     * @param clientId The client identifier.
+     * @param route    The route/path.
+     */
+    public BucketKey(String clientId, String route) {
+        set(clientId, route);
+    }
+
+    /**
+     * Returns this thread's reusable lookup key, pointed at the given client and route.
+     * The returned instance is only valid until the next call on the same thread and must
+     * never be stored; use {@link #copy()} to obtain a storable key.
+     *
+     * @param clientId The client identifier.
+     * @param route    The route/path.
+     * @return a transient key for probing the store
+     */
+    public static BucketKey lookup(String clientId, String route) {
+        return LOOKUP.get().set(clientId, route);
+    }
+
+    private BucketKey set(String clientId, String route) {
+        this.clientId = clientId;
+        this.route = route;
+        this.hash = 31 * clientId.hashCode() + route.hashCode();
+        return this;
+    }
+
+    /**
+     * @return an immutable key equal to this one
+     */
+    public BucketKey copy() {
+        return new BucketKey(clientId, route);
+    }
+
+    /**
+     * @return the client identifier
+     */
+    public String getClientId() {
+        return clientId;
+    }
+
+    /**
+     * @return the route/path
+     */
+    public String getRoute() {
+        return route;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o instanceof BucketKey other
+                && hash == other.hash
+                && clientId.equals(other.clientId)
+                && route.equals(other.route);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * @return the key in its {@code clientId:route} display form
+     */
+    @Override
+    public String toString() {
+        return clientId + ":" + route;
+    }
+}
@@ -0,0 +1,203 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.config.RateLimiterProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the most throttled buckets and the buckets with the fewest tokens, so the monitor can
+ * answer top-N queries without walking the store.
+ * <p>
+ * A background scan walks the {@link BucketStore#keys() key index} in slices of
+ * {@code rankingBatchSize} keys per {@code rankingInterval} and offers each bucket to two bounded
+ * heaps of {@code topSize} entries. When a pass over the index completes, the heaps are published
+ * as ranked key lists and a new pass starts, so a query costs O(topSize) no matter how many buckets exist.
+ * Rankings are therefore up to one pass old; the monitor reads the current values of the ranked buckets.
+ * </p>
+ * <p>
+ * The scan runs on its own single thread. The tokens of a slice are read at once, asynchronously
+ * for buckets kept in a shared store, and the next slice waits until they are all ranked.
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BucketRanking {
+
+    private final RateLimiterProperties properties;
+
+    private final BucketStore bucketStore;
+
+    /**
+     * Single thread running the scan.
+     */
+    private final Scheduler scheduler = Schedulers.newSingle("bucket-ranking");
+
+    /**
+     * Heap of the current pass, with the least throttled bucket on top. Only accessed by the scan.
+     */
+    private final PriorityQueue<Ranked> mostThrottled = new PriorityQueue<>(Comparator.comparingLong(Ranked::score));
+
+    /**
+     * Heap of the current pass, with the bucket holding the most tokens on top. Only accessed by the scan.
+     */
+    private final PriorityQueue<Ranked> lowestTokens = new PriorityQueue<>(Comparator.comparingLong(Ranked::score).reversed());
+
+    /**
+     * Key after which the scan resumes, or {@code null} at the start of a pass. Only accessed by the scan.
+     */
+    private BucketKey scanPosition;
+
+    /**
+     * Most throttled buckets of the last complete pass, most throttled first.
+     */
+    private volatile List<BucketKey> publishedThrottled = List.of();
+
+    /**
+     * Buckets with the fewest tokens in the last complete pass, fewest first.
+     */
+    private volatile List<BucketKey> publishedTokens = List.of();
+
+    private Disposable refresh;
+
+    /**
+     * What buckets are ranked by.
+     */
+    public enum Order {
+
+        /**
+         * Most requests rejected with 429 first.
+         */
+        THROTTLED,
+
+        /**
+         * Fewest available tokens first.
+         */
+        LOWEST_TOKENS
+    }
+
+    /**
+     * Starts the background scan.
+     */
+    @PostConstruct
+    public void init() {
+        refresh = Flux.interval(properties.getMonitor().getRankingInterval(), scheduler)
+                .onBackpressureDrop()
+                .concatMap(tick -> scan())
+                .subscribe();
+    }
+
+    /**
+     * Stops the background scan.
+     */
+    @PreDestroy
+    public void stop() {
+        if (refresh != null) {
+            refresh.dispose();
+        }
+        scheduler.dispose();
+    }
+
+    /**
+     * Returns the ranked bucket keys of the last complete pass. Buckets may have been evicted since.
+     *
+     * @param order what the buckets are ranked by
+     * @return at most {@code topSize} keys, highest ranked first
+     */
+    public List<BucketKey> top(Order order) {
+        return order == Order.THROTTLED ? publishedThrottled : publishedTokens;
+    }
+
+    /**
+     * Offers the next slice of the key index to the heaps, and publishes them at the end of a pass.
+     *
+     * @return completes once the slice is ranked; failures are logged and complete it as well
+     */
+    Mono<Void> scan() {
+        return Mono.defer(() -> {
+            int topSize = properties.getMonitor().getTopSize();
+            int remaining = properties.getMonitor().getRankingBatchSize();
+
+            List<Mono<Ranked>> tokens = new ArrayList<>();
+            Iterator<BucketKey> keys = (scanPosition == null
+                    ? bucketStore.keys()
+                    : bucketStore.keys().tailSet(scanPosition, false)).iterator();
+            while (remaining-- > 0 && keys.hasNext()) {
+                BucketKey key = keys.next();
+                scanPosition = key;
+                BucketEntry entry = bucketStore.peek(key);
+                if (entry == null) {
+                    continue;
+                }
+                long throttled = entry.getCounters().throttled();
+                if (throttled > 0) {
+                    offer(mostThrottled, new Ranked(key, throttled), topSize);
+                }
+                tokens.add(Mono.fromFuture(entry::availableTokens).map(available -> new Ranked(key, available)));
+            }
+            boolean passComplete = !keys.hasNext();
+
+            return Flux.merge(tokens)
+                    .collectList()
+                    .publishOn(scheduler)
+                    .doOnNext(ranked -> {
+                        for (Ranked candidate : ranked) {
+                            offer(lowestTokens, candidate, topSize);
+                        }
+                        if (passComplete) {
+                            publishedThrottled = drain(mostThrottled);
+                            publishedTokens = drain(lowestTokens);
+                            scanPosition = null;
+                        }
+                    });
+        }).onErrorResume(e -> {
+            log.warn("Failed to rank rate limiter buckets: {}", e.getMessage());
+            return Mono.empty();
+        }).then();
+    }
+
+    /**
+     * Adds the candidate if the heap is not full or it ranks above the heap's lowest entry.
+     */
+    private static void offer(PriorityQueue<Ranked> heap, Ranked candidate, int topSize) {
+        if (heap.size() < topSize) {
+            heap.add(candidate);
+        } else if (topSize > 0 && heap.comparator().compare(candidate, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(candidate);
+        }
+    }
+
+    /**
+     * Empties the heap for the next pass.
+     *
+     * @return its keys, highest ranked first
+     */
+    private static List<BucketKey> drain(PriorityQueue<Ranked> heap) {
+        BucketKey[] ranked = new BucketKey[heap.size()];
+        for (int i = ranked.length - 1; i >= 0; i--) {
+            ranked[i] = heap.poll().key();
+        }
+        return List.of(ranked);
+    }
+
+    /**
+     * A bucket and the value it is ranked by.
+     */
+    private record Ranked(BucketKey key, long score) {
+    }
+}
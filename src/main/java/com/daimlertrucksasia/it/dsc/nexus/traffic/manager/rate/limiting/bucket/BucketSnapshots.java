@@ -0,0 +1,448 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.config.RateLimiterProperties;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists the token state of local buckets so a restarted gateway does not hand every client a
+ * full bucket again.
+ * <p>
+ * Only buckets that are not full are written: a bucket missing from the snapshot is recreated
+ * full, exactly as it would have refilled. The snapshot is written periodically and on shutdown
+ * to a temporary file that atomically replaces the previous one. The file is an open-addressing
+ * hash table of the bucket keys followed by the records, so on startup it is only memory-mapped,
+ * not read: startup time does not grow with the number of keys. A bucket is rehydrated when it is
+ * first created, from its recorded tokens plus what it would have refilled since the snapshot.
+ * </p>
+ * <p>
+ * States of the previous run that have not been rehydrated yet are carried over into new
+ * snapshots until they would have refilled. Buckets kept in a shared store outlive restarts
+ * anyway, so snapshots are only taken with a local {@link BucketBackend}.
+ * </p>
+ * <p>
+ * File layout, big-endian: a header ({@code magic, version, slotCount, recordCount,
+ * fullAtMillis}), {@code slotCount} record offsets ({@code 0} for an empty slot), then the
+ * records ({@code hash, clientId, route, tokens, atMillis, fullAtMillis}), strings as
+ * length-prefixed UTF-8. {@code fullAtMillis} is when the bucket, or in the header every bucket,
+ * would have refilled.
+ * </p>
+ */
+@Slf4j
+@Component
+public class BucketSnapshots {
+
+    private static final int MAGIC = 0x4E58_4253; // "NXBS"
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 4 + 8;
+
+    /**
+     * Longest key part a record can hold.
+     */
+    private static final int MAX_STRING_BYTES = 0xFFFF;
+
+    /**
+     * Longest shutdown waits for the final snapshot.
+     */
+    private static final Duration FINAL_WRITE_TIMEOUT = Duration.ofSeconds(30);
+
+    private final RateLimiterProperties.Snapshot settings;
+
+    /**
+     * The snapshot file.
+     */
+    private final Path path;
+
+    private final BucketStore bucketStore;
+
+    /**
+     * Whether snapshots are taken and restored.
+     */
+    private final boolean enabled;
+
+    /**
+     * Single thread writing the snapshots.
+     */
+    private final Scheduler scheduler = Schedulers.newSingle("bucket-snapshots");
+
+    /**
+     * The mapped snapshot of the previous run, or {@code null} once none of its states can
+     * still be rehydrated.
+     */
+    private volatile MappedSnapshot restored;
+
+    private Disposable writer;
+
+    /**
+     * Creates the snapshot store using the settings from {@link RateLimiterProperties.Snapshot}.
+     *
+     * @param properties    rate limiter settings
+     * @param bucketStore   the store whose buckets are persisted
+     * @param bucketBackend the backend, which must be local for snapshots to be taken
+     */
+    public BucketSnapshots(RateLimiterProperties properties, BucketStore bucketStore, BucketBackend bucketBackend) {
+        this.settings = properties.getSnapshot();
+        this.path = Path.of(settings.getPath());
+        this.bucketStore = bucketStore;
+        this.enabled = settings.isEnabled() && !bucketBackend.isDistributed();
+    }
+
+    /**
+     * Maps the snapshot of the previous run and starts the periodic writes.
+     */
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            restored = MappedSnapshot.open(path);
+            if (restored != null) {
+                log.info("Mapped bucket snapshot {} with {} states", path, restored.recordCount);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring unreadable bucket snapshot {}: {}", path, e.getMessage());
+        }
+        long interval = settings.getInterval().toMillis();
+        writer = scheduler.schedulePeriodically(this::write, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic writes and writes a final snapshot. The final write runs on the writer
+     * thread, after a periodic write still in progress, since both use the same temporary file.
+     */
+    @PreDestroy
+    public void stop() {
+        if (writer != null) {
+            writer.dispose();
+        }
+        if (enabled) {
+            try {
+                Mono.fromRunnable(this::write).subscribeOn(scheduler).block(FINAL_WRITE_TIMEOUT);
+            } catch (RuntimeException e) {
+                log.warn("Failed to write the final bucket snapshot {}: {}", path, e.getMessage());
+            }
+        }
+        scheduler.dispose();
+    }
+
+    /**
+     * Takes the tokens the bucket had before the restart, if the snapshot holds its state.
+     * Called once when a bucket is created, never on a lookup.
+     *
+     * @param key       the bucket's key
+     * @param bucket    the newly created, full bucket
+     * @param bandwidth the limit the bucket enforces now
+     */
+    public void restore(BucketKey key, Bucket bucket, Bandwidth bandwidth) {
+        MappedSnapshot snapshot = restored;
+        if (snapshot == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now >= snapshot.fullAtMillis) {
+            restored = null;
+            return;
+        }
+        int record = snapshot.find(key);
+        if (record < 0 || now >= snapshot.fullAtMillis(record) || !snapshot.rehydrated.add(record)) {
+            // A bucket evicted after its rehydration was full; it must not get the old state again
+            return;
+        }
+
+        long tokens = refilled(snapshot.tokens(record), now - snapshot.atMillis(record), bandwidth);
+        if (tokens < bandwidth.getCapacity()) {
+            bucket.tryConsumeAsMuchAsPossible(bandwidth.getCapacity() - tokens);
+            log.debug("Restored bucket {} with {} tokens", key, tokens);
+        }
+    }
+
+    /**
+     * Writes the state of all buckets that are not full, plus the states of the previous run
+     * that were not rehydrated yet.
+     */
+    void write() {
+        try {
+            long start = System.nanoTime();
+            long now = System.currentTimeMillis();
+            List<Record> records = new ArrayList<>();
+            for (Map.Entry<BucketKey, BucketEntry> live : bucketStore.asMap().entrySet()) {
+                BucketEntry entry = live.getValue();
+                Bandwidth bandwidth = entry.getBandwidth();
+                long tokens = entry.getBucket().getAvailableTokens();
+                if (tokens < bandwidth.getCapacity()) {
+                    long fullInNanos = (long) Math.ceil((bandwidth.getCapacity() - tokens) * entry.getNanosPerToken());
+                    records.add(new Record(live.getKey(), tokens, now,
+                            now + TimeUnit.NANOSECONDS.toMillis(fullInNanos) + 1));
+                }
+            }
+            MappedSnapshot previous = restored;
+            if (previous != null) {
+                previous.carryOver(bucketStore, now, records);
+            }
+
+            records.removeIf(record -> record.clientId.length > MAX_STRING_BYTES
+                    || record.route.length > MAX_STRING_BYTES);
+            writeFile(path, records);
+            log.debug("Wrote {} bucket states in {} ms", records.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to write bucket snapshot {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * @return the tokens of a bucket that held {@code tokens} {@code elapsedMillis} ago
+     */
+    private static long refilled(long tokens, long elapsedMillis, Bandwidth bandwidth) {
+        double refill = (double) TimeUnit.MILLISECONDS.toNanos(Math.max(0, elapsedMillis))
+                * bandwidth.getRefillTokens() / bandwidth.getRefillPeriodNanos();
+        return (long) Math.min(bandwidth.getCapacity(), tokens + refill);
+    }
+
+    /**
+     * Writes the records as a hash table to a temporary file that then replaces the snapshot.
+     */
+    private static void writeFile(Path path, List<Record> records) throws IOException {
+        long fullAtMillis = 0;
+        for (Record record : records) {
+            fullAtMillis = Math.max(fullAtMillis, record.fullAtMillis);
+        }
+        int slotCount = Integer.highestOneBit(Math.max(1, records.size()) * 2 - 1) << 1;
+        int[] slots = new int[slotCount];
+        int mask = slotCount - 1;
+
+        long offset = HEADER_BYTES + 4L * slotCount;
+        for (Record record : records) {
+            int slot = record.key.hashCode() & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            if (offset > Integer.MAX_VALUE) {
+                throw new IOException("Bucket snapshot exceeds 2 GB");
+            }
+            slots[slot] = (int) offset;
+            offset += record.size();
+        }
+
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (OutputStream file = Files.newOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(slotCount);
+            out.writeInt(records.size());
+            out.writeLong(fullAtMillis);
+            for (int slot : slots) {
+                out.writeInt(slot);
+            }
+            for (Record record : records) {
+                out.writeInt(record.key.hashCode());
+                writeString(out, record.clientId);
+                writeString(out, record.route);
+                out.writeLong(record.tokens);
+                out.writeLong(record.atMillis);
+                out.writeLong(record.fullAtMillis);
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeString(DataOutputStream out, byte[] value) throws IOException {
+        out.writeShort(value.length);
+        out.write(value);
+    }
+
+    /**
+     * State of one bucket to write.
+     */
+    private static final class Record {
+
+        private final BucketKey key;
+
+        private final byte[] clientId;
+
+        private final byte[] route;
+
+        private final long tokens;
+
+        /**
+         * Time at which the bucket held {@code tokens}.
+         */
+        private final long atMillis;
+
+        private final long fullAtMillis;
+
+        private Record(BucketKey key, long tokens, long atMillis, long fullAtMillis) {
+            this.key = key;
+            this.clientId = key.getClientId().getBytes(StandardCharsets.UTF_8);
+            this.route = key.getRoute().getBytes(StandardCharsets.UTF_8);
+            this.tokens = tokens;
+            this.atMillis = atMillis;
+            this.fullAtMillis = fullAtMillis;
+        }
+
+        private int size() {
+            return 4 + 2 + clientId.length + 2 + route.length + 8 + 8 + 8;
+        }
+    }
+
+    /**
+     * A snapshot file mapped read-only. Lookups use absolute reads only, so it is safe to share
+     * between threads.
+     */
+    private static final class MappedSnapshot {
+
+        private final ByteBuffer buffer;
+
+        /**
+         * Offsets of the records already rehydrated, which are neither restored again nor carried over.
+         */
+        private final Set<Integer> rehydrated = ConcurrentHashMap.newKeySet();
+
+        private final int slotCount;
+
+        private final int recordCount;
+
+        /**
+         * Time at which every recorded bucket would have refilled.
+         */
+        private final long fullAtMillis;
+
+        private MappedSnapshot(ByteBuffer buffer) throws IOException {
+            this.buffer = buffer;
+            if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("not a bucket snapshot of version " + VERSION);
+            }
+            this.slotCount = buffer.getInt(8);
+            this.recordCount = buffer.getInt(12);
+            this.fullAtMillis = buffer.getLong(16);
+            if (Integer.bitCount(slotCount) != 1 || HEADER_BYTES + 4L * slotCount > buffer.capacity()) {
+                throw new IOException("corrupt slot table");
+            }
+        }
+
+        /**
+         * @return the mapped snapshot, or {@code null} if there is none
+         */
+        private static MappedSnapshot open(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                return new MappedSnapshot(buffer);
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+        }
+
+        /**
+         * @return the offset of the key's record, or {@code -1} if the snapshot does not hold it
+         */
+        private int find(BucketKey key) {
+            byte[] clientId = key.getClientId().getBytes(StandardCharsets.UTF_8);
+            byte[] route = key.getRoute().getBytes(StandardCharsets.UTF_8);
+            int hash = key.hashCode();
+            int mask = slotCount - 1;
+            for (int slot = hash & mask, probes = 0; probes < slotCount; slot = (slot + 1) & mask, probes++) {
+                int record = buffer.getInt(HEADER_BYTES + 4 * slot);
+                if (record == 0) {
+                    return -1;
+                }
+                if (buffer.getInt(record) == hash && matches(record + 4, clientId)
+                        && matches(record + 6 + clientId.length, route)) {
+                    return record;
+                }
+            }
+            return -1;
+        }
+
+        private boolean matches(int offset, byte[] value) {
+            if (length(offset) != value.length) {
+                return false;
+            }
+            for (int i = 0; i < value.length; i++) {
+                if (buffer.get(offset + 2 + i) != value[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private long tokens(int record) {
+            return buffer.getLong(tokensOffset(record));
+        }
+
+        private long atMillis(int record) {
+            return buffer.getLong(tokensOffset(record) + 8);
+        }
+
+        private long fullAtMillis(int record) {
+            return buffer.getLong(tokensOffset(record) + 16);
+        }
+
+        private int tokensOffset(int record) {
+            int route = record + 6 + length(record + 4);
+            return route + 2 + length(route);
+        }
+
+        private int length(int offset) {
+            return Short.toUnsignedInt(buffer.getShort(offset));
+        }
+
+        /**
+         * Adds the records whose bucket has not been rehydrated and would not have refilled yet.
+         */
+        private void carryOver(BucketStore bucketStore, long now, List<Record> records) {
+            for (int slot = 0; slot < slotCount; slot++) {
+                int record = buffer.getInt(HEADER_BYTES + 4 * slot);
+                if (record == 0 || now >= fullAtMillis(record) || rehydrated.contains(record)) {
+                    continue;
+                }
+                BucketKey key = new BucketKey(string(record + 4), string(record + 6 + length(record + 4)));
+                if (bucketStore.peek(key) == null) {
+                    records.add(new Record(key, tokens(record), atMillis(record), fullAtMillis(record)));
+                }
+            }
+        }
+
+        private String string(int offset) {
+            byte[] value = new byte[length(offset)];
+            buffer.get(offset + 2, value);
+            return new String(value, StandardCharsets.UTF_8);
+        }
+    }
+}
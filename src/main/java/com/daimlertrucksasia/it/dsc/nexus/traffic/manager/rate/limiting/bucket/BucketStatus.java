@@ -0,0 +1,116 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.metrics.DecisionCounters;
+import lombok.Value;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Point-in-time state of one bucket, as reported by the monitor.
+ * <p>
+ * Each status carries an opaque {@link #cursor}; passing it back as {@code cursor} returns the
+ * buckets that follow this one in {@link BucketStore#KEY_ORDER}.
+ * </p>
+ */
+@Value
+public class BucketStatus {
+
+    /**
+     * The client identifier.
+     */
+    String clientId;
+
+    /**
+     * The route pattern of the bucket, or the raw path if no rule matched.
+     */
+    String route;
+
+    /**
+     * Tokens currently available in the bucket.
+     */
+    long availableTokens;
+
+    /**
+     * Configured capacity of the bucket, or {@code -1} if the default limit applies.
+     */
+    long capacity;
+
+    /**
+     * Requests admitted immediately since the bucket was created.
+     */
+    long allowed;
+
+    /**
+     * Requests admitted after waiting since the bucket was created.
+     */
+    long waited;
+
+    /**
+     * Requests rejected with 429 since the bucket was created.
+     */
+    long throttled;
+
+    /**
+     * Position of this bucket, to resume paging after it.
+     */
+    String cursor;
+
+    /**
+     * Reads the current state of a bucket. For buckets kept in a shared store the tokens are read
+     * with an asynchronous round trip.
+     *
+     * @param key   the bucket's key
+     * @param entry the bucket's entry
+     * @return the status of the bucket
+     */
+    public static Mono<BucketStatus> read(BucketKey key, BucketEntry entry) {
+        return Mono.fromFuture(entry::availableTokens).map(tokens -> of(key, entry, tokens));
+    }
+
+    /**
+     * Builds the status of a bucket from tokens already read.
+     *
+     * @param key             the bucket's key
+     * @param entry           the bucket's entry
+     * @param availableTokens the tokens available in the bucket
+     * @return the status of the bucket
+     */
+    public static BucketStatus of(BucketKey key, BucketEntry entry, long availableTokens) {
+        DecisionCounters counters = entry.getCounters();
+        return new BucketStatus(key.getClientId(), key.getRoute(), availableTokens,
+                entry.getCapacity(), counters.allowed(), counters.waited(), counters.throttled(), cursorOf(key));
+    }
+
+    /**
+     * Encodes a key as a URL-safe cursor. Both parts are encoded separately, so client IDs and
+     * routes may contain any character.
+     *
+     * @param key the key
+     * @return the cursor
+     */
+    public static String cursorOf(BucketKey key) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString(key.getClientId().getBytes(StandardCharsets.UTF_8))
+                + '.' + encoder.encodeToString(key.getRoute().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor created by {@link #cursorOf(BucketKey)}.
+     *
+     * @param cursor the cursor
+     * @return the key it points at
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static BucketKey parseCursor(String cursor) {
+        int dot = cursor.indexOf('.');
+        if (dot < 0) {
+            throw new IllegalArgumentException("Malformed cursor: " + cursor);
+        }
+        Base64.Decoder decoder = Base64.getUrlDecoder();
+        return new BucketKey(
+                new String(decoder.decode(cursor.substring(0, dot)), StandardCharsets.UTF_8),
+                new String(decoder.decode(cursor.substring(dot + 1)), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,236 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.config.RateLimiterProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Bounded, evicting store for live rate limiter buckets.
+ * <p>
+ * Backed by Caffeine, which evicts with W-TinyLFU once {@code maxEntries} is reached and
+ * drops buckets that have not been accessed for {@code idleExpiry}. An entry is never
+ * expired for idleness before its bucket could have refilled completely, so recreating it later
+ * does not grant extra tokens. Eviction for size is the exception: it may drop a partly drained
+ * bucket, whose client then starts over with a full bucket. {@code maxEntries} should therefore
+ * exceed the number of clients active within one refill period. Hit, miss and eviction
+ * counters are kept in {@link LongAdder}s so recording them does not contend or allocate.
+ * </p>
+ * <p>
+ * Keys are also kept in a sorted index, ordered by client and then route, so the monitor can
+ * page through the store with a cursor instead of copying it. The index is only written when
+ * a bucket is created or removed, inside the same atomic map operation, never on a lookup.
+ * </p>
+ */
+@Slf4j
+@Component
+public class BucketStore {
+
+    /**
+     * Order of the key index: by client, then by route.
+     */
+    public static final Comparator<BucketKey> KEY_ORDER =
+            Comparator.comparing(BucketKey::getClientId).thenComparing(BucketKey::getRoute);
+
+    /**
+     * The underlying Caffeine cache keyed by client and route.
+     */
+    private final Cache<BucketKey, BucketEntry> cache;
+
+    /**
+     * Keys of all held buckets, sorted by {@link #KEY_ORDER}.
+     */
+    private final ConcurrentSkipListSet<BucketKey> index = new ConcurrentSkipListSet<>(KEY_ORDER);
+
+    /**
+     * Lookups that found an existing bucket.
+     */
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * Lookups that had to create a bucket.
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Buckets evicted for size or idleness.
+     */
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates the store using the limits from {@link RateLimiterProperties.BucketStore}.
+     *
+     * @param properties rate limiter settings
+     */
+    public BucketStore(RateLimiterProperties properties) {
+        RateLimiterProperties.BucketStore settings = properties.getBucketStore();
+        long idleNanos = settings.getIdleExpiry().toNanos();
+
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(settings.getMaxEntries())
+                .expireAfter(new IdleExpiry(idleNanos))
+                .evictionListener((key, entry, cause) -> {
+                    index.remove(key);
+                    evictions.increment();
+                })
+                .build();
+
+        log.info("Bucket store initialised: maxEntries={}, idleExpiry={}",
+                settings.getMaxEntries(), settings.getIdleExpiry());
+    }
+
+    /**
+     * Returns the entry for the key without creating it, recording a hit or a miss.
+     * The key is only used for probing, so a transient {@link BucketKey#lookup} key is allowed.
+     *
+     * @param key the client/route key
+     * @return the entry, or {@code null} if not present
+     */
+    public BucketEntry getIfPresent(BucketKey key) {
+        BucketEntry entry = cache.asMap().get(key);
+        if (entry != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the entry for the key, creating it atomically if absent. Used after a
+     * {@link #getIfPresent} miss, so it does not record stats a second time.
+     *
+     * @param key     an immutable client/route key; it is stored on a miss
+     * @param factory creates the entry on a miss
+     * @return the existing or newly created entry
+     */
+    public BucketEntry computeIfAbsent(BucketKey key, Function<BucketKey, BucketEntry> factory) {
+        return cache.asMap().computeIfAbsent(key, k -> {
+            BucketEntry entry = factory.apply(k);
+            if (entry != null) {
+                index.add(k);
+            }
+            return entry;
+        });
+    }
+
+    /**
+     * Atomically updates the entry for the key if it is present.
+     *
+     * @param key      the client/route key
+     * @param remapper applied to the present entry; returning {@code null} removes it
+     * @return the resulting entry, or {@code null} if none was present or it was removed
+     */
+    public BucketEntry computeIfPresent(BucketKey key, BiFunction<BucketKey, BucketEntry, BucketEntry> remapper) {
+        return cache.asMap().computeIfPresent(key, (k, entry) -> {
+            BucketEntry result = remapper.apply(k, entry);
+            if (result == null) {
+                index.remove(k);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Removes the entry for the key.
+     *
+     * @param key the client/route key
+     */
+    public void invalidate(BucketKey key) {
+        cache.asMap().computeIfPresent(key, (k, entry) -> {
+            index.remove(k);
+            return null;
+        });
+    }
+
+    /**
+     * Returns the entry for the key without creating it, recording stats or counting as an access.
+     *
+     * @param key the client/route key
+     * @return the entry, or {@code null} if not present
+     */
+    public BucketEntry peek(BucketKey key) {
+        return cache.policy().getIfPresentQuietly(key);
+    }
+
+    /**
+     * Returns a live, weakly consistent view of the held keys in {@link #KEY_ORDER}.
+     * Iterating it neither copies the store nor blocks writers.
+     *
+     * @return the sorted keys
+     */
+    public NavigableSet<BucketKey> keys() {
+        return index;
+    }
+
+    /**
+     * Returns a live, weakly consistent view of the store. It must not be used to add or remove
+     * buckets, which would bypass the key index. Reading through this view does not
+     * affect hit or miss counters.
+     *
+     * @return the store as a concurrent map
+     */
+    public ConcurrentMap<BucketKey, BucketEntry> asMap() {
+        return cache.asMap();
+    }
+
+    /**
+     * @return the approximate number of buckets held
+     */
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * @return the number of lookups that found an existing bucket
+     */
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that had to create a bucket
+     */
+    public long missCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of buckets evicted for size or idleness
+     */
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Expires entries after the configured idle time, but never before the bucket could have
+     * refilled completely since its last access.
+     */
+    private record IdleExpiry(long idleNanos) implements Expiry<BucketKey, BucketEntry> {
+
+        @Override
+        public long expireAfterCreate(BucketKey key, BucketEntry entry, long currentTime) {
+            return Math.max(idleNanos, entry.getFullRefillNanos());
+        }
+
+        @Override
+        public long expireAfterUpdate(BucketKey key, BucketEntry entry, long currentTime, long currentDuration) {
+            return Math.max(idleNanos, entry.getFullRefillNanos());
+        }
+
+        @Override
+        public long expireAfterRead(BucketKey key, BucketEntry entry, long currentTime, long currentDuration) {
+            return Math.max(idleNanos, entry.getFullRefillNanos());
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket;
+
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.ConsumptionProbe;
+import io.github.bucket4j.EstimationProbe;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * FIFO queue of requests waiting for a token of one {@link Bucket}.
+ * <p>
+ * Instead of polling the bucket at a fixed delay, the queue asks Bucket4j how long the head
+ * waiter must wait for a refill and schedules exactly one wake-up for that moment. When it
+ * fires, waiters are admitted in arrival order for as long as tokens are available, and the
+ * next wake-up is scheduled for the new head. Requests are rejected up front when the queue
+ * is full or when their turn could not come within the maximum wait.
+ * </p>
+ * <p>
+ * For a bucket in a {@linkplain BucketEntry#isAsync() shared store}, the estimate and every
+ * consumption are asynchronous: waiters are probed one store round trip at a time, and a token
+ * taken for a waiter that left meanwhile is returned. If the store fails, the waiters fail too.
+ * </p>
+ * <p>
+ * A waiter is admitted or cancelled exactly once, decided by a CAS on its state: a request that
+ * goes away after a token was taken for it, but before it was told, gives the token back.
+ * </p>
+ */
+public class BucketWaitQueue {
+
+    /**
+     * The entry owning the bucket, which provides the bucket waiters consume from and its
+     * current refill rate. The bucket is read on every use, as it may be replaced.
+     */
+    private final BucketEntry entry;
+
+    /**
+     * Scheduler used for wake-ups.
+     */
+    private final Scheduler scheduler;
+
+    /**
+     * Waiters in arrival order. Guarded by {@code this}.
+     */
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+
+    /**
+     * Number of waiters, published for lock-free reads from the request path.
+     */
+    private volatile int queued;
+
+    /**
+     * The single pending wake-up, or {@code null}. Guarded by {@code this}.
+     */
+    private Disposable wakeUp;
+
+    /**
+     * Whether an asynchronous consumption for the head waiter is in flight. Guarded by {@code this}.
+     */
+    private boolean probing;
+
+    /**
+     * Creates a wait queue for the bucket of the given entry using the parallel scheduler for
+     * wake-ups.
+     *
+     * @param entry the entry owning the bucket waiters consume from
+     */
+    public BucketWaitQueue(BucketEntry entry) {
+        this(entry, Schedulers.parallel());
+    }
+
+    /**
+     * Creates a wait queue for the bucket of the given entry.
+     *
+     * @param entry     the entry owning the bucket waiters consume from
+     * @param scheduler the scheduler used for wake-ups
+     */
+    public BucketWaitQueue(BucketEntry entry, Scheduler scheduler) {
+        this.entry = entry;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @return whether any request is currently waiting. New arrivals must queue behind waiters
+     * instead of consuming directly, to keep admission in FIFO order.
+     */
+    public boolean hasWaiters() {
+        return queued > 0;
+    }
+
+    /**
+     * Waits for one token.
+     *
+     * @param policy the wait limits of the bucket's rule
+     * @return a {@link Mono} emitting {@code true} once a token was consumed, or {@code false}
+     * if the request was rejected or its maximum wait elapsed
+     */
+    public Mono<Boolean> acquire(WaitPolicy policy) {
+        return Mono.create(sink -> enqueue(new Waiter(sink, System.nanoTime() + policy.getMaxWaitNanos()), policy));
+    }
+
+    private void enqueue(Waiter waiter, WaitPolicy policy) {
+        if (!entry.isAsync()) {
+            if (offer(waiter, policy, null)) {
+                drain();
+            }
+            return;
+        }
+        entry.getAsyncBucket().estimateAbilityToConsume(1).whenComplete((estimate, error) -> {
+            if (error != null) {
+                waiter.sink.error(error);
+            } else if (offer(waiter, policy, estimate)) {
+                drainAsync();
+            }
+        });
+    }
+
+    /**
+     * Queues the waiter unless the queue is full or its turn could not come within the maximum wait.
+     *
+     * @param estimate the estimate of the asynchronous bucket, or {@code null} to ask the local bucket
+     * @return whether the queue must be drained, because no wake-up or probe is pending
+     */
+    private boolean offer(Waiter waiter, WaitPolicy policy, EstimationProbe estimate) {
+        synchronized (this) {
+            int position = waiters.size() + 1;
+            if (position > policy.getMaxQueueDepth()) {
+                waiter.sink.success(false);
+                return false;
+            }
+            // Time until the first token refills, plus one refill interval per waiter ahead
+            if (estimate == null) {
+                estimate = entry.getBucket().estimateAbilityToConsume(1);
+            }
+            long firstTokenNanos = estimate.canBeConsumed() ? 0 : estimate.getNanosToWaitForRefill();
+            double expectedWait = firstTokenNanos + (double) (position - 1) * entry.getNanosPerToken();
+            if (expectedWait > policy.getMaxWaitNanos()) {
+                waiter.sink.success(false);
+                return false;
+            }
+
+            waiters.addLast(waiter);
+            queued = waiters.size();
+            waiter.sink.onCancel(() -> cancel(waiter));
+            return wakeUp == null && !probing;
+        }
+    }
+
+    private void cancel(Waiter waiter) {
+        if (waiter.state.compareAndSet(Waiter.WAITING, Waiter.CANCELLED)) {
+            synchronized (this) {
+                waiters.remove(waiter);
+                queued = waiters.size();
+            }
+        } else if (waiter.state.get() == Waiter.ADMITTED) {
+            // A token was taken, but the request went away before it was told
+            refund();
+        }
+    }
+
+    /**
+     * Returns a token taken for a waiter that can no longer use it.
+     */
+    private void refund() {
+        if (entry.isAsync()) {
+            entry.getAsyncBucket().addTokens(1);
+        } else {
+            entry.getBucket().addTokens(1);
+        }
+    }
+
+    /**
+     * Admits waiters from the head while tokens are available, rejects those whose wait has
+     * elapsed and schedules the next wake-up. Sinks are completed outside the lock.
+     */
+    private void drain() {
+        List<Waiter> admitted = new ArrayList<>();
+        List<Waiter> expired = new ArrayList<>();
+
+        synchronized (this) {
+            wakeUp = null;
+            long now = System.nanoTime();
+
+            while (!waiters.isEmpty()) {
+                Waiter head = waiters.peekFirst();
+                long remaining = head.deadline - now;
+                if (remaining < 0) {
+                    expired.add(waiters.pollFirst());
+                    continue;
+                }
+
+                ConsumptionProbe probe = entry.getBucket().tryConsumeAndReturnRemaining(1);
+                if (probe.isConsumed()) {
+                    Waiter waiter = waiters.pollFirst();
+                    if (waiter.state.compareAndSet(Waiter.WAITING, Waiter.ADMITTED)) {
+                        admitted.add(waiter);
+                    } else {
+                        // Cancelled meanwhile; the token goes to the next waiter
+                        entry.getBucket().addTokens(1);
+                    }
+                    continue;
+                }
+
+                long delay = Math.min(probe.getNanosToWaitForRefill(), remaining);
+                wakeUp = scheduler.schedule(this::drain, Math.max(delay, 1), TimeUnit.NANOSECONDS);
+                break;
+            }
+            queued = waiters.size();
+        }
+
+        for (Waiter waiter : admitted) {
+            waiter.sink.success(true);
+        }
+        for (Waiter waiter : expired) {
+            waiter.sink.success(false);
+        }
+    }
+
+    /**
+     * Asynchronous variant of {@link #drain()}: rejects the expired head waiters and asks the
+     * shared store for one token for the new head. The answer is handled by {@link #onProbe}.
+     */
+    private void drainAsync() {
+        List<Waiter> expired = new ArrayList<>();
+        boolean probe;
+        synchronized (this) {
+            wakeUp = null;
+            pollExpired(expired);
+            probe = !waiters.isEmpty();
+            probing = probe;
+            queued = waiters.size();
+        }
+
+        for (Waiter waiter : expired) {
+            waiter.sink.success(false);
+        }
+        if (probe) {
+            entry.getAsyncBucket().tryConsumeAndReturnRemaining(1).whenComplete(this::onProbe);
+        }
+    }
+
+    /**
+     * Admits the head waiter with the token of the probe, or schedules the next wake-up. The next
+     * waiter is probed from the scheduler, so a store answering synchronously does not recurse.
+     */
+    private void onProbe(ConsumptionProbe probe, Throwable error) {
+        List<Waiter> failed = new ArrayList<>();
+        List<Waiter> expired = new ArrayList<>();
+        Waiter admitted = null;
+        boolean refund = false;
+
+        synchronized (this) {
+            probing = false;
+            if (error != null) {
+                failed.addAll(waiters);
+                waiters.clear();
+            } else {
+                long now = System.nanoTime();
+                pollExpired(expired);
+                if (probe.isConsumed()) {
+                    admitted = waiters.pollFirst();
+                    if (admitted != null && !admitted.state.compareAndSet(Waiter.WAITING, Waiter.ADMITTED)) {
+                        admitted = null;
+                    }
+                    refund = admitted == null;
+                    if (!waiters.isEmpty()) {
+                        wakeUp = scheduler.schedule(this::drainAsync);
+                    }
+                } else if (!waiters.isEmpty()) {
+                    long delay = Math.min(probe.getNanosToWaitForRefill(), waiters.peekFirst().deadline - now);
+                    wakeUp = scheduler.schedule(this::drainAsync, Math.max(delay, 1), TimeUnit.NANOSECONDS);
+                }
+            }
+            queued = waiters.size();
+        }
+
+        if (refund) {
+            entry.getAsyncBucket().addTokens(1);
+        }
+        if (admitted != null) {
+            admitted.sink.success(true);
+        }
+        for (Waiter waiter : expired) {
+            waiter.sink.success(false);
+        }
+        for (Waiter waiter : failed) {
+            waiter.sink.error(error);
+        }
+    }
+
+    /**
+     * Moves the head waiters whose wait has elapsed to the given list. Must hold {@code this}.
+     */
+    private void pollExpired(List<Waiter> expired) {
+        long now = System.nanoTime();
+        while (!waiters.isEmpty() && waiters.peekFirst().deadline - now < 0) {
+            expired.add(waiters.pollFirst());
+        }
+    }
+
+    /**
+     * A request waiting for a token.
+     */
+    private static final class Waiter {
+
+        private static final int WAITING = 0;
+
+        private static final int ADMITTED = 1;
+
+        private static final int CANCELLED = 2;
+
+        /**
+         * Completes the request's wait.
+         */
+        private final MonoSink<Boolean> sink;
+
+        /**
+         * {@link System#nanoTime()} after which the request is rejected.
+         */
+        private final long deadline;
+
+        /**
+         * Whether a token was taken for the waiter or it was cancelled first.
+         */
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+
+        private Waiter(MonoSink<Boolean> sink, long deadline) {
+            this.sink = sink;
+            this.deadline = deadline;
+        }
+    }
+}
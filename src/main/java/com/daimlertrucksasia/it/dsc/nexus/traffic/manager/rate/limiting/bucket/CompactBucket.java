@@ -0,0 +1,656 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket;
+
+import io.github.bucket4j.AbstractBucket;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.BlockingStrategy;
+import io.github.bucket4j.BucketListener;
+import io.github.bucket4j.ConsumptionProbe;
+import io.github.bucket4j.EstimationProbe;
+import io.github.bucket4j.Nothing;
+import io.github.bucket4j.TimeMeter;
+import io.github.bucket4j.TokensInheritanceStrategy;
+import io.github.bucket4j.UninterruptibleBlockingStrategy;
+import io.github.bucket4j.VerboseResult;
+import io.github.bucket4j.local.SynchronizationStrategy;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Lock-free token bucket whose whole state is a single {@code long} updated by CAS.
+ * <p>
+ * Supports exactly one greedy {@link Bandwidth} that starts full, which is what the gateway
+ * builds from a rule. With the refill rate reduced to {@code R} tokens per {@code P} nanoseconds,
+ * the bucket stores the point on a scaled clock ({@code nanoTime * R}, wrapping) at which it would
+ * have been empty. The distance from the current clock is the bucket's credit in units of
+ * {@code 1/P} tokens, capped at {@code capacity * P}. This is the same arithmetic Bucket4j performs
+ * with its token count, rounding error and last refill time, so tokens are refilled at exactly
+ * the same moments and probes report the same waits.
+ * </p>
+ * <p>
+ * The scaled clock wraps, so the distance is only meaningful while the bucket is touched at least
+ * every {@link #MAX_IDLE}; the {@link BucketStore} must evict idle buckets sooner, which
+ * {@code BucketBackendConfig} checks at startup.
+ * </p>
+ * <p>
+ * Consumption never blocks or allocates. Reconfiguration briefly parks the state on a sentinel so
+ * the state and the limits it is interpreted with are replaced together. Operations that need a
+ * negative balance or more tokens than the capacity ({@code consumeIgnoringRateLimits} and
+ * {@code forceAddTokens} beyond what is available, blocking and scheduled consumption), verbose
+ * results, listeners and unsupported configurations inflate the bucket: its tokens are handed
+ * over to a synchronized Bucket4j bucket that serves every operation from then on.
+ * </p>
+ */
+public class CompactBucket extends AbstractBucket {
+
+    /**
+     * Longest time a bucket may go untouched. Any longer and its scaled clock may wrap past the
+     * state, so an idle bucket could read as empty.
+     */
+    public static final Duration MAX_IDLE = Duration.ofDays(1);
+
+    /**
+     * Largest credit, in scaled units, that leaves room for the wrapping arithmetic.
+     */
+    private static final long MAX_CREDIT = 1L << 62;
+
+    /**
+     * Largest reduced refill token count, for which the scaled clock advances at most
+     * {@link #MAX_CREDIT} over {@link #MAX_IDLE}. A full refill takes at most that long too, as the
+     * full credit is capped at {@link #MAX_CREDIT}, so an entry kept until its bucket is full is safe.
+     */
+    private static final long MAX_REDUCED_REFILL_TOKENS = MAX_CREDIT / MAX_IDLE.toNanos();
+
+    /**
+     * State value marking a reconfiguration in progress.
+     */
+    private static final long LOCKED = Long.MIN_VALUE;
+
+    private static final VarHandle STATE;
+
+    static {
+        try {
+            STATE = MethodHandles.lookup().findVarHandle(CompactBucket.class, "state", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Clock the bucket refills by.
+     */
+    private final TimeMeter timeMeter;
+
+    /**
+     * Limits the state is interpreted with.
+     */
+    private volatile Limits limits;
+
+    /**
+     * Scaled clock value at which the bucket would have been empty.
+     */
+    private volatile long state;
+
+    /**
+     * Bucket4j bucket the state has been handed over to, or {@code null}. Once set, the state stays
+     * on the sentinel.
+     */
+    private volatile Bucket inflated;
+
+    /**
+     * Creates a full bucket refilling by {@link System#nanoTime()}.
+     *
+     * @param configuration the configuration, which must be {@linkplain #supports supported}
+     */
+    public CompactBucket(BucketConfiguration configuration) {
+        this(configuration, TimeMeter.SYSTEM_NANOTIME);
+    }
+
+    /**
+     * Creates a full bucket refilling by the given clock.
+     *
+     * @param configuration the configuration, which must be {@linkplain #supports supported}
+     * @param timeMeter     the clock
+     */
+    public CompactBucket(BucketConfiguration configuration, TimeMeter timeMeter) {
+        super(BucketListener.NOPE);
+        Limits initial = Limits.of(configuration);
+        this.timeMeter = timeMeter;
+        this.limits = initial;
+        this.state = initial.state(timeMeter.currentTimeNanos(), initial.fullCredit);
+    }
+
+    /**
+     * @param configuration a bucket configuration
+     * @return whether the configuration can be enforced by a compact bucket without inflating it
+     */
+    public static boolean supports(BucketConfiguration configuration) {
+        return Limits.ofOrNull(configuration) != null;
+    }
+
+    @Override
+    protected boolean tryConsumeImpl(long tokensToConsume) {
+        while (true) {
+            long current = readState();
+            if (current == LOCKED) {
+                return inflated.tryConsume(tokensToConsume);
+            }
+            Limits l = limits;
+            long now = timeMeter.currentTimeNanos();
+            long credit = l.credit(current, now);
+            if (tokensToConsume > l.capacity || credit < tokensToConsume * l.period) {
+                return false;
+            }
+            if (STATE.compareAndSet(this, current, l.state(now, credit - tokensToConsume * l.period))) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    protected ConsumptionProbe tryConsumeAndReturnRemainingTokensImpl(long tokensToConsume) {
+        while (true) {
+            long current = readState();
+            if (current == LOCKED) {
+                return inflated.tryConsumeAndReturnRemaining(tokensToConsume);
+            }
+            Limits l = limits;
+            long now = timeMeter.currentTimeNanos();
+            long credit = l.credit(current, now);
+            long available = credit / l.period;
+            if (tokensToConsume > available) {
+                return ConsumptionProbe.rejected(available,
+                        l.nanosToWaitFor(tokensToConsume, credit), l.nanosToWaitFor(l.capacity, credit));
+            }
+            long remaining = credit - tokensToConsume * l.period;
+            if (STATE.compareAndSet(this, current, l.state(now, remaining))) {
+                return ConsumptionProbe.consumed(available - tokensToConsume, l.nanosToWaitFor(l.capacity, remaining));
+            }
+        }
+    }
+
+    @Override
+    protected EstimationProbe estimateAbilityToConsumeImpl(long tokensToConsume) {
+        Limits l;
+        long credit;
+        do {
+            long current = readState();
+            if (current == LOCKED) {
+                return inflated.estimateAbilityToConsume(tokensToConsume);
+            }
+            l = limits;
+            credit = l.credit(current, timeMeter.currentTimeNanos());
+        } while (l != limits);
+
+        long available = credit / l.period;
+        return tokensToConsume <= available
+                ? EstimationProbe.canBeConsumed(available)
+                : EstimationProbe.canNotBeConsumed(available, l.nanosToWaitFor(tokensToConsume, credit));
+    }
+
+    @Override
+    protected long consumeAsMuchAsPossibleImpl(long limit) {
+        while (true) {
+            long current = readState();
+            if (current == LOCKED) {
+                return inflated.tryConsumeAsMuchAsPossible(limit);
+            }
+            Limits l = limits;
+            long now = timeMeter.currentTimeNanos();
+            long credit = l.credit(current, now);
+            long toConsume = Math.min(limit, credit / l.period);
+            if (toConsume <= 0) {
+                return 0;
+            }
+            if (STATE.compareAndSet(this, current, l.state(now, credit - toConsume * l.period))) {
+                return toConsume;
+            }
+        }
+    }
+
+    @Override
+    protected void addTokensImpl(long tokensToAdd) {
+        while (true) {
+            long current = readState();
+            if (current == LOCKED) {
+                inflated.addTokens(tokensToAdd);
+                return;
+            }
+            Limits l = limits;
+            long now = timeMeter.currentTimeNanos();
+            long credit = l.credit(current, now);
+            long added = tokensToAdd >= l.capacity ? l.fullCredit : Math.min(l.fullCredit, credit + tokensToAdd * l.period);
+            if (STATE.compareAndSet(this, current, l.state(now, added))) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public long getAvailableTokens() {
+        while (true) {
+            long current = readState();
+            if (current == LOCKED) {
+                return inflated.getAvailableTokens();
+            }
+            Limits l = limits;
+            long available = l.credit(current, timeMeter.currentTimeNanos()) / l.period;
+            if (l == limits) {
+                return available;
+            }
+        }
+    }
+
+    @Override
+    public void reset() {
+        while (true) {
+            long current = readState();
+            if (current == LOCKED) {
+                inflated.reset();
+                return;
+            }
+            Limits l = limits;
+            if (STATE.compareAndSet(this, current, l.state(timeMeter.currentTimeNanos(), l.fullCredit))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Adds tokens in place while they fit in the capacity; more inflates the bucket.
+     */
+    @Override
+    protected void forceAddTokensImpl(long tokensToAdd) {
+        while (true) {
+            long current = readState();
+            if (current == LOCKED) {
+                inflated.forceAddTokens(tokensToAdd);
+                return;
+            }
+            Limits l = limits;
+            long now = timeMeter.currentTimeNanos();
+            long credit = l.credit(current, now);
+            if (tokensToAdd > (l.fullCredit - credit) / l.period) {
+                inflate().forceAddTokens(tokensToAdd);
+                return;
+            }
+            if (STATE.compareAndSet(this, current, l.state(now, credit + tokensToAdd * l.period))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Consumes in place while the tokens are available; going into debt inflates the bucket.
+     */
+    @Override
+    protected long consumeIgnoringRateLimitsImpl(long tokensToConsume) {
+        while (true) {
+            long current = readState();
+            if (current == LOCKED) {
+                return inflated.consumeIgnoringRateLimits(tokensToConsume);
+            }
+            Limits l = limits;
+            long now = timeMeter.currentTimeNanos();
+            long credit = l.credit(current, now);
+            if (tokensToConsume > credit / l.period) {
+                return inflate().consumeIgnoringRateLimits(tokensToConsume);
+            }
+            if (STATE.compareAndSet(this, current, l.state(now, credit - tokensToConsume * l.period))) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Replaces the limits, carrying tokens over as Bucket4j does for a single greedy bandwidth.
+     * A fractional token carried over is rounded down to the precision of the new refill rate.
+     * A configuration that is not {@linkplain #supports supported} inflates the bucket.
+     */
+    @Override
+    protected synchronized void replaceConfigurationImpl(BucketConfiguration newConfiguration,
+                                                         TokensInheritanceStrategy tokensInheritanceStrategy) {
+        Limits next = Limits.ofOrNull(newConfiguration);
+        if (next == null || inflated != null) {
+            inflate().replaceConfiguration(newConfiguration, tokensInheritanceStrategy);
+            return;
+        }
+
+        long current;
+        do {
+            current = readState();
+        } while (!STATE.compareAndSet(this, current, LOCKED));
+
+        Limits previous = limits;
+        long now = timeMeter.currentTimeNanos();
+        long credit = previous.credit(current, now);
+        long tokens = credit / previous.period;
+        long roundingError = (credit % previous.period) * previous.divisor;
+
+        long newTokens;
+        long newRoundingError = 0;
+        switch (tokensInheritanceStrategy) {
+            case RESET -> newTokens = next.capacity;
+            case PROPORTIONALLY -> {
+                if (tokens >= previous.capacity) {
+                    newTokens = next.capacity;
+                } else {
+                    double realTokens = (tokens + (double) roundingError / previous.refillPeriodNanos)
+                            * ((double) next.capacity / previous.capacity);
+                    newTokens = (long) realTokens;
+                    if (newTokens < next.capacity) {
+                        newRoundingError = (long) ((realTokens - newTokens) * next.refillPeriodNanos);
+                    }
+                }
+            }
+            case ADDITIVE -> {
+                if (next.capacity <= previous.capacity) {
+                    newTokens = Math.min(tokens, next.capacity);
+                    newRoundingError = newTokens < next.capacity ? scaledRoundingError(roundingError, previous, next) : 0;
+                } else if (tokens >= previous.capacity) {
+                    newTokens = next.capacity;
+                } else {
+                    newTokens = tokens + next.capacity - previous.capacity;
+                    newRoundingError = scaledRoundingError(roundingError, previous, next);
+                }
+            }
+            default -> {
+                newTokens = Math.min(tokens, next.capacity);
+                newRoundingError = newTokens < next.capacity ? scaledRoundingError(roundingError, previous, next) : 0;
+            }
+        }
+
+        long newCredit = newTokens >= next.capacity
+                ? next.fullCredit
+                : Math.max(0, newTokens * next.period + newRoundingError / next.divisor);
+        limits = next;
+        state = next.state(now, newCredit);
+    }
+
+    /**
+     * @return the rounding error carried over to the new refill period, as Bucket4j computes it
+     */
+    private static long scaledRoundingError(long roundingError, Limits previous, Limits next) {
+        long scaled = (long) ((double) next.refillPeriodNanos / previous.refillPeriodNanos) * roundingError;
+        return scaled >= next.refillPeriodNanos ? next.refillPeriodNanos - 1 : scaled;
+    }
+
+    /**
+     * @return the current state, waiting out a reconfiguration or inflation in progress; the
+     * sentinel once the bucket has been {@linkplain #inflated inflated}
+     */
+    private long readState() {
+        long current;
+        while ((current = state) == LOCKED && inflated == null) {
+            Thread.onSpinWait();
+        }
+        return current;
+    }
+
+    /**
+     * Hands the tokens over to a synchronized Bucket4j bucket with the same limits and clock, unless
+     * done already. The fraction of a token refilled so far is not carried over, which delays the
+     * next token by less than its refill time.
+     *
+     * @return the bucket serving every operation from now on
+     */
+    private Bucket inflate() {
+        Bucket bucket = inflated;
+        if (bucket != null) {
+            return bucket;
+        }
+        synchronized (this) {
+            if (inflated == null) {
+                long current;
+                do {
+                    current = readState();
+                } while (!STATE.compareAndSet(this, current, LOCKED));
+
+                Limits l = limits;
+                long tokens = l.credit(current, timeMeter.currentTimeNanos()) / l.period;
+                inflated = Bucket.builder()
+                        .addLimit(l.bandwidth.withInitialTokens(tokens))
+                        .withCustomTimePrecision(timeMeter)
+                        .withSynchronizationStrategy(SynchronizationStrategy.SYNCHRONIZED)
+                        .build();
+            }
+            return inflated;
+        }
+    }
+
+    /**
+     * Never reached: every blocking and scheduled method is overridden to use the inflated bucket,
+     * which can reserve tokens ahead of a refill.
+     */
+    @Override
+    protected long reserveAndCalculateTimeToSleepImpl(long tokensToConsume, long waitIfBusyNanos) {
+        throw new IllegalStateException("Blocking and scheduled consumption go through the inflated bucket");
+    }
+
+    @Override
+    public boolean tryConsume(long tokensToConsume, long maxWaitTimeNanos, BlockingStrategy blockingStrategy)
+            throws InterruptedException {
+        return inflate().asBlocking().tryConsume(tokensToConsume, maxWaitTimeNanos, blockingStrategy);
+    }
+
+    @Override
+    public boolean tryConsumeUninterruptibly(long tokensToConsume, long maxWaitTimeNanos,
+                                             UninterruptibleBlockingStrategy blockingStrategy) {
+        return inflate().asBlocking().tryConsumeUninterruptibly(tokensToConsume, maxWaitTimeNanos, blockingStrategy);
+    }
+
+    @Override
+    public void consume(long tokensToConsume, BlockingStrategy blockingStrategy) throws InterruptedException {
+        inflate().asBlocking().consume(tokensToConsume, blockingStrategy);
+    }
+
+    @Override
+    public void consumeUninterruptibly(long tokensToConsume, UninterruptibleBlockingStrategy blockingStrategy) {
+        inflate().asBlocking().consumeUninterruptibly(tokensToConsume, blockingStrategy);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> tryConsume(long tokensToConsume, long maxWaitTimeNanos,
+                                                 ScheduledExecutorService scheduler) {
+        return inflate().asScheduler().tryConsume(tokensToConsume, maxWaitTimeNanos, scheduler);
+    }
+
+    @Override
+    public CompletableFuture<Void> consume(long tokensToConsume, ScheduledExecutorService scheduler) {
+        return inflate().asScheduler().consume(tokensToConsume, scheduler);
+    }
+
+    @Override
+    public Bucket toListenable(BucketListener listener) {
+        return inflate().toListenable(listener);
+    }
+
+    @Override
+    protected VerboseResult<Long> consumeAsMuchAsPossibleVerboseImpl(long limit) {
+        return inflate().asVerbose().tryConsumeAsMuchAsPossible(limit);
+    }
+
+    @Override
+    protected VerboseResult<Boolean> tryConsumeVerboseImpl(long tokensToConsume) {
+        return inflate().asVerbose().tryConsume(tokensToConsume);
+    }
+
+    @Override
+    protected VerboseResult<ConsumptionProbe> tryConsumeAndReturnRemainingTokensVerboseImpl(long tokensToConsume) {
+        return inflate().asVerbose().tryConsumeAndReturnRemaining(tokensToConsume);
+    }
+
+    @Override
+    protected VerboseResult<EstimationProbe> estimateAbilityToConsumeVerboseImpl(long tokensToConsume) {
+        return inflate().asVerbose().estimateAbilityToConsume(tokensToConsume);
+    }
+
+    @Override
+    protected VerboseResult<Long> getAvailableTokensVerboseImpl() {
+        return inflate().asVerbose().getAvailableTokens();
+    }
+
+    @Override
+    protected VerboseResult<Nothing> addTokensVerboseImpl(long tokensToAdd) {
+        return inflate().asVerbose().addTokens(tokensToAdd);
+    }
+
+    @Override
+    protected VerboseResult<Nothing> forceAddTokensVerboseImpl(long tokensToAdd) {
+        return inflate().asVerbose().forceAddTokens(tokensToAdd);
+    }
+
+    @Override
+    protected VerboseResult<Nothing> resetVerboseImpl() {
+        return inflate().asVerbose().reset();
+    }
+
+    @Override
+    protected VerboseResult<Nothing> replaceConfigurationVerboseImpl(BucketConfiguration newConfiguration,
+                                                                     TokensInheritanceStrategy tokensInheritanceStrategy) {
+        return inflate().asVerbose().replaceConfiguration(newConfiguration, tokensInheritanceStrategy);
+    }
+
+    @Override
+    protected VerboseResult<Long> consumeIgnoringRateLimitsVerboseImpl(long tokensToConsume) {
+        return inflate().asVerbose().consumeIgnoringRateLimits(tokensToConsume);
+    }
+
+    @Override
+    public String toString() {
+        Bucket bucket = inflated;
+        if (bucket != null) {
+            return "CompactBucket{inflated=" + bucket + '}';
+        }
+        return "CompactBucket{availableTokens=" + getAvailableTokens() + ", capacity=" + limits.capacity + '}';
+    }
+
+    /**
+     * Immutable limits of one greedy bandwidth, with the refill rate reduced by the greatest
+     * common divisor of its tokens and period.
+     */
+    private static final class Limits {
+
+        private final Bandwidth bandwidth;
+
+        private final long capacity;
+
+        private final long refillTokens;
+
+        private final long refillPeriodNanos;
+
+        /**
+         * Greatest common divisor of {@link #refillTokens} and {@link #refillPeriodNanos}.
+         */
+        private final long divisor;
+
+        /**
+         * Scaled units per token: {@code refillPeriodNanos / divisor}.
+         */
+        private final long period;
+
+        /**
+         * Scaled units the clock advances per nanosecond: {@code refillTokens / divisor}.
+         */
+        private final long rate;
+
+        /**
+         * Credit of a full bucket: {@code capacity * period}.
+         */
+        private final long fullCredit;
+
+        private Limits(Bandwidth bandwidth) {
+            this.bandwidth = bandwidth;
+            this.capacity = bandwidth.getCapacity();
+            this.refillTokens = bandwidth.getRefillTokens();
+            this.refillPeriodNanos = bandwidth.getRefillPeriodNanos();
+            this.divisor = gcd(refillTokens, refillPeriodNanos);
+            this.period = refillPeriodNanos / divisor;
+            this.rate = refillTokens / divisor;
+            this.fullCredit = capacity * period;
+        }
+
+        private static Limits of(BucketConfiguration configuration) {
+            Limits limits = ofOrNull(configuration);
+            if (limits == null) {
+                throw new IllegalArgumentException("Unsupported configuration for " + CompactBucket.class.getSimpleName()
+                        + ": " + configuration);
+            }
+            return limits;
+        }
+
+        private static Limits ofOrNull(BucketConfiguration configuration) {
+            Bandwidth[] bandwidths = configuration.getBandwidths();
+            if (bandwidths.length != 1) {
+                return null;
+            }
+            Bandwidth bandwidth = bandwidths[0];
+            if (!bandwidth.isGready() || bandwidth.getInitialTokens() != bandwidth.getCapacity()) {
+                return null;
+            }
+            long divisor = gcd(bandwidth.getRefillTokens(), bandwidth.getRefillPeriodNanos());
+            long period = bandwidth.getRefillPeriodNanos() / divisor;
+            if (bandwidth.getRefillTokens() / divisor > MAX_REDUCED_REFILL_TOKENS
+                    || bandwidth.getCapacity() > MAX_CREDIT / period) {
+                return null;
+            }
+            return new Limits(bandwidth);
+        }
+
+        /**
+         * @return the credit of a bucket in the given state, capped at a full bucket. Within
+         * {@link #MAX_IDLE} the distance cannot wrap; a negative one could only come from a clock
+         * going backwards and is read as a full bucket.
+         */
+        private long credit(long state, long nowNanos) {
+            long credit = nowNanos * rate - state;
+            return credit < 0 || credit > fullCredit ? fullCredit : credit;
+        }
+
+        /**
+         * @return the state holding the given credit at the given time
+         */
+        private long state(long nowNanos, long credit) {
+            long state = nowNanos * rate - credit;
+            // Keep clear of the reconfiguration sentinel; the shift is a fraction of a nanosecond of refill
+            return state == LOCKED ? state + 1 : state;
+        }
+
+        /**
+         * Nanoseconds until the given number of tokens is available, computed as Bucket4j does
+         * for a greedy bandwidth.
+         */
+        private long nanosToWaitFor(long tokens, long credit) {
+            if (tokens > capacity) {
+                return Long.MAX_VALUE;
+            }
+            long available = credit / period;
+            if (tokens <= available) {
+                return 0;
+            }
+            long deficit = tokens - available;
+            long divided;
+            try {
+                divided = Math.multiplyExact(refillPeriodNanos, deficit);
+            } catch (ArithmeticException e) {
+                return (long) ((double) deficit / (double) refillTokens * (double) refillPeriodNanos);
+            }
+            long roundingError = (credit % period) * divisor;
+            return (divided - roundingError) / refillTokens;
+        }
+
+        private static long gcd(long a, long b) {
+            while (b != 0) {
+                long t = a % b;
+                a = b;
+                b = t;
+            }
+            return a;
+        }
+    }
+}
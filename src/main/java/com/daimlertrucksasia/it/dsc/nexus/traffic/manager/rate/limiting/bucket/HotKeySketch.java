@@ -0,0 +1,142 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Sampled count-min sketch of requests per bucket key, decayed by halving.
+ * <p>
+ * Only one in {@code sampleRate} requests is counted, so the counters of a heavy hitter see a
+ * fraction of its traffic and the sketch does not become a point of contention itself. Counts
+ * are never underestimated; collisions can only overestimate them. {@link #decay()} halves every
+ * counter, so a key requested at a steady rate settles at twice the samples of one decay interval.
+ * Halving races with concurrent increments and may lose a few samples, which is acceptable for
+ * an estimate.
+ * </p>
+ */
+class HotKeySketch {
+
+    /**
+     * Number of hashed rows.
+     */
+    private static final int DEPTH = 4;
+
+    /**
+     * Seed of the hash of each row. Every row hashes the key's characters with its own seed, so
+     * two keys colliding in one row are no more likely to collide in the others.
+     */
+    private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+    /**
+     * Counters of all rows, row after row.
+     */
+    private final AtomicIntegerArray counts;
+
+    /**
+     * Mask selecting a column; the width is a power of two.
+     */
+    private final int mask;
+
+    /**
+     * One in this many requests is counted.
+     */
+    private final int sampleRate;
+
+    /**
+     * Creates an empty sketch.
+     *
+     * @param width      counters per row, rounded up to a power of two
+     * @param sampleRate one in this many requests is counted
+     */
+    HotKeySketch(int width, int sampleRate) {
+        int columns = Integer.highestOneBit(Math.max(2, width) - 1) << 1;
+        this.counts = new AtomicIntegerArray(DEPTH * columns);
+        this.mask = columns - 1;
+        this.sampleRate = Math.max(1, sampleRate);
+    }
+
+    /**
+     * Counts a request for the key if it is sampled.
+     *
+     * @param key the bucket key; a transient lookup key is allowed
+     * @return the estimated number of samples of the key, or {@code -1} if the request was not sampled
+     */
+    int add(BucketKey key) {
+        if (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            return -1;
+        }
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counts.incrementAndGet(index(row, key)));
+        }
+        return estimate;
+    }
+
+    /**
+     * @param key the bucket key
+     * @return the estimated number of samples of the key
+     */
+    int estimate(BucketKey key) {
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counts.get(index(row, key)));
+        }
+        return estimate;
+    }
+
+    /**
+     * Halves every counter.
+     */
+    void decay() {
+        for (int i = 0; i < counts.length(); i++) {
+            int count = counts.get(i);
+            if (count != 0) {
+                counts.set(i, count >>> 1);
+            }
+        }
+    }
+
+    /**
+     * @return the sampling rate; one in this many requests is counted
+     */
+    int sampleRate() {
+        return sampleRate;
+    }
+
+    private int index(int row, BucketKey key) {
+        return row * (mask + 1) + (hash(key, SEEDS[row]) & mask);
+    }
+
+    /**
+     * Seeded MurmurHash3 of the key's client ID and route, one character per block. The length of
+     * the client ID is mixed in between, so moving characters from one part to the other changes
+     * the hash. Allocates nothing.
+     */
+    private static int hash(BucketKey key, int seed) {
+        String clientId = key.getClientId();
+        String route = key.getRoute();
+        int h = mix(seed, clientId);
+        h = mixBlock(h, clientId.length());
+        h = mix(h, route);
+        h ^= clientId.length() + route.length();
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return h ^ (h >>> 16);
+    }
+
+    private static int mix(int h, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            h = mixBlock(h, text.charAt(i));
+        }
+        return h;
+    }
+
+    private static int mixBlock(int h, int block) {
+        int k = block * 0xCC9E2D51;
+        k = Integer.rotateLeft(k, 15) * 0x1B873593;
+        h ^= k;
+        return Integer.rotateLeft(h, 13) * 5 + 0xE6546B64;
+    }
+}
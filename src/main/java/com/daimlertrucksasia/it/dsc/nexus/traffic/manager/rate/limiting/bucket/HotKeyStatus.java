@@ -0,0 +1,40 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket;
+
+import lombok.Value;
+
+/**
+ * Point-in-time state of one hot bucket, as reported by the monitor.
+ */
+@Value
+public class HotKeyStatus {
+
+    /**
+     * The client identifier.
+     */
+    String clientId;
+
+    /**
+     * The route pattern of the bucket, or the raw path if no rule matched.
+     */
+    String route;
+
+    /**
+     * Estimated requests per second over the last detector interval.
+     */
+    long estimatedRate;
+
+    /**
+     * Number of stripes the bucket is split into.
+     */
+    int stripes;
+
+    /**
+     * Tokens currently available across all stripes.
+     */
+    long availableTokens;
+
+    /**
+     * Configured capacity of the bucket, or {@code -1} if the default limit applies.
+     */
+    long capacity;
+}
@@ -0,0 +1,230 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.config.RateLimiterProperties;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detects heavy-hitter buckets and splits them into per-core {@link StripedBucket}s.
+ * <p>
+ * Every request is offered to a sampled {@link HotKeySketch}. Once a bucket's estimated rate
+ * exceeds {@code threshold} requests per second, its bucket is replaced by a striped one holding
+ * the same tokens, so threads of different cores no longer contend on one bucket's state. A
+ * periodic task decays the sketch, rebalances the stripes of hot buckets and turns buckets whose
+ * rate fell below half the threshold back into a single bucket.
+ * </p>
+ * <p>
+ * Only local buckets are striped. Tokens are moved between buckets by draining the old one,
+ * so a request racing with the swap may be rejected but never gets an extra token.
+ * </p>
+ */
+@Slf4j
+@Component
+public class HotKeyTracker {
+
+    private final RateLimiterProperties.HotKeys settings;
+
+    private final BucketStore bucketStore;
+
+    private final BucketBackend bucketBackend;
+
+    /**
+     * The detector, or {@code null} if hot key detection is disabled.
+     */
+    private final HotKeySketch sketch;
+
+    /**
+     * Sketch estimate at which a bucket becomes hot.
+     */
+    private final int hotSamples;
+
+    /**
+     * Hot buckets by key.
+     */
+    private final ConcurrentMap<BucketKey, BucketEntry> hot = new ConcurrentHashMap<>();
+
+    /**
+     * Single thread running the maintenance.
+     */
+    private final Scheduler scheduler = Schedulers.newSingle("hot-keys");
+
+    private Disposable maintenance;
+
+    /**
+     * Creates the tracker using the settings from {@link RateLimiterProperties.HotKeys}.
+     *
+     * @param properties    rate limiter settings
+     * @param bucketStore   the store holding the buckets
+     * @param bucketBackend builds the stripes and the buckets of cooled keys
+     */
+    public HotKeyTracker(RateLimiterProperties properties, BucketStore bucketStore, BucketBackend bucketBackend) {
+        this.settings = properties.getHotKeys();
+        this.bucketStore = bucketStore;
+        this.bucketBackend = bucketBackend;
+        this.sketch = settings.isEnabled() && !bucketBackend.isDistributed()
+                ? new HotKeySketch(settings.getSketchWidth(), settings.getSampleRate())
+                : null;
+        // A steady rate r settles at 2 * r * interval / sampleRate samples
+        double samples = 2.0 * settings.getThreshold() * settings.getInterval().toNanos()
+                / TimeUnit.SECONDS.toNanos(1) / Math.max(1, settings.getSampleRate());
+        this.hotSamples = (int) Math.min(Integer.MAX_VALUE, Math.max(1, Math.ceil(samples)));
+    }
+
+    /**
+     * Starts the periodic maintenance.
+     */
+    @PostConstruct
+    public void init() {
+        if (sketch == null) {
+            return;
+        }
+        long interval = settings.getInterval().toMillis();
+        maintenance = scheduler.schedulePeriodically(this::maintain, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("Hot key detection enabled: threshold={}/s, sampleRate={}, maxStripes={}",
+                settings.getThreshold(), settings.getSampleRate(), settings.getMaxStripes());
+    }
+
+    /**
+     * Stops the periodic maintenance.
+     */
+    @PreDestroy
+    public void stop() {
+        if (maintenance != null) {
+            maintenance.dispose();
+        }
+        scheduler.dispose();
+    }
+
+    /**
+     * Counts a request and stripes the bucket if it just became hot. Called on the request path;
+     * unless the bucket is promoted, this neither allocates nor blocks.
+     *
+     * @param key   the bucket's key; a transient lookup key is allowed
+     * @param entry the bucket's entry
+     */
+    public void record(BucketKey key, BucketEntry entry) {
+        if (sketch == null || entry.isAsync() || sketch.add(key) < hotSamples
+                || entry.getBucket() instanceof StripedBucket
+                || hot.size() >= settings.getMaxHotKeys() || hot.containsKey(key)) {
+            return;
+        }
+        promote(key.copy(), entry);
+    }
+
+    /**
+     * @return the buckets currently striped, with their estimated rate
+     */
+    public List<HotKeyStatus> hotKeys() {
+        List<HotKeyStatus> statuses = new ArrayList<>(hot.size());
+        for (Map.Entry<BucketKey, BucketEntry> hotKey : hot.entrySet()) {
+            BucketEntry entry = hotKey.getValue();
+            if (entry.getBucket() instanceof StripedBucket striped) {
+                statuses.add(new HotKeyStatus(hotKey.getKey().getClientId(), hotKey.getKey().getRoute(),
+                        estimatedRate(hotKey.getKey()), striped.getStripeCount(), striped.getAvailableTokens(),
+                        entry.getCapacity()));
+            }
+        }
+        return statuses;
+    }
+
+    /**
+     * Replaces the bucket of the entry with a striped one holding its tokens.
+     */
+    private void promote(BucketKey key, BucketEntry entry) {
+        bucketStore.computeIfPresent(key, (k, current) -> {
+            if (current != entry || current.getBucket() instanceof StripedBucket) {
+                return current;
+            }
+            Bandwidth bandwidth = current.getBandwidth();
+            int stripes = StripedBucket.stripesFor(bandwidth, settings.getMaxStripes());
+            if (stripes < 2) {
+                return current;
+            }
+
+            StripedBucket striped = new StripedBucket(bandwidth, stripes,
+                    configuration -> bucketBackend.create(k, configuration));
+            long tokens = current.getBucket().tryConsumeAsMuchAsPossible();
+            consumeAllBut(striped, bandwidth.getCapacity(), tokens);
+            current.replaceBucket(striped);
+            hot.put(k, current);
+
+            log.info("Striped hot bucket {} into {} stripes", k, stripes);
+            return current;
+        });
+    }
+
+    /**
+     * Replaces the striped bucket of the entry with a single bucket holding its tokens.
+     */
+    private void demote(BucketKey key, BucketEntry entry) {
+        bucketStore.computeIfPresent(key, (k, current) -> {
+            if (current != entry || !(current.getBucket() instanceof StripedBucket striped)) {
+                return current;
+            }
+            Bandwidth bandwidth = current.getBandwidth();
+            Bucket bucket = bucketBackend.create(k, BucketConfiguration.builder().addLimit(bandwidth).build());
+            long tokens = striped.tryConsumeAsMuchAsPossible();
+            consumeAllBut(bucket, bandwidth.getCapacity(), tokens);
+            current.replaceBucket(bucket);
+
+            log.info("Unstriped cooled bucket {}", k);
+            return current;
+        });
+        hot.remove(key);
+    }
+
+    /**
+     * Decays the sketch, rebalances hot buckets and unstripes those that cooled down.
+     */
+    void maintain() {
+        try {
+            for (Map.Entry<BucketKey, BucketEntry> hotKey : hot.entrySet()) {
+                BucketKey key = hotKey.getKey();
+                BucketEntry entry = hotKey.getValue();
+                if (bucketStore.peek(key) != entry || !(entry.getBucket() instanceof StripedBucket striped)) {
+                    // Evicted, or dropped and rebuilt by a reconfiguration
+                    hot.remove(key);
+                } else if (estimatedRate(key) < settings.getThreshold() / 2) {
+                    demote(key, entry);
+                } else {
+                    striped.rebalance();
+                }
+            }
+            sketch.decay();
+        } catch (RuntimeException e) {
+            log.warn("Failed to maintain hot rate limiter buckets: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return the estimated requests per second of the key, assuming it is at its steady state
+     */
+    private long estimatedRate(BucketKey key) {
+        double samples = (double) sketch.estimate(key) * sketch.sampleRate();
+        return (long) (samples * TimeUnit.SECONDS.toNanos(1) / (2.0 * settings.getInterval().toNanos()));
+    }
+
+    /**
+     * Consumes tokens from a full bucket until only {@code tokens} are left.
+     */
+    private static void consumeAllBut(Bucket bucket, long capacity, long tokens) {
+        if (tokens < capacity) {
+            bucket.tryConsumeAsMuchAsPossible(capacity - tokens);
+        }
+    }
+}
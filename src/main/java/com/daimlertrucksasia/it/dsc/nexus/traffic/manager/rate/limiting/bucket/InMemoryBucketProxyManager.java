@@ -0,0 +1,98 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket;
+
+import io.github.bucket4j.distributed.proxy.ClientSideConfig;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.AbstractCompareAndSwapBasedProxyManager;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.AsyncCompareAndSwapOperation;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.CompareAndSwapOperation;
+import io.github.bucket4j.distributed.remote.RemoteBucketState;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Compare-and-swap proxy manager over a map in this JVM.
+ * <p>
+ * Stand-in for the shared store in tests and local runs: several gateway instances in one JVM
+ * that share this manager behave like replicas sharing MongoDB. State is never expired.
+ * </p>
+ */
+public class InMemoryBucketProxyManager extends AbstractCompareAndSwapBasedProxyManager<String> {
+
+    /**
+     * Serialised bucket state by key.
+     */
+    private final ConcurrentMap<String, byte[]> states = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an empty in-memory store.
+     */
+    public InMemoryBucketProxyManager() {
+        super(ClientSideConfig.getDefault());
+    }
+
+    @Override
+    protected CompareAndSwapOperation beginCompareAndSwapOperation(String key) {
+        return new CompareAndSwapOperation() {
+            @Override
+            public Optional<byte[]> getStateData() {
+                return Optional.ofNullable(states.get(key));
+            }
+
+            @Override
+            public boolean compareAndSwap(byte[] originalData, byte[] newData, RemoteBucketState newState) {
+                return swap(key, originalData, newData);
+            }
+        };
+    }
+
+    @Override
+    protected AsyncCompareAndSwapOperation beginAsyncCompareAndSwapOperation(String key) {
+        return new AsyncCompareAndSwapOperation() {
+            @Override
+            public CompletableFuture<Optional<byte[]>> getStateData() {
+                return CompletableFuture.completedFuture(Optional.ofNullable(states.get(key)));
+            }
+
+            @Override
+            public CompletableFuture<Boolean> compareAndSwap(byte[] originalData, byte[] newData, RemoteBucketState newState) {
+                return CompletableFuture.completedFuture(swap(key, originalData, newData));
+            }
+        };
+    }
+
+    /**
+     * Replaces the state if it is still the array that was read. Comparing by identity is
+     * stricter than comparing content, since every write stores a new array.
+     */
+    private boolean swap(String key, byte[] originalData, byte[] newData) {
+        if (originalData == null) {
+            return states.putIfAbsent(key, newData) == null;
+        }
+        return states.replace(key, originalData, newData);
+    }
+
+    @Override
+    public void removeProxy(String key) {
+        states.remove(key);
+    }
+
+    @Override
+    protected CompletableFuture<Void> removeAsync(String key) {
+        states.remove(key);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public boolean isAsyncModeSupported() {
+        return true;
+    }
+
+    /**
+     * @return the number of buckets held
+     */
+    public int size() {
+        return states.size();
+    }
+}
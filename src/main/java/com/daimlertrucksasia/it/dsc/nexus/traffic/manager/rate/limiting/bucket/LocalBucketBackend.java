@@ -0,0 +1,57 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket;
+
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.local.LocalBucketBuilder;
+import io.github.bucket4j.local.SynchronizationStrategy;
+
+/**
+ * {@link BucketBackend} keeping every bucket in this JVM.
+ * <p>
+ * Bucket4j buckets use {@link SynchronizationStrategy#SYNCHRONIZED}, which updates state in place,
+ * whereas the lock-free strategy copies the state on every consumption. With the compact engine,
+ * configurations a {@link CompactBucket} can represent get one instead.
+ * </p>
+ */
+public class LocalBucketBackend implements BucketBackend {
+
+    /**
+     * Whether to build {@link CompactBucket}s where possible.
+     */
+    private final boolean compact;
+
+    /**
+     * Creates a backend building Bucket4j buckets.
+     */
+    public LocalBucketBackend() {
+        this(false);
+    }
+
+    /**
+     * Creates a backend.
+     *
+     * @param compact whether to build {@link CompactBucket}s where possible
+     */
+    public LocalBucketBackend(boolean compact) {
+        this.compact = compact;
+    }
+
+    @Override
+    public Bucket create(BucketKey key, BucketConfiguration configuration) {
+        if (compact && CompactBucket.supports(configuration)) {
+            return new CompactBucket(configuration);
+        }
+        LocalBucketBuilder builder = Bucket.builder()
+                .withSynchronizationStrategy(SynchronizationStrategy.SYNCHRONIZED);
+        for (Bandwidth bandwidth : configuration.getBandwidths()) {
+            builder.addLimit(bandwidth);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public boolean isDistributed() {
+        return false;
+    }
+}
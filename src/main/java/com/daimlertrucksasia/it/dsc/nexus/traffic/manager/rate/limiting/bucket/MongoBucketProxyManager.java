@@ -0,0 +1,163 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket;
+
+import io.github.bucket4j.distributed.proxy.ClientSideConfig;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.AbstractCompareAndSwapBasedProxyManager;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.AsyncCompareAndSwapOperation;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.CompareAndSwapOperation;
+import io.github.bucket4j.distributed.remote.RemoteBucketState;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Compare-and-swap proxy manager storing bucket state in a MongoDB collection.
+ * <p>
+ * Each bucket is one document holding its serialised state. A consumption reads the document,
+ * applies the command locally and writes the new state back only if the stored state is still
+ * the one that was read; on conflict Bucket4j retries with fresh state. Documents carry an
+ * {@code expireAt} date maintained by a TTL index, set to when the bucket would be full again
+ * plus a retention period, so idle buckets disappear without handing out free tokens.
+ * </p>
+ * <p>
+ * All I/O goes through the reactive driver: only the asynchronous bucket API is supported, and
+ * the blocking operations of {@link io.github.bucket4j.distributed.proxy.ProxyManager} throw.
+ * </p>
+ */
+public class MongoBucketProxyManager extends AbstractCompareAndSwapBasedProxyManager<String> {
+
+    private static final String ID = "_id";
+
+    private static final String STATE = "state";
+
+    private static final String EXPIRE_AT = "expireAt";
+
+    /**
+     * Template used for all reads and writes of bucket state.
+     */
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    /**
+     * Name of the collection holding bucket state.
+     */
+    private final String collection;
+
+    /**
+     * How long a full bucket is kept after its last write.
+     */
+    private final Duration retention;
+
+    /**
+     * Creates a proxy manager over the given collection.
+     *
+     * @param reactiveMongoTemplate template used for all reads and writes of bucket state
+     * @param collection            name of the collection holding bucket state
+     * @param retention             how long a full bucket is kept after its last write
+     */
+    public MongoBucketProxyManager(ReactiveMongoTemplate reactiveMongoTemplate, String collection, Duration retention) {
+        super(ClientSideConfig.getDefault());
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.collection = collection;
+        this.retention = retention;
+    }
+
+    /**
+     * Creates the TTL index expiring idle bucket documents.
+     *
+     * @return the name of the index, once created
+     */
+    public Mono<String> createIndexes() {
+        return reactiveMongoTemplate.indexOps(collection)
+                .createIndex(new Index().on(EXPIRE_AT, Sort.Direction.ASC).expire(Duration.ZERO));
+    }
+
+    /**
+     * Not supported: bucket state is only accessed through the asynchronous API.
+     */
+    @Override
+    protected CompareAndSwapOperation beginCompareAndSwapOperation(String key) {
+        throw new UnsupportedOperationException("MongoDB buckets are asynchronous only");
+    }
+
+    @Override
+    protected AsyncCompareAndSwapOperation beginAsyncCompareAndSwapOperation(String key) {
+        return new AsyncCompareAndSwapOperation() {
+            @Override
+            public CompletableFuture<Optional<byte[]>> getStateData() {
+                return reactiveMongoTemplate.findById(key, Document.class, collection)
+                        .map(document -> Optional.of(stateOf(document)))
+                        .defaultIfEmpty(Optional.empty())
+                        .toFuture();
+            }
+
+            @Override
+            public CompletableFuture<Boolean> compareAndSwap(byte[] originalData, byte[] newData, RemoteBucketState newState) {
+                Date expireAt = expireAt(newState);
+                Mono<Boolean> swapped = originalData == null
+                        ? reactiveMongoTemplate.insert(newDocument(key, newData, expireAt), collection)
+                                .thenReturn(true)
+                                .onErrorReturn(DuplicateKeyException.class, false)
+                        : reactiveMongoTemplate.updateFirst(stateQuery(key, originalData), stateUpdate(newData, expireAt), collection)
+                                .map(result -> result.getMatchedCount() == 1);
+                return swapped.toFuture();
+            }
+        };
+    }
+
+    /**
+     * Not supported: bucket state is only accessed through the asynchronous API.
+     */
+    @Override
+    public void removeProxy(String key) {
+        throw new UnsupportedOperationException("MongoDB buckets are asynchronous only");
+    }
+
+    @Override
+    protected CompletableFuture<Void> removeAsync(String key) {
+        return reactiveMongoTemplate.remove(Query.query(where(ID).is(key)), collection).then().toFuture();
+    }
+
+    @Override
+    public boolean isAsyncModeSupported() {
+        return true;
+    }
+
+    private static Document newDocument(String key, byte[] state, Date expireAt) {
+        return new Document(ID, key).append(STATE, new Binary(state)).append(EXPIRE_AT, expireAt);
+    }
+
+    private static Query stateQuery(String key, byte[] state) {
+        return Query.query(where(ID).is(key).and(STATE).is(new Binary(state)));
+    }
+
+    private static Update stateUpdate(byte[] state, Date expireAt) {
+        return new Update().set(STATE, new Binary(state)).set(EXPIRE_AT, expireAt);
+    }
+
+    private static byte[] stateOf(Document document) {
+        Object state = document.get(STATE);
+        return state instanceof Binary binary ? binary.getData() : (byte[]) state;
+    }
+
+    /**
+     * @return the time the bucket would be full again, plus the retention period
+     */
+    private Date expireAt(RemoteBucketState state) {
+        long nowMillis = System.currentTimeMillis();
+        long refillNanos = state.calculateFullRefillingTime(TimeUnit.MILLISECONDS.toNanos(nowMillis));
+        return new Date(nowMillis + TimeUnit.NANOSECONDS.toMillis(refillNanos) + retention.toMillis());
+    }
+}
@@ -0,0 +1,66 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket;
+
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.distributed.AsyncBucketProxy;
+import io.github.bucket4j.distributed.proxy.AsyncProxyManager;
+import io.github.bucket4j.distributed.proxy.RemoteAsyncBucketBuilder;
+import io.github.bucket4j.distributed.proxy.optimization.Optimization;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link BucketBackend} keeping bucket state in a store shared by all gateway replicas,
+ * accessed through a Bucket4j {@link AsyncProxyManager}.
+ * <p>
+ * Without an optimization every consumption is a compare-and-swap round trip to the store.
+ * With a delaying optimization (hybrid mode) each node consumes locally and synchronises in
+ * batches, so the cluster-wide limit can be exceeded by at most the unsynchronised tokens
+ * of each replica. Buckets are only built as {@link AsyncBucketProxy asynchronous proxies}.
+ * </p>
+ */
+public class ProxyBucketBackend implements BucketBackend {
+
+    /**
+     * Asynchronous proxy manager of the shared store, keyed by {@code clientId:route}.
+     */
+    private final AsyncProxyManager<String> proxyManager;
+
+    /**
+     * Optimization applied to every bucket proxy, or {@code null} to synchronise on each call.
+     */
+    private final Optimization optimization;
+
+    /**
+     * Creates a backend over the given proxy manager.
+     *
+     * @param proxyManager the asynchronous proxy manager of the shared store
+     * @param optimization the optimization applied to bucket proxies, or {@code null}
+     */
+    public ProxyBucketBackend(AsyncProxyManager<String> proxyManager, Optimization optimization) {
+        this.proxyManager = proxyManager;
+        this.optimization = optimization;
+    }
+
+    /**
+     * Not available: a synchronous bucket would block on every store round trip.
+     */
+    @Override
+    public Bucket create(BucketKey key, BucketConfiguration configuration) {
+        throw new IllegalStateException("Buckets in a shared store are only built with createAsync: " + key);
+    }
+
+    @Override
+    public AsyncBucketProxy createAsync(BucketKey key, BucketConfiguration configuration) {
+        RemoteAsyncBucketBuilder<String> builder = proxyManager.builder();
+        if (optimization != null) {
+            builder = builder.withOptimization(optimization);
+        }
+        return builder.build(key.toString(), () -> CompletableFuture.completedFuture(configuration));
+    }
+
+    @Override
+    public boolean isDistributed() {
+        return true;
+    }
+}
@@ -0,0 +1,379 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket;
+
+import io.github.bucket4j.AbstractBucket;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.BucketListener;
+import io.github.bucket4j.ConsumptionProbe;
+import io.github.bucket4j.EstimationProbe;
+import io.github.bucket4j.Nothing;
+import io.github.bucket4j.Refill;
+import io.github.bucket4j.TokensInheritanceStrategy;
+import io.github.bucket4j.VerboseResult;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Token bucket split into independent stripes, so threads consuming from one heavily used
+ * bucket do not all contend on the same state.
+ * <p>
+ * Each stripe gets an equal share of the capacity and of the refill rate; together they enforce
+ * the limit of the original bandwidth. A thread consumes from its home stripe and only moves on
+ * to the other stripes when that one is empty, so a request is rejected only when no stripe has
+ * a token. {@link #rebalance()} periodically evens out the tokens between stripes, moving tokens
+ * from full stripes to empty ones but never adding any.
+ * </p>
+ * <p>
+ * A single consumption is served by one stripe, so it may take at most the capacity of a stripe;
+ * the gateway consumes one token per request. Probes report the wait of the stripe that refills
+ * first. Blocking and scheduled consumption reserve the tokens on that stripe, and consumption
+ * ignoring the limits takes its debt on the home stripe. Added and force-added tokens are spread
+ * evenly over the stripes.
+ * </p>
+ * <p>
+ * Verbose results carry the value for the whole bucket, with the configuration and state of the
+ * calling thread's home stripe read right after the call.
+ * </p>
+ */
+public class StripedBucket extends AbstractBucket {
+
+    /**
+     * The stripes, each enforcing its share of the limit.
+     */
+    private final Bucket[] stripes;
+
+    /**
+     * Creates a full striped bucket.
+     *
+     * @param bandwidth     the limit to split, which must {@linkplain #stripesFor allow} the stripe count
+     * @param stripeCount   the number of stripes
+     * @param stripeFactory builds the bucket of one stripe from its share of the limit
+     */
+    public StripedBucket(Bandwidth bandwidth, int stripeCount, Function<BucketConfiguration, Bucket> stripeFactory) {
+        super(BucketListener.NOPE);
+        requireSplittable(bandwidth, stripeCount);
+        this.stripes = new Bucket[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = stripeFactory.apply(share(bandwidth, stripeCount, i));
+        }
+    }
+
+    /**
+     * Creates a view of the given stripes reporting to a listener.
+     */
+    private StripedBucket(Bucket[] stripes, BucketListener listener) {
+        super(listener);
+        this.stripes = stripes;
+    }
+
+    /**
+     * Returns the number of stripes a bandwidth can be split into, so that each stripe holds and
+     * refills at least one token.
+     *
+     * @param bandwidth  the bandwidth
+     * @param maxStripes the largest number of stripes wanted
+     * @return the number of stripes, or {@code 1} if the bandwidth cannot be striped
+     */
+    public static int stripesFor(Bandwidth bandwidth, int maxStripes) {
+        if (!bandwidth.isGready() || bandwidth.getInitialTokens() != bandwidth.getCapacity()) {
+            return 1;
+        }
+        long stripes = Math.min(maxStripes, Math.min(bandwidth.getCapacity(), bandwidth.getRefillTokens()));
+        return (int) Math.max(1, stripes);
+    }
+
+    /**
+     * @return the number of stripes
+     */
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * Evens out the available tokens between stripes. Tokens are taken from stripes above the
+     * average and added to those below it; tokens consumed concurrently are never given back.
+     */
+    public synchronized void rebalance() {
+        long[] available = new long[stripes.length];
+        long total = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            available[i] = stripes[i].getAvailableTokens();
+            total += available[i];
+        }
+        long average = total / stripes.length;
+
+        long surplus = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            if (available[i] > average) {
+                surplus += stripes[i].tryConsumeAsMuchAsPossible(available[i] - average);
+            }
+        }
+        for (int i = 0; i < stripes.length && surplus > 0; i++) {
+            if (available[i] < average) {
+                long added = Math.min(average - available[i], surplus);
+                stripes[i].addTokens(added);
+                surplus -= added;
+            }
+        }
+        // The remainder of the division is less than one token per stripe
+        for (int i = 0; i < stripes.length && surplus > 0; i++, surplus--) {
+            stripes[i].addTokens(1);
+        }
+    }
+
+    @Override
+    protected boolean tryConsumeImpl(long tokensToConsume) {
+        int home = home();
+        for (int i = 0; i < stripes.length; i++) {
+            if (stripes[(home + i) % stripes.length].tryConsume(tokensToConsume)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected ConsumptionProbe tryConsumeAndReturnRemainingTokensImpl(long tokensToConsume) {
+        int home = home();
+        long remaining = 0;
+        long nanosToWaitForRefill = Long.MAX_VALUE;
+        long nanosToWaitForReset = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            ConsumptionProbe probe = stripes[(home + i) % stripes.length].tryConsumeAndReturnRemaining(tokensToConsume);
+            if (probe.isConsumed()) {
+                return probe;
+            }
+            remaining += probe.getRemainingTokens();
+            nanosToWaitForRefill = Math.min(nanosToWaitForRefill, probe.getNanosToWaitForRefill());
+            nanosToWaitForReset = Math.max(nanosToWaitForReset, probe.getNanosToWaitForReset());
+        }
+        return ConsumptionProbe.rejected(remaining, nanosToWaitForRefill, nanosToWaitForReset);
+    }
+
+    @Override
+    protected EstimationProbe estimateAbilityToConsumeImpl(long tokensToConsume) {
+        long available = 0;
+        long nanosToWaitForRefill = Long.MAX_VALUE;
+        boolean canBeConsumed = false;
+        for (Bucket stripe : stripes) {
+            EstimationProbe probe = stripe.estimateAbilityToConsume(tokensToConsume);
+            available += probe.getRemainingTokens();
+            if (probe.canBeConsumed()) {
+                canBeConsumed = true;
+            } else {
+                nanosToWaitForRefill = Math.min(nanosToWaitForRefill, probe.getNanosToWaitForRefill());
+            }
+        }
+        return canBeConsumed
+                ? EstimationProbe.canBeConsumed(available)
+                : EstimationProbe.canNotBeConsumed(available, nanosToWaitForRefill);
+    }
+
+    @Override
+    protected long consumeAsMuchAsPossibleImpl(long limit) {
+        long consumed = 0;
+        for (int i = 0; i < stripes.length && consumed < limit; i++) {
+            consumed += stripes[i].tryConsumeAsMuchAsPossible(limit - consumed);
+        }
+        return consumed;
+    }
+
+    @Override
+    protected void addTokensImpl(long tokensToAdd) {
+        for (int i = 0; i < stripes.length; i++) {
+            long share = share(tokensToAdd, stripes.length, i);
+            if (share > 0) {
+                stripes[i].addTokens(share);
+            }
+        }
+    }
+
+    @Override
+    public long getAvailableTokens() {
+        long available = 0;
+        for (Bucket stripe : stripes) {
+            available += stripe.getAvailableTokens();
+        }
+        return available;
+    }
+
+    @Override
+    public void reset() {
+        for (Bucket stripe : stripes) {
+            stripe.reset();
+        }
+    }
+
+    /**
+     * Splits the new limit across the existing stripes; each stripe carries its tokens over
+     * with the given strategy.
+     *
+     * @throws IllegalArgumentException if the new limit cannot be split into as many stripes
+     */
+    @Override
+    protected synchronized void replaceConfigurationImpl(BucketConfiguration newConfiguration,
+                                                         TokensInheritanceStrategy tokensInheritanceStrategy) {
+        Bandwidth[] bandwidths = newConfiguration.getBandwidths();
+        if (bandwidths.length != 1) {
+            throw new IllegalArgumentException(getClass().getSimpleName() + " supports a single bandwidth: "
+                    + newConfiguration);
+        }
+        requireSplittable(bandwidths[0], stripes.length);
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i].replaceConfiguration(share(bandwidths[0], stripes.length, i), tokensInheritanceStrategy);
+        }
+    }
+
+    /**
+     * @return the index of the calling thread's home stripe
+     */
+    private int home() {
+        return (int) (Thread.currentThread().getId() % stripes.length);
+    }
+
+    /**
+     * @return the configuration of one stripe: its share of the capacity and of the refill rate
+     */
+    private static BucketConfiguration share(Bandwidth bandwidth, int stripeCount, int stripe) {
+        long capacity = share(bandwidth.getCapacity(), stripeCount, stripe);
+        long refillTokens = share(bandwidth.getRefillTokens(), stripeCount, stripe);
+        return BucketConfiguration.builder()
+                .addLimit(Bandwidth.classic(capacity,
+                        Refill.greedy(refillTokens, Duration.ofNanos(bandwidth.getRefillPeriodNanos()))))
+                .build();
+    }
+
+    /**
+     * @return the share of a stripe, handing the remainder out one by one to the first stripes
+     */
+    private static long share(long total, int stripeCount, int stripe) {
+        return total / stripeCount + (stripe < total % stripeCount ? 1 : 0);
+    }
+
+    private static void requireSplittable(Bandwidth bandwidth, int stripeCount) {
+        if (stripeCount < 1 || stripesFor(bandwidth, stripeCount) < stripeCount) {
+            throw new IllegalArgumentException("Cannot split " + bandwidth + " into " + stripeCount + " stripes");
+        }
+    }
+
+    /**
+     * Consumes from any stripe with enough tokens, or else reserves the tokens on the stripe that
+     * refills first by consuming them ignoring its limit. A reservation whose wait turns out longer
+     * than allowed, because of concurrent consumption, is given back.
+     */
+    @Override
+    protected long reserveAndCalculateTimeToSleepImpl(long tokensToConsume, long waitIfBusyNanos) {
+        if (tryConsumeImpl(tokensToConsume)) {
+            return 0;
+        }
+        Bucket soonest = null;
+        long soonestNanos = INFINITY_DURATION;
+        for (Bucket stripe : stripes) {
+            EstimationProbe probe = stripe.estimateAbilityToConsume(tokensToConsume);
+            long nanos = probe.canBeConsumed() ? 0 : probe.getNanosToWaitForRefill();
+            if (nanos < soonestNanos) {
+                soonest = stripe;
+                soonestNanos = nanos;
+            }
+        }
+        if (soonest == null || soonestNanos > waitIfBusyNanos) {
+            return INFINITY_DURATION;
+        }
+
+        long nanosToSleep = soonest.consumeIgnoringRateLimits(tokensToConsume);
+        if (nanosToSleep > waitIfBusyNanos) {
+            soonest.addTokens(tokensToConsume);
+            return INFINITY_DURATION;
+        }
+        return nanosToSleep;
+    }
+
+    @Override
+    protected long consumeIgnoringRateLimitsImpl(long tokensToConsume) {
+        return stripes[home()].consumeIgnoringRateLimits(tokensToConsume);
+    }
+
+    @Override
+    protected void forceAddTokensImpl(long tokensToAdd) {
+        for (int i = 0; i < stripes.length; i++) {
+            long share = share(tokensToAdd, stripes.length, i);
+            if (share > 0) {
+                stripes[i].forceAddTokens(share);
+            }
+        }
+    }
+
+    @Override
+    public Bucket toListenable(BucketListener listener) {
+        return new StripedBucket(stripes, listener);
+    }
+
+    @Override
+    protected VerboseResult<Long> consumeAsMuchAsPossibleVerboseImpl(long limit) {
+        return verbose(consumeAsMuchAsPossibleImpl(limit));
+    }
+
+    @Override
+    protected VerboseResult<Boolean> tryConsumeVerboseImpl(long tokensToConsume) {
+        return verbose(tryConsumeImpl(tokensToConsume));
+    }
+
+    @Override
+    protected VerboseResult<ConsumptionProbe> tryConsumeAndReturnRemainingTokensVerboseImpl(long tokensToConsume) {
+        return verbose(tryConsumeAndReturnRemainingTokensImpl(tokensToConsume));
+    }
+
+    @Override
+    protected VerboseResult<EstimationProbe> estimateAbilityToConsumeVerboseImpl(long tokensToConsume) {
+        return verbose(estimateAbilityToConsumeImpl(tokensToConsume));
+    }
+
+    @Override
+    protected VerboseResult<Long> getAvailableTokensVerboseImpl() {
+        return verbose(getAvailableTokens());
+    }
+
+    @Override
+    protected VerboseResult<Nothing> addTokensVerboseImpl(long tokensToAdd) {
+        addTokensImpl(tokensToAdd);
+        return verbose(Nothing.INSTANCE);
+    }
+
+    @Override
+    protected VerboseResult<Nothing> forceAddTokensVerboseImpl(long tokensToAdd) {
+        forceAddTokensImpl(tokensToAdd);
+        return verbose(Nothing.INSTANCE);
+    }
+
+    @Override
+    protected VerboseResult<Nothing> resetVerboseImpl() {
+        reset();
+        return verbose(Nothing.INSTANCE);
+    }
+
+    @Override
+    protected VerboseResult<Nothing> replaceConfigurationVerboseImpl(BucketConfiguration newConfiguration,
+                                                                     TokensInheritanceStrategy tokensInheritanceStrategy) {
+        replaceConfigurationImpl(newConfiguration, tokensInheritanceStrategy);
+        return verbose(Nothing.INSTANCE);
+    }
+
+    @Override
+    protected VerboseResult<Long> consumeIgnoringRateLimitsVerboseImpl(long tokensToConsume) {
+        return verbose(consumeIgnoringRateLimitsImpl(tokensToConsume));
+    }
+
+    /**
+     * @return the value, with the configuration and current state of the calling thread's home stripe
+     */
+    private <T> VerboseResult<T> verbose(T value) {
+        return stripes[home()].asVerbose().getAvailableTokens().map(ignored -> value);
+    }
+
+    @Override
+    public String toString() {
+        return "StripedBucket{availableTokens=" + getAvailableTokens() + ", stripes=" + stripes.length + '}';
+    }
+}
@@ -0,0 +1,32 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket;
+
+import lombok.Value;
+
+/**
+ * How long throttled requests may wait for a token of a bucket, and how many may wait at once.
+ */
+@Value
+public class WaitPolicy {
+
+    /**
+     * Policy that rejects throttled requests immediately.
+     */
+    public static final WaitPolicy NONE = new WaitPolicy(0, 0);
+
+    /**
+     * Maximum time a request may wait for a token, in nanoseconds. {@code 0} disables waiting.
+     */
+    long maxWaitNanos;
+
+    /**
+     * Maximum number of requests waiting on the bucket at the same time.
+     */
+    int maxQueueDepth;
+
+    /**
+     * @return whether throttled requests may wait at all
+     */
+    public boolean isWaitingEnabled() {
+        return maxWaitNanos > 0 && maxQueueDepth > 0;
+    }
+}
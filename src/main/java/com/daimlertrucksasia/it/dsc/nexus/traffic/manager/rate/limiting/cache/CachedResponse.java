@@ -0,0 +1,79 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.cache;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A downstream response held in the {@link ResponseCache}.
+ * <p>
+ * The body is kept either in a heap array or in a direct buffer outside the heap. It is never
+ * modified after the response is stored, so it is handed out as a read-only view.
+ * </p>
+ */
+public final class CachedResponse {
+
+    private final HttpStatusCode status;
+
+    private final HttpHeaders headers;
+
+    private final ByteBuffer body;
+
+    private final long storedAtMillis;
+
+    /**
+     * @param status  the response status
+     * @param headers the response headers to replay
+     * @param body    the response body
+     * @param offHeap whether to copy the body outside the heap
+     */
+    CachedResponse(HttpStatusCode status, HttpHeaders headers, byte[] body, boolean offHeap) {
+        this.status = status;
+        this.headers = HttpHeaders.readOnlyHttpHeaders(headers);
+        if (offHeap) {
+            this.body = ByteBuffer.allocateDirect(body.length).put(body).flip();
+        } else {
+            this.body = ByteBuffer.wrap(body);
+        }
+        this.storedAtMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the response status
+     */
+    public HttpStatusCode getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the response headers, read-only
+     */
+    public HttpHeaders getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @param bufferFactory the factory of the response being written
+     * @return the body wrapped without copying
+     */
+    public DataBuffer body(DataBufferFactory bufferFactory) {
+        return bufferFactory.wrap(body.asReadOnlyBuffer());
+    }
+
+    /**
+     * @return the body size in bytes
+     */
+    public int size() {
+        return body.capacity();
+    }
+
+    /**
+     * @return the time since the response was stored, in whole seconds
+     */
+    public long ageSeconds() {
+        return (System.currentTimeMillis() - storedAtMillis) / 1000;
+    }
+}
@@ -0,0 +1,168 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.cfg.JsonNodeFeature;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.MultiValueMap;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Computes the response cache key of a GraphQL request.
+ * <p>
+ * The key is a SHA-256 hash over the route, the path, the {@code X-Client-Id} and tenant
+ * headers, the configured vary headers, the
+ * operation name, the variables serialized with sorted properties, and either the
+ * {@link GraphQLDocument normalized} query or, for automatic persisted queries sent without
+ * a query, the {@code extensions.persistedQuery.sha256Hash}. A client-supplied hash is only
+ * trusted when there is no query, so it cannot be used to store a different query's response
+ * under a popular key. The client and tenant are always part of the key, so a response is never
+ * served to another client or tenant whatever the vary headers are.
+ * </p>
+ * <p>
+ * Mutations, subscriptions, batched requests and anything that does not parse are not
+ * cacheable and get no key.
+ * </p>
+ */
+public final class GraphQLCacheKey {
+
+    /**
+     * Header identifying the client, always part of the key.
+     */
+    public static final String CLIENT_ID_HEADER = "X-Client-Id";
+
+    private final ObjectMapper mapper;
+
+    /**
+     * Mapper writing object properties in sorted order, for a canonical form of the variables.
+     */
+    private final ObjectMapper canonicalMapper;
+
+    /**
+     * Request headers whose values are part of the key: the client and tenant headers followed
+     * by the configured vary headers, each once.
+     */
+    private final List<String> keyHeaders;
+
+    /**
+     * @param mapper       the application's object mapper
+     * @param tenantHeader header identifying the tenant, or {@code null} if requests carry none
+     * @param varyHeaders  further request headers whose values are part of the key
+     */
+    public GraphQLCacheKey(ObjectMapper mapper, String tenantHeader, List<String> varyHeaders) {
+        this.mapper = mapper;
+        this.canonicalMapper = mapper.copy().configure(JsonNodeFeature.WRITE_PROPERTIES_SORTED, true);
+        List<String> headers = new ArrayList<>();
+        addHeader(headers, CLIENT_ID_HEADER);
+        addHeader(headers, tenantHeader);
+        varyHeaders.forEach(header -> addHeader(headers, header));
+        this.keyHeaders = List.copyOf(headers);
+    }
+
+    /**
+     * Computes the key of a GraphQL POST request.
+     *
+     * @param routeId the gateway route ID
+     * @param path    the request path
+     * @param headers the request headers
+     * @param body    the JSON request body
+     * @return the key, or {@code null} if the request is not cacheable
+     */
+    public String ofBody(String routeId, String path, HttpHeaders headers, String body) {
+        try {
+            JsonNode request = mapper.readTree(body);
+            if (request == null || !request.isObject()) {
+                return null;
+            }
+            return key(routeId, path, headers, text(request.get("query")), text(request.get("operationName")),
+                    request.get("variables"), request.get("extensions"));
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Computes the key of a GraphQL GET request.
+     *
+     * @param routeId the gateway route ID
+     * @param path    the request path
+     * @param headers the request headers
+     * @param params  the query parameters
+     * @return the key, or {@code null} if the request is not cacheable
+     */
+    public String ofQueryParams(String routeId, String path, HttpHeaders headers, MultiValueMap<String, String> params) {
+        try {
+            String variables = params.getFirst("variables");
+            String extensions = params.getFirst("extensions");
+            return key(routeId, path, headers, params.getFirst("query"), params.getFirst("operationName"),
+                    variables != null ? mapper.readTree(variables) : null,
+                    extensions != null ? mapper.readTree(extensions) : null);
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    private String key(String routeId, String path, HttpHeaders headers, String query, String operationName,
+                       JsonNode variables, JsonNode extensions) throws JsonProcessingException {
+        String document;
+        if (query != null) {
+            document = GraphQLDocument.normalizeQuery(query);
+            if (document == null) {
+                return null;
+            }
+            document = "Q" + document;
+        } else {
+            String hash = extensions != null ? text(extensions.path("persistedQuery").get("sha256Hash")) : null;
+            if (hash == null) {
+                return null;
+            }
+            document = "P" + hash;
+        }
+
+        MessageDigest digest = sha256();
+        update(digest, routeId);
+        update(digest, path);
+        for (String header : keyHeaders) {
+            update(digest, header);
+            List<String> values = headers.get(header);
+            update(digest, values != null ? String.join(",", values) : "");
+        }
+        update(digest, operationName != null ? operationName : "");
+        update(digest, document);
+        if (variables != null && !variables.isNull()) {
+            digest.update(canonicalMapper.writeValueAsBytes(variables));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void addHeader(List<String> headers, String header) {
+        if (header != null && !header.isBlank()
+                && headers.stream().noneMatch(existing -> existing.equalsIgnoreCase(header.trim()))) {
+            headers.add(header.trim());
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static String text(JsonNode node) {
+        return node != null && node.isTextual() ? node.asText() : null;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
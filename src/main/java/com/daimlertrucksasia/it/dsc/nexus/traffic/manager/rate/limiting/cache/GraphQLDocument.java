@@ -0,0 +1,121 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.cache;
+
+/**
+ * Normalizes GraphQL documents so that queries differing only in layout share a cache key.
+ * <p>
+ * The document is tokenized once: whitespace, commas and comments are dropped, string
+ * literals are kept verbatim, and a single space is only put back between two tokens that
+ * would otherwise merge. The first token of every top-level definition is checked as well,
+ * so documents containing a mutation or a subscription are recognized without a full parse.
+ * </p>
+ */
+final class GraphQLDocument {
+
+    private GraphQLDocument() {
+    }
+
+    /**
+     * Returns the normalized form of a document that only contains queries and fragments.
+     *
+     * @param document the GraphQL document
+     * @return the normalized document, or {@code null} if it contains a mutation or subscription
+     * or is not well formed
+     */
+    static String normalizeQuery(String document) {
+        StringBuilder out = new StringBuilder(document.length());
+        int depth = 0;
+        boolean definitionStart = true;
+        boolean previousWord = false;
+        int length = document.length();
+        int i = 0;
+
+        while (i < length) {
+            char c = document.charAt(i);
+
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == ',' || c == '\uFEFF') {
+                i++;
+            } else if (c == '#') {
+                while (i < length && document.charAt(i) != '\n' && document.charAt(i) != '\r') {
+                    i++;
+                }
+            } else if (c == '"') {
+                int end = endOfString(document, i);
+                if (end < 0) {
+                    return null;
+                }
+                out.append(document, i, end);
+                previousWord = false;
+                definitionStart = false;
+                i = end;
+            } else if (isNameStart(c) || c == '-' || Character.isDigit(c)) {
+                int start = i;
+                do {
+                    i++;
+                } while (i < length && isWordPart(document.charAt(i)));
+                if (definitionStart && depth == 0) {
+                    String keyword = document.substring(start, i);
+                    if (keyword.equals("mutation") || keyword.equals("subscription")) {
+                        return null;
+                    }
+                }
+                if (previousWord) {
+                    out.append(' ');
+                }
+                out.append(document, start, i);
+                previousWord = true;
+                definitionStart = false;
+            } else {
+                if (c == '{' || c == '(' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ')' || c == ']') {
+                    if (--depth < 0) {
+                        return null;
+                    }
+                    definitionStart = depth == 0 && c == '}';
+                }
+                out.append(c);
+                previousWord = false;
+                i++;
+            }
+        }
+        return depth == 0 ? out.toString() : null;
+    }
+
+    /**
+     * @return the index after the string or block string starting at {@code start}, or {@code -1} if unterminated
+     */
+    private static int endOfString(String document, int start) {
+        if (document.startsWith("\"\"\"", start)) {
+            int end = start + 3;
+            while (true) {
+                end = document.indexOf("\"\"\"", end);
+                if (end < 0) {
+                    return -1;
+                }
+                if (document.charAt(end - 1) != '\\') {
+                    return end + 3;
+                }
+                end++;
+            }
+        }
+        for (int i = start + 1; i < document.length(); i++) {
+            char c = document.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '"') {
+                return i + 1;
+            } else if (c == '\n' || c == '\r') {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isNameStart(char c) {
+        return c == '_' || (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+
+    private static boolean isWordPart(char c) {
+        return isNameStart(c) || (c >= '0' && c <= '9') || c == '.' || c == '+' || c == '-';
+    }
+}
@@ -0,0 +1,185 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.cache;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.config.RateLimiterProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Upstream calls in progress by request key, so identical requests can share one call.
+ * <p>
+ * The first request with a key {@link #join joins} as the leader and is forwarded; requests
+ * with the same key arriving before the leader's response is complete wait for it and get a
+ * copy. At most {@code maxWaiters} requests wait per call and each waits at most
+ * {@code maxWait}; requests over the bound, waiters that time out, and waiters of a call whose
+ * response cannot be shared are forwarded on their own instead. A response is not shared if
+ * it sets cookies, is larger than the response cache's {@code maxResponseSize} or fails.
+ * </p>
+ * <ul>
+ *     <li><b>nexus.coalescing.requests</b> – requests by role: {@code leader} forwarded for a
+ *     group, {@code follower} answered with a leader's response, {@code fallback} forwarded on
+ *     their own after waiting or because the bound was reached. The coalescing ratio is
+ *     {@code follower / (leader + follower + fallback)}.</li>
+ *     <li><b>nexus.coalescing.inflight</b> – upstream calls being shared</li>
+ * </ul>
+ */
+@Component
+public class InFlightRequests {
+
+    /**
+     * Headers of the leader's response that are not replayed to followers.
+     */
+    private static final List<String> UNSHARED_HEADERS = List.of(HttpHeaders.CONTENT_LENGTH,
+            HttpHeaders.TRANSFER_ENCODING, HttpHeaders.CONNECTION, HttpHeaders.SET_COOKIE);
+
+    private final RateLimiterProperties.Coalescing settings;
+
+    private final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<>();
+
+    private final LongAdder leaders = new LongAdder();
+
+    private final LongAdder followers = new LongAdder();
+
+    private final LongAdder fallbacks = new LongAdder();
+
+    /**
+     * Creates the registry using the settings from {@link RateLimiterProperties.Coalescing}.
+     *
+     * @param properties rate limiter settings
+     * @param registry   the meter registry
+     */
+    public InFlightRequests(RateLimiterProperties properties, MeterRegistry registry) {
+        this.settings = properties.getCoalescing();
+
+        counter(registry, "leader", leaders);
+        counter(registry, "follower", followers);
+        counter(registry, "fallback", fallbacks);
+        Gauge.builder("nexus.coalescing.inflight", flights, Map::size)
+                .description("Upstream calls shared by identical requests")
+                .register(registry);
+    }
+
+    /**
+     * @return the settings of request coalescing
+     */
+    public RateLimiterProperties.Coalescing getSettings() {
+        return settings;
+    }
+
+    /**
+     * Joins the call in progress for a key, or starts one.
+     *
+     * @param key the request key
+     * @return the started call if the caller leads it and must forward the request; otherwise
+     * {@code null}, and the caller waits with {@link #await}
+     */
+    public Flight join(String key) {
+        Flight flight = new Flight(key);
+        Flight existing = flights.putIfAbsent(key, flight);
+        if (existing == null) {
+            leaders.increment();
+            return flight;
+        }
+        return null;
+    }
+
+    /**
+     * Waits for the response of the call in progress for a key.
+     *
+     * @param key the request key
+     * @return a {@link Mono} emitting the leader's response, or an empty {@link Optional} if the
+     * caller has to forward the request itself
+     */
+    public Mono<Optional<CachedResponse>> await(String key) {
+        Flight flight = flights.get(key);
+        if (flight == null || flight.waiters.incrementAndGet() > settings.getMaxWaiters()) {
+            fallbacks.increment();
+            return Mono.just(Optional.empty());
+        }
+        return flight.response.asMono()
+                .map(response -> {
+                    followers.increment();
+                    return Optional.of(response);
+                })
+                .timeout(settings.getMaxWait(), Mono.empty())
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    fallbacks.increment();
+                    return Optional.empty();
+                }));
+    }
+
+    /**
+     * Tells whether a response may be replayed to other callers, judging from its headers.
+     *
+     * @param headers the response headers
+     * @return whether the body should be captured for the followers
+     */
+    public boolean isShareable(HttpHeaders headers) {
+        return !headers.containsKey(HttpHeaders.SET_COOKIE);
+    }
+
+    private static void counter(MeterRegistry registry, String role, LongAdder count) {
+        FunctionCounter.builder("nexus.coalescing.requests", count, LongAdder::sum)
+                .description("Coalescible requests by role in their group")
+                .tag("role", role)
+                .register(registry);
+    }
+
+    /**
+     * An upstream call shared by the requests with the same key.
+     */
+    public final class Flight {
+
+        private final String key;
+
+        private final Sinks.One<CachedResponse> response = Sinks.one();
+
+        private final AtomicInteger waiters = new AtomicInteger();
+
+        private Flight(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Hands the leader's response to the waiters. Later requests start a new call.
+         *
+         * @param status  the response status
+         * @param headers the response headers
+         * @param body    the complete response body
+         */
+        public void complete(HttpStatusCode status, HttpHeaders headers, byte[] body) {
+            if (flights.remove(key, this)) {
+                HttpHeaders shared = new HttpHeaders();
+                headers.forEach((name, values) -> {
+                    if (UNSHARED_HEADERS.stream().noneMatch(name::equalsIgnoreCase)) {
+                        shared.addAll(name, values);
+                    }
+                });
+                response.tryEmitValue(new CachedResponse(status, shared, body, false));
+            }
+        }
+
+        /**
+         * Ends the call without a response to share; the waiters forward their own requests.
+         * Does nothing once the call completed.
+         */
+        public void abandon() {
+            if (flights.remove(key, this)) {
+                response.tryEmitEmpty();
+            }
+        }
+    }
+}
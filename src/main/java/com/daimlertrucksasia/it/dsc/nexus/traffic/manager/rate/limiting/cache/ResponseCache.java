@@ -0,0 +1,197 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.cache;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.config.RateLimiterProperties;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded cache of GraphQL query responses, keyed by {@link GraphQLCacheKey}.
+ * <p>
+ * Backed by Caffeine, weighted by body size so that {@code maxSize} bounds the memory held,
+ * and expiring entries {@code ttl} after they were stored. With {@code offHeap} the bodies are
+ * kept in direct buffers, leaving only small entry objects on the heap.
+ * </p>
+ * <p>
+ * Only successful JSON responses are stored: not with a {@code Set-Cookie} header, a content
+ * encoding, {@code Cache-Control: no-store} or {@code private}, nor with a top-level GraphQL
+ * {@code errors} member, since GraphQL reports errors with status 200.
+ * </p>
+ * <ul>
+ *     <li><b>nexus.cache.requests</b> – requests served from the cache ({@code hit}), forwarded
+ *     ({@code miss}) and not cacheable ({@code bypass})</li>
+ *     <li><b>nexus.cache.entries</b> – responses held</li>
+ *     <li><b>nexus.cache.size</b> – bytes of response bodies held</li>
+ * </ul>
+ */
+@Component
+public class ResponseCache {
+
+    /**
+     * Estimated bytes held per entry besides its body, counted against {@code maxSize}.
+     */
+    private static final int ENTRY_OVERHEAD = 256;
+
+    private static final MediaType GRAPHQL_RESPONSE = MediaType.parseMediaType("application/graphql-response+json");
+
+    private final RateLimiterProperties.ResponseCache settings;
+
+    private final Cache<String, CachedResponse> cache;
+
+    private final GraphQLCacheKey keys;
+
+    private final JsonFactory jsonFactory;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder bypasses = new LongAdder();
+
+    /**
+     * Creates the cache using the settings from {@link RateLimiterProperties.ResponseCache}.
+     *
+     * @param properties rate limiter settings
+     * @param mapper     the application's object mapper
+     * @param registry   the meter registry
+     */
+    public ResponseCache(RateLimiterProperties properties, ObjectMapper mapper, MeterRegistry registry) {
+        this.settings = properties.getResponseCache();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(settings.getMaxSize().toBytes())
+                .<String, CachedResponse>weigher((key, response) -> response.size() + ENTRY_OVERHEAD)
+                .expireAfterWrite(settings.getTtl())
+                .build();
+        this.keys = new GraphQLCacheKey(mapper, settings.getTenantHeader(), settings.getVaryHeaders());
+        this.jsonFactory = mapper.getFactory();
+
+        counter(registry, "hit", hits);
+        counter(registry, "miss", misses);
+        counter(registry, "bypass", bypasses);
+        Gauge.builder("nexus.cache.entries", cache, Cache::estimatedSize)
+                .description("Responses held by the response cache")
+                .register(registry);
+        Gauge.builder("nexus.cache.size", cache, c -> c.policy().eviction()
+                        .map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L))
+                .description("Bytes held by the response cache")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    /**
+     * @return the settings of the cache
+     */
+    public RateLimiterProperties.ResponseCache getSettings() {
+        return settings;
+    }
+
+    /**
+     * @return the key computation for requests
+     */
+    public GraphQLCacheKey keys() {
+        return keys;
+    }
+
+    /**
+     * Looks up a response, counting a hit or a miss.
+     *
+     * @param key the request's key
+     * @return the cached response, or {@code null}
+     */
+    public CachedResponse get(String key) {
+        CachedResponse response = cache.getIfPresent(key);
+        (response != null ? hits : misses).increment();
+        return response;
+    }
+
+    /**
+     * Counts a request that could not be cached.
+     */
+    public void bypass() {
+        bypasses.increment();
+    }
+
+    /**
+     * Tells whether a response may be stored, judging from its status and headers only.
+     *
+     * @param status  the response status
+     * @param headers the response headers
+     * @return whether the body should be captured
+     */
+    public boolean isStorable(HttpStatusCode status, HttpHeaders headers) {
+        if (status == null || status.value() != HttpStatus.OK.value() || headers.containsKey(HttpHeaders.SET_COOKIE)) {
+            return false;
+        }
+        String encoding = headers.getFirst(HttpHeaders.CONTENT_ENCODING);
+        if (encoding != null && !encoding.equalsIgnoreCase("identity")) {
+            return false;
+        }
+        String cacheControl = headers.getCacheControl();
+        if (cacheControl != null && (cacheControl.contains("no-store") || cacheControl.contains("private"))) {
+            return false;
+        }
+        MediaType contentType = headers.getContentType();
+        return contentType != null
+                && (contentType.isCompatibleWith(MediaType.APPLICATION_JSON) || contentType.isCompatibleWith(GRAPHQL_RESPONSE));
+    }
+
+    /**
+     * Stores a response unless its body carries GraphQL errors.
+     *
+     * @param key     the request's key
+     * @param status  the response status
+     * @param headers the response headers
+     * @param body    the complete response body
+     */
+    public void put(String key, HttpStatusCode status, HttpHeaders headers, byte[] body) {
+        if (hasErrors(body)) {
+            return;
+        }
+        HttpHeaders stored = new HttpHeaders();
+        stored.setContentType(headers.getContentType());
+        cache.put(key, new CachedResponse(status, stored, body, settings.isOffHeap()));
+    }
+
+    /**
+     * Scans the top-level members of the response for {@code errors}, without building a tree.
+     * A body that is not a JSON object counts as having errors.
+     */
+    private boolean hasErrors(byte[] body) {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return true;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                if (parser.currentName().equals("errors")) {
+                    return true;
+                }
+                parser.nextToken();
+                parser.skipChildren();
+            }
+            return false;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private static void counter(MeterRegistry registry, String result, LongAdder count) {
+        FunctionCounter.builder("nexus.cache.requests", count, LongAdder::sum)
+                .description("GraphQL requests by response cache result")
+                .tag("result", result)
+                .register(registry);
+    }
+}
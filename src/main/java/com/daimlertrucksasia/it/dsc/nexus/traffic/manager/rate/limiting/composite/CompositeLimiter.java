@@ -0,0 +1,301 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.composite;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.config.RateLimiterProperties;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketBackend;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketEntry;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketKey;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketStore;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.WaitPolicy;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.metrics.DecisionCounters;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.quota.Quota;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.quota.QuotaWindow;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.Refill;
+import io.github.bucket4j.distributed.AsyncBucketProxy;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Enforces the configured {@link LimitDimension}s together with the client's rule bucket.
+ * <p>
+ * A request takes one token from its client bucket and from the bucket of every dimension it has
+ * a key for, in a single pass. If any bucket denies, the tokens already taken are returned, so a
+ * request rejected by one limit does not use up the others. Dimensions the request has no key
+ * for, such as a missing tenant header, do not apply to it.
+ * </p>
+ * <p>
+ * The daily and monthly {@link Quota}s of the client's rule are checked first, in memory. A
+ * request denied by a bucket is uncounted again, so only forwarded requests use up a quota.
+ * </p>
+ * <p>
+ * Dimension buckets live in their own {@link BucketStore}, bounded and evicted like the client
+ * buckets, and are built by the same {@link BucketBackend}: with a shared backend a per-IP limit
+ * holds across all replicas. They are not reconfigured by rule changes, striped or reported per
+ * client. Shared buckets are consumed with {@link #tryConsumeAsync}, all at once, so a request
+ * waits for one store round trip rather than one per dimension.
+ * </p>
+ * <ul>
+ *     <li><b>nexus.ratelimiter.dimension.throttled</b> – requests rejected with 429 per dimension</li>
+ *     <li><b>nexus.ratelimiter.dimension.buckets</b> – dimension buckets held</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class CompositeLimiter {
+
+    /**
+     * Name reported for the client's rule bucket when it is the one that denied.
+     */
+    public static final String CLIENT_DIMENSION = "client";
+
+    private final List<LimitDimension> dimensions;
+
+    private final BucketBackend bucketBackend;
+
+    /**
+     * Buckets of all dimensions, keyed by extracted key and {@link LimitDimension#getKeyRoute()}.
+     */
+    private final BucketStore bucketStore;
+
+    /**
+     * Creates the limiter from the dimensions in {@link RateLimiterProperties#getDimensions()}.
+     *
+     * @param properties    rate limiter settings
+     * @param bucketBackend builds the dimension buckets
+     * @param objectMapper  parses JWT payloads for claim dimensions
+     * @param registry      the meter registry
+     * @throws IllegalArgumentException if a dimension is incomplete
+     */
+    public CompositeLimiter(RateLimiterProperties properties, BucketBackend bucketBackend,
+                            ObjectMapper objectMapper, MeterRegistry registry) {
+        this.bucketBackend = bucketBackend;
+        this.dimensions = properties.getDimensions().stream()
+                .map(settings -> dimension(settings, properties.getTrustedProxies(), objectMapper))
+                .toList();
+        this.bucketStore = dimensions.isEmpty() ? null : new BucketStore(properties);
+
+        for (LimitDimension dimension : dimensions) {
+            FunctionCounter.builder("nexus.ratelimiter.dimension.throttled", dimension.getThrottled(), LongAdder::sum)
+                    .description("Requests rejected with 429 by a limit dimension")
+                    .tag("dimension", dimension.getName())
+                    .register(registry);
+            log.info("Limit dimension {}: {}", dimension.getName(), dimension.getBandwidth());
+        }
+        if (bucketStore != null) {
+            Gauge.builder("nexus.ratelimiter.dimension.buckets", bucketStore, BucketStore::size)
+                    .description("Buckets held for limit dimensions")
+                    .register(registry);
+        }
+    }
+
+    /**
+     * @return the configured dimensions
+     */
+    public List<LimitDimension> getDimensions() {
+        return dimensions;
+    }
+
+    /**
+     * Counts the request against the client's quotas, then takes one token from the client's
+     * bucket and from every dimension's bucket of the request. If one of them denies, the tokens
+     * already taken are returned and the request is uncounted. For local buckets only; buckets
+     * of a distributed {@link BucketBackend} are consumed with {@link #tryConsumeAsync}.
+     *
+     * @param exchange     the current server exchange
+     * @param clientBucket the client's rule bucket, or {@code null} to check the dimensions only,
+     *                     e.g. when the client's token was already taken after waiting
+     * @param quota        the quotas of the client's rule, or {@code null} if it has none
+     * @return {@code null} if every bucket granted a token, otherwise the name of the first
+     * dimension that denied, {@link #CLIENT_DIMENSION} for the client's bucket and
+     * {@link QuotaWindow#getDimension()} for a used up quota
+     */
+    public String tryConsume(ServerWebExchange exchange, Bucket clientBucket, Quota quota) {
+        if (quota != null) {
+            QuotaWindow exhausted = quota.tryAcquire();
+            if (exhausted != null) {
+                return exhausted.getDimension();
+            }
+        }
+        String denied = consume(exchange, clientBucket);
+        if (denied != null && quota != null) {
+            quota.release();
+        }
+        return denied;
+    }
+
+    /**
+     * Asynchronous variant of {@link #tryConsume} for buckets in a shared store. The keys are
+     * extracted on the calling thread, then the client's bucket and every dimension's bucket are
+     * asked for a token at once. If one of them denies or fails, the tokens granted by the others
+     * are returned and the request is uncounted.
+     *
+     * @param exchange     the current server exchange
+     * @param clientBucket the client's rule bucket, or {@code null} to check the dimensions only
+     * @param quota        the quotas of the client's rule, or {@code null} if it has none
+     * @return completes with {@code null} if every bucket granted a token, otherwise with the name
+     * of the first dimension that denied, in the order of {@link #tryConsume}
+     */
+    public CompletableFuture<String> tryConsumeAsync(ServerWebExchange exchange, AsyncBucketProxy clientBucket,
+                                                     Quota quota) {
+        if (quota != null) {
+            QuotaWindow exhausted = quota.tryAcquire();
+            if (exhausted != null) {
+                return CompletableFuture.completedFuture(exhausted.getDimension());
+            }
+        }
+
+        List<AsyncBucketProxy> buckets = new ArrayList<>(dimensions.size() + 1);
+        List<LimitDimension> applied = new ArrayList<>(dimensions.size() + 1);
+        if (clientBucket != null) {
+            buckets.add(clientBucket);
+            applied.add(null);
+        }
+        for (LimitDimension dimension : dimensions) {
+            String key = dimension.getExtractor().extract(exchange);
+            if (key != null) {
+                buckets.add(resolve(dimension, key).getAsyncBucket());
+                applied.add(dimension);
+            }
+        }
+        if (buckets.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Boolean>[] results = new CompletableFuture[buckets.size()];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = buckets.get(i).tryConsume(1);
+        }
+        return CompletableFuture.allOf(results).handle((ignored, error) -> {
+            int denied = -1;
+            for (int i = 0; i < results.length && denied < 0; i++) {
+                if (!granted(results[i])) {
+                    denied = i;
+                }
+            }
+            if (denied < 0) {
+                return null;
+            }
+            for (int i = 0; i < results.length; i++) {
+                if (granted(results[i])) {
+                    buckets.get(i).addTokens(1);
+                }
+            }
+            if (quota != null) {
+                quota.release();
+            }
+            if (error != null) {
+                throw error instanceof CompletionException completion ? completion : new CompletionException(error);
+            }
+            LimitDimension dimension = applied.get(denied);
+            if (dimension == null) {
+                return CLIENT_DIMENSION;
+            }
+            dimension.getThrottled().increment();
+            return dimension.getName();
+        });
+    }
+
+    /**
+     * @return whether the consumption completed and granted the token
+     */
+    private static boolean granted(CompletableFuture<Boolean> result) {
+        return !result.isCompletedExceptionally() && result.getNow(false);
+    }
+
+    /**
+     * Takes one token from the client's bucket and from every dimension's bucket of the request.
+     */
+    private String consume(ServerWebExchange exchange, Bucket clientBucket) {
+        if (clientBucket != null && !clientBucket.tryConsume(1)) {
+            return CLIENT_DIMENSION;
+        }
+        if (dimensions.isEmpty()) {
+            return null;
+        }
+
+        Bucket[] taken = null;
+        int count = 0;
+        for (LimitDimension dimension : dimensions) {
+            String key = dimension.getExtractor().extract(exchange);
+            if (key == null) {
+                continue;
+            }
+            Bucket bucket = resolve(dimension, key).getBucket();
+            if (!bucket.tryConsume(1)) {
+                dimension.getThrottled().increment();
+                for (int i = 0; i < count; i++) {
+                    taken[i].addTokens(1);
+                }
+                if (clientBucket != null) {
+                    clientBucket.addTokens(1);
+                }
+                return dimension.getName();
+            }
+            if (taken == null) {
+                taken = new Bucket[dimensions.size()];
+            }
+            taken[count++] = bucket;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the bucket entry of a dimension key, creating it on first use.
+     */
+    private BucketEntry resolve(LimitDimension dimension, String key) {
+        BucketEntry entry = bucketStore.getIfPresent(BucketKey.lookup(key, dimension.getKeyRoute()));
+        if (entry == null) {
+            entry = bucketStore.computeIfAbsent(new BucketKey(key, dimension.getKeyRoute()),
+                    k -> create(k, dimension));
+        }
+        return entry;
+    }
+
+    private BucketEntry create(BucketKey key, LimitDimension dimension) {
+        Bandwidth bandwidth = dimension.getBandwidth();
+        if (bucketBackend.isDistributed()) {
+            return new BucketEntry(bucketBackend.createAsync(key, dimension.getConfiguration()),
+                    bandwidth.getCapacity(), bandwidth, WaitPolicy.NONE, new DecisionCounters());
+        }
+        return new BucketEntry(bucketBackend.create(key, dimension.getConfiguration()),
+                bandwidth.getCapacity(), bandwidth, WaitPolicy.NONE, new DecisionCounters());
+    }
+
+    private static LimitDimension dimension(RateLimiterProperties.Dimension settings, List<String> trustedProxies,
+                                            ObjectMapper objectMapper) {
+        if (settings.getName() == null || settings.getName().isBlank()) {
+            throw new IllegalArgumentException("Limit dimension without a name: " + settings);
+        }
+        KeyExtractor extractor = switch (settings.getSource()) {
+            case IP -> KeyExtractor.ip(trustedProxies);
+            case HEADER -> KeyExtractor.header(requireParameter(settings));
+            case CLAIM -> KeyExtractor.claim(requireParameter(settings), objectMapper);
+            case ROUTE -> KeyExtractor.route();
+        };
+        long refillTokens = settings.getRefillTokens() > 0 ? settings.getRefillTokens() : settings.getCapacity();
+        Bandwidth bandwidth = Bandwidth.classic(settings.getCapacity(),
+                Refill.greedy(refillTokens, settings.getRefillPeriod()));
+        return new LimitDimension(settings.getName(), extractor, bandwidth);
+    }
+
+    private static String requireParameter(RateLimiterProperties.Dimension settings) {
+        if (settings.getParameter() == null || settings.getParameter().isBlank()) {
+            throw new IllegalArgumentException("Limit dimension " + settings.getName() + " of source "
+                    + settings.getSource() + " needs a parameter");
+        }
+        return settings.getParameter();
+    }
+}
@@ -0,0 +1,118 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.composite;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Extracts the bucket key of a {@link LimitDimension} from a request.
+ */
+@FunctionalInterface
+public interface KeyExtractor {
+
+    /**
+     * Exchange attribute caching the decoded JWT claims, shared by all claim dimensions of a request.
+     */
+    String CLAIMS_ATTR = KeyExtractor.class.getName() + ".claims";
+
+    /**
+     * Returns the key of the request.
+     *
+     * @param exchange the current server exchange
+     * @return the key, or {@code null} if the request does not have the attribute
+     */
+    String extract(ServerWebExchange exchange);
+
+    /**
+     * Returns an extractor of the client address. Behind a load balancer the remote address of
+     * the connection is the balancer's, so requests from a trusted proxy are keyed on the client
+     * address listed in their {@code Forwarded} or {@code X-Forwarded-For} header instead.
+     *
+     * @param trustedProxies addresses or CIDR ranges of the proxies whose forwarding headers are
+     *                       believed; empty to always use the remote address
+     * @return the extractor
+     * @throws IllegalArgumentException if a trusted proxy is not an IP address or CIDR range
+     */
+    static KeyExtractor ip(List<String> trustedProxies) {
+        TrustedProxies proxies = new TrustedProxies(trustedProxies);
+        return exchange -> proxies.clientAddress(exchange.getRequest().getRemoteAddress(),
+                exchange.getRequest().getHeaders());
+    }
+
+    /**
+     * @param name the header name
+     * @return an extractor of the first value of a request header
+     */
+    static KeyExtractor header(String name) {
+        return exchange -> {
+            String value = exchange.getRequest().getHeaders().getFirst(name);
+            return value != null && !value.isBlank() ? value : null;
+        };
+    }
+
+    /**
+     * Returns an extractor of a claim of the bearer JWT. The payload is decoded once per request;
+     * the signature is not verified, so the claim only selects a bucket and must not be trusted
+     * for anything else.
+     *
+     * @param name         the claim name
+     * @param objectMapper parses the payload
+     * @return the extractor; a non-textual claim is keyed by its JSON form
+     */
+    static KeyExtractor claim(String name, ObjectMapper objectMapper) {
+        return exchange -> {
+            Object claims = exchange.getAttributes().computeIfAbsent(CLAIMS_ATTR, k -> decodeClaims(exchange, objectMapper));
+            if (!(claims instanceof JsonNode node)) {
+                return null;
+            }
+            JsonNode claim = node.get(name);
+            if (claim == null || claim.isNull()) {
+                return null;
+            }
+            return claim.isValueNode() ? claim.asText() : claim.toString();
+        };
+    }
+
+    /**
+     * @return an extractor of the ID of the gateway route
+     */
+    static KeyExtractor route() {
+        return exchange -> {
+            Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+            return route != null ? route.getId() : null;
+        };
+    }
+
+    /**
+     * Decodes the payload of the bearer token of the request.
+     *
+     * @return the claims, or {@link Boolean#FALSE} if the request has no readable token, so the
+     * failed attempt is cached too
+     */
+    private static Object decodeClaims(ServerWebExchange exchange, ObjectMapper objectMapper) {
+        String authorization = exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (authorization == null || !authorization.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            return Boolean.FALSE;
+        }
+        String token = authorization.substring(7).trim();
+        int start = token.indexOf('.');
+        int end = token.indexOf('.', start + 1);
+        if (start < 0 || end < 0) {
+            return Boolean.FALSE;
+        }
+        try {
+            byte[] payload = Base64.getUrlDecoder().decode(token.substring(start + 1, end));
+            JsonNode claims = objectMapper.readTree(payload);
+            return claims.isObject() ? claims : Boolean.FALSE;
+        } catch (IllegalArgumentException | IOException e) {
+            return Boolean.FALSE;
+        }
+    }
+}
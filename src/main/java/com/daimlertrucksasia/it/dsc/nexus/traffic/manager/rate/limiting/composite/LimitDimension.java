@@ -0,0 +1,66 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.composite;
+
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.BucketConfiguration;
+import lombok.Getter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A configured limit keyed on one attribute of the request.
+ */
+@Getter
+public class LimitDimension {
+
+    /**
+     * Name of the dimension.
+     */
+    private final String name;
+
+    /**
+     * Route part of the {@link com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketKey
+     * BucketKey} of the dimension's buckets, whose client part is the extracted key. Rule routes
+     * start with {@code /}, so it never collides with a client bucket.
+     */
+    private final String keyRoute;
+
+    /**
+     * Extracts the key of a request.
+     */
+    private final KeyExtractor extractor;
+
+    /**
+     * The limit of every bucket of the dimension.
+     */
+    private final Bandwidth bandwidth;
+
+    /**
+     * The configuration the buckets are built with.
+     */
+    private final BucketConfiguration configuration;
+
+    /**
+     * Requests rejected by this dimension.
+     */
+    private final LongAdder throttled = new LongAdder();
+
+    /**
+     * Creates a dimension.
+     *
+     * @param name      the name of the dimension
+     * @param extractor extracts the key of a request
+     * @param bandwidth the limit of every bucket of the dimension
+     */
+    public LimitDimension(String name, KeyExtractor extractor, Bandwidth bandwidth) {
+        this.name = name;
+        this.keyRoute = "@" + name;
+        this.extractor = extractor;
+        this.bandwidth = bandwidth;
+        this.configuration = BucketConfiguration.builder().addLimit(bandwidth).build();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,200 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.composite;
+
+import org.springframework.http.HttpHeaders;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Resolves the client address of a request that may have passed through reverse proxies.
+ * <p>
+ * The {@code Forwarded} and {@code X-Forwarded-For} headers can be set by anyone, so they are
+ * only read when the connection comes from a trusted proxy. The addresses they list are then
+ * walked from the nearest hop backwards, and the first one that is not itself a trusted proxy is
+ * the client. Without trusted proxies, the remote address of the connection is always used.
+ * </p>
+ */
+final class TrustedProxies {
+
+    private static final String FORWARDED = "Forwarded";
+
+    private static final String X_FORWARDED_FOR = "X-Forwarded-For";
+
+    private final List<Range> ranges;
+
+    /**
+     * @param entries addresses or CIDR ranges of the trusted proxies, e.g. {@code 10.0.0.0/8}
+     * @throws IllegalArgumentException if an entry is not an IP literal or CIDR range
+     */
+    TrustedProxies(List<String> entries) {
+        List<Range> parsed = new ArrayList<>(entries.size());
+        for (String entry : entries) {
+            parsed.add(Range.parse(entry.trim()));
+        }
+        this.ranges = List.copyOf(parsed);
+    }
+
+    /**
+     * @param remoteAddress the remote address of the connection, may be {@code null}
+     * @param headers       the request headers
+     * @return the client address, or {@code null} if it is unknown
+     */
+    String clientAddress(InetSocketAddress remoteAddress, HttpHeaders headers) {
+        if (remoteAddress == null || remoteAddress.getAddress() == null) {
+            return null;
+        }
+        InetAddress peer = remoteAddress.getAddress();
+        if (!isTrusted(peer)) {
+            return peer.getHostAddress();
+        }
+        List<String> hops = forwardedHops(headers);
+        for (int i = hops.size() - 1; i >= 0; i--) {
+            String hop = hops.get(i);
+            InetAddress address = literal(hop);
+            if (address == null) {
+                // An obfuscated or unknown identifier; nothing behind it can be trusted
+                return hop;
+            }
+            if (!isTrusted(address)) {
+                return address.getHostAddress();
+            }
+        }
+        // Every hop is a trusted proxy: key on the one farthest from the gateway
+        return hops.isEmpty() ? peer.getHostAddress() : literal(hops.get(0)).getHostAddress();
+    }
+
+    private boolean isTrusted(InetAddress address) {
+        for (Range range : ranges) {
+            if (range.contains(address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the {@code for} addresses of the {@code Forwarded} headers, or failing that the
+     * addresses of the {@code X-Forwarded-For} headers, from the client to the nearest proxy
+     */
+    private static List<String> forwardedHops(HttpHeaders headers) {
+        List<String> hops = new ArrayList<>();
+        List<String> forwarded = headers.get(FORWARDED);
+        if (forwarded != null) {
+            for (String value : forwarded) {
+                for (String element : value.split(",")) {
+                    for (String pair : element.split(";")) {
+                        int equals = pair.indexOf('=');
+                        if (equals > 0 && pair.substring(0, equals).trim().equalsIgnoreCase("for")) {
+                            hops.add(node(pair.substring(equals + 1)));
+                        }
+                    }
+                }
+            }
+        }
+        if (hops.isEmpty()) {
+            List<String> forwardedFor = headers.get(X_FORWARDED_FOR);
+            if (forwardedFor != null) {
+                for (String value : forwardedFor) {
+                    for (String hop : value.split(",")) {
+                        if (!hop.isBlank()) {
+                            hops.add(node(hop));
+                        }
+                    }
+                }
+            }
+        }
+        return hops;
+    }
+
+    /**
+     * Strips quotes, brackets and the port from a node of a forwarding header.
+     */
+    private static String node(String value) {
+        String node = value.trim();
+        if (node.length() >= 2 && node.startsWith("\"") && node.endsWith("\"")) {
+            node = node.substring(1, node.length() - 1);
+        }
+        if (node.startsWith("[")) {
+            int end = node.indexOf(']');
+            return end > 0 ? node.substring(1, end) : node;
+        }
+        int colon = node.indexOf(':');
+        return colon > 0 && colon == node.lastIndexOf(':') ? node.substring(0, colon) : node;
+    }
+
+    /**
+     * Parses an IP literal without ever resolving a host name.
+     *
+     * @return the address, or {@code null} if the value is not an IP literal
+     */
+    private static InetAddress literal(String value) {
+        if (value.isEmpty()) {
+            return null;
+        }
+        boolean colon = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            colon |= c == ':';
+            if (!(Character.digit(c, 16) >= 0 || c == '.' || c == ':')) {
+                return null;
+            }
+        }
+        if (!colon && !value.chars().allMatch(c -> c == '.' || Character.isDigit(c))) {
+            return null;
+        }
+        try {
+            return InetAddress.getByName(value);
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A CIDR range; a single address is a range of full prefix length.
+     */
+    private record Range(byte[] network, int prefixLength) {
+
+        static Range parse(String entry) {
+            int slash = entry.indexOf('/');
+            String host = slash < 0 ? entry : entry.substring(0, slash);
+            InetAddress address = literal(host.toLowerCase(Locale.ROOT));
+            if (address == null) {
+                throw new IllegalArgumentException("Trusted proxy is not an IP address or CIDR range: " + entry);
+            }
+            int bits = address.getAddress().length * 8;
+            int prefixLength;
+            try {
+                prefixLength = slash < 0 ? bits : Integer.parseInt(entry.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid prefix length of trusted proxy: " + entry);
+            }
+            if (prefixLength < 0 || prefixLength > bits) {
+                throw new IllegalArgumentException("Invalid prefix length of trusted proxy: " + entry);
+            }
+            return new Range(address.getAddress(), prefixLength);
+        }
+
+        boolean contains(InetAddress address) {
+            byte[] bytes = address.getAddress();
+            if (bytes.length != network.length) {
+                return false;
+            }
+            int full = prefixLength / 8;
+            for (int i = 0; i < full; i++) {
+                if (bytes[i] != network[i]) {
+                    return false;
+                }
+            }
+            int rest = prefixLength % 8;
+            if (rest == 0) {
+                return true;
+            }
+            int mask = 0xFF << (8 - rest);
+            return (bytes[full] & mask) == (network[full] & mask);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.concurrency;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.config.RateLimiterProperties;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrency limit of one route, adjusted from the latency of its downstream responses.
+ * <p>
+ * Requests hold a permit while they are forwarded; a request is shed when the number of
+ * requests in flight has reached the limit. The limit follows the Vegas algorithm: the lowest
+ * window response time seen is taken as the no-load latency, and once per window the number
+ * of requests queueing downstream is estimated from how much slower the window was.
+ * <ul>
+ *     <li>{@code queue = limit * (1 - noLoadRtt / rtt)}</li>
+ *     <li>below {@code 3 * log10(limit)} queued requests the limit grows by {@code log10(limit)}</li>
+ *     <li>above {@code 6 * log10(limit)} it shrinks towards {@code limit * noLoadRtt / rtt}, the
+ *     concurrency the backend served without queueing, weighted by {@code smoothing}</li>
+ * </ul>
+ * A window in which the downstream failed or answered with 5xx multiplies the limit by
+ * {@code backoffRatio} instead. The limit is not raised while less than half of it is used,
+ * so an idle route does not build up a limit it has never been tested at. The no-load latency
+ * is re-learned every {@code baselineWindows} windows, so a backend that became slower for
+ * good is not treated as congested forever.
+ * </p>
+ * <p>
+ * Samples are recorded in striped adders; only the thread that closes a window computes the
+ * new limit, so completing a request does not take a lock.
+ * </p>
+ */
+public class AdaptiveConcurrencyLimit {
+
+    private final RateLimiterProperties.AdaptiveConcurrency settings;
+
+    /**
+     * Requests currently holding a permit.
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Sum of the response times of the current window, in nanoseconds.
+     */
+    private final LongAdder rttSum = new LongAdder();
+
+    /**
+     * Number of responses in the current window.
+     */
+    private final LongAdder rttCount = new LongAdder();
+
+    /**
+     * Failed or 5xx responses in the current window.
+     */
+    private final LongAdder drops = new LongAdder();
+
+    /**
+     * Largest number of requests in flight seen in the current window.
+     */
+    private final LongAccumulator maxInFlight = new LongAccumulator(Math::max, 0);
+
+    /**
+     * {@link System#nanoTime()} at which the current window started.
+     */
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+
+    /**
+     * Requests shed because the limit was reached.
+     */
+    private final LongAdder shed = new LongAdder();
+
+    /**
+     * Current limit, kept fractional so that small adjustments accumulate.
+     */
+    private volatile double limit;
+
+    /**
+     * Lowest window response time since the last re-baselining, in nanoseconds, or {@code 0}
+     * before the first window. Only written by the thread closing a window.
+     */
+    private volatile double noLoadRtt;
+
+    /**
+     * Windows closed since the no-load latency was last re-learned.
+     * Only accessed by the thread closing a window.
+     */
+    private int baselineAge;
+
+    /**
+     * Average response time of the last closed window, in nanoseconds.
+     */
+    private volatile double shortRtt;
+
+    /**
+     * Creates a limit starting at {@code initialLimit}.
+     *
+     * @param settings the algorithm's settings
+     */
+    public AdaptiveConcurrencyLimit(RateLimiterProperties.AdaptiveConcurrency settings) {
+        this.settings = settings;
+        this.limit = settings.getInitialLimit();
+    }
+
+    /**
+     * Takes a permit if fewer requests than the limit are in flight.
+     *
+     * @return whether a permit was taken; if so, {@link #release} must be called exactly once
+     */
+    public boolean tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= (int) limit) {
+                shed.increment();
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        maxInFlight.accumulate(current + 1);
+        return true;
+    }
+
+    /**
+     * Returns a permit and records the response.
+     *
+     * @param rttNanos time from forwarding the request to its completion
+     * @param dropped  whether the downstream failed or answered with a server error
+     */
+    public void release(long rttNanos, boolean dropped) {
+        inFlight.decrementAndGet();
+        if (dropped) {
+            drops.increment();
+        } else {
+            rttSum.add(rttNanos);
+            rttCount.increment();
+        }
+
+        long start = windowStart.get();
+        long now = System.nanoTime();
+        if (now - start >= settings.getWindow().toNanos()
+                && rttCount.sum() + drops.sum() >= settings.getMinWindowSamples()
+                && windowStart.compareAndSet(start, now)) {
+            update();
+        }
+    }
+
+    /**
+     * Returns a permit without recording a response, for a request cancelled by its client.
+     */
+    public void cancel() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Closes the window and computes the new limit. Only called by the thread that closed it.
+     */
+    private void update() {
+        long count = rttCount.sumThenReset();
+        long sum = rttSum.sumThenReset();
+        long dropped = drops.sumThenReset();
+        long peak = maxInFlight.getThenReset();
+        double current = limit;
+
+        double next;
+        if (dropped > 0) {
+            next = current * settings.getBackoffRatio();
+        } else {
+            double rtt = (double) sum / Math.max(1, count);
+            shortRtt = rtt;
+            double baseline = noLoadRtt;
+            if (baseline == 0 || rtt < baseline || ++baselineAge >= settings.getBaselineWindows()) {
+                baseline = rtt;
+                baselineAge = 0;
+            }
+            noLoadRtt = baseline;
+
+            double queue = current * (1 - baseline / rtt);
+            double step = Math.max(1, Math.log10(current));
+            if (queue <= 3 * step) {
+                if (peak < current / 2) {
+                    return;
+                }
+                next = current + step;
+            } else if (queue >= 6 * step) {
+                double target = current * baseline / rtt + 3 * step;
+                next = Math.min(current - step, current + (target - current) * settings.getSmoothing());
+            } else {
+                return;
+            }
+        }
+        limit = Math.max(settings.getMinLimit(), Math.min(settings.getMaxLimit(), next));
+    }
+
+    /**
+     * @return the current limit
+     */
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * @return the number of requests currently holding a permit
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return the number of requests shed since the limit was created
+     */
+    public long getShed() {
+        return shed.sum();
+    }
+
+    /**
+     * @return the average response time of the last window in milliseconds, or {@code 0} before the first
+     */
+    public double getShortRttMillis() {
+        return shortRtt / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,67 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.concurrency;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.config.RateLimiterProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The {@link AdaptiveConcurrencyLimit} of each gateway route, created on the route's first request.
+ * <ul>
+ *     <li><b>nexus.concurrency.limit</b> – current concurrency limit per route</li>
+ *     <li><b>nexus.concurrency.inflight</b> – requests forwarded and not yet completed per route</li>
+ *     <li><b>nexus.concurrency.rtt</b> – average response time of the last window per route, in milliseconds</li>
+ *     <li><b>nexus.concurrency.shed</b> – requests rejected with 503 per route</li>
+ * </ul>
+ */
+@Component
+@RequiredArgsConstructor
+public class AdaptiveConcurrencyLimits {
+
+    private final MeterRegistry registry;
+
+    private final RateLimiterProperties properties;
+
+    /**
+     * Limits by route ID.
+     */
+    private final ConcurrentMap<String, AdaptiveConcurrencyLimit> limits = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the limit of a route, creating it and registering its meters on first use.
+     *
+     * @param routeId the gateway route ID
+     * @return the route's limit
+     */
+    public AdaptiveConcurrencyLimit forRoute(String routeId) {
+        AdaptiveConcurrencyLimit limit = limits.get(routeId);
+        return limit != null ? limit : limits.computeIfAbsent(routeId, this::register);
+    }
+
+    private AdaptiveConcurrencyLimit register(String routeId) {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(properties.getAdaptiveConcurrency());
+        Gauge.builder("nexus.concurrency.limit", limit, AdaptiveConcurrencyLimit::getLimit)
+                .description("Adaptive concurrency limit of the route")
+                .tag("route", routeId)
+                .register(registry);
+        Gauge.builder("nexus.concurrency.inflight", limit, AdaptiveConcurrencyLimit::getInFlight)
+                .description("Requests forwarded to the route and not yet completed")
+                .tag("route", routeId)
+                .register(registry);
+        Gauge.builder("nexus.concurrency.rtt", limit, AdaptiveConcurrencyLimit::getShortRttMillis)
+                .description("Average downstream response time of the last window")
+                .baseUnit("milliseconds")
+                .tag("route", routeId)
+                .register(registry);
+        FunctionCounter.builder("nexus.concurrency.shed", limit, AdaptiveConcurrencyLimit::getShed)
+                .description("Requests rejected with 503 because the concurrency limit was reached")
+                .tag("route", routeId)
+                .register(registry);
+        return limit;
+    }
+}
@@ -67,11 +67,26 @@ public class RateLimitConfig {
      */
     private long burstCapacity;
 
+    /**
+     * Maximum number of requests allowed in any 24 hours, or 0 for no daily quota.
+     */
+    private long dailyQuota;
+
+    /**
+     * Maximum number of requests allowed in any 30 days, or 0 for no monthly quota.
+     */
+    private long monthlyQuota;
+
     /**
      * Priority level for the config (e.g., 1 = highest, 5 = lowest). Can be used for sorting or overrides.
      */
     private int priority;
 
+    /**
+     * Date from which a PENDING configuration is enforced. Ignored for other statuses.
+     */
+    private LocalDateTime activationDate;
+
     /**
      * Expiration date of the configuration. Used to deactivate time-bound rules.
      */
@@ -79,6 +94,7 @@ public class RateLimitConfig {
 
     /**
      * Status of the configuration (e.g., "ACTIVE", "INACTIVE", "PENDING").
+     * PENDING configurations are enforced once their {@code activationDate} is reached.
      */
     private String status;
 
@@ -0,0 +1,223 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.decision;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.config.RateLimiterProperties;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketEntry;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Structured log of rate limiting decisions, written off the request path.
+ * <p>
+ * Filter threads only put fixed-size records into a {@link DecisionRing}; a background thread
+ * drains it every {@code flushInterval} and writes one line per record to the
+ * {@value #LOGGER} logger, which can be routed to its own file or sink. A full ring drops
+ * records rather than slowing requests down.
+ * </p>
+ * <p>
+ * Admitted requests are sampled, one in {@code sampleRate}. Rejections are always logged, but at
+ * most once per {@code throttleLogInterval} per client and route, tracked in a fixed table of
+ * hashed timestamps; a collision can only suppress a line, never add one.
+ * </p>
+ * <ul>
+ *     <li><b>nexus.ratelimiter.decision.log</b> – records {@code written}, {@code dropped} because the
+ *     ring was full, and rejections {@code suppressed} by the per-key interval</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class DecisionLog {
+
+    /**
+     * Name of the logger the decisions are written to.
+     */
+    public static final String LOGGER = "nexus.decisions";
+
+    private static final Logger DECISIONS = LoggerFactory.getLogger(LOGGER);
+
+    /**
+     * Longest shutdown waits for the remaining records to be written.
+     */
+    private static final Duration FINAL_FLUSH_TIMEOUT = Duration.ofSeconds(10);
+
+    private final RateLimiterProperties.DecisionLog settings;
+
+    private final MeterRegistry registry;
+
+    /**
+     * The records not yet written, or {@code null} if the log is disabled.
+     */
+    private final DecisionRing ring;
+
+    /**
+     * Time each hashed client and route last had a rejection logged, in nanoseconds.
+     */
+    private final AtomicLongArray lastRejection;
+
+    private final long rejectionIntervalNanos;
+
+    private final LongAdder written = new LongAdder();
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final LongAdder suppressed = new LongAdder();
+
+    /**
+     * Line being formatted. Only used by the writing thread.
+     */
+    private final StringBuilder line = new StringBuilder(256);
+
+    /**
+     * Single thread writing the records, started with the log.
+     */
+    private Scheduler scheduler;
+
+    private Disposable writer;
+
+    /**
+     * Creates the log using the settings from {@link RateLimiterProperties.DecisionLog}.
+     *
+     * @param properties rate limiter settings
+     * @param registry   the meter registry
+     */
+    public DecisionLog(RateLimiterProperties properties, MeterRegistry registry) {
+        this.settings = properties.getDecisionLog();
+        this.registry = registry;
+        this.ring = settings.isEnabled() ? new DecisionRing(settings.getBufferSize()) : null;
+        int slots = Integer.highestOneBit(Math.max(2, settings.getThrottleKeySlots()) - 1) << 1;
+        this.lastRejection = new AtomicLongArray(slots);
+        this.rejectionIntervalNanos = settings.getThrottleLogInterval().toNanos();
+    }
+
+    /**
+     * Registers the meters and starts the background writer.
+     */
+    @PostConstruct
+    public void init() {
+        counter("written", written);
+        counter("dropped", dropped);
+        counter("suppressed", suppressed);
+        if (ring == null) {
+            return;
+        }
+        long interval = settings.getFlushInterval().toMillis();
+        scheduler = Schedulers.newSingle("decision-log");
+        writer = scheduler.schedulePeriodically(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background writer and writes the remaining records. The final flush runs on the
+     * writer thread, after a flush still in progress, since the ring has a single consumer.
+     */
+    @PreDestroy
+    public void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        writer.dispose();
+        try {
+            Mono.fromRunnable(this::flush).subscribeOn(scheduler).block(FINAL_FLUSH_TIMEOUT);
+        } catch (RuntimeException e) {
+            log.warn("Failed to write the remaining decisions: {}", e.getMessage());
+        }
+        scheduler.dispose();
+    }
+
+    /**
+     * Records a decision if it is sampled. Called on the request path; it neither blocks nor
+     * allocates.
+     *
+     * @param outcome    the decision
+     * @param clientId   the client identifier, or {@code null} if missing
+     * @param route      the request path
+     * @param limit      the limit dimension that rejected the request, or {@code null}
+     * @param entry      the client's bucket entry, or {@code null}; its tokens are only read
+     *                   for local buckets
+     * @param startNanos {@link System#nanoTime()} when the filter started handling the request
+     */
+    public void record(Outcome outcome, String clientId, String route, String limit, BucketEntry entry,
+                       long startNanos) {
+        if (ring == null || !sampled(outcome, clientId, route)) {
+            return;
+        }
+        long tokensLeft = entry != null && !entry.isAsync() ? entry.getBucket().getAvailableTokens() : -1;
+        if (!ring.offer(System.currentTimeMillis(), clientId, route, outcome, limit, tokensLeft,
+                System.nanoTime() - startNanos)) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Admitted requests are sampled at random; rejections once per interval per client and route.
+     */
+    private boolean sampled(Outcome outcome, String clientId, String route) {
+        if (!outcome.isRejected()) {
+            int sampleRate = settings.getSampleRate();
+            return sampleRate > 0 && (sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0);
+        }
+        int hash = 31 * (clientId != null ? clientId.hashCode() : 0) + route.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & (lastRejection.length() - 1);
+        long now = System.nanoTime();
+        long last = lastRejection.get(slot);
+        if (last != 0 && now - last < rejectionIntervalNanos || !lastRejection.compareAndSet(slot, last, now)) {
+            suppressed.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes all published records.
+     */
+    void flush() {
+        try {
+            ring.drain(this::write);
+        } catch (RuntimeException e) {
+            log.warn("Failed to write rate limiting decisions: {}", e.getMessage());
+        }
+    }
+
+    private void write(long timestamp, String clientId, String route, Outcome outcome, String limit,
+                       long tokensLeft, long latencyNanos) {
+        if (!DECISIONS.isInfoEnabled()) {
+            return;
+        }
+        line.setLength(0);
+        line.append("ts=").append(Instant.ofEpochMilli(timestamp))
+                .append(" client=").append(clientId != null ? clientId : "-")
+                .append(" route=").append(route)
+                .append(" outcome=").append(outcome);
+        if (limit != null) {
+            line.append(" limit=").append(limit);
+        }
+        if (tokensLeft >= 0) {
+            line.append(" tokens=").append(tokensLeft);
+        }
+        line.append(" latencyUs=").append(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+        DECISIONS.info(line.toString());
+        written.increment();
+    }
+
+    private void counter(String result, LongAdder count) {
+        FunctionCounter.builder("nexus.ratelimiter.decision.log", count, LongAdder::sum)
+                .description("Rate limiting decisions written to or left out of the decision log")
+                .tag("result", result)
+                .register(registry);
+    }
+}
@@ -0,0 +1,129 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.decision;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded multi-producer, single-consumer ring of decision records.
+ * <p>
+ * Records are stored field by field in preallocated arrays, so offering one allocates nothing.
+ * A producer claims a slot with one CAS on the tail and publishes it by writing the slot's
+ * sequence; it never waits for the consumer and drops the record if the ring is full.
+ * </p>
+ */
+class DecisionRing {
+
+    private final int mask;
+
+    /**
+     * Per slot, {@code index + 1} once the record with that index has been published.
+     */
+    private final AtomicLongArray published;
+
+    /**
+     * Index of the next record to claim.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Index of the next record to consume. Only written by the consumer.
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    private final long[] timestamps;
+
+    private final String[] clientIds;
+
+    private final String[] routes;
+
+    private final byte[] outcomes;
+
+    private final String[] limits;
+
+    private final long[] tokens;
+
+    private final long[] latencies;
+
+    /**
+     * Creates an empty ring.
+     *
+     * @param capacity number of records, rounded up to a power of two
+     */
+    DecisionRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.published = new AtomicLongArray(size);
+        this.timestamps = new long[size];
+        this.clientIds = new String[size];
+        this.routes = new String[size];
+        this.outcomes = new byte[size];
+        this.limits = new String[size];
+        this.tokens = new long[size];
+        this.latencies = new long[size];
+    }
+
+    /**
+     * Adds a record unless the ring is full.
+     *
+     * @return whether the record was added
+     */
+    boolean offer(long timestamp, String clientId, String route, Outcome outcome, String limit,
+                  long tokensLeft, long latencyNanos) {
+        long index;
+        do {
+            index = tail.get();
+            if (index - head.get() > mask) {
+                return false;
+            }
+        } while (!tail.compareAndSet(index, index + 1));
+
+        int slot = (int) index & mask;
+        timestamps[slot] = timestamp;
+        clientIds[slot] = clientId;
+        routes[slot] = route;
+        outcomes[slot] = (byte) outcome.ordinal();
+        limits[slot] = limit;
+        tokens[slot] = tokensLeft;
+        latencies[slot] = latencyNanos;
+        published.lazySet(slot, index + 1);
+        return true;
+    }
+
+    /**
+     * Hands the published records to the consumer in order and frees their slots.
+     * Must only be called by the single consumer thread.
+     *
+     * @param consumer receives each record
+     * @return the number of records consumed
+     */
+    int drain(Consumer consumer) {
+        Outcome[] values = Outcome.values();
+        long index = head.get();
+        int count = 0;
+        while (true) {
+            int slot = (int) index & mask;
+            if (published.get(slot) != index + 1) {
+                break;
+            }
+            consumer.accept(timestamps[slot], clientIds[slot], routes[slot], values[outcomes[slot]], limits[slot],
+                    tokens[slot], latencies[slot]);
+            clientIds[slot] = null;
+            routes[slot] = null;
+            limits[slot] = null;
+            index++;
+            count++;
+            head.lazySet(index);
+        }
+        return count;
+    }
+
+    /**
+     * Receives the fields of a consumed record.
+     */
+    @FunctionalInterface
+    interface Consumer {
+
+        void accept(long timestamp, String clientId, String route, Outcome outcome, String limit,
+                    long tokensLeft, long latencyNanos);
+    }
+}
@@ -0,0 +1,34 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.decision;
+
+/**
+ * Outcome of a rate limiting decision, as recorded in the {@link DecisionLog}.
+ */
+public enum Outcome {
+
+    /**
+     * Admitted immediately.
+     */
+    ALLOWED,
+
+    /**
+     * Admitted after waiting for a token.
+     */
+    WAITED,
+
+    /**
+     * Rejected with 429.
+     */
+    THROTTLED,
+
+    /**
+     * Rejected with 400 for a missing {@code X-Client-Id}.
+     */
+    MISSING_CLIENT;
+
+    /**
+     * @return whether the request was rejected
+     */
+    public boolean isRejected() {
+        return this == THROTTLED || this == MISSING_CLIENT;
+    }
+}
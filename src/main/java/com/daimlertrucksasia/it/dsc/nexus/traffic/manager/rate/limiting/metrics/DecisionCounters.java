@@ -0,0 +1,158 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.metrics;
+
+import java.util.Queue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Striped counters of rate limiting decisions for one bucket or one route.
+ * <p>
+ * Each bucket entry holds its own counters, linked to the counters of its route, so the
+ * request path records a decision with plain {@link LongAdder} increments and no lookup.
+ * Bucket counters also queue themselves for the next per-client metrics refresh on their first
+ * decision since the last one, so the refresh only visits buckets that were used.
+ * </p>
+ */
+public class DecisionCounters {
+
+    /**
+     * Counters that every decision is also recorded in, or {@code null}.
+     */
+    private final DecisionCounters parent;
+
+    /**
+     * Client of the bucket, or {@code null} for counters not reported per client.
+     */
+    final String client;
+
+    /**
+     * Queue of the counters changed since the last refresh, or {@code null}.
+     */
+    private final Queue<DecisionCounters> changed;
+
+    /**
+     * Whether the counters are queued in {@link #changed}.
+     */
+    volatile boolean queued;
+
+    /**
+     * Requests admitted immediately.
+     */
+    private final LongAdder allowed = new LongAdder();
+
+    /**
+     * Requests admitted after waiting for a token.
+     */
+    private final LongAdder waited = new LongAdder();
+
+    /**
+     * Requests rejected with 429.
+     */
+    private final LongAdder throttled = new LongAdder();
+
+    /**
+     * Values already reported per client, indexed like {@link #snapshot()}.
+     * Only accessed by the metrics refresh.
+     */
+    final long[] reported = new long[3];
+
+    /**
+     * Creates counters without a parent.
+     */
+    public DecisionCounters() {
+        this(null);
+    }
+
+    /**
+     * Creates counters that also record every decision in the given parent.
+     *
+     * @param parent the parent counters, or {@code null}
+     */
+    public DecisionCounters(DecisionCounters parent) {
+        this(parent, null, null);
+    }
+
+    /**
+     * Creates counters of a client's bucket, reported per client by the metrics refresh.
+     *
+     * @param parent  the parent counters, or {@code null}
+     * @param client  the client of the bucket
+     * @param changed queue of the counters changed since the last refresh
+     */
+    DecisionCounters(DecisionCounters parent, String client, Queue<DecisionCounters> changed) {
+        this.parent = parent;
+        this.client = client;
+        this.changed = changed;
+    }
+
+    /**
+     * Records a request admitted immediately.
+     */
+    public void recordAllowed() {
+        allowed.increment();
+        markChanged();
+        if (parent != null) {
+            parent.recordAllowed();
+        }
+    }
+
+    /**
+     * Records a request admitted after waiting for a token.
+     */
+    public void recordWaited() {
+        waited.increment();
+        markChanged();
+        if (parent != null) {
+            parent.recordWaited();
+        }
+    }
+
+    /**
+     * Records a request rejected with 429.
+     */
+    public void recordThrottled() {
+        throttled.increment();
+        markChanged();
+        if (parent != null) {
+            parent.recordThrottled();
+        }
+    }
+
+    /**
+     * Queues the counters for the next refresh unless they already are. Concurrent first
+     * decisions may queue them twice, which the refresh tolerates.
+     */
+    private void markChanged() {
+        if (changed != null && !queued) {
+            queued = true;
+            changed.add(this);
+        }
+    }
+
+    /**
+     * @return the number of requests admitted immediately
+     */
+    public long allowed() {
+        return allowed.sum();
+    }
+
+    /**
+     * @return the number of requests admitted after waiting
+     */
+    public long waited() {
+        return waited.sum();
+    }
+
+    /**
+     * @return the number of requests rejected with 429
+     */
+    public long throttled() {
+        return throttled.sum();
+    }
+
+    /**
+     * @return the current values as {@code [allowed, waited, throttled]}
+     */
+    long[] snapshot() {
+        return new long[]{allowed(), waited(), throttled()};
+    }
+}
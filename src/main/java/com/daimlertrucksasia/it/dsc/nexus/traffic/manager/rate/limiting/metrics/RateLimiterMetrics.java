@@ -0,0 +1,339 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.metrics;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.config.RateLimiterProperties;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketStore;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Micrometer metrics of the rate limiter, published at {@code /actuator/prometheus}.
+ * <ul>
+ *     <li><b>nexus.ratelimiter.requests</b> – decisions per route pattern and outcome
+ *     ({@code allowed}, {@code waited}, {@code throttled}); paths without a rule share the
+ *     {@code unmatched} route</li>
+ *     <li><b>nexus.ratelimiter.client.requests</b> – decisions per client and outcome for the
+ *     busiest clients; all others are reported as client {@code other}</li>
+ *     <li><b>nexus.ratelimiter.missing.client</b> – requests rejected with 400 for a missing {@code X-Client-Id}</li>
+ *     <li><b>nexus.ratelimiter.config.lookup</b> and <b>nexus.ratelimiter.bucket.resolution</b> – timers</li>
+ *     <li><b>nexus.ratelimiter.buckets</b> and <b>nexus.ratelimiter.bucket.store</b> – bucket store size and counters</li>
+ * </ul>
+ * <p>
+ * Decisions are recorded in the {@link DecisionCounters} of the bucket entry, so the request
+ * path never looks up a meter. Route meters read the route counters directly. Per-client meters
+ * are updated periodically: the refresh sums each client's new decisions across the buckets used
+ * since the last refresh, without walking the bucket store. The top clients of the interval get
+ * their own meters, up to {@code maxClients}; everyone else is added to {@code other}. A client's
+ * meters are kept, and keep counting, until it has made no request for {@code clientIdleExpiry}.
+ * They are then removed and their counts added to {@code other}, so the counters never go back
+ * and the sum over all clients still matches the route counters.
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RateLimiterMetrics {
+
+    /**
+     * Route tag of buckets for paths that match no rule.
+     */
+    public static final String UNMATCHED_ROUTE = "unmatched";
+
+    /**
+     * Client tag of all clients outside the top clients.
+     */
+    public static final String OTHER_CLIENT = "other";
+
+    private static final String[] OUTCOMES = {"allowed", "waited", "throttled"};
+
+    private final MeterRegistry registry;
+
+    private final RateLimiterProperties properties;
+
+    private final BucketStore bucketStore;
+
+    /**
+     * Decision counters per route pattern.
+     */
+    private final ConcurrentMap<String, DecisionCounters> routes = new ConcurrentHashMap<>();
+
+    /**
+     * Requests rejected for a missing client ID.
+     */
+    private final LongAdder missingClient = new LongAdder();
+
+    /**
+     * Meters of the clients reported individually. Only accessed by the refresh.
+     */
+    private final Map<String, ClientMeters> clients = new HashMap<>();
+
+    /**
+     * Bucket counters with decisions since the last refresh.
+     */
+    private final Queue<DecisionCounters> changed = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Single thread running the per-client refresh.
+     */
+    private final Scheduler scheduler = Schedulers.newSingle("rate-limiter-metrics");
+
+    private ClientMeters otherClients;
+
+    private Timer configLookupTimer;
+
+    private Timer bucketResolutionTimer;
+
+    private Disposable refresh;
+
+    /**
+     * Registers the fixed meters and starts the per-client refresh.
+     */
+    @PostConstruct
+    public void init() {
+        configLookupTimer = Timer.builder("nexus.ratelimiter.config.lookup")
+                .description("Time to match a request path to its rate limit rule")
+                .register(registry);
+        bucketResolutionTimer = Timer.builder("nexus.ratelimiter.bucket.resolution")
+                .description("Time to find or create the bucket of a request")
+                .register(registry);
+
+        FunctionCounter.builder("nexus.ratelimiter.missing.client", missingClient, LongAdder::sum)
+                .description("Requests rejected for a missing X-Client-Id header")
+                .register(registry);
+
+        Gauge.builder("nexus.ratelimiter.buckets", bucketStore, BucketStore::size)
+                .description("Buckets held in the bucket store")
+                .register(registry);
+        storeCounter("hit", BucketStore::hitCount);
+        storeCounter("miss", BucketStore::missCount);
+        storeCounter("eviction", BucketStore::evictionCount);
+
+        otherClients = new ClientMeters(OTHER_CLIENT);
+
+        long interval = properties.getMetrics().getClientRefreshInterval().toMillis();
+        refresh = scheduler.schedulePeriodically(this::refreshTopClients, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the per-client refresh.
+     */
+    @PreDestroy
+    public void stop() {
+        if (refresh != null) {
+            refresh.dispose();
+        }
+        scheduler.dispose();
+    }
+
+    /**
+     * Returns the decision counters of a route, registering its meters on first use.
+     * Called when a bucket is created, not per request.
+     *
+     * @param route the route pattern, or {@link #UNMATCHED_ROUTE}
+     * @return the route's counters
+     */
+    public DecisionCounters routeCounters(String route) {
+        return routes.computeIfAbsent(route, this::registerRoute);
+    }
+
+    /**
+     * Creates the decision counters of a client's bucket, linked to the counters of its route.
+     * Called when a bucket is created, not per request.
+     *
+     * @param clientId the client of the bucket
+     * @param route    the route pattern, or {@link #UNMATCHED_ROUTE}
+     * @return the bucket's counters
+     */
+    public DecisionCounters bucketCounters(String clientId, String route) {
+        return new DecisionCounters(routeCounters(route), clientId, changed);
+    }
+
+    /**
+     * Records a request rejected for a missing client ID.
+     */
+    public void recordMissingClient() {
+        missingClient.increment();
+    }
+
+    /**
+     * Records the time taken to match a path to its rule.
+     *
+     * @param nanos the elapsed time in nanoseconds
+     */
+    public void recordConfigLookup(long nanos) {
+        configLookupTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records the time taken to find or create a bucket.
+     *
+     * @param nanos the elapsed time in nanoseconds
+     */
+    public void recordBucketResolution(long nanos) {
+        bucketResolutionTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private DecisionCounters registerRoute(String route) {
+        DecisionCounters counters = new DecisionCounters();
+        decisionCounter("nexus.ratelimiter.requests", "route", route, OUTCOMES[0], counters, DecisionCounters::allowed);
+        decisionCounter("nexus.ratelimiter.requests", "route", route, OUTCOMES[1], counters, DecisionCounters::waited);
+        decisionCounter("nexus.ratelimiter.requests", "route", route, OUTCOMES[2], counters, DecisionCounters::throttled);
+        return counters;
+    }
+
+    private <T> Meter decisionCounter(String name, String tag, String value, String outcome,
+                                      T source, ToDoubleFunction<T> count) {
+        return FunctionCounter.builder(name, source, count)
+                .description("Rate limiting decisions")
+                .tag(tag, value)
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    private void storeCounter(String result, ToDoubleFunction<BucketStore> count) {
+        FunctionCounter.builder("nexus.ratelimiter.bucket.store", bucketStore, count)
+                .description("Bucket store lookups and evictions")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    /**
+     * Collects each client's decisions since the last refresh, publishes them in the client's
+     * meters or in {@link #OTHER_CLIENT}, and retires the meters of idle clients.
+     */
+    void refreshTopClients() {
+        try {
+            RateLimiterProperties.Metrics settings = properties.getMetrics();
+            long now = System.nanoTime();
+
+            Map<String, long[]> deltas = new HashMap<>();
+            for (DecisionCounters counters = changed.poll(); counters != null; counters = changed.poll()) {
+                counters.queued = false;
+                long[] current = counters.snapshot();
+                long[] delta = deltas.computeIfAbsent(counters.client, c -> new long[OUTCOMES.length]);
+                for (int i = 0; i < OUTCOMES.length; i++) {
+                    delta[i] += current[i] - counters.reported[i];
+                    counters.reported[i] = current[i];
+                }
+            }
+
+            int limit = settings.getTopClients();
+            PriorityQueue<Map.Entry<String, long[]>> top = new PriorityQueue<>(
+                    (a, b) -> Long.compare(total(a.getValue()), total(b.getValue())));
+            for (Map.Entry<String, long[]> delta : deltas.entrySet()) {
+                if (limit <= 0 || total(delta.getValue()) == 0) {
+                    continue;
+                }
+                if (top.size() < limit) {
+                    top.add(delta);
+                } else if (total(delta.getValue()) > total(top.peek().getValue())) {
+                    top.poll();
+                    top.add(delta);
+                }
+            }
+            for (Map.Entry<String, long[]> entry : top) {
+                if (!clients.containsKey(entry.getKey()) && clients.size() < settings.getMaxClients()) {
+                    clients.put(entry.getKey(), new ClientMeters(entry.getKey()));
+                }
+            }
+
+            for (Map.Entry<String, long[]> delta : deltas.entrySet()) {
+                ClientMeters meters = clients.get(delta.getKey());
+                if (meters == null) {
+                    otherClients.add(delta.getValue());
+                } else if (total(delta.getValue()) > 0) {
+                    meters.add(delta.getValue());
+                    meters.lastActive = now;
+                }
+            }
+
+            long idleNanos = settings.getClientIdleExpiry().toNanos();
+            for (Iterator<ClientMeters> it = clients.values().iterator(); it.hasNext(); ) {
+                ClientMeters meters = it.next();
+                if (now - meters.lastActive >= idleNanos) {
+                    otherClients.add(meters.values());
+                    meters.remove();
+                    it.remove();
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to refresh per-client rate limiter metrics: {}", e.getMessage());
+        }
+    }
+
+    private static long total(long[] counts) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Published per-client counters and their meters.
+     */
+    private class ClientMeters {
+
+        private final AtomicLong[] counts = new AtomicLong[OUTCOMES.length];
+
+        private final List<Meter> meters = new ArrayList<>(OUTCOMES.length);
+
+        /**
+         * {@link System#nanoTime()} of the refresh that last saw a decision of the client.
+         */
+        private long lastActive = System.nanoTime();
+
+        private ClientMeters(String clientId) {
+            for (int i = 0; i < OUTCOMES.length; i++) {
+                counts[i] = new AtomicLong();
+                meters.add(decisionCounter("nexus.ratelimiter.client.requests", "client", clientId,
+                        OUTCOMES[i], counts[i], AtomicLong::get));
+            }
+        }
+
+        private void add(long[] delta) {
+            for (int i = 0; i < OUTCOMES.length; i++) {
+                counts[i].addAndGet(delta[i]);
+            }
+        }
+
+        private long[] values() {
+            long[] values = new long[OUTCOMES.length];
+            for (int i = 0; i < OUTCOMES.length; i++) {
+                values[i] = counts[i].get();
+            }
+            return values;
+        }
+
+        private void remove() {
+            for (Meter meter : meters) {
+                registry.remove(meter);
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.quota;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The daily and monthly quotas of a rule, bound to the counter of its client.
+ * Held by the rule's {@link com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketEntry
+ * BucketEntry} and replaced when the rule changes.
+ */
+public final class Quota {
+
+    private final QuotaCounter counter;
+
+    private final long dailyQuota;
+
+    private final long monthlyQuota;
+
+    /**
+     * Rejected requests by {@link QuotaWindow#ordinal()}.
+     */
+    private final LongAdder[] throttled;
+
+    Quota(QuotaCounter counter, long dailyQuota, long monthlyQuota, LongAdder[] throttled) {
+        this.counter = counter;
+        this.dailyQuota = dailyQuota;
+        this.monthlyQuota = monthlyQuota;
+        this.throttled = throttled;
+    }
+
+    /**
+     * Counts a request unless one of the quotas is used up.
+     *
+     * @return {@code null} if the request was counted, otherwise the window whose quota is used up
+     */
+    public QuotaWindow tryAcquire() {
+        QuotaWindow denied = counter.tryAcquire(System.currentTimeMillis(), dailyQuota, monthlyQuota);
+        if (denied != null) {
+            throttled[denied.ordinal()].increment();
+        }
+        return denied;
+    }
+
+    /**
+     * Uncounts a request that another limit denied after {@link #tryAcquire()} counted it.
+     */
+    public void release() {
+        counter.release(System.currentTimeMillis());
+    }
+
+    /**
+     * @return requests allowed in the daily window, {@code 0} for no limit
+     */
+    public long getDailyQuota() {
+        return dailyQuota;
+    }
+
+    /**
+     * @return requests allowed in the monthly window, {@code 0} for no limit
+     */
+    public long getMonthlyQuota() {
+        return monthlyQuota;
+    }
+}
@@ -0,0 +1,250 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.quota;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketKey;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+
+import static com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.quota.QuotaWindow.DAILY;
+import static com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.quota.QuotaWindow.MONTHLY;
+
+/**
+ * Sliding-window request counts of one client and rule, for the {@link QuotaWindow}s.
+ * <p>
+ * Each window is a ring of primitive counters, one per slot, plus its running total: counting a
+ * request and checking a quota are O(1) and allocate nothing. Slots are cleared as time moves
+ * past them, so a request counts against the daily quota for 23 to 24 hours and against the
+ * monthly quota for 29 to 30 days.
+ * </p>
+ * <p>
+ * Requests not yet written to MongoDB are also counted per hour in {@code pending}. When that
+ * turns non-zero the counter queues itself for the next flush, so flushing only visits the
+ * counters that changed. After a flush the slots are replaced by the stored counts, which
+ * include those of other replicas, plus what is still pending. Pending counts older than the
+ * daily window are dropped. All methods synchronize on the counter.
+ * </p>
+ */
+final class QuotaCounter {
+
+    private static final int HOURS = DAILY.getSlots();
+
+    private static final int DAYS = MONTHLY.getSlots();
+
+    private final BucketKey key;
+
+    /**
+     * Counters queued for the next flush.
+     */
+    private final Queue<QuotaCounter> dirty;
+
+    private final int[] hours = new int[HOURS];
+
+    private final int[] days = new int[DAYS];
+
+    /**
+     * Requests not yet written to MongoDB, by hourly slot.
+     */
+    private final int[] pending = new int[HOURS];
+
+    /**
+     * Current hourly slot, counted from the epoch.
+     */
+    private long hour;
+
+    /**
+     * Current daily slot, counted from the epoch.
+     */
+    private long day;
+
+    private long dailyTotal;
+
+    private long monthlyTotal;
+
+    /**
+     * Whether the counter is queued in {@link #dirty}.
+     */
+    private boolean queued;
+
+    /**
+     * Whether the counts have been merged with the stored ones at least once.
+     */
+    private boolean synced;
+
+    /**
+     * @param key   the client and rule route counted
+     * @param dirty queue of the counters to flush
+     */
+    QuotaCounter(BucketKey key, Queue<QuotaCounter> dirty) {
+        this.key = key;
+        this.dirty = dirty;
+    }
+
+    /**
+     * @return the client and rule route counted
+     */
+    BucketKey getKey() {
+        return key;
+    }
+
+    /**
+     * Counts a request unless a quota is used up.
+     *
+     * @param nowMillis    the current time in epoch milliseconds
+     * @param dailyQuota   requests allowed in the daily window, {@code 0} for no limit
+     * @param monthlyQuota requests allowed in the monthly window, {@code 0} for no limit
+     * @return {@code null} if the request was counted, otherwise the window whose quota is used up
+     */
+    synchronized QuotaWindow tryAcquire(long nowMillis, long dailyQuota, long monthlyQuota) {
+        advance(nowMillis);
+        if (dailyQuota > 0 && dailyTotal >= dailyQuota) {
+            return DAILY;
+        }
+        if (monthlyQuota > 0 && monthlyTotal >= monthlyQuota) {
+            return MONTHLY;
+        }
+        int slot = index(hour, HOURS);
+        hours[slot]++;
+        days[index(day, DAYS)]++;
+        pending[slot]++;
+        dailyTotal++;
+        monthlyTotal++;
+        if (!queued) {
+            queued = true;
+            dirty.add(this);
+        }
+        return null;
+    }
+
+    /**
+     * Uncounts a request that was denied by another limit after it was counted. Does nothing if
+     * its count has already been flushed.
+     *
+     * @param nowMillis the current time in epoch milliseconds
+     */
+    synchronized void release(long nowMillis) {
+        advance(nowMillis);
+        int slot = index(hour, HOURS);
+        if (pending[slot] > 0) {
+            pending[slot]--;
+            hours[slot]--;
+            days[index(day, DAYS)]--;
+            dailyTotal--;
+            monthlyTotal--;
+        }
+    }
+
+    /**
+     * @param window    the window
+     * @param nowMillis the current time in epoch milliseconds
+     * @return the requests counted in the window
+     */
+    synchronized long used(QuotaWindow window, long nowMillis) {
+        advance(nowMillis);
+        return window == DAILY ? dailyTotal : monthlyTotal;
+    }
+
+    /**
+     * @return whether the counts include the stored ones
+     */
+    synchronized boolean isSynced() {
+        return synced;
+    }
+
+    /**
+     * Takes the requests not yet written and dequeues the counter.
+     *
+     * @param nowMillis the current time in epoch milliseconds
+     * @return the pending requests by hourly slot, counted from the epoch
+     */
+    synchronized Map<Long, Integer> drainPending(long nowMillis) {
+        advance(nowMillis);
+        queued = false;
+        Map<Long, Integer> drained = new LinkedHashMap<>();
+        for (long slot = hour - HOURS + 1; slot <= hour; slot++) {
+            int i = index(slot, HOURS);
+            if (pending[i] > 0) {
+                drained.put(slot, pending[i]);
+                pending[i] = 0;
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * Puts back requests whose write failed, so they are written with the next flush.
+     *
+     * @param drained   the requests returned by {@link #drainPending}
+     * @param nowMillis the current time in epoch milliseconds
+     */
+    synchronized void restorePending(Map<Long, Integer> drained, long nowMillis) {
+        advance(nowMillis);
+        drained.forEach((slot, count) -> {
+            if (slot > hour - HOURS && slot <= hour) {
+                pending[index(slot, HOURS)] += count;
+            }
+        });
+        if (!queued) {
+            queued = true;
+            dirty.add(this);
+        }
+    }
+
+    /**
+     * Replaces the counts by the stored ones plus the requests still pending.
+     *
+     * @param storedHours stored requests by hourly slot, counted from the epoch
+     * @param storedDays  stored requests by daily slot, counted from the epoch
+     * @param nowMillis   the current time in epoch milliseconds
+     */
+    synchronized void merge(Map<Long, Integer> storedHours, Map<Long, Integer> storedDays, long nowMillis) {
+        advance(nowMillis);
+        dailyTotal = 0;
+        for (int i = 0; i < DAYS; i++) {
+            days[index(day - i, DAYS)] = storedDays.getOrDefault(day - i, 0);
+        }
+        for (long slot = hour - HOURS + 1; slot <= hour; slot++) {
+            int i = index(slot, HOURS);
+            hours[i] = storedHours.getOrDefault(slot, 0) + pending[i];
+            dailyTotal += hours[i];
+            long daySlot = Math.floorDiv(slot, HOURS);
+            if (daySlot > day - DAYS) {
+                days[index(daySlot, DAYS)] += pending[i];
+            }
+        }
+        monthlyTotal = 0;
+        for (int count : days) {
+            monthlyTotal += count;
+        }
+        synced = true;
+    }
+
+    /**
+     * Moves the windows to the current time, clearing the slots left behind.
+     */
+    private void advance(long nowMillis) {
+        long nowHour = DAILY.slotOf(nowMillis);
+        if (nowHour > hour) {
+            for (long slot = Math.max(hour + 1, nowHour - HOURS + 1); slot <= nowHour; slot++) {
+                int i = index(slot, HOURS);
+                dailyTotal -= hours[i];
+                hours[i] = 0;
+                pending[i] = 0;
+            }
+            hour = nowHour;
+        }
+        long nowDay = MONTHLY.slotOf(nowMillis);
+        if (nowDay > day) {
+            for (long slot = Math.max(day + 1, nowDay - DAYS + 1); slot <= nowDay; slot++) {
+                int i = index(slot, DAYS);
+                monthlyTotal -= days[i];
+                days[i] = 0;
+            }
+            day = nowDay;
+        }
+    }
+
+    private static int index(long slot, int slots) {
+        return (int) Math.floorMod(slot, slots);
+    }
+}
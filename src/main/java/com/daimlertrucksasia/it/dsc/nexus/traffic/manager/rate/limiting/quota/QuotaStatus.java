@@ -0,0 +1,72 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.quota;
+
+import lombok.Value;
+
+/**
+ * Point-in-time quota usage of one client and rule, as reported by the monitor.
+ * Quotas of {@code 0} are not limited, and their remaining requests are reported as {@code -1}.
+ */
+@Value
+public class QuotaStatus {
+
+    /**
+     * The client identifier.
+     */
+    String clientId;
+
+    /**
+     * The route pattern of the rule.
+     */
+    String route;
+
+    /**
+     * Requests allowed in any 24 hours.
+     */
+    long dailyQuota;
+
+    /**
+     * Requests counted in the last 24 hours.
+     */
+    long dailyUsed;
+
+    /**
+     * Requests left in the daily window.
+     */
+    long dailyRemaining;
+
+    /**
+     * Requests allowed in any 30 days.
+     */
+    long monthlyQuota;
+
+    /**
+     * Requests counted in the last 30 days.
+     */
+    long monthlyUsed;
+
+    /**
+     * Requests left in the monthly window.
+     */
+    long monthlyRemaining;
+
+    /**
+     * Builds the status from the quotas and the requests counted.
+     *
+     * @param clientId     the client identifier
+     * @param route        the route pattern of the rule
+     * @param dailyQuota   requests allowed in the daily window, {@code 0} for no limit
+     * @param dailyUsed    requests counted in the daily window
+     * @param monthlyQuota requests allowed in the monthly window, {@code 0} for no limit
+     * @param monthlyUsed  requests counted in the monthly window
+     * @return the status
+     */
+    public static QuotaStatus of(String clientId, String route, long dailyQuota, long dailyUsed,
+                                 long monthlyQuota, long monthlyUsed) {
+        return new QuotaStatus(clientId, route, dailyQuota, dailyUsed, remaining(dailyQuota, dailyUsed),
+                monthlyQuota, monthlyUsed, remaining(monthlyQuota, monthlyUsed));
+    }
+
+    private static long remaining(long quota, long used) {
+        return quota > 0 ? Math.max(0, quota - used) : -1;
+    }
+}
@@ -0,0 +1,410 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.quota;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.config.RateLimiterProperties;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketKey;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.config.entity.RateLimitConfig;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Daily and monthly request quotas of the rules, counted in {@link QuotaCounter}s and stored in
+ * MongoDB.
+ * <p>
+ * A rule with a {@code dailyQuota} or {@code monthlyQuota} gets one counter per client and rule
+ * route, held here for as long as the rule has a quota, and checked by the
+ * {@link com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.composite.CompositeLimiter
+ * CompositeLimiter} in the same pass as the rate limit. Counters are not evicted with the
+ * client's bucket.
+ * </p>
+ * <p>
+ * Every {@code flushInterval}, the counters that counted requests since the last flush are
+ * written in unordered bulk operations of {@code batchSize}: each adds its new requests to the
+ * hourly and daily fields of its document with {@code $inc}, so replicas sharing the collection
+ * add up their counts. The documents are then read back, and the counters take over the stored
+ * counts of all replicas. A counter first used after a restart therefore includes the requests
+ * of the previous run from its first flush on. Failed writes are retried with the next flush.
+ * </p>
+ * <p>
+ * Document layout: {@code _id: {clientId, route}}, {@code hours} and {@code days} mapping the
+ * slot number since the epoch to its count, and {@code expireAt}, a TTL removing the documents of
+ * clients idle for longer than the monthly window. Slots that left the windows are unset when
+ * the document is read back.
+ * </p>
+ * <ul>
+ *     <li><b>nexus.quota.throttled</b> – requests rejected with 429 per {@code window}</li>
+ *     <li><b>nexus.quota.flush</b> – counters {@code written} to MongoDB, or whose write
+ *     {@code failed}</li>
+ *     <li><b>nexus.quota.counters</b> – counters held</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class QuotaStore {
+
+    private static final String ID = "_id";
+
+    private static final String CLIENT_ID = "clientId";
+
+    private static final String ROUTE = "route";
+
+    private static final String HOURS = "hours";
+
+    private static final String DAYS = "days";
+
+    private static final String EXPIRE_AT = "expireAt";
+
+    /**
+     * How long the document of an idle client is kept.
+     */
+    private static final Duration RETENTION = Duration.ofDays(QuotaWindow.MONTHLY.getSlots() + 1);
+
+    private final RateLimiterProperties.Quota settings;
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    private final ConcurrentMap<BucketKey, QuotaCounter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Counters that counted requests since the last flush.
+     */
+    private final Queue<QuotaCounter> dirty = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Rejected requests by {@link QuotaWindow#ordinal()}.
+     */
+    private final LongAdder[] throttled = new LongAdder[QuotaWindow.values().length];
+
+    private final LongAdder written = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private Scheduler scheduler;
+
+    private Disposable flusher;
+
+    /**
+     * Creates the store using the settings from {@link RateLimiterProperties.Quota}.
+     *
+     * @param properties    rate limiter settings
+     * @param mongoTemplate reactive template used for the bulk writes and reads
+     * @param registry      the meter registry
+     */
+    public QuotaStore(RateLimiterProperties properties, ReactiveMongoTemplate mongoTemplate, MeterRegistry registry) {
+        this.settings = properties.getQuota();
+        this.mongoTemplate = mongoTemplate;
+
+        for (QuotaWindow window : QuotaWindow.values()) {
+            LongAdder count = new LongAdder();
+            throttled[window.ordinal()] = count;
+            FunctionCounter.builder("nexus.quota.throttled", count, LongAdder::sum)
+                    .description("Requests rejected with 429 by a request quota")
+                    .tag("window", window.name().toLowerCase())
+                    .register(registry);
+        }
+        counter(registry, "written", written);
+        counter(registry, "failed", failed);
+        Gauge.builder("nexus.quota.counters", counters, Map::size)
+                .description("Quota counters held")
+                .register(registry);
+    }
+
+    /**
+     * Creates the TTL index and starts flushing the counters.
+     */
+    @PostConstruct
+    public void init() {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        mongoTemplate.indexOps(settings.getCollection())
+                .createIndex(new Index().on(EXPIRE_AT, Sort.Direction.ASC).expire(Duration.ZERO))
+                .subscribe(name -> { }, e -> log.warn("Failed to create the TTL index of {}: {}",
+                        settings.getCollection(), e.getMessage()));
+        scheduler = Schedulers.newSingle("quota-flush");
+        flusher = Flux.interval(settings.getFlushInterval(), settings.getFlushInterval(), scheduler)
+                .onBackpressureDrop()
+                .concatMap(tick -> flush())
+                .subscribe();
+    }
+
+    /**
+     * Stops flushing and writes the remaining counts.
+     */
+    @PreDestroy
+    public void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        flusher.dispose();
+        scheduler.dispose();
+        flush().block(Duration.ofSeconds(10));
+    }
+
+    /**
+     * Returns the quotas of a rule bound to the counter of its key, creating the counter on
+     * first use. The counter of a rule without quotas is dropped.
+     *
+     * @param key    the client and rule route, an immutable key
+     * @param config the rule, or {@code null} if the key has none
+     * @return the quotas, or {@code null} if the rule has none
+     */
+    public Quota quotaFor(BucketKey key, RateLimitConfig config) {
+        if (!settings.isEnabled() || config == null || (config.getDailyQuota() <= 0 && config.getMonthlyQuota() <= 0)) {
+            counters.remove(key);
+            return null;
+        }
+        QuotaCounter counter = counters.computeIfAbsent(key, k -> new QuotaCounter(k, dirty));
+        return new Quota(counter, Math.max(0, config.getDailyQuota()), Math.max(0, config.getMonthlyQuota()),
+                throttled);
+    }
+
+    /**
+     * Reports the quota usage of a rule. Counters that have not been flushed since a restart
+     * are added to the stored counts.
+     *
+     * @param rule the rule
+     * @return a {@link Mono} emitting the usage, or empty if the rule has no quotas
+     */
+    public Mono<QuotaStatus> status(RateLimitConfig rule) {
+        long daily = Math.max(0, rule.getDailyQuota());
+        long monthly = Math.max(0, rule.getMonthlyQuota());
+        if (!settings.isEnabled() || (daily == 0 && monthly == 0)) {
+            return Mono.empty();
+        }
+
+        BucketKey key = new BucketKey(rule.getClientId(), rule.getRoute());
+        QuotaCounter counter = counters.get(key);
+        long now = System.currentTimeMillis();
+        if (counter != null && counter.isSynced()) {
+            return Mono.just(QuotaStatus.of(key.getClientId(), key.getRoute(), daily, counter.used(QuotaWindow.DAILY, now),
+                    monthly, counter.used(QuotaWindow.MONTHLY, now)));
+        }
+        return mongoTemplate.findById(id(key), Document.class, settings.getCollection())
+                .defaultIfEmpty(new Document())
+                .map(document -> {
+                    long dailyUsed = sum(slots(document, HOURS), QuotaWindow.DAILY, now);
+                    long monthlyUsed = sum(slots(document, DAYS), QuotaWindow.MONTHLY, now);
+                    if (counter != null) {
+                        dailyUsed += counter.used(QuotaWindow.DAILY, now);
+                        monthlyUsed += counter.used(QuotaWindow.MONTHLY, now);
+                    }
+                    return QuotaStatus.of(key.getClientId(), key.getRoute(), daily, dailyUsed, monthly, monthlyUsed);
+                });
+    }
+
+    /**
+     * Writes the counters that counted requests since the last flush and reads them back.
+     */
+    private Mono<Void> flush() {
+        List<QuotaCounter> changed = new ArrayList<>();
+        for (QuotaCounter counter = dirty.poll(); counter != null; counter = dirty.poll()) {
+            changed.add(counter);
+        }
+        if (changed.isEmpty()) {
+            return Mono.empty();
+        }
+        return Flux.fromIterable(changed)
+                .buffer(settings.getBatchSize())
+                .concatMap(this::write)
+                .then();
+    }
+
+    /**
+     * Adds the pending requests of one batch of counters to their documents, then merges the
+     * stored counts back. Counters whose write failed keep their requests pending.
+     */
+    private Mono<Void> write(List<QuotaCounter> batch) {
+        long now = System.currentTimeMillis();
+        Date expireAt = new Date(now + RETENTION.toMillis());
+        ReactiveBulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED,
+                settings.getCollection());
+        List<QuotaCounter> updated = new ArrayList<>(batch.size());
+        List<Map<Long, Integer>> drained = new ArrayList<>(batch.size());
+        for (QuotaCounter counter : batch) {
+            Map<Long, Integer> hours = counter.drainPending(now);
+            if (hours.isEmpty()) {
+                continue;
+            }
+            Map<Long, Integer> days = new HashMap<>();
+            Update update = new Update().set(EXPIRE_AT, expireAt);
+            hours.forEach((hour, count) -> {
+                update.inc(HOURS + '.' + hour, count);
+                days.merge(Math.floorDiv(hour, QuotaWindow.DAILY.getSlots()), count, Integer::sum);
+            });
+            days.forEach((day, count) -> update.inc(DAYS + '.' + day, count));
+            operations.upsert(Query.query(where(ID).is(id(counter.getKey()))), update);
+            updated.add(counter);
+            drained.add(hours);
+        }
+        if (updated.isEmpty()) {
+            return Mono.empty();
+        }
+
+        return operations.execute()
+                .map(result -> List.<Integer>of())
+                .onErrorResume(e -> {
+                    List<Integer> errors = failedIndexes(e, updated.size());
+                    log.warn("Failed to write {} of {} quota counters: {}", errors.size(), updated.size(), e.getMessage());
+                    return Mono.just(errors);
+                })
+                .flatMap(errors -> {
+                    for (int index : errors) {
+                        updated.get(index).restorePending(drained.get(index), System.currentTimeMillis());
+                    }
+                    failed.add(errors.size());
+                    written.add(updated.size() - errors.size());
+                    return errors.size() < updated.size() ? readBack(updated) : Mono.empty();
+                });
+    }
+
+    /**
+     * Merges the stored counts into the counters and unsets the slots that left the windows.
+     */
+    private Mono<Void> readBack(List<QuotaCounter> batch) {
+        List<Document> ids = batch.stream().map(counter -> id(counter.getKey())).toList();
+        return mongoTemplate.find(Query.query(where(ID).in(ids)), Document.class, settings.getCollection())
+                .collectMap(document -> key(document.get(ID, Document.class)))
+                .flatMap(documents -> {
+                    long now = System.currentTimeMillis();
+                    ReactiveBulkOperations cleanup = null;
+                    for (QuotaCounter counter : batch) {
+                        Document document = documents.get(counter.getKey());
+                        if (document == null) {
+                            continue;
+                        }
+                        Map<Long, Integer> hours = slots(document, HOURS);
+                        Map<Long, Integer> days = slots(document, DAYS);
+                        counter.merge(hours, days, now);
+
+                        Update stale = new Update();
+                        unsetStale(stale, HOURS, hours, QuotaWindow.DAILY, now);
+                        unsetStale(stale, DAYS, days, QuotaWindow.MONTHLY, now);
+                        if (!stale.getUpdateObject().isEmpty()) {
+                            if (cleanup == null) {
+                                cleanup = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, settings.getCollection());
+                            }
+                            cleanup.updateOne(Query.query(where(ID).is(id(counter.getKey()))), stale);
+                        }
+                    }
+                    return cleanup != null ? cleanup.execute().then() : Mono.<Void>empty();
+                })
+                .onErrorResume(e -> {
+                    log.warn("Failed to read back {} quota counters: {}", batch.size(), e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * @return the indexes of the writes that failed, all of them unless the error lists them
+     */
+    private static List<Integer> failedIndexes(Throwable e, int writes) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof BulkOperationException bulk) {
+                return bulk.getErrors().stream().map(BulkWriteError::getIndex).toList();
+            }
+            if (t instanceof MongoBulkWriteException bulk) {
+                return bulk.getWriteErrors().stream().map(BulkWriteError::getIndex).toList();
+            }
+        }
+        List<Integer> all = new ArrayList<>(writes);
+        for (int i = 0; i < writes; i++) {
+            all.add(i);
+        }
+        return all;
+    }
+
+    /**
+     * Adds the slots of a field that left its window to an {@code $unset}.
+     */
+    private static void unsetStale(Update update, String field, Map<Long, Integer> slots, QuotaWindow window, long now) {
+        long oldest = window.slotOf(now) - window.getSlots() + 1;
+        for (long slot : slots.keySet()) {
+            if (slot < oldest) {
+                update.unset(field + '.' + slot);
+            }
+        }
+    }
+
+    /**
+     * @return the requests of the slots within the window
+     */
+    private static long sum(Map<Long, Integer> slots, QuotaWindow window, long now) {
+        long current = window.slotOf(now);
+        long total = 0;
+        for (Map.Entry<Long, Integer> slot : slots.entrySet()) {
+            if (slot.getKey() > current - window.getSlots() && slot.getKey() <= current) {
+                total += slot.getValue();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return the counts of a slot field of a document, by slot number
+     */
+    private static Map<Long, Integer> slots(Document document, String field) {
+        Document slots = document.get(field, Document.class);
+        if (slots == null) {
+            return Map.of();
+        }
+        Map<Long, Integer> counts = new HashMap<>(slots.size());
+        slots.forEach((slot, count) -> {
+            try {
+                counts.put(Long.parseLong(slot), ((Number) count).intValue());
+            } catch (NumberFormatException | ClassCastException e) {
+                // Not written by this store; ignore
+            }
+        });
+        return counts;
+    }
+
+    private static Document id(BucketKey key) {
+        return new Document(CLIENT_ID, key.getClientId()).append(ROUTE, key.getRoute());
+    }
+
+    private static BucketKey key(Document id) {
+        return new BucketKey(id.getString(CLIENT_ID), id.getString(ROUTE));
+    }
+
+    private static void counter(MeterRegistry registry, String result, LongAdder count) {
+        FunctionCounter.builder("nexus.quota.flush", count, LongAdder::sum)
+                .description("Quota counters flushed to MongoDB by result")
+                .tag("result", result)
+                .register(registry);
+    }
+}
@@ -0,0 +1,53 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.quota;
+
+import java.time.Duration;
+
+/**
+ * The sliding windows a request quota is counted over, split into slots of equal length.
+ */
+public enum QuotaWindow {
+
+    /**
+     * The last 24 hours, in hourly slots.
+     */
+    DAILY("daily-quota", 24, Duration.ofHours(1)),
+
+    /**
+     * The last 30 days, in daily slots. Days start at midnight UTC.
+     */
+    MONTHLY("monthly-quota", 30, Duration.ofDays(1));
+
+    private final String dimension;
+
+    private final int slots;
+
+    private final long slotMillis;
+
+    QuotaWindow(String dimension, int slots, Duration slot) {
+        this.dimension = dimension;
+        this.slots = slots;
+        this.slotMillis = slot.toMillis();
+    }
+
+    /**
+     * @return the name reported as the limit that denied a request
+     */
+    public String getDimension() {
+        return dimension;
+    }
+
+    /**
+     * @return the number of slots the window is split into
+     */
+    public int getSlots() {
+        return slots;
+    }
+
+    /**
+     * @param epochMillis a time in epoch milliseconds
+     * @return the number of the slot containing the time, counted from the epoch
+     */
+    public long slotOf(long epochMillis) {
+        return Math.floorDiv(epochMillis, slotMillis);
+    }
+}
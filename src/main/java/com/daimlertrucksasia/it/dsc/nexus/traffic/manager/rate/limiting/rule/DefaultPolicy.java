@@ -0,0 +1,141 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.rule;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.config.RateLimiterProperties;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.config.entity.RateLimitConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Limits of requests that match no rule of their client, from {@code nexus.rate-limiter.defaults}.
+ * <p>
+ * Default tiers are route patterns with a limit, compiled into a {@link RouteMatcher} like the
+ * rules of a client; paths matching no tier fall back to the default limit under
+ * {@link #FALLBACK_ROUTE}. A request without a rule therefore uses the bucket of its tier, not one
+ * bucket per raw path, so requests to arbitrary paths cannot fill the bucket store. With
+ * {@code sharedUnknownClients}, clients without any rule also share one bucket per tier, so
+ * made-up client IDs do not create buckets either.
+ * </p>
+ * <p>
+ * Tiers are represented as {@link RateLimitConfig}s of the client {@link #DEFAULT_CLIENT}, so
+ * their limits are built like those of a rule.
+ * </p>
+ */
+@Slf4j
+@Component
+public class DefaultPolicy {
+
+    /**
+     * Client ID of the default tiers, and of the buckets shared by unknown clients.
+     */
+    public static final String DEFAULT_CLIENT = "*";
+
+    /**
+     * Route of the fallback limit, matching every path.
+     */
+    public static final String FALLBACK_ROUTE = "/**";
+
+    /**
+     * Compiled tier patterns, including the fallback.
+     */
+    private final RouteMatcher matcher;
+
+    /**
+     * Tiers by route pattern.
+     */
+    private final Map<String, RateLimitConfig> tiers;
+
+    /**
+     * The limit of paths that match no tier.
+     */
+    private final RateLimitConfig fallback;
+
+    /**
+     * Whether clients without any rule share the buckets of the tiers.
+     */
+    private final boolean sharedUnknownClients;
+
+    /**
+     * Compiles the default tiers.
+     *
+     * @param properties rate limiter settings
+     */
+    public DefaultPolicy(RateLimiterProperties properties) {
+        RateLimiterProperties.Defaults defaults = properties.getDefaults();
+        this.sharedUnknownClients = defaults.isSharedUnknownClients();
+        this.fallback = tier(FALLBACK_ROUTE, defaults.getRequestsPerMinute(), defaults.getTimeWindow(),
+                defaults.getTimeUnit(), defaults.getBurstCapacity(), defaults.getPriority());
+
+        Map<String, RateLimitConfig> byRoute = new HashMap<>();
+        for (RateLimiterProperties.Defaults.Tier tier : defaults.getTiers()) {
+            if (tier.getRoute() == null || tier.getRoute().isBlank()) {
+                throw new IllegalArgumentException("Default tier without a route: " + tier);
+            }
+            byRoute.put(tier.getRoute(), tier(tier.getRoute(), tier.getRequestsPerMinute(), tier.getTimeWindow(),
+                    tier.getTimeUnit(), tier.getBurstCapacity(), tier.getPriority()));
+        }
+        byRoute.putIfAbsent(FALLBACK_ROUTE, fallback);
+        this.tiers = Map.copyOf(byRoute);
+        this.matcher = RouteMatcher.compile(new ArrayList<>(tiers.values()));
+
+        log.info("Default rate limit: {} per {} {}, {} tiers, unknown clients {}",
+                fallback.getRequestsPerMinute(), fallback.getTimeWindow(), fallback.getTimeUnit(),
+                tiers.size() - 1, sharedUnknownClients ? "shared" : "per client");
+    }
+
+    /**
+     * Resolves a request path to the most specific tier.
+     *
+     * @param path the raw request path
+     * @return the matching tier, or the fallback; never {@code null}
+     */
+    public RateLimitConfig match(String path) {
+        RateLimitConfig tier = matcher.match(path);
+        return tier != null ? tier : fallback;
+    }
+
+    /**
+     * Looks up the tier whose route pattern is exactly the given one.
+     *
+     * @param route the route pattern of a bucket
+     * @return the tier, or the fallback if the pattern is not a tier; never {@code null}
+     */
+    public RateLimitConfig find(String route) {
+        RateLimitConfig tier = tiers.get(route);
+        return tier != null ? tier : fallback;
+    }
+
+    /**
+     * @param clientId the client of a request without a matching rule
+     * @param known    whether the client has any rule at all
+     * @return the client ID of the request's default bucket
+     */
+    public String bucketClient(String clientId, boolean known) {
+        return sharedUnknownClients && !known ? DEFAULT_CLIENT : clientId;
+    }
+
+    /**
+     * @return the tiers, including the fallback
+     */
+    public List<RateLimitConfig> tiers() {
+        return List.copyOf(tiers.values());
+    }
+
+    private static RateLimitConfig tier(String route, long requestsPerMinute, long timeWindow, String timeUnit,
+                                        long burstCapacity, int priority) {
+        return RateLimitConfig.builder()
+                .clientId(DEFAULT_CLIENT)
+                .route(route)
+                .requestsPerMinute(requestsPerMinute)
+                .timeWindow(timeWindow)
+                .timeUnit(timeUnit)
+                .burstCapacity(burstCapacity)
+                .priority(priority)
+                .status("ACTIVE")
+                .build();
+    }
+}
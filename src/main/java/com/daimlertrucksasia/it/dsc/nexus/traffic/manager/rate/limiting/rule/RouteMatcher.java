@@ -0,0 +1,248 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.rule;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.config.entity.RateLimitConfig;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compiled segment trie resolving a request path to the most specific {@link RateLimitConfig#getRoute()} pattern.
+ * <p>
+ * Supported pattern segments:
+ * <ul>
+ *     <li>literal – e.g. {@code orders}, matched exactly</li>
+ *     <li>{@code {var}} or {@code *} – matches exactly one segment</li>
+ *     <li>{@code **} or {@code {*var}} as the last segment – matches zero or more remaining segments</li>
+ * </ul>
+ * Specificity is compared segment by segment from the left: a literal beats a single-segment
+ * wildcard, which beats {@code **}. Patterns of equal shape (e.g. {@code /orders/{id}} and
+ * {@code /orders/*}) are tied and resolved by {@link RateLimitConfig#getPriority()}, lowest first.
+ * </p>
+ * <p>
+ * Matching walks the path in place without splitting or copying it, so a lookup allocates
+ * nothing. It tries the literal child before the single-segment wildcard and backtracks to the
+ * wildcard when the literal branch finds no rule. Every edge of the trie consumes exactly one
+ * segment, so each node is visited at most once per lookup: the cost is bounded by the number of
+ * nodes whose pattern prefix matches the path, and never exceeds the size of the trie. Without
+ * wildcards, or with wildcards only where no literal competes, that is one node per segment. When
+ * literals and wildcards compete at many depths it can grow up to {@code 2^segments}, still
+ * capped by the number of the client's patterns times their length.
+ * </p>
+ */
+public final class RouteMatcher {
+
+    /**
+     * Matcher that matches nothing.
+     */
+    public static final RouteMatcher EMPTY = new RouteMatcher(new Node(new String[0], new Node[0], null, null, null));
+
+    /**
+     * Root of the trie.
+     */
+    private final Node root;
+
+    private RouteMatcher(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Compiles the route patterns of the given rules into a matcher.
+     *
+     * @param rules rules whose {@code route} is a path pattern
+     * @return the compiled matcher
+     */
+    public static RouteMatcher compile(Collection<RateLimitConfig> rules) {
+        if (rules.isEmpty()) {
+            return EMPTY;
+        }
+
+        NodeBuilder root = new NodeBuilder();
+        for (RateLimitConfig rule : rules) {
+            NodeBuilder node = root;
+            String route = rule.getRoute();
+            int len = route.length();
+            int start = skipSlashes(route, 0);
+
+            boolean glob = false;
+            while (start < len) {
+                int end = segmentEnd(route, start);
+                boolean last = skipSlashes(route, end) >= len;
+                String segment = route.substring(start, end);
+
+                if (last && (segment.equals("**") || (segment.startsWith("{*") && segment.endsWith("}")))) {
+                    glob = true;
+                } else if (segment.equals("*") || segment.equals("**")
+                        || (segment.startsWith("{") && segment.endsWith("}"))) {
+                    node = node.param();
+                } else {
+                    node = node.literal(segment);
+                }
+                start = skipSlashes(route, end);
+            }
+
+            if (glob) {
+                node.globRule = preferred(node.globRule, rule);
+            } else {
+                node.rule = preferred(node.rule, rule);
+            }
+        }
+        return new RouteMatcher(root.build());
+    }
+
+    /**
+     * Resolves a request path to the most specific matching rule.
+     *
+     * @param path the raw request path
+     * @return the matching rule, or {@code null} if no pattern matches
+     */
+    public RateLimitConfig match(String path) {
+        return match(root, path, 0);
+    }
+
+    /**
+     * Matches the rest of the path from {@code from} below {@code node}. A node is only reached
+     * after the segments leading to it, so it is never matched twice at different offsets.
+     */
+    private static RateLimitConfig match(Node node, String path, int from) {
+        int start = skipSlashes(path, from);
+        if (start >= path.length()) {
+            return node.rule != null ? node.rule : node.globRule;
+        }
+        int end = segmentEnd(path, start);
+
+        Node literal = node.literal(path, start, end);
+        if (literal != null) {
+            RateLimitConfig found = match(literal, path, end);
+            if (found != null) {
+                return found;
+            }
+        }
+        if (node.param != null) {
+            RateLimitConfig found = match(node.param, path, end);
+            if (found != null) {
+                return found;
+            }
+        }
+        return node.globRule;
+    }
+
+    private static int skipSlashes(String s, int from) {
+        int i = from;
+        while (i < s.length() && s.charAt(i) == '/') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int segmentEnd(String s, int start) {
+        int end = s.indexOf('/', start);
+        return end < 0 ? s.length() : end;
+    }
+
+    /**
+     * @return the rule with the higher priority (lower value); ties keep the lexicographically smaller route
+     */
+    private static RateLimitConfig preferred(RateLimitConfig current, RateLimitConfig candidate) {
+        if (current == null) {
+            return candidate;
+        }
+        if (candidate.getPriority() != current.getPriority()) {
+            return candidate.getPriority() < current.getPriority() ? candidate : current;
+        }
+        return candidate.getRoute().compareTo(current.getRoute()) < 0 ? candidate : current;
+    }
+
+    /**
+     * Immutable trie node. Literal children are kept in sorted arrays and found by binary search
+     * over the path region, so no segment string is created during matching.
+     */
+    private static final class Node {
+
+        private final String[] literalKeys;
+
+        private final Node[] literalChildren;
+
+        private final Node param;
+
+        private final RateLimitConfig rule;
+
+        private final RateLimitConfig globRule;
+
+        private Node(String[] literalKeys, Node[] literalChildren, Node param,
+                     RateLimitConfig rule, RateLimitConfig globRule) {
+            this.literalKeys = literalKeys;
+            this.literalChildren = literalChildren;
+            this.param = param;
+            this.rule = rule;
+            this.globRule = globRule;
+        }
+
+        private Node literal(String path, int start, int end) {
+            int low = 0;
+            int high = literalKeys.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = compare(literalKeys[mid], path, start, end);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return literalChildren[mid];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Compares a key with a region of the path using the same order as {@link String#compareTo}.
+         */
+        private static int compare(String key, String path, int start, int end) {
+            int regionLength = end - start;
+            int n = Math.min(key.length(), regionLength);
+            for (int i = 0; i < n; i++) {
+                char a = key.charAt(i);
+                char b = path.charAt(start + i);
+                if (a != b) {
+                    return a - b;
+                }
+            }
+            return key.length() - regionLength;
+        }
+    }
+
+    /**
+     * Mutable node used while compiling.
+     */
+    private static final class NodeBuilder {
+
+        private final Map<String, NodeBuilder> literals = new TreeMap<>();
+
+        private NodeBuilder param;
+
+        private RateLimitConfig rule;
+
+        private RateLimitConfig globRule;
+
+        private NodeBuilder literal(String segment) {
+            return literals.computeIfAbsent(segment, s -> new NodeBuilder());
+        }
+
+        private NodeBuilder param() {
+            if (param == null) {
+                param = new NodeBuilder();
+            }
+            return param;
+        }
+
+        private Node build() {
+            String[] keys = literals.keySet().toArray(new String[0]);
+            Node[] children = new Node[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                children[i] = literals.get(keys[i]).build();
+            }
+            return new Node(keys, children, param != null ? param.build() : null, rule, globRule);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.rule;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.config.entity.RateLimitConfig;
+import lombok.Value;
+
+/**
+ * A single rule transition between two {@link RuleSnapshot}s.
+ * <ul>
+ *     <li>insert – {@code previous} is {@code null}</li>
+ *     <li>update – both are set (client or route may differ)</li>
+ *     <li>delete or deactivation – {@code current} is {@code null}</li>
+ * </ul>
+ */
+@Value
+public class RuleChange {
+
+    /**
+     * The rule as it was in the previous snapshot, or {@code null} if it was not active.
+     */
+    RateLimitConfig previous;
+
+    /**
+     * The rule as it is in the new snapshot, or {@code null} if it is no longer active.
+     */
+    RateLimitConfig current;
+}
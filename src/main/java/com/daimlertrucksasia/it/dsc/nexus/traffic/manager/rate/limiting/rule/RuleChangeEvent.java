@@ -0,0 +1,23 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.rule;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Application event published after a new {@link RuleSnapshot} has been swapped in.
+ * Listeners use it to update state derived from the affected rules, such as live buckets.
+ */
+@Value
+public class RuleChangeEvent {
+
+    /**
+     * The snapshot that is now current.
+     */
+    RuleSnapshot snapshot;
+
+    /**
+     * The rules that differ from the previous snapshot.
+     */
+    List<RuleChange> changes;
+}
@@ -0,0 +1,68 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.rule;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Value;
+
+/**
+ * Outcome of one line of a bulk rule import.
+ */
+@Value
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class RuleImportResult {
+
+    /**
+     * One-based line number in the imported NDJSON.
+     */
+    long line;
+
+    /**
+     * What happened to the line.
+     */
+    Status status;
+
+    /**
+     * ID of the written rule, if it was written.
+     */
+    String id;
+
+    /**
+     * Client of the rule, if the line could be parsed.
+     */
+    String clientId;
+
+    /**
+     * Route of the rule, if the line could be parsed.
+     */
+    String route;
+
+    /**
+     * Why the line was not written.
+     */
+    String error;
+
+    /**
+     * What happened to an imported line.
+     */
+    public enum Status {
+
+        /**
+         * A new rule was inserted.
+         */
+        CREATED,
+
+        /**
+         * The existing rule for the same client and route was replaced.
+         */
+        UPDATED,
+
+        /**
+         * The line is not a valid rule and was skipped.
+         */
+        INVALID,
+
+        /**
+         * The rule is valid but MongoDB rejected the write.
+         */
+        FAILED
+    }
+}
@@ -0,0 +1,180 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.rule;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.config.entity.RateLimitConfig;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable, indexed view of all {@link RateLimitConfig} rules in force.
+ * <p>
+ * Each client's routes are also compiled into a {@link RouteMatcher}, so parameterised
+ * patterns such as {@code /pigeon/orders/{id}} resolve to one rule for every concrete path.
+ * A snapshot is never modified after it is built,
+ * so it can be read concurrently from the request path without locking. Changes
+ * are published by building a new snapshot and swapping the reference held by
+ * {@link com.daimlertrucksasia.it.dsc.nexus.traffic.manager.service.RuleSnapshotService}.
+ * </p>
+ */
+public final class RuleSnapshot {
+
+    /**
+     * Snapshot that contains no rules. Used until the first load completes.
+     */
+    public static final RuleSnapshot EMPTY = new RuleSnapshot(Map.of(), Map.of(), Map.of());
+
+    /**
+     * Rules indexed by client ID and then by route.
+     */
+    private final Map<String, Map<String, RateLimitConfig>> rulesByClient;
+
+    /**
+     * Compiled route patterns indexed by client ID.
+     */
+    private final Map<String, RouteMatcher> matchersByClient;
+
+    /**
+     * Rules indexed by their MongoDB document ID.
+     */
+    private final Map<String, RateLimitConfig> rulesById;
+
+    private RuleSnapshot(Map<String, Map<String, RateLimitConfig>> rulesByClient,
+                         Map<String, RouteMatcher> matchersByClient,
+                         Map<String, RateLimitConfig> rulesById) {
+        this.rulesByClient = rulesByClient;
+        this.matchersByClient = matchersByClient;
+        this.rulesById = rulesById;
+    }
+
+    /**
+     * Builds a new snapshot with the given rules inserted or replaced and the given IDs removed.
+     * Only the index entries and matchers of affected clients are rebuilt; this snapshot is left untouched.
+     * If several rules share the same client and route, the one with the highest priority
+     * (lowest {@code priority} value) wins, and the next one takes over when it is removed.
+     *
+     * @param upserts    rules in force to insert or replace, matched by document ID
+     * @param removedIds document IDs of rules that are no longer active
+     * @return a new immutable snapshot
+     */
+    public RuleSnapshot apply(Collection<RateLimitConfig> upserts, Collection<String> removedIds) {
+        Map<String, RateLimitConfig> byId = new HashMap<>(rulesById);
+        Map<String, Set<String>> touchedRoutes = new HashMap<>();
+
+        for (String id : removedIds) {
+            RateLimitConfig previous = byId.remove(id);
+            if (previous != null) {
+                touch(touchedRoutes, previous);
+            }
+        }
+        for (RateLimitConfig rule : upserts) {
+            if (rule.getId() == null || rule.getClientId() == null || rule.getRoute() == null) {
+                continue;
+            }
+            RateLimitConfig previous = byId.put(rule.getId(), rule);
+            if (previous != null) {
+                touch(touchedRoutes, previous);
+            }
+            touch(touchedRoutes, rule);
+        }
+
+        // Rebuild every touched route from the rules that remain, so removing the winner of
+        // duplicate rules falls back to the next one
+        Map<String, Map<String, RateLimitConfig>> touched = new HashMap<>();
+        touchedRoutes.forEach((clientId, routes) -> {
+            Map<String, RateLimitConfig> index = new HashMap<>(rulesByClient.getOrDefault(clientId, Map.of()));
+            index.keySet().removeAll(routes);
+            touched.put(clientId, index);
+        });
+        for (RateLimitConfig rule : byId.values()) {
+            Set<String> routes = touchedRoutes.get(rule.getClientId());
+            if (routes != null && routes.contains(rule.getRoute())) {
+                touched.get(rule.getClientId())
+                        .merge(rule.getRoute(), rule, (a, b) -> a.getPriority() <= b.getPriority() ? a : b);
+            }
+        }
+
+        Map<String, Map<String, RateLimitConfig>> byClient = new HashMap<>(rulesByClient);
+        Map<String, RouteMatcher> matchers = new HashMap<>(matchersByClient);
+        touched.forEach((clientId, routes) -> {
+            if (routes.isEmpty()) {
+                byClient.remove(clientId);
+                matchers.remove(clientId);
+            } else {
+                byClient.put(clientId, Map.copyOf(routes));
+                matchers.put(clientId, RouteMatcher.compile(routes.values()));
+            }
+        });
+
+        return new RuleSnapshot(Collections.unmodifiableMap(byClient), Collections.unmodifiableMap(matchers),
+                Collections.unmodifiableMap(byId));
+    }
+
+    /**
+     * Records the client and route of a rule as needing their index entry rebuilt.
+     */
+    private static void touch(Map<String, Set<String>> touchedRoutes, RateLimitConfig rule) {
+        if (rule.getClientId() != null && rule.getRoute() != null) {
+            touchedRoutes.computeIfAbsent(rule.getClientId(), c -> new HashSet<>()).add(rule.getRoute());
+        }
+    }
+
+    /**
+     * Resolves a request path to the most specific rule of the given client.
+     *
+     * @param clientId The client identifier.
+     * @param path     The raw request path.
+     * @return The matching {@link RateLimitConfig}, or {@code null} if no pattern matches.
+     */
+    public RateLimitConfig match(String clientId, String path) {
+        RouteMatcher matcher = matchersByClient.get(clientId);
+        return matcher != null ? matcher.match(path) : null;
+    }
+
+    /**
+     * @param clientId The client identifier.
+     * @return whether the client has any rule in this snapshot
+     */
+    public boolean hasClient(String clientId) {
+        return matchersByClient.containsKey(clientId);
+    }
+
+    /**
+     * Looks up the rule whose route pattern is exactly the given one.
+     *
+     * @param clientId The client identifier.
+     * @param route    The route pattern as stored in the rule.
+     * @return The matching {@link RateLimitConfig}, or {@code null} if none is active.
+     */
+    public RateLimitConfig find(String clientId, String route) {
+        Map<String, RateLimitConfig> routes = rulesByClient.get(clientId);
+        return routes != null ? routes.get(route) : null;
+    }
+
+    /**
+     * Looks up a rule by its document ID.
+     *
+     * @param id the MongoDB document ID
+     * @return The matching {@link RateLimitConfig}, or {@code null} if not part of this snapshot.
+     */
+    public RateLimitConfig findById(String id) {
+        return id != null ? rulesById.get(id) : null;
+    }
+
+    /**
+     * @return all rules contained in this snapshot
+     */
+    public Collection<RateLimitConfig> rules() {
+        return rulesById.values();
+    }
+
+    /**
+     * @return the number of rules contained in this snapshot
+     */
+    public int size() {
+        return rulesById.size();
+    }
+}
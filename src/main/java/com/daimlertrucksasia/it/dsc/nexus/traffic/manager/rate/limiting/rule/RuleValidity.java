@@ -0,0 +1,71 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.rule;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.config.entity.RateLimitConfig;
+
+import java.time.LocalDateTime;
+
+/**
+ * Decides from its status and dates whether a {@link RateLimitConfig} is enforced at a given time.
+ * <ul>
+ *     <li>{@code ACTIVE} – enforced until its {@code expirationDate}, if any</li>
+ *     <li>{@code PENDING} – enforced from its {@code activationDate} until its
+ *     {@code expirationDate}; without an activation date it waits to be activated by hand</li>
+ *     <li>any other status – never enforced</li>
+ * </ul>
+ */
+public final class RuleValidity {
+
+    /**
+     * Status value of rules that are enforced now.
+     */
+    public static final String ACTIVE = "ACTIVE";
+
+    /**
+     * Status value of rules that are enforced from their activation date.
+     */
+    public static final String PENDING = "PENDING";
+
+    private RuleValidity() {
+    }
+
+    /**
+     * @param rule the rule
+     * @param now  the current time
+     * @return whether the rule is enforced at {@code now}
+     */
+    public static boolean isInForce(RateLimitConfig rule, LocalDateTime now) {
+        LocalDateTime expiration = rule.getExpirationDate();
+        if (expiration != null && !now.isBefore(expiration)) {
+            return false;
+        }
+        if (ACTIVE.equals(rule.getStatus())) {
+            return true;
+        }
+        LocalDateTime activation = rule.getActivationDate();
+        return PENDING.equals(rule.getStatus()) && activation != null && !now.isBefore(activation);
+    }
+
+    /**
+     * Returns the next time at which {@link #isInForce} changes for the rule.
+     *
+     * @param rule the rule
+     * @param now  the current time
+     * @return the activation or expiration date after {@code now}, or {@code null} if the rule
+     * stays as it is
+     */
+    public static LocalDateTime nextTransition(RateLimitConfig rule, LocalDateTime now) {
+        if (PENDING.equals(rule.getStatus())) {
+            LocalDateTime activation = rule.getActivationDate();
+            if (activation == null) {
+                return null;
+            }
+            if (now.isBefore(activation)) {
+                return activation;
+            }
+        } else if (!ACTIVE.equals(rule.getStatus())) {
+            return null;
+        }
+        LocalDateTime expiration = rule.getExpirationDate();
+        return expiration != null && now.isBefore(expiration) ? expiration : null;
+    }
+}
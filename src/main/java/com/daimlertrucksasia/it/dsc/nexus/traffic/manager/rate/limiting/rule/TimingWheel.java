@@ -0,0 +1,237 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.rule;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hierarchical timing wheel holding one deadline per key.
+ * <p>
+ * Deadlines are rounded up to whole ticks and kept in {@value #LEVELS} wheels of
+ * {@value #SLOTS} slots each: the first wheel holds deadlines less than 64 ticks away, one slot
+ * per tick, and every further wheel covers 64 times the range of the previous one. When the
+ * wheel below wraps around, the entries of the next slot of a wheel are moved down, so each
+ * entry is moved at most once per wheel. Scheduling and cancelling a key are O(1), and
+ * advancing only visits the slots of the elapsed ticks, never the whole set of entries. Ticks
+ * at which the lower wheels are empty are skipped up to the next turn of the lowest wheel
+ * holding entries, so catching up after a long pause does not visit every tick.
+ * </p>
+ * <p>
+ * Deadlines further away than {@code 64^6} ticks are kept at that distance and expire early;
+ * callers re-check an expired entry and schedule it again. The wheel is not thread-safe.
+ * </p>
+ *
+ * @param <K> the key type
+ * @param <V> the type of the value handed back when a deadline expires
+ */
+public final class TimingWheel<K, V> {
+
+    private static final int LEVEL_BITS = 6;
+
+    private static final int SLOTS = 1 << LEVEL_BITS;
+
+    private static final int LEVELS = 6;
+
+    private static final long SLOT_MASK = SLOTS - 1;
+
+    /**
+     * Largest number of ticks a deadline can be away.
+     */
+    private static final long MAX_DELAY = (1L << (LEVEL_BITS * LEVELS)) - 1;
+
+    private final long tickMillis;
+
+    /**
+     * Sentinel heads of the circular entry lists, by wheel and slot.
+     */
+    private final Node<K, V>[][] slots;
+
+    private final Map<K, Node<K, V>> nodes = new HashMap<>();
+
+    /**
+     * Number of entries per wheel.
+     */
+    private final int[] counts = new int[LEVELS];
+
+    /**
+     * Last tick that was processed.
+     */
+    private long currentTick;
+
+    /**
+     * @param tick      the resolution of the deadlines
+     * @param nowMillis the current time in epoch milliseconds
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(Duration tick, long nowMillis) {
+        this.tickMillis = Math.max(1, tick.toMillis());
+        this.slots = new Node[LEVELS][SLOTS];
+        for (Node<K, V>[] wheel : slots) {
+            for (int i = 0; i < SLOTS; i++) {
+                wheel[i] = new Node<>(null, null, 0);
+            }
+        }
+        this.currentTick = Math.floorDiv(nowMillis, tickMillis);
+    }
+
+    /**
+     * Schedules the deadline of a key, replacing its previous deadline.
+     *
+     * @param key            the key
+     * @param value          the value returned when the deadline expires
+     * @param deadlineMillis the deadline in epoch milliseconds; past deadlines expire on the next tick
+     */
+    public void schedule(K key, V value, long deadlineMillis) {
+        cancel(key);
+        long deadline = -Math.floorDiv(-deadlineMillis, tickMillis);
+        Node<K, V> node = new Node<>(key, value, Math.min(Math.max(deadline, currentTick + 1), currentTick + MAX_DELAY));
+        nodes.put(key, node);
+        link(node);
+    }
+
+    /**
+     * Cancels the deadline of a key.
+     *
+     * @param key the key
+     * @return the value scheduled for the key, or {@code null} if it had no deadline
+     */
+    public V cancel(K key) {
+        Node<K, V> node = nodes.remove(key);
+        if (node == null) {
+            return null;
+        }
+        unlink(node);
+        return node.value;
+    }
+
+    /**
+     * Advances the wheel to the given time and removes the entries whose deadline passed.
+     *
+     * @param nowMillis the current time in epoch milliseconds
+     * @return the values of the expired entries, earliest deadline first
+     */
+    public List<V> advance(long nowMillis) {
+        long target = Math.floorDiv(nowMillis, tickMillis);
+        List<V> expired = new ArrayList<>();
+        while (currentTick < target) {
+            if (nodes.isEmpty()) {
+                currentTick = target;
+                break;
+            }
+            skipIdleTicks(target);
+            long tick = ++currentTick;
+            cascade(tick);
+            Node<K, V> head = slots[0][(int) (tick & SLOT_MASK)];
+            for (Node<K, V> node = head.next; node != head; node = head.next) {
+                unlink(node);
+                nodes.remove(node.key);
+                expired.add(node.value);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * @return the keys with a deadline
+     */
+    public Set<K> keys() {
+        return Set.copyOf(nodes.keySet());
+    }
+
+    /**
+     * @return the number of keys with a deadline
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Moves the current tick to just before the next tick at which an entry may expire or move:
+     * while the lower wheels are empty, that is the next turn of the lowest wheel holding entries.
+     * Must only be called while the wheel holds entries.
+     */
+    private void skipIdleTicks(long target) {
+        int level = 0;
+        while (counts[level] == 0) {
+            level++;
+        }
+        if (level > 0) {
+            long span = 1L << (LEVEL_BITS * level);
+            long next = (Math.floorDiv(currentTick, span) + 1) * span;
+            currentTick = Math.min(target, next) - 1;
+        }
+    }
+
+    /**
+     * Moves the entries of the slots that become current at the given tick to the lower wheels.
+     */
+    private void cascade(long tick) {
+        for (int level = 1; level < LEVELS && (tick & ((1L << (LEVEL_BITS * level)) - 1)) == 0; level++) {
+            Node<K, V> head = slots[level][(int) ((tick >>> (LEVEL_BITS * level)) & SLOT_MASK)];
+            for (Node<K, V> node = head.next; node != head; node = head.next) {
+                unlink(node);
+                link(node);
+            }
+        }
+    }
+
+    /**
+     * Links an entry into the slot of its deadline, on the lowest wheel whose range covers it.
+     */
+    private void link(Node<K, V> node) {
+        long delay = node.deadline - currentTick;
+        int level = delay < SLOTS ? 0 : (63 - Long.numberOfLeadingZeros(delay)) / LEVEL_BITS;
+        Node<K, V> head = slots[level][(int) ((node.deadline >>> (LEVEL_BITS * level)) & SLOT_MASK)];
+        node.level = level;
+        counts[level]++;
+        node.prev = head.prev;
+        node.next = head;
+        head.prev.next = node;
+        head.prev = node;
+    }
+
+    /**
+     * Removes an entry from its slot.
+     */
+    private void unlink(Node<K, V> node) {
+        counts[node.level]--;
+        node.unlink();
+    }
+
+    /**
+     * Entry of a slot list. A sentinel links to itself while its slot is empty.
+     */
+    private static final class Node<K, V> {
+
+        private final K key;
+
+        private final V value;
+
+        private final long deadline;
+
+        /**
+         * Wheel the entry is linked into.
+         */
+        private int level;
+
+        private Node<K, V> prev = this;
+
+        private Node<K, V> next = this;
+
+        private Node(K key, V value, long deadline) {
+            this.key = key;
+            this.value = value;
+            this.deadline = deadline;
+        }
+
+        private void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = this;
+            next = this;
+        }
+    }
+}
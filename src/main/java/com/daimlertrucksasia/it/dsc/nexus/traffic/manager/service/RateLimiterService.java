@@ -1,123 +1,370 @@
 package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.service;
 
-import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.infrastructure.RateLimitConfigRepository;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.config.RateLimiterProperties;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketBackend;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketEntry;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketKey;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketSnapshots;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketStore;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.HotKeyTracker;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.WaitPolicy;
 import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.config.entity.RateLimitConfig;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.metrics.DecisionCounters;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.metrics.RateLimiterMetrics;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.quota.Quota;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.quota.QuotaStore;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.rule.DefaultPolicy;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.rule.RuleChange;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.rule.RuleChangeEvent;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.rule.RuleSnapshot;
 import io.github.bucket4j.Bandwidth;
 import io.github.bucket4j.Bucket;
 import io.github.bucket4j.Bucket4j;
+import io.github.bucket4j.BucketConfiguration;
 import io.github.bucket4j.Refill;
 import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Service responsible for handling rate limiting logic using {@link Bucket4j}.
  * <p>
  * Each client and route combination is associated with a {@link Bucket} that
  * enforces rate limits based on MongoDB-configured {@link RateLimitConfig}.
- * This service supports caching for performance and provides methods to
- * retrieve or invalidate rate limiting configurations dynamically.
+ * Rules are read from the in-memory snapshot held by {@link RuleSnapshotService},
+ * so resolving a bucket never performs I/O on the request path. Buckets live in a bounded
+ * {@link BucketStore} that evicts idle entries.
+ * When a rule changes, live buckets are reconfigured in place and keep their tokens.
+ * Bucket state is local or shared between replicas depending on the {@link BucketBackend}.
+ * Heavily used local buckets are split into stripes by the {@link HotKeyTracker}.
+ * Local bucket state survives restarts through {@link BucketSnapshots}.
+ * Entries of rules with daily or monthly quotas carry the counters of the {@link QuotaStore}.
  * </p>
  */
+@Slf4j
 @Service("rateLimiterService")
 public class RateLimiterService {
 
     /**
-     * Repository to retrieve rate limit configurations from MongoDB.
+     * Service providing the in-memory snapshot of active rate limit configurations.
      */
     @Autowired
-    private RateLimitConfigRepository configRepository;
+    private RuleSnapshotService ruleSnapshotService;
 
     /**
-     * Cache that stores rate limiter buckets for each client:route pair.
+     * Rate limiter settings, including how tokens are inherited on reconfiguration.
      */
-    @Getter
-    private final ConcurrentMap<String, Bucket> bucketCache = new ConcurrentHashMap<>();
+    @Autowired
+    private RateLimiterProperties properties;
+
+    /**
+     * Backend building buckets, either local or shared between gateway replicas.
+     */
+    @Autowired
+    private BucketBackend bucketBackend;
 
     /**
-     * Cache that stores precomputed request limits (requestsPerMinute + burstCapacity).
+     * Metrics of rule lookup, bucket resolution and rate limiting decisions.
+     */
+    @Autowired
+    private RateLimiterMetrics metrics;
+
+    /**
+     * Bounded store holding the rate limiter bucket and its capacity for each client:route pair.
      */
     @Getter
-    private final ConcurrentMap<String, Long> configCache = new ConcurrentHashMap<>();
+    @Autowired
+    private BucketStore bucketStore;
+
+    /**
+     * Detector striping the buckets of heavy-hitter clients.
+     */
+    @Autowired
+    private HotKeyTracker hotKeyTracker;
+
+    /**
+     * Snapshots restoring the tokens buckets had before a restart.
+     */
+    @Autowired
+    private BucketSnapshots bucketSnapshots;
+
+    /**
+     * Limits of requests that match no rule of their client.
+     */
+    @Autowired
+    private DefaultPolicy defaultPolicy;
+
+    /**
+     * Request counters of the rules with daily or monthly quotas.
+     */
+    @Autowired
+    private QuotaStore quotaStore;
 
     /**
      * Resolves the {@link Bucket} associated with the given client and route.
      * If a bucket does not exist in the cache, it will be created and cached.
+     * <p>
+     * The path is first matched against the client's route patterns. Buckets are shared per
+     * matched pattern, so {@code /orders/1} and {@code /orders/2} both use the bucket of
+     * {@code /orders/{id}}. Paths without a matching rule use the bucket of their
+     * {@link DefaultPolicy} tier, so arbitrary paths do not each create a bucket.
+     * The store is probed with this thread's reusable {@link BucketKey#lookup} key, so resolving
+     * an existing bucket allocates nothing. An immutable key is only created on a miss.
+     * </p>
      *
      * @param clientId The client identifier.
      * @param route    The route/path being accessed.
-     * @return A configured {@link Bucket} for rate limiting.
+     * @return A configured {@link Bucket} for rate limiting, or {@code null} if buckets live in a
+     * shared store and must be used through {@link BucketEntry#getAsyncBucket()}.
      */
     public Bucket resolveBucket(String clientId, String route) {
-        String cacheKey = clientId + ":" + route;
+        return resolveEntry(clientId, route).getBucket();
+    }
 
-        return bucketCache.computeIfAbsent(cacheKey, k -> {
-            Bucket bucket = createNewBucket(clientId, route);
+    /**
+     * Resolves the {@link BucketEntry} associated with the given client and route, which also
+     * carries the wait policy and wait queue of the bucket.
+     *
+     * @param clientId The client identifier.
+     * @param route    The route/path being accessed.
+     * @return The existing or newly created {@link BucketEntry}.
+     */
+    public BucketEntry resolveEntry(String clientId, String route) {
+        long start = System.nanoTime();
+        RuleSnapshot snapshot = ruleSnapshotService.current();
+        RateLimitConfig config = snapshot.match(clientId, route);
+        String bucketClient = clientId;
+        String bucketRoute;
+        if (config != null) {
+            bucketRoute = config.getRoute();
+        } else {
+            bucketRoute = defaultPolicy.match(route).getRoute();
+            bucketClient = defaultPolicy.bucketClient(clientId, snapshot.hasClient(clientId));
+        }
+        long matched = System.nanoTime();
 
-            RateLimitConfig config = findConfig(clientId, route);
-            if (config != null) {
-                long rpm = config.getRequestsPerMinute();
-                long burst = Math.max(0, config.getBurstCapacity());
-                configCache.put(cacheKey, rpm + burst);
-            }
+        BucketEntry entry = bucketStore.getIfPresent(BucketKey.lookup(bucketClient, bucketRoute));
+        if (entry == null) {
+            entry = bucketStore.computeIfAbsent(new BucketKey(bucketClient, bucketRoute), this::createEntry);
+        }
+        hotKeyTracker.record(BucketKey.lookup(bucketClient, bucketRoute), entry);
 
-            return bucket;
-        });
+        metrics.recordConfigLookup(matched - start);
+        metrics.recordBucketResolution(System.nanoTime() - matched);
+        return entry;
     }
 
     /**
-     * Creates a new {@link Bucket} using the provided clientId and route.
-     * Falls back to a default configuration if no active config is found.
+     * Creates a new bucket entry for the given key from the current rule snapshot.
+     * The key's route is the matched rule pattern, so the rule is looked up by exact pattern;
+     * without a rule, it is the pattern of a default tier.
+     * The bucket itself is built by the configured {@link BucketBackend}; a local bucket gets the
+     * tokens it had before a restart from the {@link BucketSnapshots}.
      *
-     * @param clientId The client identifier.
-     * @param route    The route/path.
-     * @return A newly configured {@link Bucket} instance.
+     * @param key The client/route key.
+     * @return A newly configured {@link BucketEntry}.
      */
-    private Bucket createNewBucket(String clientId, String route) {
-        RateLimitConfig config = findConfig(clientId, route);
+    private BucketEntry createEntry(BucketKey key) {
+        RateLimitConfig config = findConfig(key.getClientId(), key.getRoute());
+        RateLimitConfig limits = config != null ? config : defaultPolicy.find(key.getRoute());
+        Bandwidth bandwidth = bandwidthFor(limits);
+
+        BucketConfiguration configuration = BucketConfiguration.builder()
+                .addLimit(bandwidth)
+                .build();
+        DecisionCounters counters = metrics.bucketCounters(key.getClientId(),
+                config != null ? key.getRoute() : RateLimiterMetrics.UNMATCHED_ROUTE);
+        long capacity = config != null ? capacityOf(config) : -1L;
+        BucketEntry entry;
+        if (bucketBackend.isDistributed()) {
+            entry = new BucketEntry(bucketBackend.createAsync(key, configuration), capacity, bandwidth,
+                    waitPolicyFor(limits), counters);
+        } else {
+            Bucket bucket = bucketBackend.create(key, configuration);
+            bucketSnapshots.restore(key, bucket, bandwidth);
+            entry = new BucketEntry(bucket, capacity, bandwidth, waitPolicyFor(limits), counters);
+        }
+        entry.setQuota(quotaStore.quotaFor(key, config));
+        return entry;
+    }
+
+    /**
+     * Builds the {@link Bandwidth} for the provided configuration.
+     * Falls back to the default limit of the {@link DefaultPolicy} if no active config is found.
+     * Also used to validate imported rules before they are stored.
+     *
+     * @param config The active configuration, or {@code null} if none exists.
+     * @return The bandwidth enforcing the configured limit.
+     */
+    Bandwidth bandwidthFor(RateLimitConfig config) {
         if (config == null) {
-            // Default fallback config
-            return Bucket.builder()
-                    .addLimit(Bandwidth.classic(100, Refill.greedy(100, Duration.ofMinutes(1))))
-                    .build();
+            config = defaultPolicy.find(DefaultPolicy.FALLBACK_ROUTE);
         }
 
-        long capacity = config.getRequestsPerMinute() + Math.max(0, config.getBurstCapacity());
         Duration duration = Duration.of(config.getTimeWindow(), ChronoUnit.valueOf(config.getTimeUnit()));
         Refill refill = Refill.greedy(config.getRequestsPerMinute(), duration);
 
-        return Bucket.builder()
-                .addLimit(Bandwidth.classic(capacity, refill))
-                .build();
+        return Bandwidth.classic(capacityOf(config), refill);
+    }
+
+    /**
+     * Parses the wait limits from the rule's custom attributes.
+     * <ul>
+     *     <li><b>maxWaitMillis</b> – maximum time a throttled request may wait for a token</li>
+     *     <li><b>maxQueueDepth</b> – maximum number of waiting requests on the bucket</li>
+     *     <li><b>maxRetries</b>/<b>retryDelay</b> – legacy retry settings; their total delay is used
+     *     as the maximum wait when {@code maxWaitMillis} is absent</li>
+     * </ul>
+     *
+     * @param config The active configuration, or {@code null} if none exists.
+     * @return The wait policy, or {@link WaitPolicy#NONE} if waiting is not configured.
+     */
+    private WaitPolicy waitPolicyFor(RateLimitConfig config) {
+        Map<String, String> attributes = config != null ? config.getCustomAttributes() : null;
+        if (attributes == null) {
+            return WaitPolicy.NONE;
+        }
+
+        try {
+            long maxWaitMillis;
+            String maxWaitStr = attributes.get("maxWaitMillis");
+            if (maxWaitStr != null) {
+                maxWaitMillis = Long.parseLong(maxWaitStr);
+            } else {
+                String maxRetriesStr = attributes.get("maxRetries");
+                String retryDelayStr = attributes.get("retryDelay");
+                int maxRetries = maxRetriesStr != null ? Integer.parseInt(maxRetriesStr) : 0;
+                long retryDelay = retryDelayStr != null ? Long.parseLong(retryDelayStr) : 1000; // Default: 1 second
+                maxWaitMillis = maxRetries * retryDelay;
+            }
+
+            String maxQueueDepthStr = attributes.get("maxQueueDepth");
+            int maxQueueDepth = maxQueueDepthStr != null
+                    ? Integer.parseInt(maxQueueDepthStr)
+                    : properties.getWaiting().getMaxQueueDepth();
+
+            return maxWaitMillis > 0
+                    ? new WaitPolicy(TimeUnit.MILLISECONDS.toNanos(maxWaitMillis), maxQueueDepth)
+                    : WaitPolicy.NONE;
+        } catch (NumberFormatException e) {
+            log.error("Error parsing customAttributes for clientId {}: {}", config.getClientId(), e.getMessage());
+            return WaitPolicy.NONE;
+        }
+    }
+
+    /**
+     * @return the bucket capacity of the configuration (requestsPerMinute + burstCapacity)
+     */
+    private static long capacityOf(RateLimitConfig config) {
+        return config.getRequestsPerMinute() + Math.max(0, config.getBurstCapacity());
     }
 
     /**
-     * Finds the active {@link RateLimitConfig} for the given client and route.
+     * Finds the active {@link RateLimitConfig} whose route pattern is exactly the given one.
      *
      * @param clientId The client identifier.
-     * @param route    The route/path.
+     * @param route    The route pattern.
      * @return The active {@link RateLimitConfig}, or {@code null} if not found.
      */
     private RateLimitConfig findConfig(String clientId, String route) {
-        return configRepository
-                .findFirstByClientIdAndRouteAndStatus(clientId, route, "ACTIVE")
-                .orElse(null);
+        return ruleSnapshotService.current().find(clientId, route);
     }
 
     /**
      * Public method to get the current rate limit configuration for a given client and route.
+     * The path is resolved to the most specific matching route pattern.
      *
      * @param clientId The client identifier.
      * @param route    The route/path.
      * @return The active {@link RateLimitConfig}, or {@code null} if not found.
      */
     public RateLimitConfig getConfig(String clientId, String route) {
-        return findConfig(clientId, route);
+        return ruleSnapshotService.current().match(clientId, route);
+    }
+
+    /**
+     * Reconfigures live buckets whose rules changed.
+     * <p>
+     * Buckets are updated in place with {@link Bucket#replaceConfiguration}, using the configured
+     * {@link io.github.bucket4j.TokensInheritanceStrategy}, instead of being dropped and rebuilt.
+     * Buckets in a shared store are replaced asynchronously; a failure is only logged, and the
+     * store keeps the previous limits until the next change.
+     * A rule that was deleted or deactivated reverts its bucket to the default limit.
+     * Buckets that do not exist yet are created lazily from the new snapshot.
+     * </p>
+     *
+     * @param event the applied rule changes
+     */
+    @EventListener
+    public void onRulesChanged(RuleChangeEvent event) {
+        for (RuleChange change : event.getChanges()) {
+            RateLimitConfig previous = change.getPrevious();
+            RateLimitConfig current = change.getCurrent();
+
+            if (previous != null && (current == null
+                    || !previous.getClientId().equals(current.getClientId())
+                    || !previous.getRoute().equals(current.getRoute()))) {
+                reconfigure(previous.getClientId(), previous.getRoute(),
+                        findConfig(previous.getClientId(), previous.getRoute()));
+            }
+            if (current != null) {
+                // A duplicate rule of higher priority may still win the pattern
+                reconfigure(current.getClientId(), current.getRoute(),
+                        findConfig(current.getClientId(), current.getRoute()));
+            }
+        }
+    }
+
+    /**
+     * Applies the given configuration to the live bucket of a client:route pair, if one exists.
+     * The update runs inside {@link BucketStore#computeIfPresent} so it cannot interleave with
+     * a concurrent creation of the same bucket from the previous snapshot.
+     * The quota counter of the pair is updated, or dropped with the rule's quotas, even without
+     * a live bucket.
+     *
+     * @param clientId The client identifier.
+     * @param route    The route/path.
+     * @param config   The new active configuration, or {@code null} to revert to the default.
+     */
+    private void reconfigure(String clientId, String route, RateLimitConfig config) {
+        RateLimitConfig limits = config != null ? config : defaultPolicy.find(route);
+        BucketKey bucketKey = new BucketKey(clientId, route);
+        Quota quota = quotaStore.quotaFor(bucketKey, config);
+        bucketStore.computeIfPresent(bucketKey, (key, entry) -> {
+            Bandwidth bandwidth = bandwidthFor(limits);
+            BucketConfiguration configuration = BucketConfiguration.builder()
+                    .addLimit(bandwidth)
+                    .build();
+            try {
+                if (entry.isAsync()) {
+                    entry.getAsyncBucket()
+                            .replaceConfiguration(configuration, properties.getRuleSync().getTokensInheritance())
+                            .whenComplete((ignored, e) -> {
+                                if (e != null) {
+                                    log.warn("Could not reconfigure shared bucket {}: {}", key, e.getMessage());
+                                }
+                            });
+                } else {
+                    entry.getBucket().replaceConfiguration(configuration, properties.getRuleSync().getTokensInheritance());
+                }
+            } catch (IllegalArgumentException e) {
+                // The bucket's engine cannot represent the new limits; rebuild it on next use
+                log.warn("Dropping bucket {} that cannot be reconfigured in place: {}", key, e.getMessage());
+                return null;
+            }
+            entry.update(config != null ? capacityOf(config) : -1L, bandwidth, waitPolicyFor(limits));
+            entry.setQuota(quota);
+
+            log.debug("Reconfigured bucket {} in place", key);
+            return entry;
+        });
     }
 
     /**
@@ -128,7 +375,6 @@ public class RateLimiterService {
      * @param route    The route/path.
      */
     public void invalidateCache(String clientId, String route) {
-        bucketCache.remove(clientId + ":" + route);
-        configCache.remove(clientId + ":" + route);
+        bucketStore.invalidate(new BucketKey(clientId, route));
     }
 }
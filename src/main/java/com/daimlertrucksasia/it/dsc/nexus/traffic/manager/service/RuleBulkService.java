@@ -0,0 +1,323 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.service;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.config.RateLimiterProperties;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.config.entity.RateLimitConfig;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.rule.RuleImportResult;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import io.github.bucket4j.BucketConfiguration;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.StringDecoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams rate limit rules in and out of MongoDB as NDJSON, one {@link RateLimitConfig} per line.
+ * <p>
+ * An import is split into lines as the request body arrives. Each line is parsed and validated
+ * on its own, and valid rules are written in unordered bulk operations of
+ * {@link RateLimiterProperties.BulkImport#getBatchSize()} rules, so memory is bounded by one
+ * line and one batch. Rules are matched to existing documents by client and route; IDs in the
+ * input are ignored. Every line yields a {@link RuleImportResult}.
+ * </p>
+ * <p>
+ * The rule snapshot is not touched while batches are written. Once the input is exhausted,
+ * all written rules are applied with one {@link RuleSnapshotService#apply(java.util.Collection, java.util.Collection)}
+ * call, so the limiter swaps to the new rule set atomically and publishes a single change event.
+ * </p>
+ */
+@Slf4j
+@Service("ruleBulkService")
+@RequiredArgsConstructor
+public class RuleBulkService {
+
+    /**
+     * Reactive template used for bulk writes and streaming reads.
+     */
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    /**
+     * Service owning the rule snapshot that imported rules are applied to.
+     */
+    private final RuleSnapshotService ruleSnapshotService;
+
+    /**
+     * Service whose bucket configuration rules are validated against.
+     */
+    private final RateLimiterService rateLimiterService;
+
+    /**
+     * Mapper reading rules from NDJSON lines.
+     */
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Rate limiter settings, including the bulk import options.
+     */
+    private final RateLimiterProperties properties;
+
+    /**
+     * Imports rules from an NDJSON body.
+     *
+     * @param body the request body
+     * @return the result of every non-blank line, in line order
+     */
+    public Flux<RuleImportResult> importRules(Flux<DataBuffer> body) {
+        return Flux.defer(() -> {
+            RateLimiterProperties.BulkImport settings = properties.getBulkImport();
+            StringDecoder decoder = StringDecoder.textPlainOnly(List.of("\n"), true);
+            decoder.setMaxInMemorySize((int) settings.getMaxLineLength().toBytes());
+
+            Map<String, Long> linesByKey = new HashMap<>();
+            List<RateLimitConfig> written = new ArrayList<>();
+            long[] lineCount = new long[1];
+
+            Flux<ImportLine> lines = decoder.decode(body, ResolvableType.forClass(String.class), null, null)
+                    .map(text -> parse(++lineCount[0], text, linesByKey))
+                    .onErrorResume(DataBufferLimitException.class, e -> Mono.just(ImportLine.invalid(
+                            lineCount[0] + 1, null, "Line exceeds " + settings.getMaxLineLength() + "; import stopped")))
+                    .filter(line -> !line.blank);
+
+            return lines.buffer(settings.getBatchSize())
+                    .concatMap(batch -> write(batch, written))
+                    .concatWith(Mono.fromRunnable(() -> applyToSnapshot(written))
+                            .subscribeOn(Schedulers.boundedElastic())
+                            .then(Mono.empty()));
+        });
+    }
+
+    /**
+     * Streams rules sorted by client and route, so two exports can be diffed line by line.
+     *
+     * @param status only export rules with this status, or {@code null} for all rules
+     * @return the rules
+     */
+    public Flux<RateLimitConfig> exportRules(String status) {
+        Query query = status != null ? Query.query(Criteria.where("status").is(status)) : new Query();
+        return reactiveMongoTemplate.find(query.with(Sort.by("clientId", "route")), RateLimitConfig.class);
+    }
+
+    /**
+     * Parses and validates one line. A later line for the same client and route as an earlier one is rejected.
+     */
+    private ImportLine parse(long number, String text, Map<String, Long> linesByKey) {
+        if (text.isBlank()) {
+            return ImportLine.BLANK;
+        }
+
+        RateLimitConfig rule;
+        try {
+            rule = objectMapper.readValue(text, RateLimitConfig.class);
+        } catch (JsonProcessingException e) {
+            return ImportLine.invalid(number, null, "Malformed JSON: " + e.getOriginalMessage());
+        }
+        if (rule == null) {
+            return ImportLine.invalid(number, null, "Line is not a rule");
+        }
+
+        String error = validate(rule);
+        if (error != null) {
+            return ImportLine.invalid(number, rule, error);
+        }
+        Long first = linesByKey.putIfAbsent(rule.getClientId() + ':' + rule.getRoute(), number);
+        if (first != null) {
+            return ImportLine.invalid(number, rule, "Duplicate of line " + first);
+        }
+        return new ImportLine(number, rule, null, false);
+    }
+
+    /**
+     * @return why the rule cannot be enforced, or {@code null} if it is valid
+     */
+    private String validate(RateLimitConfig rule) {
+        if (rule.getClientId() == null || rule.getClientId().isBlank()) {
+            return "clientId is required";
+        }
+        if (rule.getRoute() == null || rule.getRoute().isBlank()) {
+            return "route is required";
+        }
+        if (rule.getStatus() == null || rule.getStatus().isBlank()) {
+            return "status is required";
+        }
+        if (rule.getRequestsPerMinute() <= 0) {
+            return "requestsPerMinute must be positive";
+        }
+        if (rule.getTimeWindow() <= 0) {
+            return "timeWindow must be positive";
+        }
+        if (rule.getBurstCapacity() < 0) {
+            return "burstCapacity must not be negative";
+        }
+        if (rule.getDailyQuota() < 0 || rule.getMonthlyQuota() < 0) {
+            return "dailyQuota and monthlyQuota must not be negative";
+        }
+        if (rule.getTimeUnit() == null) {
+            return "timeUnit is required";
+        }
+        try {
+            BucketConfiguration.builder()
+                    .addLimit(rateLimiterService.bandwidthFor(rule))
+                    .build();
+        } catch (RuntimeException e) {
+            return "Limit cannot be enforced: " + e.getMessage();
+        }
+        return null;
+    }
+
+    /**
+     * Writes the valid rules of one batch in a single unordered bulk operation.
+     * Rules already stored for the same client and route keep their ID and creation time.
+     */
+    private Flux<RuleImportResult> write(List<ImportLine> batch, List<RateLimitConfig> written) {
+        List<ImportLine> valid = batch.stream().filter(line -> line.error == null).toList();
+        if (valid.isEmpty()) {
+            return Flux.fromIterable(batch).map(ImportLine::result);
+        }
+
+        List<Criteria> keys = valid.stream()
+                .map(line -> Criteria.where("clientId").is(line.rule.getClientId()).and("route").is(line.rule.getRoute()))
+                .toList();
+        Query existingQuery = Query.query(new Criteria().orOperator(keys));
+
+        return reactiveMongoTemplate.find(existingQuery, RateLimitConfig.class)
+                .collectMap(rule -> rule.getClientId() + ':' + rule.getRoute())
+                .flatMapMany(existing -> {
+                    LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+                    ReactiveBulkOperations operations = reactiveMongoTemplate.bulkOps(
+                            BulkOperations.BulkMode.UNORDERED, RateLimitConfig.class);
+                    for (ImportLine line : valid) {
+                        RateLimitConfig rule = line.rule;
+                        RateLimitConfig stored = existing.get(rule.getClientId() + ':' + rule.getRoute());
+                        line.created = stored == null;
+                        rule.setId(stored != null ? stored.getId() : new ObjectId().toHexString());
+                        rule.setCreatedAt(stored != null ? stored.getCreatedAt() : now);
+                        rule.setUpdatedAt(stored != null ? now : null);
+                        operations.replaceOne(Query.query(Criteria.where("id").is(rule.getId())), rule,
+                                FindAndReplaceOptions.options().upsert());
+                    }
+
+                    return operations.execute()
+                            .map(result -> List.<BulkWriteError>of())
+                            .onErrorResume(e -> {
+                                List<BulkWriteError> errors = bulkWriteErrors(e);
+                                if (errors == null) {
+                                    return Mono.error(e);
+                                }
+                                return Mono.just(errors);
+                            });
+                })
+                .onErrorResume(e -> {
+                    log.error("Bulk write of {} rate limit rules failed: {}", valid.size(), e.getMessage());
+                    valid.forEach(line -> line.error = "Write failed: " + e.getMessage());
+                    return Mono.just(List.of());
+                })
+                .flatMapIterable(errors -> {
+                    for (BulkWriteError error : errors) {
+                        valid.get(error.getIndex()).error = "Write failed: " + error.getMessage();
+                    }
+                    for (ImportLine line : valid) {
+                        if (line.error == null) {
+                            written.add(line.rule);
+                        } else {
+                            line.failed = true;
+                        }
+                    }
+                    return batch.stream().map(ImportLine::result).toList();
+                });
+    }
+
+    /**
+     * @return the per-write errors of a partially failed bulk operation, or {@code null} if the
+     * whole operation failed
+     */
+    private static List<BulkWriteError> bulkWriteErrors(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof BulkOperationException bulk) {
+                return bulk.getErrors();
+            }
+            if (t instanceof MongoBulkWriteException bulk) {
+                return bulk.getWriteErrors();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Applies all written rules to the rule snapshot in one swap. Rules that are not in force
+     * are removed from it, and time-bound rules are scheduled for activation or expiry.
+     */
+    private void applyToSnapshot(List<RateLimitConfig> written) {
+        if (written.isEmpty()) {
+            return;
+        }
+        int changes = ruleSnapshotService.applyAll(written).size();
+        log.info("Imported {} rate limit rules, {} changed the active rule set", written.size(), changes);
+    }
+
+    /**
+     * One parsed line of an import and, once written, its outcome.
+     */
+    private static final class ImportLine {
+
+        /**
+         * Placeholder for blank lines, which are skipped.
+         */
+        private static final ImportLine BLANK = new ImportLine(0, null, null, true);
+
+        private final long number;
+
+        private final RateLimitConfig rule;
+
+        private final boolean blank;
+
+        private String error;
+
+        private boolean created;
+
+        private boolean failed;
+
+        private ImportLine(long number, RateLimitConfig rule, String error, boolean blank) {
+            this.number = number;
+            this.rule = rule;
+            this.error = error;
+            this.blank = blank;
+        }
+
+        private static ImportLine invalid(long number, RateLimitConfig rule, String error) {
+            return new ImportLine(number, rule, error, false);
+        }
+
+        private RuleImportResult result() {
+            RuleImportResult.Status status = failed ? RuleImportResult.Status.FAILED
+                    : error != null ? RuleImportResult.Status.INVALID
+                    : created ? RuleImportResult.Status.CREATED
+                    : RuleImportResult.Status.UPDATED;
+            return new RuleImportResult(number, status, error == null ? rule.getId() : null,
+                    rule != null ? rule.getClientId() : null, rule != null ? rule.getRoute() : null, error);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.service;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.config.RateLimiterProperties;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.config.entity.RateLimitConfig;
+import com.mongodb.client.model.changestream.FullDocument;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonTimestamp;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+
+/**
+ * Watches the {@code rate_limit_config} collection and applies inserts, updates and deletes
+ * to the in-memory {@link com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.rule.RuleSnapshot}
+ * as they happen.
+ * <p>
+ * MongoDB change streams are used when available. They require a replica set, so when the
+ * stream cannot be opened (or keeps failing) the watcher falls back to periodic full
+ * reconciliation. Each applied change is published as a
+ * {@link com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.rule.RuleChangeEvent}
+ * which {@link RateLimiterService} uses to reconfigure live buckets in place.
+ * </p>
+ */
+@Slf4j
+@Service("ruleChangeWatcher")
+@RequiredArgsConstructor
+public class RuleChangeWatcher {
+
+    /**
+     * Name of the MongoDB collection holding {@link RateLimitConfig} documents.
+     */
+    private static final String COLLECTION = "rate_limit_config";
+
+    /**
+     * Reactive template used to open the change stream without blocking.
+     */
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    /**
+     * Service owning the rule snapshot that changes are applied to.
+     */
+    private final RuleSnapshotService ruleSnapshotService;
+
+    /**
+     * Rate limiter settings, including the change stream and polling options.
+     */
+    private final RateLimiterProperties properties;
+
+    /**
+     * Single worker on which changes are applied, so they are processed in stream order
+     * without holding driver threads while the snapshot is rebuilt and buckets reconfigured.
+     */
+    private final Scheduler applyScheduler = Schedulers.newBoundedElastic(1, Integer.MAX_VALUE, "rule-change-watcher");
+
+    /**
+     * Last resume token seen on the change stream, used to continue after a reconnect.
+     */
+    private volatile BsonValue resumeToken;
+
+    /**
+     * Cluster time read before the initial reconciliation; the stream starts there until it
+     * has a resume token, so no change made during the reconciliation is missed.
+     */
+    private volatile BsonTimestamp startAtOperationTime;
+
+    /**
+     * Active watch subscription, disposed on shutdown.
+     */
+    private volatile Disposable subscription;
+
+    /**
+     * Starts watching once the application is ready.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        RateLimiterProperties.RuleSync sync = properties.getRuleSync();
+
+        Mono<Void> source = sync.isChangeStreamEnabled()
+                ? watchChangeStream(sync).onErrorResume(e -> {
+                    log.warn("Change stream on {} unavailable, falling back to polling every {}: {}",
+                            COLLECTION, sync.getPollInterval(), e.getMessage());
+                    return poll(sync.getPollInterval());
+                })
+                : poll(sync.getPollInterval());
+
+        subscription = source.subscribe();
+    }
+
+    /**
+     * Stops watching and releases the worker thread.
+     */
+    @PreDestroy
+    public void stop() {
+        Disposable current = subscription;
+        if (current != null) {
+            current.dispose();
+        }
+        applyScheduler.dispose();
+    }
+
+    /**
+     * Reads the cluster time, reconciles once and opens the change stream at that cluster time,
+     * so changes made during or after the reconciliation but before the stream started are
+     * replayed rather than lost. Replayed changes the reconciliation already saw are applied
+     * again, which is harmless. The stream is reopened when the server closes it, and
+     * reconnects after errors resume from the last token.
+     */
+    private Mono<Void> watchChangeStream(RateLimiterProperties.RuleSync sync) {
+        Flux<ChangeStreamEvent<RateLimitConfig>> stream = Flux.defer(() -> reactiveMongoTemplate.changeStream(
+                        COLLECTION, changeStreamOptions(), RateLimitConfig.class))
+                .doOnSubscribe(s -> log.info("Watching {} via change stream", COLLECTION))
+                .repeat()
+                .retryWhen(Retry.backoff(sync.getChangeStreamRetries(), Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30)));
+
+        return operationTime()
+                .doOnNext(time -> startAtOperationTime = time)
+                .then(reconcile())
+                .thenMany(stream.publishOn(applyScheduler).doOnNext(this::onChange))
+                .then();
+    }
+
+    /**
+     * @return the current cluster time, or empty if the server does not report one
+     */
+    private Mono<BsonTimestamp> operationTime() {
+        return reactiveMongoTemplate.executeCommand(new Document("hello", 1))
+                .mapNotNull(reply -> reply.get("operationTime", BsonTimestamp.class));
+    }
+
+    /**
+     * @return change stream options that look up the full document on update and resume from the
+     * last token, or before the first event from the cluster time read before reconciling
+     */
+    private ChangeStreamOptions changeStreamOptions() {
+        ChangeStreamOptions.ChangeStreamOptionsBuilder builder = ChangeStreamOptions.builder()
+                .fullDocumentLookup(FullDocument.UPDATE_LOOKUP);
+        BsonValue token = resumeToken;
+        BsonTimestamp operationTime = startAtOperationTime;
+        if (token != null) {
+            builder.resumeAfter(token);
+        } else if (operationTime != null) {
+            builder.resumeAt(operationTime);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Applies one change stream event to the rule snapshot.
+     */
+    private void onChange(ChangeStreamEvent<RateLimitConfig> event) {
+        resumeToken = event.getResumeToken();
+        if (event.getOperationType() == null) {
+            return;
+        }
+
+        try {
+            switch (event.getOperationType()) {
+                case INSERT, UPDATE, REPLACE -> {
+                    RateLimitConfig rule = event.getBody();
+                    if (rule != null) {
+                        ruleSnapshotService.apply(rule);
+                    } else {
+                        // Document was deleted before the update lookup ran
+                        String id = documentId(event);
+                        if (id != null) {
+                            ruleSnapshotService.remove(id);
+                        }
+                    }
+                }
+                case DELETE -> {
+                    String id = documentId(event);
+                    if (id != null) {
+                        ruleSnapshotService.remove(id);
+                    }
+                }
+                case DROP, RENAME, DROP_DATABASE, INVALIDATE -> {
+                    // The stream cannot be resumed past an invalidate; start fresh from a full
+                    // reload, reopening at the cluster time read before it like on start
+                    resumeToken = null;
+                    startAtOperationTime = operationTime().block();
+                    ruleSnapshotService.reload().block();
+                }
+                default -> log.debug("Ignoring {} event on {}", event.getOperationType(), COLLECTION);
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to apply {} event on {}: {}", event.getOperationType(), COLLECTION, e.getMessage());
+        }
+    }
+
+    /**
+     * Extracts the document ID of the changed document as the string form used by {@link RateLimitConfig#getId()}.
+     */
+    private static String documentId(ChangeStreamEvent<?> event) {
+        BsonDocument key = event.getRaw() != null ? event.getRaw().getDocumentKey() : null;
+        BsonValue id = key != null ? key.get("_id") : null;
+        if (id == null) {
+            return null;
+        }
+        if (id.isObjectId()) {
+            return id.asObjectId().getValue().toHexString();
+        }
+        return id.isString() ? id.asString().getValue() : id.toString();
+    }
+
+    /**
+     * Periodically reconciles the full rule set with the snapshot.
+     */
+    private Mono<Void> poll(Duration interval) {
+        return Flux.interval(Duration.ZERO, interval, applyScheduler)
+                .onBackpressureDrop()
+                .concatMap(tick -> reconcile())
+                .then();
+    }
+
+    /**
+     * Reloads all ACTIVE rules and applies the differences.
+     */
+    private Mono<Void> reconcile() {
+        return ruleSnapshotService.reload()
+                .onErrorResume(e -> {
+                    log.error("Failed to reconcile rate limit rules: {}", e.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+}
@@ -0,0 +1,325 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.service;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.infrastructure.RateLimitConfigRepository;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.config.entity.RateLimitConfig;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.rule.RuleChange;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.rule.RuleChangeEvent;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.rule.RuleSnapshot;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.rule.RuleValidity;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.rule.TimingWheel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Service that owns the in-memory {@link RuleSnapshot} used on the request path.
+ * <p>
+ * All ACTIVE and PENDING {@link RateLimitConfig} documents are loaded from MongoDB once at
+ * startup, and those in force according to {@link RuleValidity} are published as an immutable
+ * snapshot. Readers never touch MongoDB; writers build a new snapshot and swap it atomically,
+ * then publish a {@link RuleChangeEvent} describing the rules that changed.
+ * </p>
+ * <p>
+ * The next activation or expiry of every time-bound rule is kept in a {@link TimingWheel}
+ * that advances once per {@link #TIMER_TICK}. A rule whose deadline passed is applied again,
+ * which swaps it in or out of the snapshot and reconfigures its buckets; the documents keep
+ * their status. Scheduling a rule and handling its deadline cost O(1) each, so time-bound
+ * rules are enforced without scanning the rule set.
+ * </p>
+ * <p>
+ * Rules are read through the reactive repository. Applying changes rebuilds the snapshot and
+ * reconfigures live buckets, which is kept off event-loop threads; {@link #reload()} switches
+ * to the bounded elastic scheduler for that.
+ * </p>
+ */
+@Slf4j
+@Service("ruleSnapshotService")
+public class RuleSnapshotService {
+
+    /**
+     * Maximum time startup waits for the initial rule set.
+     */
+    private static final Duration INITIAL_LOAD_TIMEOUT = Duration.ofSeconds(30);
+
+    /**
+     * Resolution of rule activation and expiry.
+     */
+    private static final Duration TIMER_TICK = Duration.ofSeconds(1);
+
+    /**
+     * Repository to retrieve rate limit configurations from MongoDB.
+     */
+    @Autowired
+    private RateLimitConfigRepository configRepository;
+
+    /**
+     * Publisher used to notify listeners about applied rule changes.
+     */
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    /**
+     * The currently published snapshot.
+     */
+    private final AtomicReference<RuleSnapshot> snapshot = new AtomicReference<>(RuleSnapshot.EMPTY);
+
+    /**
+     * Clock that activation and expiration dates are compared with.
+     */
+    private final Clock clock = Clock.systemDefaultZone();
+
+    /**
+     * Next activation or expiry of each time-bound rule by document ID. Guarded by this service.
+     */
+    private final TimingWheel<String, RateLimitConfig> deadlines = new TimingWheel<>(TIMER_TICK, clock.millis());
+
+    /**
+     * Worker advancing {@link #deadlines}. It is an elastic worker because applying a rule may
+     * reconfigure buckets kept in a shared store.
+     */
+    private Scheduler timerScheduler;
+
+    /**
+     * Timer subscription, disposed on shutdown.
+     */
+    private volatile Disposable timer;
+
+    /**
+     * Loads the initial snapshot after bean construction.
+     * If MongoDB is unreachable the gateway still starts and applies default limits
+     * until the next successful reload.
+     */
+    @PostConstruct
+    public void init() {
+        try {
+            reload().block(INITIAL_LOAD_TIMEOUT);
+        } catch (RuntimeException e) {
+            log.error("Failed to load initial rate limit rules, falling back to defaults: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Starts enforcing activation and expiration dates once the application is ready.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startTimer() {
+        timerScheduler = Schedulers.newBoundedElastic(1, Integer.MAX_VALUE, "rule-timer");
+        timer = Flux.interval(TIMER_TICK, TIMER_TICK, timerScheduler)
+                .onBackpressureDrop()
+                .subscribe(tick -> applyDue());
+    }
+
+    /**
+     * Stops the timer and releases its worker thread.
+     */
+    @PreDestroy
+    public void stop() {
+        Disposable current = timer;
+        if (current != null) {
+            current.dispose();
+        }
+        if (timerScheduler != null) {
+            timerScheduler.dispose();
+        }
+    }
+
+    /**
+     * Returns the currently published snapshot. Never performs I/O.
+     *
+     * @return the current {@link RuleSnapshot}
+     */
+    public RuleSnapshot current() {
+        return snapshot.get();
+    }
+
+    /**
+     * Reloads all ACTIVE and PENDING rules from MongoDB and reconciles them with the current
+     * snapshot. The rules are read without blocking and applied on the bounded elastic scheduler.
+     *
+     * @return a {@link Mono} emitting the changes that were applied
+     */
+    public Mono<List<RuleChange>> reload() {
+        return Flux.concat(configRepository.findAllByStatus(RuleValidity.ACTIVE),
+                        configRepository.findAllByStatus(RuleValidity.PENDING))
+                .collectList()
+                .publishOn(Schedulers.boundedElastic())
+                .map(rules -> {
+                    List<RuleChange> changes = replaceAll(rules);
+                    log.info("Reconciled {} active rate limit rules, {} changed, {} time-bound",
+                            current().size(), changes.size(), deadlines.size());
+                    return changes;
+                });
+    }
+
+    /**
+     * Replaces the full rule set, applying only the differences to the current snapshot and
+     * rescheduling the activation and expiry of every rule.
+     *
+     * @param rules the complete set of ACTIVE and PENDING rules
+     * @return the changes that were applied
+     */
+    public synchronized List<RuleChange> replaceAll(Collection<RateLimitConfig> rules) {
+        LocalDateTime now = LocalDateTime.now(clock);
+        Map<String, RateLimitConfig> candidates = rules.stream()
+                .filter(rule -> rule.getId() != null)
+                .collect(Collectors.toMap(RateLimitConfig::getId, Function.identity(), (a, b) -> b));
+        for (String id : deadlines.keys()) {
+            if (!candidates.containsKey(id)) {
+                deadlines.cancel(id);
+            }
+        }
+        Map<String, RateLimitConfig> incoming = new HashMap<>();
+        for (RateLimitConfig rule : candidates.values()) {
+            schedule(rule, now);
+            if (RuleValidity.isInForce(rule, now)) {
+                incoming.put(rule.getId(), rule);
+            }
+        }
+
+        RuleSnapshot base = current();
+        List<RateLimitConfig> upserts = incoming.values().stream()
+                .filter(rule -> !rule.equals(base.findById(rule.getId())))
+                .toList();
+        Set<String> removedIds = new HashSet<>();
+        for (RateLimitConfig rule : base.rules()) {
+            if (!incoming.containsKey(rule.getId())) {
+                removedIds.add(rule.getId());
+            }
+        }
+
+        return apply(upserts, removedIds);
+    }
+
+    /**
+     * Applies a single changed document. Rules that are not in force are removed from the snapshot.
+     *
+     * @param rule the inserted or updated document
+     * @return the changes that were applied
+     */
+    public List<RuleChange> apply(RateLimitConfig rule) {
+        return applyAll(List.of(rule));
+    }
+
+    /**
+     * Applies changed documents in one swap. Rules in force are inserted or replaced, the others
+     * are removed, and the next activation or expiry of each rule is scheduled.
+     *
+     * @param rules the inserted or updated documents
+     * @return the changes that were applied
+     */
+    public synchronized List<RuleChange> applyAll(Collection<RateLimitConfig> rules) {
+        LocalDateTime now = LocalDateTime.now(clock);
+        List<RateLimitConfig> upserts = new ArrayList<>();
+        List<String> removedIds = new ArrayList<>();
+        for (RateLimitConfig rule : rules) {
+            if (rule.getId() == null) {
+                continue;
+            }
+            schedule(rule, now);
+            if (RuleValidity.isInForce(rule, now)) {
+                upserts.add(rule);
+            } else {
+                removedIds.add(rule.getId());
+            }
+        }
+        return apply(upserts, removedIds);
+    }
+
+    /**
+     * Applies a single deleted document.
+     *
+     * @param id the ID of the deleted document
+     * @return the changes that were applied
+     */
+    public synchronized List<RuleChange> remove(String id) {
+        deadlines.cancel(id);
+        return apply(List.of(), List.of(id));
+    }
+
+    /**
+     * Applies the rules whose activation or expiry passed since the last tick.
+     */
+    private synchronized void applyDue() {
+        try {
+            List<RateLimitConfig> due = deadlines.advance(clock.millis());
+            if (!due.isEmpty()) {
+                int changes = applyAll(due).size();
+                log.info("{} rate limit rules reached their activation or expiry, {} changed", due.size(), changes);
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to apply rate limit rule activation or expiry: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Schedules the next activation or expiry of a rule, replacing the previous one.
+     */
+    private void schedule(RateLimitConfig rule, LocalDateTime now) {
+        LocalDateTime next = RuleValidity.nextTransition(rule, now);
+        if (next == null) {
+            deadlines.cancel(rule.getId());
+        } else {
+            deadlines.schedule(rule.getId(), rule, next.atZone(clock.getZone()).toInstant().toEpochMilli());
+        }
+    }
+
+    /**
+     * Builds and publishes a new snapshot from the current one. Writers are serialised so that
+     * concurrent updates from the admin API and the change watcher cannot lose each other's changes.
+     *
+     * @param upserts    rules in force to insert or replace
+     * @param removedIds IDs of rules to drop
+     * @return the changes that were applied
+     */
+    public synchronized List<RuleChange> apply(Collection<RateLimitConfig> upserts, Collection<String> removedIds) {
+        RuleSnapshot previous = current();
+
+        List<RuleChange> changes = new ArrayList<>();
+        for (String id : removedIds) {
+            RateLimitConfig old = previous.findById(id);
+            if (old != null) {
+                changes.add(new RuleChange(old, null));
+            }
+        }
+        for (RateLimitConfig rule : upserts) {
+            RateLimitConfig old = previous.findById(rule.getId());
+            if (!Objects.equals(old, rule)) {
+                changes.add(new RuleChange(old, rule));
+            }
+        }
+        if (changes.isEmpty()) {
+            return changes;
+        }
+
+        RuleSnapshot next = previous.apply(upserts, removedIds);
+        snapshot.set(next);
+        eventPublisher.publishEvent(new RuleChangeEvent(next, List.copyOf(changes)));
+        log.debug("Applied {} rate limit rule changes, {} rules active", changes.size(), next.size());
+        return changes;
+    }
+}
@@ -0,0 +1,349 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.blockhound;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.application.controller.RateLimiterConfigController;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.application.controller.RateLimiterMonitorController;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.config.RateLimiterProperties;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.filter.RateLimiterFilter;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.infrastructure.RateLimitConfigRepository;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketRanking;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketSnapshots;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketStore;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.HotKeyTracker;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.InMemoryBucketProxyManager;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.ProxyBucketBackend;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.composite.CompositeLimiter;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.decision.DecisionLog;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.config.entity.RateLimitConfig;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.metrics.RateLimiterMetrics;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.quota.QuotaStore;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.rule.DefaultPolicy;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.rule.RuleChangeEvent;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.service.RateLimiterService;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.service.RuleSnapshotService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.AsyncCompareAndSwapOperation;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.CompareAndSwapOperation;
+import io.github.bucket4j.distributed.remote.RemoteBucketState;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.blockhound.BlockHound;
+import reactor.blockhound.BlockingOperationError;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Drives the rate limiter filter, the admin endpoints and rule reloading on non-blocking threads
+ * under BlockHound, and fails if any of them blocks.
+ * <p>
+ * Buckets are kept in a shared store whose blocking API sleeps, as a MongoDB round trip would,
+ * and whose asynchronous API answers a millisecond later on the parallel scheduler. Rules come
+ * from a stub of the reactive repository. Each scenario is subscribed on the parallel scheduler,
+ * whose threads BlockHound treats like Netty event loops. A separate test checks that BlockHound
+ * is active by calling the blocking store API directly.
+ * </p>
+ */
+class BlockingCallTest {
+
+    private static final String ROUTE = "/pigeon/graphql";
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private static final GatewayFilterChain CHAIN = exchange -> Mono.empty();
+
+    private final Map<String, RateLimitConfig> documents = new ConcurrentHashMap<>();
+
+    private final RateLimiterProperties properties = new RateLimiterProperties();
+
+    private final RuleSnapshotService ruleSnapshotService = new RuleSnapshotService();
+
+    private final BucketStore bucketStore = new BucketStore(properties);
+
+    private final RateLimiterMetrics metrics = new RateLimiterMetrics(new SimpleMeterRegistry(), properties, bucketStore);
+
+    private final RateLimiterService rateLimiterService = new RateLimiterService();
+
+    private final SleepingStore store = new SleepingStore();
+
+    private final ProxyBucketBackend bucketBackend = new ProxyBucketBackend(store.asAsync(), null);
+
+    private final HotKeyTracker hotKeyTracker = new HotKeyTracker(properties, bucketStore, bucketBackend);
+
+    private final RateLimiterConfigController configController = new RateLimiterConfigController();
+
+    private final BucketRanking bucketRanking = new BucketRanking(properties, bucketStore);
+
+    private final QuotaStore quotaStore = new QuotaStore(properties, null, new SimpleMeterRegistry());
+
+    private final RateLimiterMonitorController monitorController =
+            new RateLimiterMonitorController(rateLimiterService, bucketRanking, hotKeyTracker, properties, quotaStore);
+
+    private final List<String> failures = new ArrayList<>();
+
+    private GatewayFilter filter;
+
+    @BeforeAll
+    static void installBlockHound() {
+        // Console logging is a blocking write; only errors are logged while BlockHound is installed
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.ERROR);
+        BlockHound.install();
+    }
+
+    @BeforeEach
+    void setUp() {
+        RateLimitConfigRepository repository = repository();
+        ReflectionTestUtils.setField(ruleSnapshotService, "configRepository", repository);
+        ReflectionTestUtils.setField(ruleSnapshotService, "eventPublisher", (ApplicationEventPublisher) event -> {
+            if (event instanceof RuleChangeEvent changes) {
+                rateLimiterService.onRulesChanged(changes);
+            }
+        });
+
+        ReflectionTestUtils.setField(rateLimiterService, "ruleSnapshotService", ruleSnapshotService);
+        ReflectionTestUtils.setField(rateLimiterService, "properties", properties);
+        ReflectionTestUtils.setField(rateLimiterService, "bucketBackend", bucketBackend);
+        ReflectionTestUtils.setField(rateLimiterService, "metrics", metrics);
+        ReflectionTestUtils.setField(rateLimiterService, "bucketStore", bucketStore);
+        ReflectionTestUtils.setField(rateLimiterService, "hotKeyTracker", hotKeyTracker);
+        ReflectionTestUtils.setField(rateLimiterService, "bucketSnapshots",
+                new BucketSnapshots(properties, bucketStore, bucketBackend));
+        ReflectionTestUtils.setField(rateLimiterService, "defaultPolicy", new DefaultPolicy(properties));
+        ReflectionTestUtils.setField(rateLimiterService, "quotaStore", quotaStore);
+
+        ReflectionTestUtils.setField(configController, "configRepository", repository);
+        ReflectionTestUtils.setField(configController, "ruleSnapshotService", ruleSnapshotService);
+
+        // A dimension keyed on the client header, so every request also consumes from a dimension bucket
+        RateLimiterProperties.Dimension dimension = new RateLimiterProperties.Dimension();
+        dimension.setName("client-header");
+        dimension.setParameter("X-Client-Id");
+        dimension.setCapacity(1_000_000);
+        properties.getDimensions().add(dimension);
+        CompositeLimiter compositeLimiter =
+                new CompositeLimiter(properties, bucketBackend, new ObjectMapper(), new SimpleMeterRegistry());
+
+        // Not started: records stay in the ring, which is all the request path touches
+        DecisionLog decisionLog = new DecisionLog(properties, new SimpleMeterRegistry());
+
+        filter = new RateLimiterFilter(rateLimiterService, metrics, compositeLimiter, decisionLog)
+                .apply(new RateLimiterFilter.Config());
+    }
+
+    @AfterEach
+    void tearDown() {
+        bucketRanking.stop();
+        metrics.stop();
+    }
+
+    @Test
+    void blockingStoreCallIsDetected() {
+        expectBlocked("store is detected as blocking", () -> Mono.fromRunnable(() -> store.builder()
+                .build("probe", BucketConfiguration.builder().addLimit(Bandwidth.simple(10, Duration.ofSeconds(1))).build())
+                .tryConsume(1)));
+
+        assertThat(failures).isEmpty();
+    }
+
+    @Test
+    void requestPathAndAdminEndpointsDoNotBlock() {
+        properties.getMonitor().setRankingInterval(Duration.ofMillis(10));
+        metrics.init();
+        bucketRanking.init();
+
+        documents.put("waiting", rule("waiting", 1, Map.of("maxWaitMillis", "3000")));
+        documents.put("strict", rule("strict", 1, null));
+
+        expectNonBlocking("initial reload", () -> ruleSnapshotService.reload());
+        expectNonBlocking("admitted request", request("strict"));
+        expectNonBlocking("rejected request", request("strict"));
+        expectNonBlocking("admitted request", request("waiting"));
+        expectNonBlocking("request admitted after waiting", request("waiting"));
+        expectNonBlocking("register rule", () -> configController.registerRateLimit(rule("strict", 5, null)));
+        expectNonBlocking("update rule", () -> configController.updateRateLimit("strict", rule("strict", 10, null)));
+        expectNonBlocking("get rule", () -> configController.getRateLimit("strict", ROUTE));
+        expectNonBlocking("monitor buckets", monitorController::getAllLimits);
+        expectNonBlocking("monitor bucket page", () -> monitorController.getBuckets(null, "s", null, 10)
+                .flatMap(response -> response.getBody().collectList()));
+        awaitRanking();
+        expectNonBlocking("monitor top buckets", () -> monitorController.getTopBuckets(BucketRanking.Order.THROTTLED, 10)
+                .collectList());
+        expectNonBlocking("monitor hot keys", () -> monitorController.getHotKeys().collectList());
+        expectNonBlocking("reconciling reload", () -> ruleSnapshotService.reload());
+
+        assertThat(failures).isEmpty();
+    }
+
+    /**
+     * Waits until the ranking scan has seen the throttled bucket, so the top query reads a bucket.
+     */
+    private void awaitRanking() {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (bucketRanking.top(BucketRanking.Order.THROTTLED).isEmpty() && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(Duration.ofMillis(10).toNanos());
+        }
+    }
+
+    /**
+     * Builds the exchange up front: creating its codecs loads classpath resources, which is
+     * startup work rather than request handling.
+     */
+    private Supplier<Mono<?>> request(String clientId) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(
+                MockServerHttpRequest.get(ROUTE).header("X-Client-Id", clientId));
+        return () -> filter.filter(exchange, CHAIN);
+    }
+
+    private void expectNonBlocking(String scenario, Supplier<Mono<?>> action) {
+        try {
+            Mono.defer(action).subscribeOn(Schedulers.parallel()).block(TIMEOUT);
+        } catch (RuntimeException | Error e) {
+            failures.add("BLOCKED " + scenario + ": " + describe(e));
+        }
+    }
+
+    private void expectBlocked(String scenario, Supplier<Mono<?>> action) {
+        try {
+            Mono.defer(action).subscribeOn(Schedulers.parallel()).block(TIMEOUT);
+            failures.add("FAILED  " + scenario + ": BlockHound did not detect a blocking call");
+        } catch (RuntimeException | Error e) {
+            if (blockingError(e) == null) {
+                failures.add("FAILED  " + scenario + ": " + e);
+            }
+        }
+    }
+
+    private static String describe(Throwable e) {
+        BlockingOperationError blocking = blockingError(e);
+        return blocking != null ? blocking.getMessage() : e.toString();
+    }
+
+    private static BlockingOperationError blockingError(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof BlockingOperationError blocking) {
+                return blocking;
+            }
+        }
+        return null;
+    }
+
+    private static RateLimitConfig rule(String clientId, long requests, Map<String, String> customAttributes) {
+        return RateLimitConfig.builder()
+                .id(clientId)
+                .clientId(clientId)
+                .route(ROUTE)
+                .requestsPerMinute(requests)
+                .timeWindow(1)
+                .timeUnit("SECONDS")
+                .status("ACTIVE")
+                .customAttributes(customAttributes)
+                .build();
+    }
+
+    /**
+     * @return a reactive repository stub over {@link #documents}
+     */
+    private RateLimitConfigRepository repository() {
+        return (RateLimitConfigRepository) Proxy.newProxyInstance(
+                RateLimitConfigRepository.class.getClassLoader(),
+                new Class<?>[]{RateLimitConfigRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "findAllByStatus" -> Flux.fromIterable(documents.values())
+                            .filter(rule -> args[0].equals(rule.getStatus()));
+                    case "findById" -> Mono.justOrEmpty(documents.get((String) args[0]));
+                    case "findFirstByClientIdAndRouteAndStatus" -> Flux.fromIterable(documents.values())
+                            .filter(rule -> args[0].equals(rule.getClientId()) && args[1].equals(rule.getRoute())
+                                    && args[2].equals(rule.getStatus()))
+                            .next();
+                    case "save" -> Mono.fromSupplier(() -> {
+                        RateLimitConfig rule = (RateLimitConfig) args[0];
+                        if (rule.getId() == null) {
+                            rule.setId(rule.getClientId());
+                        }
+                        documents.put(rule.getId(), rule);
+                        return rule;
+                    });
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /**
+     * Shared bucket store whose blocking API sleeps for every read and write, like a store round
+     * trip, and whose asynchronous API completes a millisecond later on the parallel scheduler.
+     */
+    private static final class SleepingStore extends InMemoryBucketProxyManager {
+
+        @Override
+        protected AsyncCompareAndSwapOperation beginAsyncCompareAndSwapOperation(String key) {
+            AsyncCompareAndSwapOperation operation = super.beginAsyncCompareAndSwapOperation(key);
+            return new AsyncCompareAndSwapOperation() {
+                @Override
+                public CompletableFuture<Optional<byte[]>> getStateData() {
+                    return later(operation::getStateData);
+                }
+
+                @Override
+                public CompletableFuture<Boolean> compareAndSwap(byte[] originalData, byte[] newData,
+                                                                 RemoteBucketState newState) {
+                    return later(() -> operation.compareAndSwap(originalData, newData, newState));
+                }
+            };
+        }
+
+        private static <T> CompletableFuture<T> later(Supplier<CompletableFuture<T>> operation) {
+            return Mono.delay(Duration.ofMillis(1)).then(Mono.fromFuture(operation)).toFuture();
+        }
+
+        @Override
+        protected CompareAndSwapOperation beginCompareAndSwapOperation(String key) {
+            CompareAndSwapOperation operation = super.beginCompareAndSwapOperation(key);
+            return new CompareAndSwapOperation() {
+                @Override
+                public Optional<byte[]> getStateData() {
+                    roundTrip();
+                    return operation.getStateData();
+                }
+
+                @Override
+                public boolean compareAndSwap(byte[] originalData, byte[] newData, RemoteBucketState newState) {
+                    roundTrip();
+                    return operation.compareAndSwap(originalData, newData, newState);
+                }
+            };
+        }
+
+        private static void roundTrip() {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.admission;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.config.RateLimiterProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Drives {@link PriorityAdmission} directly, reading its state through its meters.
+ */
+class PriorityAdmissionTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void eachClassIsAdmittedUpToItsShare() {
+        PriorityAdmission admission = admission(10, 2, 0.5, 10, Duration.ofSeconds(10));
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(admission.tryAdmit(1)).isTrue();
+        }
+        assertThat(admission.tryAdmit(1)).isFalse();
+        for (int i = 0; i < 5; i++) {
+            assertThat(admission.tryAdmit(0)).isTrue();
+        }
+        assertThat(admission.tryAdmit(0)).isFalse();
+        assertThat(inFlight()).isEqualTo(10);
+
+        assertThat(admission.classOf(1)).isZero();
+        assertThat(admission.classOf(2)).isEqualTo(1);
+        assertThat(admission.classOf(0)).isEqualTo(1);
+        assertThat(admission.classOf(7)).isEqualTo(1);
+    }
+
+    @Test
+    void freedSlotsGoToWaitersInWeightedFairOrder() {
+        PriorityAdmission admission = admission(4, 2, 1.0, 10, Duration.ofSeconds(10));
+        fill(admission, 4);
+
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            admission.admit(1).subscribe(admitted -> order.add(1));
+        }
+        for (int i = 0; i < 4; i++) {
+            admission.admit(0).subscribe(admitted -> order.add(0));
+        }
+        assertThat(admission.tryAdmit(0)).as("nobody jumps the queue").isFalse();
+
+        for (int i = 0; i < 8; i++) {
+            admission.release();
+        }
+        // Priority 1 weighs twice priority 2: finish times 1, 2, 3, 4 against 2, 4, 6, 8
+        assertThat(order).containsExactly(0, 0, 1, 0, 0, 1, 1, 1);
+        assertThat(inFlight()).isEqualTo(4);
+    }
+
+    @Test
+    void waiterOverItsShareLetsHigherClassesPass() {
+        PriorityAdmission admission = admission(4, 2, 0.5, 10, Duration.ofSeconds(10));
+        fill(admission, 4);
+
+        List<Integer> order = new ArrayList<>();
+        admission.admit(1).subscribe(admitted -> order.add(1));
+        admission.admit(0).subscribe(admitted -> order.add(0));
+
+        admission.release();
+        assertThat(order).containsExactly(0);
+        admission.release();
+        admission.release();
+        assertThat(order).containsExactly(0);
+        admission.release();
+        assertThat(order).containsExactly(0, 1);
+        assertThat(inFlight()).isEqualTo(2);
+    }
+
+    @Test
+    void fullQueueIsShed() {
+        PriorityAdmission admission = admission(1, 2, 1.0, 1, Duration.ofSeconds(10));
+        fill(admission, 1);
+
+        Disposable waiting = admission.admit(1).subscribe();
+        assertThat(admission.admit(1).block()).isFalse();
+        assertThat(shed(2)).isEqualTo(1);
+        assertThat(queued(2)).isEqualTo(1);
+
+        waiting.dispose();
+        assertThat(queued(2)).isZero();
+        admission.release();
+        assertThat(inFlight()).isZero();
+    }
+
+    @Test
+    void waiterIsShedAfterTheMaximumWait() {
+        PriorityAdmission admission = admission(1, 1, 1.0, 10, Duration.ofMillis(50));
+        fill(admission, 1);
+
+        assertThat(admission.admit(0).block(Duration.ofSeconds(5))).isFalse();
+        assertThat(shed(1)).isEqualTo(1);
+        assertThat(queued(1)).isZero();
+
+        admission.release();
+        assertThat(inFlight()).isZero();
+        assertThat(admission.tryAdmit(0)).isTrue();
+    }
+
+    @Test
+    void waiterCancelledAfterAdmissionReleasesItsSlot() throws InterruptedException {
+        PriorityAdmission admission = admission(2, 1, 1.0, 10, Duration.ofSeconds(10));
+        fill(admission, 2);
+
+        AtomicReference<Disposable> second = new AtomicReference<>();
+        List<String> admitted = new ArrayList<>();
+        Thread[] releasers = new Thread[2];
+        synchronized (admission) {
+            // Both waiters are admitted by one drain; the first cancels the second before it is told
+            admission.admit(0).subscribe(ok -> {
+                admitted.add("first");
+                second.get().dispose();
+            });
+            second.set(admission.admit(0).subscribe(ok -> admitted.add("second")));
+            for (int i = 0; i < releasers.length; i++) {
+                releasers[i] = new Thread(admission::release);
+                releasers[i].start();
+            }
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (inFlight() > 0 && System.nanoTime() < deadline) {
+                Thread.onSpinWait();
+            }
+            assertThat(inFlight()).as("slots freed before the waiters are drained").isZero();
+        }
+        for (Thread releaser : releasers) {
+            releaser.join(5_000);
+        }
+
+        assertThat(admitted).containsExactly("first");
+        assertThat(inFlight()).isEqualTo(1);
+        assertThat(queued(1)).isZero();
+    }
+
+    private PriorityAdmission admission(int maxInFlight, int levels, double lowestShare, int maxQueueDepth,
+                                        Duration maxWait) {
+        RateLimiterProperties properties = new RateLimiterProperties();
+        RateLimiterProperties.Admission settings = properties.getAdmission();
+        settings.setMaxInFlight(maxInFlight);
+        settings.setPriorityLevels(levels);
+        settings.setLowestPriorityShare(lowestShare);
+        settings.setMaxQueueDepth(maxQueueDepth);
+        settings.setMaxWait(maxWait);
+        return new PriorityAdmission(properties, registry);
+    }
+
+    private static void fill(PriorityAdmission admission, int slots) {
+        for (int i = 0; i < slots; i++) {
+            assertThat(admission.tryAdmit(0)).isTrue();
+        }
+    }
+
+    private double inFlight() {
+        return registry.get("nexus.admission.inflight").gauge().value();
+    }
+
+    private double queued(int priority) {
+        return registry.get("nexus.admission.queued").tag("priority", Integer.toString(priority)).gauge().value();
+    }
+
+    private double shed(int priority) {
+        return registry.get("nexus.admission.shed").tag("priority", Integer.toString(priority))
+                .functionCounter().count();
+    }
+}
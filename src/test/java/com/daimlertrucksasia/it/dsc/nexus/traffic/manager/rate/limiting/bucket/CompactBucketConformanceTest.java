@@ -0,0 +1,293 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket;
+
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.ConsumptionProbe;
+import io.github.bucket4j.EstimationProbe;
+import io.github.bucket4j.Refill;
+import io.github.bucket4j.SimpleBucketListener;
+import io.github.bucket4j.TimeMeter;
+import io.github.bucket4j.TokensInheritanceStrategy;
+import io.github.bucket4j.UninterruptibleBlockingStrategy;
+import io.github.bucket4j.local.SynchronizationStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Checks that a {@link CompactBucket} behaves exactly like a synchronized Bucket4j bucket with the
+ * same configuration and clock.
+ * <p>
+ * Both buckets are driven through the same random operations on a manual clock, seeded so that a
+ * failure can be replayed, and every result, probe and token count must be equal. The only
+ * exception is a proportional carry-over on reconfiguration, documented on
+ * {@link CompactBucket#replaceConfigurationImpl}.
+ * </p>
+ */
+class CompactBucketConformanceTest {
+
+    private static final long SEED = 20_26_10_16L;
+
+    private static final int CONFIGURATIONS = 200;
+
+    private static final int OPERATIONS = 2_000;
+
+    private static final long[] PERIODS = {
+            1L, 999L, 1_000_000L, 1_000_000_007L, 1_000_000_000L, 60_000_000_000L, 3_600_000_000_000L
+    };
+
+    private final ManualTimeMeter clock = new ManualTimeMeter();
+
+    private final Random random = new Random(SEED);
+
+    @Test
+    void matchesBucket4jOnRandomOperations() {
+        for (int i = 0; i < CONFIGURATIONS; i++) {
+            BucketConfiguration configuration = randomConfiguration();
+            Bucket compact = new CompactBucket(configuration, clock);
+            Bucket reference = reference(configuration);
+            runOperations(configuration, compact, reference);
+        }
+    }
+
+    @Test
+    void matchesBucket4jAcrossReconfiguration() {
+        TokensInheritanceStrategy[] strategies = TokensInheritanceStrategy.values();
+        for (int i = 0; i < CONFIGURATIONS; i++) {
+            BucketConfiguration configuration = randomConfiguration();
+            Bucket compact = new CompactBucket(configuration, clock);
+            Bucket reference = reference(configuration);
+            runOperations(configuration, compact, reference);
+
+            // Keep the refill rate so that the carried rounding error is exact in both
+            Bandwidth bandwidth = configuration.getBandwidths()[0];
+            long capacity = 1 + random.nextInt(1_000);
+            BucketConfiguration next = configuration(capacity, bandwidth.getRefillTokens(), bandwidth.getRefillPeriodNanos());
+            TokensInheritanceStrategy strategy = strategies[random.nextInt(strategies.length)];
+            compact.replaceConfiguration(next, strategy);
+            reference.replaceConfiguration(next, strategy);
+            // A proportional carry-over is rounded down to the reduced refill rate, i.e. by less
+            // than a token's refill time divided by the refill tokens: counts stay equal, waits may be a nanosecond shorter
+            runOperations(next, compact, reference, strategy == TokensInheritanceStrategy.PROPORTIONALLY ? 1 : 0);
+        }
+    }
+
+    @Test
+    void inflatesForOperationsBeyondTheCapacity() {
+        for (int i = 0; i < CONFIGURATIONS; i++) {
+            BucketConfiguration configuration = randomConfiguration();
+            CompactBucket compact = new CompactBucket(configuration, clock);
+            Bucket reference = reference(configuration);
+            long capacity = configuration.getBandwidths()[0].getCapacity();
+
+            // No time passes before inflating, so there is no fractional token to drop
+            long consumed = 1 + random.nextInt((int) capacity);
+            assertThat(compact.tryConsumeAsMuchAsPossible(consumed)).isEqualTo(reference.tryConsumeAsMuchAsPossible(consumed));
+            if (random.nextBoolean()) {
+                long tokens = 1 + random.nextInt((int) capacity * 2);
+                compact.forceAddTokens(tokens);
+                reference.forceAddTokens(tokens);
+            } else {
+                long tokens = 1 + random.nextInt((int) capacity * 2);
+                assertThat(compact.consumeIgnoringRateLimits(tokens)).isEqualTo(reference.consumeIgnoringRateLimits(tokens));
+            }
+            runOperations(configuration, compact, reference);
+        }
+    }
+
+    @Test
+    void forcedTokensWithinTheCapacityStayCompact() {
+        BucketConfiguration configuration = configuration(10, 1, 1_000_000_000L);
+        CompactBucket compact = new CompactBucket(configuration, clock);
+        Bucket reference = reference(configuration);
+
+        compact.tryConsume(5);
+        reference.tryConsume(5);
+        clock.advance(400_000_000L);
+        compact.forceAddTokens(3);
+        reference.forceAddTokens(3);
+        assertThat(compact.consumeIgnoringRateLimits(8)).isEqualTo(reference.consumeIgnoringRateLimits(8));
+
+        assertThat(compact.toString()).doesNotContain("inflated");
+        runOperations(configuration, compact, reference);
+    }
+
+    @Test
+    void servesVerboseBlockingScheduledAndListenedOperations() throws Exception {
+        BucketConfiguration configuration = configuration(100, 10, 1_000_000_000L);
+        CompactBucket compact = new CompactBucket(configuration, clock);
+        Bucket reference = reference(configuration);
+
+        assertThat(compact.asVerbose().tryConsume(10).getValue()).isEqualTo(reference.asVerbose().tryConsume(10).getValue());
+        assertThat(compact.asBlocking().tryConsumeUninterruptibly(10, Duration.ofMillis(1),
+                UninterruptibleBlockingStrategy.PARKING)).isTrue();
+        reference.asBlocking().tryConsumeUninterruptibly(10, Duration.ofMillis(1), UninterruptibleBlockingStrategy.PARKING);
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            assertThat(compact.asScheduler().tryConsume(10, Duration.ofMillis(1), scheduler).get()).isTrue();
+            reference.asScheduler().tryConsume(10, Duration.ofMillis(1), scheduler).get();
+        } finally {
+            scheduler.shutdownNow();
+        }
+
+        SimpleBucketListener listener = new SimpleBucketListener();
+        Bucket listenable = compact.toListenable(listener);
+        assertThat(listenable.tryConsume(5)).isTrue();
+        reference.tryConsume(5);
+        assertThat(listener.getConsumed()).isEqualTo(5);
+
+        runOperations(configuration, compact, reference);
+    }
+
+    @Test
+    void inflatesForUnsupportedConfigurations() {
+        BucketConfiguration configuration = configuration(100, 10, 1_000_000_000L);
+        CompactBucket compact = new CompactBucket(configuration, clock);
+        Bucket reference = reference(configuration);
+        BucketConfiguration twoLimits = BucketConfiguration.builder()
+                .addLimit(Bandwidth.simple(50, Duration.ofSeconds(1)))
+                .addLimit(Bandwidth.simple(1_000, Duration.ofMinutes(1)))
+                .build();
+        assertThat(CompactBucket.supports(twoLimits)).isFalse();
+
+        compact.replaceConfiguration(twoLimits, TokensInheritanceStrategy.AS_IS);
+        reference.replaceConfiguration(twoLimits, TokensInheritanceStrategy.AS_IS);
+        runOperations(twoLimits, compact, reference);
+    }
+
+    @Test
+    void staysExactAfterIdlingForTheLongestSupportedTime() {
+        // The fastest reduced refill rate that is still supported
+        BucketConfiguration fastest = configuration(1_000, 53_375, 1_000_000_007L);
+        assertThat(CompactBucket.supports(fastest)).isTrue();
+        assertThat(CompactBucket.supports(configuration(1_000, 1_000_000, 1_000_000_007L))).isFalse();
+
+        CompactBucket compact = new CompactBucket(fastest, clock);
+        Bucket reference = reference(fastest);
+        assertThat(compact.tryConsumeAsMuchAsPossible()).isEqualTo(reference.tryConsumeAsMuchAsPossible());
+
+        clock.advance(CompactBucket.MAX_IDLE.toNanos());
+        assertThat(compact.getAvailableTokens()).isEqualTo(1_000);
+        runOperations(fastest, compact, reference);
+    }
+
+    private void runOperations(BucketConfiguration configuration, Bucket compact, Bucket reference) {
+        runOperations(configuration, compact, reference, 0);
+    }
+
+    /**
+     * Applies random operations to both buckets, advancing the clock in between, and compares
+     * every result.
+     *
+     * @param waitTolerance nanoseconds by which reported waits may differ
+     */
+    private void runOperations(BucketConfiguration configuration, Bucket compact, Bucket reference, long waitTolerance) {
+        long capacity = configuration.getBandwidths()[0].getCapacity();
+        long period = configuration.getBandwidths()[0].getRefillPeriodNanos();
+        for (int i = 0; i < OPERATIONS; i++) {
+            if (random.nextInt(3) == 0) {
+                clock.advance(random.nextInt(4) == 0 ? (long) (random.nextDouble() * period * 2) : random.nextInt(1_000));
+            }
+            long tokens = 1 + (long) (random.nextDouble() * capacity * 1.1);
+            switch (random.nextInt(8)) {
+                case 0, 1 -> assertThat(compact.tryConsume(tokens))
+                        .as("tryConsume(%d)", tokens)
+                        .isEqualTo(reference.tryConsume(tokens));
+                case 2, 3 -> assertEqual(compact.tryConsumeAndReturnRemaining(tokens),
+                        reference.tryConsumeAndReturnRemaining(tokens), waitTolerance);
+                case 4 -> assertEqual(compact.estimateAbilityToConsume(tokens),
+                        reference.estimateAbilityToConsume(tokens), waitTolerance);
+                case 5 -> assertThat(compact.tryConsumeAsMuchAsPossible(tokens))
+                        .as("tryConsumeAsMuchAsPossible(%d)", tokens)
+                        .isEqualTo(reference.tryConsumeAsMuchAsPossible(tokens));
+                case 6 -> {
+                    long added = 1 + random.nextInt((int) Math.min(capacity, 100));
+                    compact.addTokens(added);
+                    reference.addTokens(added);
+                }
+                default -> {
+                    if (random.nextInt(50) == 0) {
+                        compact.reset();
+                        reference.reset();
+                    }
+                }
+            }
+            assertThat(compact.getAvailableTokens()).isEqualTo(reference.getAvailableTokens());
+        }
+    }
+
+    private static void assertEqual(ConsumptionProbe actual, ConsumptionProbe expected, long waitTolerance) {
+        assertThat(actual.isConsumed()).isEqualTo(expected.isConsumed());
+        assertThat(actual.getRemainingTokens()).isEqualTo(expected.getRemainingTokens());
+        assertThat(actual.getNanosToWaitForRefill()).isCloseTo(expected.getNanosToWaitForRefill(), within(waitTolerance));
+        assertThat(actual.getNanosToWaitForReset()).isCloseTo(expected.getNanosToWaitForReset(), within(waitTolerance));
+    }
+
+    private static void assertEqual(EstimationProbe actual, EstimationProbe expected, long waitTolerance) {
+        assertThat(actual.canBeConsumed()).isEqualTo(expected.canBeConsumed());
+        assertThat(actual.getRemainingTokens()).isEqualTo(expected.getRemainingTokens());
+        assertThat(actual.getNanosToWaitForRefill()).isCloseTo(expected.getNanosToWaitForRefill(), within(waitTolerance));
+    }
+
+    /**
+     * @return a random supported configuration, as a rule would produce
+     */
+    private BucketConfiguration randomConfiguration() {
+        while (true) {
+            long capacity = 1 + random.nextInt(1_000);
+            long refillTokens = 1 + random.nextInt((int) capacity * 2);
+            long period = PERIODS[random.nextInt(PERIODS.length)] * (1 + random.nextInt(3));
+            if (refillTokens > period) {
+                continue;
+            }
+            BucketConfiguration configuration = configuration(capacity, refillTokens, period);
+            if (CompactBucket.supports(configuration)) {
+                return configuration;
+            }
+        }
+    }
+
+    private static BucketConfiguration configuration(long capacity, long refillTokens, long refillPeriodNanos) {
+        return BucketConfiguration.builder()
+                .addLimit(Bandwidth.classic(capacity, Refill.greedy(refillTokens, Duration.ofNanos(refillPeriodNanos))))
+                .build();
+    }
+
+    private Bucket reference(BucketConfiguration configuration) {
+        return Bucket.builder()
+                .addLimit(configuration.getBandwidths()[0])
+                .withCustomTimePrecision(clock)
+                .withSynchronizationStrategy(SynchronizationStrategy.SYNCHRONIZED)
+                .build();
+    }
+
+    /**
+     * Clock that only moves when told to.
+     */
+    private static final class ManualTimeMeter implements TimeMeter {
+
+        private volatile long nanos = 1_000_000_000L;
+
+        void advance(long delta) {
+            nanos += delta;
+        }
+
+        @Override
+        public long currentTimeNanos() {
+            return nanos;
+        }
+
+        @Override
+        public boolean isWallClockBased() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that the rows of a {@link HotKeySketch} hash keys independently.
+ */
+class HotKeySketchTest {
+
+    @Test
+    void keysWithEqualHashCodesDoNotShareCounters() {
+        // "Aa" and "BB" have the same String hash code, and so do the keys
+        BucketKey hot = new BucketKey("Aa", "/pigeon/graphql");
+        BucketKey cold = new BucketKey("BB", "/pigeon/graphql");
+        assertThat(hot.hashCode()).isEqualTo(cold.hashCode());
+
+        HotKeySketch sketch = new HotKeySketch(1024, 1);
+        for (int i = 0; i < 100; i++) {
+            sketch.add(hot);
+        }
+
+        assertThat(sketch.estimate(hot)).isEqualTo(100);
+        assertThat(sketch.estimate(cold)).isZero();
+    }
+
+    @Test
+    void movingCharactersBetweenClientAndRouteChangesTheKey() {
+        HotKeySketch sketch = new HotKeySketch(1024, 1);
+        for (int i = 0; i < 100; i++) {
+            sketch.add(new BucketKey("client-1", "/a"));
+        }
+
+        assertThat(sketch.estimate(new BucketKey("client-1/", "a"))).isZero();
+    }
+}
@@ -0,0 +1,137 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket;
+
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.Refill;
+import io.github.bucket4j.SimpleBucketListener;
+import io.github.bucket4j.TimeMeter;
+import io.github.bucket4j.UninterruptibleBlockingStrategy;
+import io.github.bucket4j.VerboseResult;
+import io.github.bucket4j.local.SynchronizationStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the operations of a {@link StripedBucket} beyond plain consumption: reservations for
+ * blocking and scheduled consumption, consumption ignoring the limits, forced tokens, listeners
+ * and verbose results. A single consumption is served by one stripe, so it takes at most 2 tokens.
+ * <p>
+ * The bucket holds 4 tokens refilled every 4 ms, split into 2 stripes of 2 tokens each refilling
+ * one token every 2 ms, on a manual clock.
+ * </p>
+ */
+class StripedBucketTest {
+
+    private static final Bandwidth BANDWIDTH = Bandwidth.classic(4, Refill.greedy(4, Duration.ofMillis(4)));
+
+    private static final long NANOS_PER_STRIPE_TOKEN = Duration.ofMillis(2).toNanos();
+
+    private final ManualTimeMeter clock = new ManualTimeMeter();
+
+    private final StripedBucket bucket = new StripedBucket(BANDWIDTH, 2, configuration -> Bucket.builder()
+            .addLimit(configuration.getBandwidths()[0])
+            .withCustomTimePrecision(clock)
+            .withSynchronizationStrategy(SynchronizationStrategy.SYNCHRONIZED)
+            .build());
+
+    @Test
+    void blockingConsumptionReservesOnTheStripeRefillingFirst() {
+        assertThat(bucket.tryConsumeAsMuchAsPossible()).isEqualTo(4);
+
+        // The wait of 2 ms exceeds the allowed 1 ms: nothing is reserved
+        assertThat(bucket.asBlocking().tryConsumeUninterruptibly(1, Duration.ofMillis(1),
+                UninterruptibleBlockingStrategy.PARKING)).isFalse();
+        assertThat(bucket.getAvailableTokens()).isZero();
+
+        assertThat(bucket.asBlocking().tryConsumeUninterruptibly(1, Duration.ofMillis(5),
+                UninterruptibleBlockingStrategy.PARKING)).isTrue();
+        assertThat(bucket.getAvailableTokens()).isEqualTo(-1);
+
+        clock.advance(NANOS_PER_STRIPE_TOKEN);
+        assertThat(bucket.getAvailableTokens()).isEqualTo(1);
+    }
+
+    @Test
+    void scheduledConsumptionReservesTokens() throws Exception {
+        assertThat(bucket.tryConsumeAsMuchAsPossible()).isEqualTo(4);
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            assertThat(bucket.asScheduler().tryConsume(1, Duration.ofMillis(1), scheduler).get()).isFalse();
+            assertThat(bucket.asScheduler().tryConsume(1, Duration.ofMillis(5), scheduler).get()).isTrue();
+        } finally {
+            scheduler.shutdownNow();
+        }
+        assertThat(bucket.getAvailableTokens()).isEqualTo(-1);
+    }
+
+    @Test
+    void consumptionIgnoringTheLimitsTakesDebtOnOneStripe() {
+        long penaltyNanos = bucket.consumeIgnoringRateLimits(3);
+
+        assertThat(penaltyNanos).isEqualTo(NANOS_PER_STRIPE_TOKEN);
+        assertThat(bucket.getAvailableTokens()).isEqualTo(1);
+    }
+
+    @Test
+    void forcedTokensAreSpreadOverTheStripes() {
+        bucket.forceAddTokens(5);
+
+        assertThat(bucket.getAvailableTokens()).isEqualTo(9);
+        assertThat(bucket.tryConsume(5)).isTrue();
+        assertThat(bucket.tryConsume(5)).isFalse();
+    }
+
+    @Test
+    void listenerViewSharesTheStripes() {
+        SimpleBucketListener listener = new SimpleBucketListener();
+        Bucket listenable = bucket.toListenable(listener);
+
+        assertThat(listenable.tryConsume(2)).isTrue();
+        assertThat(bucket.tryConsume(2)).isTrue();
+        assertThat(listenable.tryConsume(1)).isFalse();
+
+        assertThat(listener.getConsumed()).isEqualTo(2);
+        assertThat(listener.getRejected()).isEqualTo(1);
+        assertThat(bucket.getAvailableTokens()).isZero();
+    }
+
+    @Test
+    void verboseResultsCarryTheValueOfTheWholeBucket() {
+        VerboseResult<Long> available = bucket.asVerbose().getAvailableTokens();
+        assertThat(available.getValue()).isEqualTo(4);
+        assertThat(available.getConfiguration().getBandwidths()[0].getCapacity()).isEqualTo(2);
+
+        assertThat(bucket.asVerbose().tryConsume(2).getValue()).isTrue();
+        assertThat(bucket.asVerbose().tryConsume(1).getValue()).isTrue();
+        assertThat(bucket.asVerbose().tryConsumeAndReturnRemaining(2).getValue().isConsumed()).isFalse();
+        assertThat(bucket.asVerbose().tryConsumeAsMuchAsPossible().getValue()).isEqualTo(1);
+    }
+
+    /**
+     * Clock that only moves when told to.
+     */
+    private static final class ManualTimeMeter implements TimeMeter {
+
+        private volatile long nanos = 1_000_000_000L;
+
+        void advance(long delta) {
+            nanos += delta;
+        }
+
+        @Override
+        public long currentTimeNanos() {
+            return nanos;
+        }
+
+        @Override
+        public boolean isWallClockBased() {
+            return false;
+        }
+    }
+}
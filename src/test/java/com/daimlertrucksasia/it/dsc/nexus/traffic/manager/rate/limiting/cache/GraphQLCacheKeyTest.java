@@ -0,0 +1,47 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that cached responses are never shared between clients or tenants.
+ */
+class GraphQLCacheKeyTest {
+
+    private static final String BODY = "{\"query\":\"{ pigeons { id } }\"}";
+
+    private final GraphQLCacheKey keys = new GraphQLCacheKey(new ObjectMapper(), "X-Tenant-Id", List.of());
+
+    @Test
+    void keyVariesByClientAndTenantWithoutVaryHeaders() {
+        String key = key("client-a", "tenant-1");
+
+        assertThat(key).isNotNull().isEqualTo(key("client-a", "tenant-1"));
+        assertThat(key("client-b", "tenant-1")).isNotEqualTo(key);
+        assertThat(key("client-a", "tenant-2")).isNotEqualTo(key);
+    }
+
+    @Test
+    void clientIdIsNotCountedTwiceWhenAlsoAVaryHeader() {
+        GraphQLCacheKey withVary = new GraphQLCacheKey(new ObjectMapper(), "X-Tenant-Id", List.of("x-client-id"));
+
+        assertThat(withVary.ofBody("route", "/graphql", headers("client-a", "tenant-1"), BODY))
+                .isEqualTo(key("client-a", "tenant-1"));
+    }
+
+    private String key(String clientId, String tenantId) {
+        return keys.ofBody("route", "/graphql", headers(clientId, tenantId), BODY);
+    }
+
+    private static HttpHeaders headers(String clientId, String tenantId) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-Client-Id", clientId);
+        headers.set("X-Tenant-Id", tenantId);
+        return headers;
+    }
+}
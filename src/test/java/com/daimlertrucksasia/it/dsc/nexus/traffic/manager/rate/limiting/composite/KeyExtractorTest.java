@@ -0,0 +1,60 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.composite;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+/**
+ * Checks that the client address is only taken from forwarding headers of trusted proxies.
+ */
+class KeyExtractorTest {
+
+    private final KeyExtractor ip = KeyExtractor.ip(List.of("10.0.0.0/8", "2001:db8::/32"));
+
+    @Test
+    void untrustedPeerIsKeyedOnItsOwnAddress() {
+        assertThat(ip.extract(exchange("203.0.113.7", "X-Forwarded-For", "198.51.100.1")))
+                .isEqualTo("203.0.113.7");
+    }
+
+    @Test
+    void trustedPeerIsKeyedOnTheNearestUntrustedHop() {
+        assertThat(ip.extract(exchange("10.0.0.5", "X-Forwarded-For", "6.6.6.6, 198.51.100.1, 10.1.2.3")))
+                .isEqualTo("198.51.100.1");
+    }
+
+    @Test
+    void forwardedHeaderTakesPrecedence() {
+        assertThat(ip.extract(exchange("10.0.0.5", "Forwarded", "for=\"[2001:db8::1]:4711\", for=192.0.2.60:8080;proto=https")))
+                .isEqualTo("192.0.2.60");
+    }
+
+    @Test
+    void trustedPeerWithoutHeaderIsKeyedOnItsOwnAddress() {
+        assertThat(ip.extract(exchange("10.0.0.5", "X-Other", "x"))).isEqualTo("10.0.0.5");
+    }
+
+    @Test
+    void withoutTrustedProxiesHeadersAreIgnored() {
+        assertThat(KeyExtractor.ip(List.of()).extract(exchange("10.0.0.5", "X-Forwarded-For", "198.51.100.1")))
+                .isEqualTo("10.0.0.5");
+    }
+
+    @Test
+    void rejectsHostNames() {
+        assertThatIllegalArgumentException().isThrownBy(() -> KeyExtractor.ip(List.of("proxy.example.com")));
+        assertThatIllegalArgumentException().isThrownBy(() -> KeyExtractor.ip(List.of("10.0.0.0/33")));
+    }
+
+    private static MockServerWebExchange exchange(String peer, String header, String value) {
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/pigeon/graphql")
+                .remoteAddress(new InetSocketAddress(peer, 443))
+                .header(header, value));
+    }
+}
@@ -0,0 +1,112 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.rule;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.config.entity.RateLimitConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks how request paths resolve to the most specific route pattern.
+ */
+class RouteMatcherTest {
+
+    @Test
+    void literalBeatsSingleSegmentWildcardWhichBeatsGlob() {
+        RouteMatcher matcher = RouteMatcher.compile(List.of(
+                rule("/**"), rule("/orders/**"), rule("/orders/{id}"), rule("/orders/special")));
+
+        assertThat(route(matcher, "/orders/special")).isEqualTo("/orders/special");
+        assertThat(route(matcher, "/orders/42")).isEqualTo("/orders/{id}");
+        assertThat(route(matcher, "/orders/42/items")).isEqualTo("/orders/**");
+        assertThat(route(matcher, "/invoices/7")).isEqualTo("/**");
+    }
+
+    @Test
+    void specificityIsComparedFromTheLeft() {
+        RouteMatcher matcher = RouteMatcher.compile(List.of(rule("/orders/*/items"), rule("/*/42/items")));
+
+        assertThat(route(matcher, "/orders/42/items")).isEqualTo("/orders/*/items");
+    }
+
+    @Test
+    void backtracksFromALiteralBranchToTheWildcard() {
+        RouteMatcher matcher = RouteMatcher.compile(List.of(
+                rule("/orders/special/items"), rule("/orders/*/history"), rule("/orders/special/**")));
+
+        assertThat(route(matcher, "/orders/special/items")).isEqualTo("/orders/special/items");
+        assertThat(route(matcher, "/orders/special/history/2024")).isEqualTo("/orders/special/**");
+
+        RouteMatcher withoutGlob = RouteMatcher.compile(List.of(
+                rule("/orders/special/items"), rule("/orders/*/history")));
+
+        assertThat(route(withoutGlob, "/orders/special/history")).isEqualTo("/orders/*/history");
+        assertThat(route(withoutGlob, "/orders/special/other")).isNull();
+    }
+
+    @Test
+    void trailingGlobMatchesZeroSegments() {
+        RouteMatcher matcher = RouteMatcher.compile(List.of(rule("/orders/**"), rule("/pigeon/{*rest}")));
+
+        assertThat(route(matcher, "/orders")).isEqualTo("/orders/**");
+        assertThat(route(matcher, "/orders/")).isEqualTo("/orders/**");
+        assertThat(route(matcher, "/pigeon")).isEqualTo("/pigeon/{*rest}");
+        assertThat(route(matcher, "/pigeon/a/b/c")).isEqualTo("/pigeon/{*rest}");
+        assertThat(route(matcher, "/")).isNull();
+    }
+
+    @Test
+    void exactPatternBeatsGlobEndingAtTheSameSegment() {
+        RouteMatcher matcher = RouteMatcher.compile(List.of(rule("/orders/**"), rule("/orders")));
+
+        assertThat(route(matcher, "/orders")).isEqualTo("/orders");
+        assertThat(route(matcher, "/orders/1")).isEqualTo("/orders/**");
+    }
+
+    @Test
+    void tiesAreBrokenByPriorityThenRoute() {
+        RouteMatcher byPriority = RouteMatcher.compile(List.of(
+                rule("/orders/{id}", 1), rule("/orders/*", 2)));
+
+        assertThat(route(byPriority, "/orders/42")).isEqualTo("/orders/{id}");
+
+        RouteMatcher byRoute = RouteMatcher.compile(List.of(
+                rule("/orders/{id}", 1), rule("/orders/*", 1)));
+
+        assertThat(route(byRoute, "/orders/42")).isEqualTo("/orders/*");
+
+        RouteMatcher globs = RouteMatcher.compile(List.of(
+                rule("/orders/**", 3), rule("/orders/{*rest}", 2)));
+
+        assertThat(route(globs, "/orders/42/items")).isEqualTo("/orders/{*rest}");
+    }
+
+    @Test
+    void ignoresRepeatedSlashesAndMatchesNothingWhenEmpty() {
+        RouteMatcher matcher = RouteMatcher.compile(List.of(rule("/orders/{id}")));
+
+        assertThat(route(matcher, "//orders//42/")).isEqualTo("/orders/{id}");
+        assertThat(route(matcher, "/orders/42/items")).isNull();
+        assertThat(route(matcher, "/order/42")).isNull();
+        assertThat(RouteMatcher.compile(List.of()).match("/orders/42")).isNull();
+    }
+
+    private static String route(RouteMatcher matcher, String path) {
+        RateLimitConfig rule = matcher.match(path);
+        return rule != null ? rule.getRoute() : null;
+    }
+
+    private static RateLimitConfig rule(String route) {
+        return rule(route, 0);
+    }
+
+    private static RateLimitConfig rule(String route, int priority) {
+        return RateLimitConfig.builder()
+                .id(route)
+                .clientId("client")
+                .route(route)
+                .priority(priority)
+                .build();
+    }
+}
@@ -0,0 +1,121 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.rule;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that every deadline expires on its own tick, across the wheel boundaries and cascades.
+ * With a tick of one millisecond, ticks and milliseconds are the same numbers.
+ */
+class TimingWheelTest {
+
+    /**
+     * A start that is not aligned to any wheel, so cascades happen mid-way through a deadline.
+     */
+    private static final long START = 1_000_037;
+
+    private static final long MAX_DELAY = (1L << 36) - 1;
+
+    private final TimingWheel<String, String> wheel = new TimingWheel<>(Duration.ofMillis(1), START);
+
+    @Test
+    void expiresExactlyOnWheelBoundaries() {
+        long[] delays = {1, 63, 64, 65, 4095, 4096, 4097, 262_143, 262_144};
+        for (long delay : delays) {
+            wheel.schedule("d" + delay, "d" + delay, START + delay);
+        }
+
+        long now = START;
+        for (long delay : delays) {
+            assertThat(wheel.advance(START + delay - 1)).as("before %d", delay).isEmpty();
+            assertThat(wheel.advance(START + delay)).as("at %d", delay).containsExactly("d" + delay);
+            now = START + delay;
+        }
+        assertThat(wheel.size()).isZero();
+        assertThat(wheel.advance(now + 1_000_000)).isEmpty();
+    }
+
+    @Test
+    void roundsDeadlinesUpToWholeTicks() {
+        TimingWheel<String, String> coarse = new TimingWheel<>(Duration.ofMillis(10), 0);
+        coarse.schedule("a", "a", 15);
+
+        assertThat(coarse.advance(19)).isEmpty();
+        assertThat(coarse.advance(20)).containsExactly("a");
+    }
+
+    @Test
+    void pastDeadlinesExpireOnTheNextTick() {
+        wheel.schedule("a", "a", START - 5_000);
+
+        assertThat(wheel.advance(START)).isEmpty();
+        assertThat(wheel.advance(START + 1)).containsExactly("a");
+    }
+
+    @Test
+    void rescheduleReplacesAndCancelRemoves() {
+        wheel.schedule("a", "a1", START + 5_000);
+        wheel.schedule("b", "b", START + 100);
+        wheel.schedule("a", "a2", START + 50);
+
+        assertThat(wheel.cancel("b")).isEqualTo("b");
+        assertThat(wheel.cancel("b")).isNull();
+        assertThat(wheel.keys()).containsExactly("a");
+        assertThat(wheel.advance(START + 50)).containsExactly("a2");
+        assertThat(wheel.advance(START + 10_000)).isEmpty();
+    }
+
+    @Test
+    void advancesAcrossSeveralCascadesAtOnce() {
+        Random random = new Random(42);
+        List<long[]> scheduled = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            long delay = 1 + random.nextInt(20_000_000);
+            wheel.schedule("k" + i, "k" + i, START + delay);
+            scheduled.add(new long[]{delay, i});
+        }
+        scheduled.sort(Comparator.<long[]>comparingLong(e -> e[0]).thenComparingLong(e -> e[1]));
+
+        List<String> expected = new ArrayList<>();
+        for (long[] entry : scheduled) {
+            expected.add("k" + entry[1]);
+        }
+        assertThat(wheel.advance(START + 20_000_000)).containsExactlyElementsOf(expected);
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void expiresEachEntryOnItsTickWhenAdvancedInSteps() {
+        Random random = new Random(7);
+        long[] deadlines = new long[500];
+        for (int i = 0; i < deadlines.length; i++) {
+            deadlines[i] = START + 1 + random.nextInt(300_000);
+            wheel.schedule("k" + i, Long.toString(deadlines[i]), deadlines[i]);
+        }
+
+        long now = START;
+        while (wheel.size() > 0) {
+            long next = now + 1 + random.nextInt(5_000);
+            for (String deadline : wheel.advance(next)) {
+                assertThat(Long.parseLong(deadline)).isGreaterThan(now).isLessThanOrEqualTo(next);
+            }
+            now = next;
+        }
+    }
+
+    @Test
+    void deadlinesBeyondTheLastWheelExpireEarlyAtTheMaximumDelay() {
+        wheel.schedule("far", "far", START + MAX_DELAY + 1_000_000);
+        wheel.schedule("last", "last", START + MAX_DELAY);
+
+        assertThat(wheel.advance(START + MAX_DELAY - 1)).isEmpty();
+        assertThat(wheel.advance(START + MAX_DELAY)).containsExactlyInAnyOrder("far", "last");
+    }
+}
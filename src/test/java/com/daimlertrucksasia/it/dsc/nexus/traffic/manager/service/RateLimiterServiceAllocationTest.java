@@ -0,0 +1,167 @@
+package com.daimlertrucksasia.it.dsc.nexus.traffic.manager.service;
+
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.config.RateLimiterProperties;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.infrastructure.RateLimitConfigRepository;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketEntry;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketSnapshots;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.BucketStore;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.HotKeyTracker;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.bucket.LocalBucketBackend;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.config.entity.RateLimitConfig;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.metrics.RateLimiterMetrics;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.quota.QuotaStore;
+import com.daimlertrucksasia.it.dsc.nexus.traffic.manager.rate.limiting.rule.DefaultPolicy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Checks that resolving and consuming from an existing bucket allocates nothing once warm.
+ * <p>
+ * Allocation is measured with the per-thread allocation counter of the JVM over rounds of
+ * {@link #OPERATIONS} requests spread over a few rules, after the JIT has compiled the path.
+ * The best round must stay below {@link #MAX_BYTES_PER_OPERATION}: a single object per request
+ * is at least 16 bytes, while sporadic allocations, such as a Caffeine maintenance task, stay far
+ * below one byte per request.
+ * </p>
+ */
+class RateLimiterServiceAllocationTest {
+
+    private static final String ROUTE = "/pigeon/graphql";
+
+    private static final String PATH = "/pigeon/graphql";
+
+    private static final int CLIENTS = 3;
+
+    private static final int OPERATIONS = 1_000_000;
+
+    private static final int ROUNDS = 10;
+
+    private static final double MAX_BYTES_PER_OPERATION = 1.0;
+
+    private final RateLimiterProperties properties = new RateLimiterProperties();
+
+    private final BucketStore bucketStore = new BucketStore(properties);
+
+    private final LocalBucketBackend bucketBackend = new LocalBucketBackend();
+
+    private final RateLimiterMetrics metrics = new RateLimiterMetrics(new SimpleMeterRegistry(), properties, bucketStore);
+
+    private final HotKeyTracker hotKeyTracker = new HotKeyTracker(properties, bucketStore, bucketBackend);
+
+    private final RuleSnapshotService ruleSnapshotService = new RuleSnapshotService();
+
+    private final RateLimiterService rateLimiterService = new RateLimiterService();
+
+    private final String[] clients = new String[CLIENTS];
+
+    @BeforeEach
+    void setUp() {
+        List<RateLimitConfig> rules = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            clients[i] = "client-" + i;
+            rules.add(RateLimitConfig.builder()
+                    .id(clients[i])
+                    .clientId(clients[i])
+                    .route(ROUTE)
+                    .requestsPerMinute(1_000_000_000L)
+                    .timeWindow(1)
+                    .timeUnit("SECONDS")
+                    .status("ACTIVE")
+                    .build());
+        }
+        ReflectionTestUtils.setField(ruleSnapshotService, "configRepository", repository(rules));
+        ReflectionTestUtils.setField(ruleSnapshotService, "eventPublisher", (ApplicationEventPublisher) event -> {
+        });
+        ruleSnapshotService.reload().block();
+
+        metrics.init();
+        hotKeyTracker.init();
+
+        ReflectionTestUtils.setField(rateLimiterService, "ruleSnapshotService", ruleSnapshotService);
+        ReflectionTestUtils.setField(rateLimiterService, "properties", properties);
+        ReflectionTestUtils.setField(rateLimiterService, "bucketBackend", bucketBackend);
+        ReflectionTestUtils.setField(rateLimiterService, "metrics", metrics);
+        ReflectionTestUtils.setField(rateLimiterService, "bucketStore", bucketStore);
+        ReflectionTestUtils.setField(rateLimiterService, "hotKeyTracker", hotKeyTracker);
+        ReflectionTestUtils.setField(rateLimiterService, "bucketSnapshots",
+                new BucketSnapshots(properties, bucketStore, bucketBackend));
+        ReflectionTestUtils.setField(rateLimiterService, "defaultPolicy", new DefaultPolicy(properties));
+        ReflectionTestUtils.setField(rateLimiterService, "quotaStore",
+                new QuotaStore(properties, null, new SimpleMeterRegistry()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        hotKeyTracker.stop();
+        metrics.stop();
+    }
+
+    @Test
+    void allowedPathAllocatesNothingOnceWarm() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported(), "allocation counter not supported");
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = threads.getThreadAllocatedBytes(thread);
+            long allowed = run();
+            long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+            assertThat(allowed).isEqualTo(OPERATIONS);
+            best = Math.min(best, (double) allocated / OPERATIONS);
+        }
+
+        assertThat(best)
+                .as("bytes allocated per allowed request")
+                .isLessThan(MAX_BYTES_PER_OPERATION);
+    }
+
+    /**
+     * Resolves, matches and consumes like the filter on the allowed path.
+     *
+     * @return the number of requests allowed
+     */
+    private long run() {
+        long allowed = 0;
+        for (int i = 0; i < OPERATIONS; i++) {
+            String clientId = clients[i % CLIENTS];
+            BucketEntry entry = rateLimiterService.resolveEntry(clientId, PATH);
+            if (entry.getBucket().tryConsume(1) && rateLimiterService.getConfig(clientId, PATH) != null) {
+                entry.getCounters().recordAllowed();
+                allowed++;
+            }
+        }
+        return allowed;
+    }
+
+    /**
+     * @return a repository stub answering {@code findAllByStatus} from the given rules
+     */
+    private static RateLimitConfigRepository repository(List<RateLimitConfig> rules) {
+        return (RateLimitConfigRepository) Proxy.newProxyInstance(
+                RateLimitConfigRepository.class.getClassLoader(),
+                new Class<?>[]{RateLimitConfigRepository.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("findAllByStatus")) {
+                        return Flux.fromStream(rules.stream().filter(rule -> args[0].equals(rule.getStatus())));
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}